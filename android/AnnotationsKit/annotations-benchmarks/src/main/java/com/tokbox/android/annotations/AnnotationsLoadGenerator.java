@@ -0,0 +1,369 @@
+package com.tokbox.android.annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Synthetic multi-participant load on the annotations model and renderer.
+ *
+ * Each participant has its own main thread, AnnotationsManager and Java2D raster. It draws
+ * random-walk strokes at a Poisson rate, adds them to its board and sends them through a
+ * LocalSignalChannel. The other participants decode each stroke, add it to their board and draw
+ * it, and every few strokes redraw their whole board. The end-to-end latency runs from the send
+ * to the stroke being drawn on the receiver.
+ *
+ * Run it with ./gradlew :annotations-benchmarks:loadTest -PloadArgs="--participants 12 --rate 2"
+ */
+public class AnnotationsLoadGenerator {
+
+    static final String SIGNAL_TYPE = "annotations";
+
+    private static final int[] COLORS = {0xffff0000, 0xff00aa00, 0xff0000ff, 0xffffaa00, 0x80000000};
+
+    /**
+     * Load parameters.
+     */
+    static class Config {
+        int participants = 4;
+        //strokes per second of each participant
+        double strokeRate = 1;
+        int minPoints = 20;
+        int maxPoints = 80;
+        int durationMs = 10000;
+        int latencyMs = 50;
+        //a receiver redraws its whole board every redrawInterval received strokes
+        int redrawInterval = 20;
+        int width = 1280;
+        int height = 720;
+        long seed = 42;
+    }
+
+    /**
+     * Results of a run.
+     */
+    static class Report {
+        int participants;
+        long strokesSent;
+        long strokesReceived;
+        long signalsRejected;
+        long bytesDelivered;
+        long elapsedMs;
+        long latencyP50Micros;
+        long latencyP95Micros;
+        long latencyP99Micros;
+        long latencyMaxMicros;
+        long peakHeapBytes;
+        long retainedHeapBytes;
+        boolean drained;
+
+        double getStrokesPerSecond() {
+            return elapsedMs == 0 ? 0 : strokesReceived * 1000.0 / elapsedMs;
+        }
+
+        static String header() {
+            return String.format(Locale.US, "%12s %8s %10s %10s %9s %9s %9s %9s %10s %10s",
+                    "participants", "sent", "received", "strokes/s", "p50 ms", "p95 ms", "p99 ms", "max ms",
+                    "peak MB", "heap MB");
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%12d %8d %10d %10.1f %9.1f %9.1f %9.1f %9.1f %10.1f %10.1f%s",
+                    participants, strokesSent, strokesReceived, getStrokesPerSecond(),
+                    latencyP50Micros / 1000.0, latencyP95Micros / 1000.0, latencyP99Micros / 1000.0,
+                    latencyMaxMicros / 1000.0, peakHeapBytes / 1048576.0, retainedHeapBytes / 1048576.0,
+                    drained ? "" : "  (not drained)");
+        }
+    }
+
+    /**
+     * A simulated participant. Everything but start() runs on its main thread.
+     */
+    private static class Participant implements LocalSignalChannel.SignalListener {
+
+        private final Config mConfig;
+        private final LocalSignalChannel mChannel;
+        private final ScheduledExecutorService mMain;
+        private final AnnotationsManager mManager = new AnnotationsManager();
+        private final AnnotationsRasterRenderer mRenderer;
+        private final Random mRandom;
+        private final int mId;
+        private final int mColor;
+
+        private long mEndNanos;
+        private long mSent = 0;
+        private long mReceived = 0;
+        private long[] mLatencies = new long[1024];
+
+        Participant(Config config, LocalSignalChannel channel, int index) {
+            this.mConfig = config;
+            this.mChannel = channel;
+            this.mRandom = new Random(config.seed + index);
+            this.mColor = COLORS[index % COLORS.length];
+            this.mRenderer = new AnnotationsRasterRenderer(config.width, config.height);
+            this.mMain = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Participant");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.mId = channel.join(this, mMain);
+        }
+
+        void start(long endNanos) {
+            mEndNanos = endNanos;
+            scheduleNextStroke();
+        }
+
+        private void scheduleNextStroke() {
+            //exponential inter-arrival times, so strokes of different participants cluster at times
+            double delaySeconds = -Math.log(1 - mRandom.nextDouble()) / mConfig.strokeRate;
+            long delayMicros = (long) (delaySeconds * 1000000);
+            if (System.nanoTime() + delayMicros * 1000 > mEndNanos) {
+                return;
+            }
+            mMain.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    drawStroke();
+                    scheduleNextStroke();
+                }
+            }, delayMicros, TimeUnit.MICROSECONDS);
+        }
+
+        //a random walk sampled like touch events, filtered by the same tolerance as the AnnotationsView
+        private void drawStroke() {
+            int points = mConfig.minPoints + mRandom.nextInt(mConfig.maxPoints - mConfig.minPoints + 1);
+            float x = mRandom.nextFloat() * mConfig.width;
+            float y = mRandom.nextFloat() * mConfig.height;
+            float angle = mRandom.nextFloat() * 6.283f;
+            AnnotationsPath path = new AnnotationsPath();
+            for (int i = 0; i < points; i++) {
+                angle += mRandom.nextFloat() * 0.6f - 0.3f;
+                x = Math.max(0, Math.min(mConfig.width, x + (float) Math.cos(angle) * 8));
+                y = Math.max(0, Math.min(mConfig.height, y + (float) Math.sin(angle) * 8));
+                path.appendTouchPoint(x, y, AnnotationsView.TOLERANCE);
+            }
+            path.finish();
+            //as the view does when a stroke ends
+            path.buildLevels();
+
+            Annotatable annotatable = new Annotatable(UUID.randomUUID(), AnnotationsView.Mode.Pen.toString(), path,
+                    mColor, 4 + mRandom.nextInt(3) * 3, mConfig.width, mConfig.height);
+            mManager.addAnnotatable(annotatable);
+            mRenderer.drawPath(annotatable);
+            if (mChannel.send(mId, SIGNAL_TYPE, encode(annotatable, System.nanoTime()))) {
+                mSent++;
+            }
+        }
+
+        @Override
+        public void onSignal(int from, String type, String data) {
+            long[] sentNanos = new long[1];
+            Annotatable annotatable = decode(data, sentNanos);
+            mManager.addAnnotatable(annotatable);
+            mReceived++;
+            if (mReceived % mConfig.redrawInterval == 0) {
+                mRenderer.clear();
+                mRenderer.render(mManager.getAnnotatableList());
+            } else {
+                mRenderer.drawPath(annotatable);
+            }
+            recordLatency((System.nanoTime() - sentNanos[0]) / 1000);
+        }
+
+        private void recordLatency(long micros) {
+            if (mReceived > mLatencies.length) {
+                mLatencies = Arrays.copyOf(mLatencies, mLatencies.length * 2);
+            }
+            mLatencies[(int) mReceived - 1] = micros;
+        }
+
+        void shutdown() throws InterruptedException {
+            mMain.shutdown();
+            mMain.awaitTermination(10, TimeUnit.SECONDS);
+            mRenderer.dispose();
+        }
+    }
+
+    /*
+     * Encodes a stroke as a signal: sent time, id, color, size, canvas size and the control points.
+     * @param annotatable The stroke
+     * @param sentNanos System.nanoTime() of the send, used to measure the end-to-end latency
+     */
+    static String encode(Annotatable annotatable, long sentNanos) {
+        AnnotationsPath path = annotatable.getPath();
+        int count = path.getPointCount();
+        StringBuilder builder = new StringBuilder(64 + count * 12);
+        builder.append(sentNanos).append('|')
+                .append(annotatable.getId()).append('|')
+                .append(Integer.toHexString(annotatable.getColor())).append('|')
+                .append(annotatable.getSize()).append('|')
+                .append(annotatable.getCanvasWidth()).append('|')
+                .append(annotatable.getCanvasHeight()).append('|');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(';');
+            }
+            //a tenth of a pixel is below what a touch screen resolves
+            builder.append(Math.round(path.getPointX(i) * 10) / 10f).append(',')
+                    .append(Math.round(path.getPointY(i) * 10) / 10f);
+        }
+        return builder.toString();
+    }
+
+    /*
+     * Decodes a stroke encoded by encode().
+     * @param data The signal data
+     * @param sentNanos Receives the sent time in its first element
+     */
+    static Annotatable decode(String data, long[] sentNanos) {
+        String[] fields = data.split("\\|", 7);
+        sentNanos[0] = Long.parseLong(fields[0]);
+        String[] pairs = fields[6].split(";");
+        float[] points = new float[pairs.length * 2];
+        for (int i = 0; i < pairs.length; i++) {
+            int comma = pairs[i].indexOf(',');
+            points[i * 2] = Float.parseFloat(pairs[i].substring(0, comma));
+            points[i * 2 + 1] = Float.parseFloat(pairs[i].substring(comma + 1));
+        }
+        return new Annotatable(UUID.fromString(fields[1]), AnnotationsView.Mode.Pen.toString(),
+                AnnotationsPath.fromPoints(points, pairs.length), (int) Long.parseLong(fields[2], 16),
+                Float.parseFloat(fields[3]), Integer.parseInt(fields[4]), Integer.parseInt(fields[5]));
+    }
+
+    /*
+     * Runs the load and waits for every signal to be handled.
+     */
+    static Report run(Config config) throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        LocalSignalChannel channel = new LocalSignalChannel(config.latencyMs * 1000L);
+        List<Participant> participants = new ArrayList<Participant>(config.participants);
+        for (int i = 0; i < config.participants; i++) {
+            participants.add(new Participant(config, channel, i));
+        }
+
+        final AtomicLong peakHeap = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                long used = runtime.totalMemory() - runtime.freeMemory() - heapBefore;
+                if (used > peakHeap.get()) {
+                    peakHeap.set(used);
+                }
+            }
+        }, 0, 50, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        long end = start + config.durationMs * 1000000L;
+        for (Participant participant : participants) {
+            participant.start(end);
+        }
+        Thread.sleep(config.durationMs);
+
+        Report report = new Report();
+        report.participants = config.participants;
+        report.drained = channel.awaitIdle(30000);
+        report.elapsedMs = (System.nanoTime() - start) / 1000000;
+        sampler.shutdownNow();
+
+        //the boards are still referenced here, so this is the memory the model and rasters retain
+        System.gc();
+        report.retainedHeapBytes = Math.max(0, runtime.totalMemory() - runtime.freeMemory() - heapBefore);
+        report.peakHeapBytes = Math.max(peakHeap.get(), report.retainedHeapBytes);
+
+        long[] latencies = new long[0];
+        for (Participant participant : participants) {
+            participant.shutdown();
+            report.strokesSent += participant.mSent;
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + (int) participant.mReceived);
+            System.arraycopy(participant.mLatencies, 0, latencies, offset, (int) participant.mReceived);
+        }
+        report.strokesReceived = latencies.length;
+        report.signalsRejected = channel.getRejectedCount();
+        report.bytesDelivered = channel.getDeliveredBytes();
+        channel.close();
+
+        Arrays.sort(latencies);
+        report.latencyP50Micros = percentile(latencies, 50);
+        report.latencyP95Micros = percentile(latencies, 95);
+        report.latencyP99Micros = percentile(latencies, 99);
+        report.latencyMaxMicros = latencies.length == 0 ? 0 : latencies[latencies.length - 1];
+        return report;
+    }
+
+    //nearest-rank percentile of sorted values
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(sorted.length * percentile / 100);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /*
+     * Options: --participants N, --rate strokes/s, --duration seconds, --latency ms,
+     * --points min-max, --redraw strokes, --size WxH, and --sweep to run 1, 2, 4... up to N participants.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Config config = new Config();
+        boolean sweep = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--sweep".equals(arg)) {
+                sweep = true;
+            } else if (i + 1 < args.length && "--participants".equals(arg)) {
+                config.participants = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && "--rate".equals(arg)) {
+                config.strokeRate = Double.parseDouble(args[++i]);
+            } else if (i + 1 < args.length && "--duration".equals(arg)) {
+                config.durationMs = (int) (Double.parseDouble(args[++i]) * 1000);
+            } else if (i + 1 < args.length && "--latency".equals(arg)) {
+                config.latencyMs = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && "--points".equals(arg)) {
+                String[] range = args[++i].split("-");
+                config.minPoints = Integer.parseInt(range[0]);
+                config.maxPoints = Integer.parseInt(range[range.length - 1]);
+            } else if (i + 1 < args.length && "--redraw".equals(arg)) {
+                config.redrawInterval = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && "--size".equals(arg)) {
+                String[] size = args[++i].split("x");
+                config.width = Integer.parseInt(size[0]);
+                config.height = Integer.parseInt(size[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "%.1f strokes/s per participant, %d-%d points, %dms latency, %dx%d, %ds",
+                config.strokeRate, config.minPoints, config.maxPoints, config.latencyMs, config.width, config.height,
+                config.durationMs / 1000));
+        System.out.println(Report.header());
+        int max = config.participants;
+        int participants = sweep ? 1 : max;
+        while (true) {
+            config.participants = participants;
+            System.out.println(run(config));
+            if (participants == max) {
+                break;
+            }
+            participants = Math.min(max, participants * 2);
+        }
+    }
+}
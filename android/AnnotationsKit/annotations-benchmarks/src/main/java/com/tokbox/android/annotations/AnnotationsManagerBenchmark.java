@@ -0,0 +1,77 @@
+package com.tokbox.android.annotations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotatable list operations: committing strokes, erasing the last one and removing one by id.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotationsManagerBenchmark {
+
+    @Param({"100", "10000"})
+    public int annotatables;
+
+    private Annotatable[] mStrokes;
+    private AnnotationsManager mManager;
+
+    @Setup
+    public void setUp() {
+        mStrokes = new Annotatable[annotatables];
+        float[] points = {0, 0, 10, 10, 20, 0};
+        for (int i = 0; i < annotatables; i++) {
+            mStrokes[i] = new Annotatable(AnnotationsView.Mode.Pen.toString(), AnnotationsPath.fromPoints(points, 3),
+                    Annotatable.newPathPaint(0xff0000ff, 10), 1280, 720);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        mManager = new AnnotationsManager();
+        for (Annotatable stroke : mStrokes) {
+            mManager.addAnnotatable(stroke);
+        }
+    }
+
+    @Benchmark
+    public AnnotationsManager addAll() {
+        AnnotationsManager manager = new AnnotationsManager();
+        for (Annotatable stroke : mStrokes) {
+            manager.addAnnotatable(stroke);
+        }
+        return manager;
+    }
+
+    @Benchmark
+    public boolean removeLast() {
+        return mManager.removeAnnotatable(mStrokes[annotatables - 1].getId());
+    }
+
+    @Benchmark
+    public boolean removeFirst() {
+        return mManager.removeAnnotatable(mStrokes[0].getId());
+    }
+
+    @Benchmark
+    public AnnotationsManager clear() {
+        mManager.clear();
+        return mManager;
+    }
+}
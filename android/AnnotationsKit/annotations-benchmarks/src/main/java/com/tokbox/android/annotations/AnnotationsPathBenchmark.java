@@ -0,0 +1,77 @@
+package com.tokbox.android.annotations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stroke building from raw touch points, as AnnotationsView does while drawing, and stroke
+ * rebuilding from control points, as the journal and the player do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotationsPathBenchmark {
+
+    private static final float TOLERANCE = 5;
+
+    @Param({"100", "1000"})
+    public int touchPoints;
+
+    private float[] mTouches;
+    private float[] mControlPoints;
+    private int mControlPointCount;
+
+    @Setup
+    public void setUp() {
+        //a jittery hand-drawn line, about half of the touch points move less than the tolerance
+        Random random = new Random(42);
+        mTouches = new float[touchPoints * 2];
+        float x = 100;
+        float y = 100;
+        for (int i = 0; i < touchPoints; i++) {
+            x += random.nextFloat() * 8;
+            y += random.nextFloat() * 8 - 4;
+            mTouches[i * 2] = x;
+            mTouches[i * 2 + 1] = y;
+        }
+
+        AnnotationsPath path = buildStroke();
+        mControlPointCount = path.getPointCount();
+        mControlPoints = new float[mControlPointCount * 2];
+        for (int i = 0; i < mControlPointCount; i++) {
+            mControlPoints[i * 2] = path.getPointX(i);
+            mControlPoints[i * 2 + 1] = path.getPointY(i);
+        }
+    }
+
+    @Benchmark
+    public AnnotationsPath buildStroke() {
+        AnnotationsPath path = new AnnotationsPath();
+        path.appendPoint(mTouches[0], mTouches[1]);
+        for (int i = 1; i < touchPoints; i++) {
+            path.appendTouchPoint(mTouches[i * 2], mTouches[i * 2 + 1], TOLERANCE);
+        }
+        path.finish();
+        return path;
+    }
+
+    @Benchmark
+    public AnnotationsPath rebuildStroke() {
+        return AnnotationsPath.fromPoints(mControlPoints, mControlPointCount);
+    }
+}
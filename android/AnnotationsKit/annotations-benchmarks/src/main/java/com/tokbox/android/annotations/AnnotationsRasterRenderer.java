@@ -0,0 +1,101 @@
+package com.tokbox.android.annotations;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws the annotatables into an ARGB raster with Java2D, off-device.
+ *
+ * Strokes are built from the control points with the same smoothing as AnnotationsPath (quads
+ * to the midpoints, then a line to the last point), with butt caps and round joins like the
+ * Android paint. Texts are drawn on a single line from their baseline.
+ */
+class AnnotationsRasterRenderer extends AnnotationsRenderer {
+
+    private final BufferedImage mImage;
+    private final Graphics2D mGraphics;
+    private final Path2D.Float mPath = new Path2D.Float();
+
+    private float mStrokeWidth = -1;
+    private float mTextSize = -1;
+    private int mLevel = 0;
+
+    AnnotationsRasterRenderer(int width, int height) {
+        mImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        mGraphics = mImage.createGraphics();
+        mGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        mGraphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        mGraphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    }
+
+    BufferedImage getImage() {
+        return mImage;
+    }
+
+    //resets the raster to transparent
+    void clear() {
+        AffineTransform transform = mGraphics.getTransform();
+        mGraphics.setTransform(new AffineTransform());
+        mGraphics.setComposite(AlphaComposite.Clear);
+        mGraphics.fillRect(0, 0, mImage.getWidth(), mImage.getHeight());
+        mGraphics.setComposite(AlphaComposite.SrcOver);
+        mGraphics.setTransform(transform);
+    }
+
+    //draws the next annotatables scaled from the origin, at the level of detail of that scale, like a zoomed AnnotationsView
+    void setZoom(float zoom) {
+        mGraphics.setTransform(AffineTransform.getScaleInstance(zoom, zoom));
+        mLevel = AnnotationsPath.getLevelForScale(zoom);
+    }
+
+    void dispose() {
+        mGraphics.dispose();
+    }
+
+    @Override
+    void drawPath(Annotatable annotatable) {
+        AnnotationsPath path = annotatable.getPath().getLevel(mLevel);
+        int count = path.getPointCount();
+        if (count == 0) {
+            return;
+        }
+
+        mPath.reset();
+        float mX = path.getPointX(0);
+        float mY = path.getPointY(0);
+        mPath.moveTo(mX, mY);
+        for (int i = 1; i < count; i++) {
+            float x = path.getPointX(i);
+            float y = path.getPointY(i);
+            mPath.quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+            mX = x;
+            mY = y;
+        }
+        mPath.lineTo(mX, mY);
+
+        if (mStrokeWidth != annotatable.getSize()) {
+            mStrokeWidth = annotatable.getSize();
+            mGraphics.setStroke(new BasicStroke(mStrokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+        }
+        mGraphics.setColor(new Color(annotatable.getColor(), true));
+        mGraphics.draw(mPath);
+    }
+
+    @Override
+    void drawText(Annotatable annotatable) {
+        AnnotationsText text = annotatable.getText();
+        if (mTextSize != annotatable.getSize()) {
+            mTextSize = annotatable.getSize();
+            mGraphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont(mTextSize));
+        }
+        mGraphics.setColor(new Color(annotatable.getColor(), true));
+        mGraphics.drawString(text.getText(), text.getX(), text.getY());
+    }
+}
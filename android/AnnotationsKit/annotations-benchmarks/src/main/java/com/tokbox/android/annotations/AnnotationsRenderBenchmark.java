@@ -0,0 +1,91 @@
+package com.tokbox.android.annotations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering throughput of the annotatable model on the Java2D backend: strokes per second and
+ * full-board redraw time, at full size and zoomed out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotationsRenderBenchmark {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int POINTS = 50;
+    private static final int[] COLORS = {0xffff0000, 0xff00aa00, 0xff0000ff, 0x80000000};
+
+    @Param({"100", "1000"})
+    public int strokes;
+
+    @Param({"1", "0.25"})
+    public float zoom;
+
+    private List<Annotatable> mBoard;
+    private AnnotationsRasterRenderer mRenderer;
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mBoard = new ArrayList<Annotatable>(strokes);
+        float[] points = new float[POINTS * 2];
+        for (int s = 0; s < strokes; s++) {
+            float x = random.nextFloat() * WIDTH;
+            float y = random.nextFloat() * HEIGHT;
+            for (int i = 0; i < POINTS; i++) {
+                x = Math.max(0, Math.min(WIDTH, x + random.nextFloat() * 20 - 10));
+                y = Math.max(0, Math.min(HEIGHT, y + random.nextFloat() * 20 - 10));
+                points[i * 2] = x;
+                points[i * 2 + 1] = y;
+            }
+            mBoard.add(new Annotatable(UUID.randomUUID(), AnnotationsView.Mode.Pen.toString(), AnnotationsPath.fromPoints(points, POINTS),
+                    COLORS[s % COLORS.length], 4 + s % 3 * 3, WIDTH, HEIGHT));
+        }
+        mRenderer = new AnnotationsRasterRenderer(WIDTH, HEIGHT);
+        mRenderer.setZoom(zoom);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRenderer.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage redrawBoard() {
+        mRenderer.clear();
+        mRenderer.render(mBoard);
+        return mRenderer.getImage();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public BufferedImage drawStroke() {
+        mRenderer.drawPath(mBoard.get(mNext));
+        mNext = (mNext + 1) % strokes;
+        return mRenderer.getImage();
+    }
+}
@@ -0,0 +1,153 @@
+package com.tokbox.android.annotations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a board of 1000 strokes of 50 points: journal append and restore, and export.
+ * Also the reload of a journal of 100000 operations, 9 strokes added for 1 erased, from its file,
+ * and the export of 10000 strokes drawn on a canvas of another size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotationsSerializationBenchmark {
+
+    private static final int STROKES = 1000;
+    private static final int POINTS = 50;
+    private static final int RELOAD_OPS = 100000;
+    private static final int LARGE_STROKES = 10000;
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private List<Annotatable> mStrokes;
+    private List<Annotatable> mLargeBoard;
+    private File mAppendFile;
+    private File mRestoreFile;
+    private AnnotationsJournal mRestoreJournal;
+    private File mReloadFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mStrokes = new ArrayList<Annotatable>(STROKES);
+        float[] points = new float[POINTS * 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (i * 7.31f) % 720;
+        }
+        for (int i = 0; i < STROKES; i++) {
+            mStrokes.add(new Annotatable(AnnotationsView.Mode.Pen.toString(), AnnotationsPath.fromPoints(points, POINTS),
+                    Annotatable.newPathPaint(0xff0000ff, 10), 1280, 720));
+        }
+
+        mLargeBoard = new ArrayList<Annotatable>(LARGE_STROKES);
+        for (int i = 0; i < LARGE_STROKES; i++) {
+            mLargeBoard.add(new Annotatable(AnnotationsView.Mode.Pen.toString(), AnnotationsPath.fromPoints(points, POINTS),
+                    Annotatable.newPathPaint(0xff0000ff, 10), 1920, 1080));
+        }
+
+        mAppendFile = File.createTempFile("append", ".journal");
+        mRestoreFile = File.createTempFile("restore", ".journal");
+        mRestoreJournal = new AnnotationsJournal(mRestoreFile, Long.MAX_VALUE);
+        for (Annotatable stroke : mStrokes) {
+            mRestoreJournal.appendAdd(stroke);
+        }
+
+        mReloadFile = File.createTempFile("reload", ".journal");
+        AnnotationsJournal journal = new AnnotationsJournal(mReloadFile, Long.MAX_VALUE);
+        AnnotationsManager manager = new AnnotationsManager();
+        manager.setJournal(journal);
+        Annotatable stroke = mStrokes.get(0);
+        for (int i = 0; i < RELOAD_OPS; i++) {
+            List<Annotatable> list = manager.getAnnotatableList();
+            if (i % 10 == 9) {
+                manager.removeAnnotatable(list.get(list.size() - 1).getId());
+            } else {
+                manager.addAnnotatable(new Annotatable(stroke.getMode(), stroke.getPath(), stroke.getPaint(), 1280, 720));
+            }
+        }
+        journal.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRestoreJournal.close();
+        mAppendFile.delete();
+        mRestoreFile.delete();
+        mReloadFile.delete();
+    }
+
+    @Benchmark
+    public int journalAppend() throws IOException {
+        mAppendFile.delete();
+        AnnotationsJournal journal = new AnnotationsJournal(mAppendFile, Long.MAX_VALUE);
+        for (Annotatable stroke : mStrokes) {
+            journal.appendAdd(stroke);
+        }
+        int records = journal.getRecordCount();
+        journal.close();
+        return records;
+    }
+
+    @Benchmark
+    public AnnotationsManager journalRestore() {
+        AnnotationsManager manager = new AnnotationsManager();
+        mRestoreJournal.restore(manager);
+        return manager;
+    }
+
+    @Benchmark
+    public AnnotationsManager journalReload() throws IOException {
+        AnnotationsJournal journal = new AnnotationsJournal(mReloadFile, Long.MAX_VALUE);
+        AnnotationsManager manager = new AnnotationsManager();
+        journal.restore(manager);
+        journal.close();
+        return manager;
+    }
+
+    @Benchmark
+    public void exportSvg() throws IOException {
+        new AnnotationsExporter(1280, 720).export(mStrokes, AnnotationsExporter.Format.SVG, DISCARD);
+    }
+
+    @Benchmark
+    public void exportPdf() throws IOException {
+        new AnnotationsExporter(1280, 720).export(mStrokes, AnnotationsExporter.Format.PDF, DISCARD);
+    }
+
+    @Benchmark
+    public void exportLargeSvg() throws IOException {
+        new AnnotationsExporter(1280, 720).export(mLargeBoard, AnnotationsExporter.Format.SVG, DISCARD);
+    }
+
+    @Benchmark
+    public void exportLargePdf() throws IOException {
+        new AnnotationsExporter(1280, 720).export(mLargeBoard, AnnotationsExporter.Format.PDF, DISCARD);
+    }
+}
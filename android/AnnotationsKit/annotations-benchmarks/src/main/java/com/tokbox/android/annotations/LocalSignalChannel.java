@@ -0,0 +1,144 @@
+package com.tokbox.android.annotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the OpenTok session signal channel.
+ *
+ * A signal is delivered to every other participant, on the participant's own executor (its main
+ * thread), after a simulated network latency. Like OpenTok, signals over MAX_SIGNAL_LENGTH
+ * characters are rejected.
+ */
+class LocalSignalChannel {
+
+    static final int MAX_SIGNAL_LENGTH = 8192;
+
+    /**
+     * Receives the signals sent by the other participants.
+     */
+    interface SignalListener {
+        void onSignal(int from, String type, String data);
+    }
+
+    private static class Endpoint {
+        SignalListener listener;
+        Executor executor;
+    }
+
+    private final List<Endpoint> mEndpoints = new ArrayList<Endpoint>();
+    private final ScheduledExecutorService mNetwork;
+    private final long mLatencyMicros;
+
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicLong mSent = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+
+    /*
+     * Constructor
+     * @param latencyMicros One-way network latency of every signal
+     */
+    LocalSignalChannel(long latencyMicros) {
+        this.mLatencyMicros = latencyMicros;
+        this.mNetwork = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "LocalSignalChannel");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /*
+     * Adds a participant. Returns its id.
+     * @param listener Receives the signals of the other participants
+     * @param executor The thread the signals are delivered on
+     */
+    synchronized int join(SignalListener listener, Executor executor) {
+        Endpoint endpoint = new Endpoint();
+        endpoint.listener = listener;
+        endpoint.executor = executor;
+        mEndpoints.add(endpoint);
+        return mEndpoints.size() - 1;
+    }
+
+    /*
+     * Sends a signal to all the other participants. Returns false if it was rejected.
+     */
+    boolean send(final int from, final String type, final String data) {
+        if (data.length() > MAX_SIGNAL_LENGTH) {
+            mRejected.incrementAndGet();
+            return false;
+        }
+        mSent.incrementAndGet();
+
+        List<Endpoint> endpoints;
+        synchronized (this) {
+            endpoints = new ArrayList<Endpoint>(mEndpoints);
+        }
+        for (int id = 0; id < endpoints.size(); id++) {
+            if (id == from) {
+                continue;
+            }
+            final Endpoint endpoint = endpoints.get(id);
+            mInFlight.incrementAndGet();
+            mBytes.addAndGet(data.length());
+            mNetwork.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    endpoint.executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                endpoint.listener.onSignal(from, type, data);
+                            } finally {
+                                mInFlight.decrementAndGet();
+                            }
+                        }
+                    });
+                }
+            }, mLatencyMicros, TimeUnit.MICROSECONDS);
+        }
+        return true;
+    }
+
+    /*
+     * Waits until every sent signal was handled. Returns false on timeout.
+     */
+    boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (mInFlight.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    long getSentCount() {
+        return mSent.get();
+    }
+
+    long getRejectedCount() {
+        return mRejected.get();
+    }
+
+    //characters delivered to all the receivers
+    long getDeliveredBytes() {
+        return mBytes.get();
+    }
+
+    void close() {
+        mNetwork.shutdownNow();
+    }
+}
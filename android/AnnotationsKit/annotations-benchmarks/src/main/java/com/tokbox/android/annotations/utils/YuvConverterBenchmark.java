@@ -0,0 +1,50 @@
+package com.tokbox.android.annotations.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class YuvConverterBenchmark {
+
+    @Param({"640x360", "1280x720", "1920x1080"})
+    public String size;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mYuv;
+    private int[] mArgb;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+        int uvSize = ((mWidth + 1) >> 1) * ((mHeight + 1) >> 1);
+        mYuv = new byte[mWidth * mHeight + uvSize * 2];
+        new Random(42).nextBytes(mYuv);
+        mArgb = new int[mWidth * mHeight];
+    }
+
+    @Benchmark
+    public int[] decodeYUV420() {
+        YuvConverter.decodeYUV420(mArgb, mYuv, mWidth, mHeight);
+        return mArgb;
+    }
+}
@@ -0,0 +1,57 @@
+package com.tokbox.android.annotations.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reducing a frame before its upload, to weigh against the upload bytes it saves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class YuvDownscalerBenchmark {
+
+    @Param({"1280x720", "1920x1080"})
+    public String size;
+
+    @Param({"1", "2"})
+    public int shift;
+
+    private int mWidth;
+    private int mHeight;
+    private ByteBuffer mFrame;
+    private final YuvDownscaler mDownscaler = new YuvDownscaler();
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+        byte[] yuv = new byte[YuvDownscaler.getFrameSize(mWidth, mHeight)];
+        new Random(42).nextBytes(yuv);
+        mFrame = ByteBuffer.allocateDirect(yuv.length);
+        mFrame.put(yuv);
+        mFrame.clear();
+    }
+
+    @Benchmark
+    public ByteBuffer downscale() {
+        return mDownscaler.downscale(mFrame, mWidth, mHeight, shift);
+    }
+}
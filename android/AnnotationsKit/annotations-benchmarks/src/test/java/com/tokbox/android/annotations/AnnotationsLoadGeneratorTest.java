@@ -0,0 +1,60 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsLoadGeneratorTest {
+
+    @Test
+    public void strokeSurvivesTheSignalEncoding() {
+        float[] points = {10, 20, 15.25f, 30.5f, 100, 200};
+        Annotatable stroke = new Annotatable(UUID.randomUUID(), AnnotationsView.Mode.Pen.toString(),
+                AnnotationsPath.fromPoints(points, 3), 0x80ff0000, 7, 1280, 720);
+
+        long[] sentNanos = new long[1];
+        Annotatable decoded = AnnotationsLoadGenerator.decode(AnnotationsLoadGenerator.encode(stroke, 1234), sentNanos);
+
+        assertEquals(1234, sentNanos[0]);
+        assertEquals(stroke.getId(), decoded.getId());
+        assertEquals(0x80ff0000, decoded.getColor());
+        assertEquals(7, decoded.getSize(), 0);
+        assertEquals(1280, decoded.getCanvasWidth());
+        assertEquals(720, decoded.getCanvasHeight());
+        assertEquals(3, decoded.getPath().getPointCount());
+        assertEquals(15.3f, decoded.getPath().getPointX(1), 0.001f);
+        assertEquals(30.5f, decoded.getPath().getPointY(1), 0.001f);
+    }
+
+    @Test
+    public void everyStrokeReachesEveryOtherParticipant() throws InterruptedException {
+        AnnotationsLoadGenerator.Config config = new AnnotationsLoadGenerator.Config();
+        config.participants = 3;
+        config.strokeRate = 20;
+        config.durationMs = 1000;
+        config.latencyMs = 5;
+        config.width = 320;
+        config.height = 240;
+
+        AnnotationsLoadGenerator.Report report = AnnotationsLoadGenerator.run(config);
+
+        assertTrue(report.drained);
+        assertTrue(report.strokesSent > 0);
+        assertEquals(report.strokesSent * (config.participants - 1), report.strokesReceived);
+        assertEquals(0, report.signalsRejected);
+        assertTrue(report.latencyP50Micros >= config.latencyMs * 1000);
+        assertTrue(report.latencyP50Micros <= report.latencyP99Micros);
+        assertTrue(report.latencyP99Micros <= report.latencyMaxMicros);
+    }
+
+    @Test
+    public void percentileIsNearestRank() {
+        long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, AnnotationsLoadGenerator.percentile(sorted, 50));
+        assertEquals(10, AnnotationsLoadGenerator.percentile(sorted, 95));
+        assertEquals(1, AnnotationsLoadGenerator.percentile(sorted, 1));
+        assertEquals(0, AnnotationsLoadGenerator.percentile(new long[0], 50));
+    }
+}
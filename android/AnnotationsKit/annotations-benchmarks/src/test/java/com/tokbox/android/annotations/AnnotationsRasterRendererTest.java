@@ -0,0 +1,112 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Golden-image tests of the Java2D backend. Run with -Dgolden.update=true to regenerate the
+ * images under src/test/resources/golden after an intended rendering change.
+ */
+public class AnnotationsRasterRendererTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    //antialiasing differs slightly between JVMs, so small differences on a few pixels are allowed
+    private static final int CHANNEL_TOLERANCE = 8;
+    private static final double PIXEL_TOLERANCE = 0.005;
+
+    private static Annotatable stroke(int color, float width, float... points) {
+        return new Annotatable(UUID.randomUUID(), AnnotationsView.Mode.Pen.toString(),
+                AnnotationsPath.fromPoints(points, points.length / 2), color, width, WIDTH, HEIGHT);
+    }
+
+    private static List<Annotatable> board() {
+        List<Annotatable> board = new ArrayList<Annotatable>();
+        board.add(stroke(0xffff0000, 10, 20, 20, 80, 40, 140, 20, 200, 60, 300, 30));
+        board.add(stroke(0xff0000ff, 4, 40, 220, 60, 120, 160, 100, 200, 200));
+        board.add(stroke(0x8000aa00, 20, 20, 120, 300, 140));
+        return board;
+    }
+
+    private static BufferedImage render(List<Annotatable> annotatables) {
+        AnnotationsRasterRenderer renderer = new AnnotationsRasterRenderer(WIDTH, HEIGHT);
+        renderer.render(annotatables);
+        renderer.dispose();
+        return renderer.getImage();
+    }
+
+    private static void assertMatchesGolden(String name, BufferedImage actual) throws IOException {
+        if (Boolean.getBoolean("golden.update")) {
+            File file = new File("src/test/resources/golden/" + name + ".png");
+            file.getParentFile().mkdirs();
+            ImageIO.write(actual, "png", file);
+            return;
+        }
+
+        InputStream in = AnnotationsRasterRendererTest.class.getResourceAsStream("/golden/" + name + ".png");
+        assertNotNull("Missing golden image " + name, in);
+        BufferedImage golden = ImageIO.read(in);
+        in.close();
+        assertEquals(golden.getWidth(), actual.getWidth());
+        assertEquals(golden.getHeight(), actual.getHeight());
+
+        int different = 0;
+        for (int y = 0; y < golden.getHeight(); y++) {
+            for (int x = 0; x < golden.getWidth(); x++) {
+                int expected = golden.getRGB(x, y);
+                int pixel = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((expected >>> shift) & 0xff) - ((pixel >>> shift) & 0xff)) > CHANNEL_TOLERANCE) {
+                        different++;
+                        break;
+                    }
+                }
+            }
+        }
+        double ratio = (double) different / (golden.getWidth() * golden.getHeight());
+        assertTrue(name + ": " + different + " pixels differ from the golden image", ratio <= PIXEL_TOLERANCE);
+    }
+
+    @Test
+    public void rendersBoardLikeGolden() throws IOException {
+        assertMatchesGolden("board", render(board()));
+    }
+
+    @Test
+    public void rendersErasedBoardLikeGolden() throws IOException {
+        List<Annotatable> board = board();
+        board.remove(board.size() - 1);
+        assertMatchesGolden("board-erased", render(board));
+    }
+
+    @Test
+    public void emptyBoardIsTransparent() {
+        BufferedImage image = render(new ArrayList<Annotatable>());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(0, image.getRGB(x, y) >>> 24);
+            }
+        }
+    }
+
+    @Test
+    public void strokesUseTheirColor() {
+        BufferedImage image = render(board());
+        //on the red stroke, away from the others
+        assertEquals(0xffff0000, image.getRGB(80, 35));
+        //the translucent green stroke blends over the transparent background
+        assertEquals(0x80, image.getRGB(200, 133) >>> 24);
+    }
+}
@@ -0,0 +1,143 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.opengl.GLES20;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Composites annotations into 720p I420 frames: the frames keep their size and their content
+ * where nothing is drawn, and a frame is composited within the budget of a 30fps publisher.
+ */
+public class AnnotationsCompositingCapturerTest extends AndroidTestCase {
+
+    private static final String LOG_TAG = AnnotationsCompositingCapturerTest.class.getSimpleName();
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int STROKES = 50;
+    private static final int RUNS = 60;
+    private static final long FRAME_BUDGET_MS = 16;
+
+    //the round trip through RGB rounds the samples
+    private static final int SAMPLE_TOLERANCE = 4;
+
+    private AnnotationsCompositingCapturer mCapturer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCapturer = new AnnotationsCompositingCapturer();
+        mCapturer.setupGl();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCapturer.releaseGl();
+        super.tearDown();
+    }
+
+    public void testFrameWithoutAnnotationsIsUnchanged() {
+        ByteBuffer frame = createFrame(WIDTH, HEIGHT);
+        byte[] output = mCapturer.composite(frame, WIDTH, HEIGHT, 0, false);
+        assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+        assertEquals(frame.capacity(), output.length);
+
+        for (int i = 0; i < output.length; i++) {
+            int difference = Math.abs((frame.get(i) & 0xff) - (output[i] & 0xff));
+            assertTrue("Byte " + i + " differs by " + difference, difference <= SAMPLE_TOLERANCE);
+        }
+    }
+
+    public void testAnnotationsAreBurntIn() {
+        ByteBuffer frame = createFrame(WIDTH, HEIGHT);
+        mCapturer.setAnnotations(createStrokes(STROKES), WIDTH, HEIGHT, true);
+        byte[] output = mCapturer.composite(frame, WIDTH, HEIGHT, 0, false);
+        assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+
+        int changed = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            if (Math.abs((frame.get(i) & 0xff) - (output[i] & 0xff)) > SAMPLE_TOLERANCE) {
+                changed++;
+            }
+        }
+        assertTrue("No luma sample changed", changed > 0);
+    }
+
+    public void testCompositeTime720p() {
+        ByteBuffer frame = createFrame(WIDTH, HEIGHT);
+        mCapturer.setAnnotations(createStrokes(STROKES), WIDTH, HEIGHT, true);
+        for (int i = 0; i < 10; i++) {
+            mCapturer.composite(frame, WIDTH, HEIGHT, 0, false);
+        }
+
+        long[] runs = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            mCapturer.composite(frame, WIDTH, HEIGHT, 0, false);
+            runs[i] = System.nanoTime() - start;
+        }
+        assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+        Arrays.sort(runs);
+        double medianMs = runs[RUNS / 2] / 1000000.0;
+        Log.i(LOG_TAG, String.format("%dx%d composite with %d strokes: %.3fms", WIDTH, HEIGHT, STROKES, medianMs));
+        assertTrue("Compositing took " + medianMs + "ms", medianMs < FRAME_BUDGET_MS);
+    }
+
+    //random walks, like the strokes of the load generator
+    private static Annotatable[] createStrokes(int count) {
+        Random random = new Random(7);
+        Annotatable[] strokes = new Annotatable[count];
+        for (int s = 0; s < count; s++) {
+            float x = random.nextFloat() * WIDTH;
+            float y = random.nextFloat() * HEIGHT;
+            float angle = random.nextFloat() * 6.283f;
+            AnnotationsPath path = new AnnotationsPath();
+            for (int i = 0; i < 40; i++) {
+                angle += random.nextFloat() * 0.6f - 0.3f;
+                x = Math.max(0, Math.min(WIDTH, x + (float) Math.cos(angle) * 8));
+                y = Math.max(0, Math.min(HEIGHT, y + (float) Math.sin(angle) * 8));
+                path.appendTouchPoint(x, y, AnnotationsView.TOLERANCE);
+            }
+            path.finish();
+
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(6);
+            paint.setColor(Color.RED);
+            strokes[s] = new Annotatable(AnnotationsView.Mode.Pen.toString(), path, paint, WIDTH, HEIGHT);
+        }
+        return strokes;
+    }
+
+    //smooth gradients, so the chroma averaging of the round trip keeps the samples
+    private static ByteBuffer createFrame(int width, int height) {
+        int halfWidth = width >> 1;
+        int halfHeight = height >> 1;
+        ByteBuffer frame = ByteBuffer.allocateDirect(width * height + halfWidth * halfHeight * 2);
+        frame.order(ByteOrder.nativeOrder());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame.put((byte) (32 + x * 192 / width));
+            }
+        }
+        for (int y = 0; y < halfHeight; y++) {
+            for (int x = 0; x < halfWidth; x++) {
+                frame.put((byte) (96 + y * 64 / halfHeight));
+            }
+        }
+        for (int y = 0; y < halfHeight; y++) {
+            for (int x = 0; x < halfWidth; x++) {
+                frame.put((byte) (96 + x * 64 / halfWidth));
+            }
+        }
+        frame.clear();
+        return frame;
+    }
+}
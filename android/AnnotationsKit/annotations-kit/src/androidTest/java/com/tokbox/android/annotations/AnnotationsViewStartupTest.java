@@ -0,0 +1,48 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+
+import java.util.Arrays;
+
+/**
+ * Measures the time from the AnnotationsView constructor to its first draw. The median is logged,
+ * it depends too much on the device to be asserted.
+ */
+public class AnnotationsViewStartupTest extends AndroidTestCase {
+
+    private static final String LOG_TAG = AnnotationsViewStartupTest.class.getSimpleName();
+    private static final int RUNS = 20;
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    public void testConstructorToFirstDraw() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        //warm up the class loading and resources
+        startAndDraw(canvas);
+
+        long[] runs = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            startAndDraw(canvas);
+            runs[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(runs);
+        double medianMs = runs[RUNS / 2] / 1000000.0;
+        Log.i(LOG_TAG, String.format("%dx%d constructor to first draw: %.3fms", WIDTH, HEIGHT, medianMs));
+
+        bitmap.recycle();
+    }
+
+    private void startAndDraw(Canvas canvas) {
+        AnnotationsView view = new AnnotationsView(getContext(), null, null);
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, HEIGHT);
+        view.draw(canvas);
+    }
+}
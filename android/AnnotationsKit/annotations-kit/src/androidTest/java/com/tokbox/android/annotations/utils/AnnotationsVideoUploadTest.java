@@ -0,0 +1,179 @@
+package com.tokbox.android.annotations.utils;
+
+import android.opengl.GLES20;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Compares the single-texture upload of the I420 frames with the three-texture upload, on an
+ * offscreen surface: same output, and the upload time of each at 720p and 1080p.
+ */
+public class AnnotationsVideoUploadTest extends AndroidTestCase {
+
+    private static final String LOG_TAG = AnnotationsVideoUploadTest.class.getSimpleName();
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private static final int EGL_OPENGL_ES2_BIT = 4;
+
+    private static final int RUNS = 60;
+    private static final int VIEWPORT_WIDTH = 64;
+    private static final int VIEWPORT_HEIGHT = 36;
+
+    //the shaders run at different precisions, so a few pixels can sample a neighbouring texel
+    private static final int CHANNEL_TOLERANCE = 3;
+    private static final double PIXEL_TOLERANCE = 0.02;
+
+    private EGL10 mEgl;
+    private EGLDisplay mDisplay;
+    private EGLSurface mSurface;
+    private EGLContext mContext;
+    private GL10 mGl;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mEgl = (EGL10) EGLContext.getEGL();
+        mDisplay = mEgl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        mEgl.eglInitialize(mDisplay, new int[2]);
+
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] count = new int[1];
+        mEgl.eglChooseConfig(mDisplay, new int[]{
+                EGL10.EGL_RED_SIZE, 8, EGL10.EGL_GREEN_SIZE, 8, EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                EGL10.EGL_NONE}, configs, 1, count);
+        assertEquals(1, count[0]);
+
+        mContext = mEgl.eglCreateContext(mDisplay, configs[0], EGL10.EGL_NO_CONTEXT,
+                new int[]{EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE});
+        mSurface = mEgl.eglCreatePbufferSurface(mDisplay, configs[0], new int[]{
+                EGL10.EGL_WIDTH, VIEWPORT_WIDTH, EGL10.EGL_HEIGHT, VIEWPORT_HEIGHT, EGL10.EGL_NONE});
+        assertTrue(mEgl.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext));
+        mGl = (GL10) mContext.getGL();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mEgl.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+        mEgl.eglDestroySurface(mDisplay, mSurface);
+        mEgl.eglDestroyContext(mDisplay, mContext);
+        mEgl.eglTerminate(mDisplay);
+        super.tearDown();
+    }
+
+    public void testPackedUploadDrawsLikeThreeTextures() {
+        ByteBuffer frame = createFrame(1280, 720);
+        byte[] planar = draw(frame, 1280, 720, false);
+        byte[] packed = draw(frame, 1280, 720, true);
+
+        int different = 0;
+        for (int i = 0; i < planar.length; i += 4) {
+            for (int c = 0; c < 3; c++) {
+                if (Math.abs((planar[i + c] & 0xff) - (packed[i + c] & 0xff)) > CHANNEL_TOLERANCE) {
+                    different++;
+                    break;
+                }
+            }
+        }
+        double ratio = (double) different / (VIEWPORT_WIDTH * VIEWPORT_HEIGHT);
+        assertTrue(different + " pixels differ", ratio <= PIXEL_TOLERANCE);
+    }
+
+    public void testUploadTime720p() {
+        compareUploadTimes(1280, 720);
+    }
+
+    public void testUploadTime1080p() {
+        compareUploadTimes(1920, 1080);
+    }
+
+    private void compareUploadTimes(int width, int height) {
+        assertTrue(AnnotationsVideoRenderer.MyRenderer.canPack(width, height));
+        ByteBuffer frame = createFrame(width, height);
+        double planarMs = uploadTimeMs(frame, width, height, false);
+        double packedMs = uploadTimeMs(frame, width, height, true);
+        Log.i(LOG_TAG, String.format("%dx%d upload: three textures %.3fms, single texture %.3fms",
+                width, height, planarMs, packedMs));
+    }
+
+    //median time of an upload, including the time the driver takes to complete it
+    private double uploadTimeMs(ByteBuffer frame, int width, int height, boolean packed) {
+        AnnotationsVideoRenderer.MyRenderer renderer = newRenderer(packed);
+        renderer.setupTextures(width, height);
+        for (int i = 0; i < 10; i++) {
+            renderer.updateTextures(frame, width, height);
+        }
+        GLES20.glFinish();
+
+        long[] runs = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            renderer.updateTextures(frame, width, height);
+            GLES20.glFinish();
+            runs[i] = System.nanoTime() - start;
+        }
+        assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+        Arrays.sort(runs);
+        return runs[RUNS / 2] / 1000000.0;
+    }
+
+    private byte[] draw(ByteBuffer frame, int width, int height, boolean packed) {
+        AnnotationsVideoRenderer.MyRenderer renderer = newRenderer(packed);
+        renderer.setupTextures(width, height);
+        renderer.updateTextures(frame, width, height);
+        renderer.drawTextures(width, height, false);
+        assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+
+        ByteBuffer pixels = ByteBuffer.allocateDirect(VIEWPORT_WIDTH * VIEWPORT_HEIGHT * 4);
+        GLES20.glReadPixels(0, 0, VIEWPORT_WIDTH, VIEWPORT_HEIGHT, GLES20.GL_RGBA,
+                GLES20.GL_UNSIGNED_BYTE, pixels);
+        byte[] bytes = new byte[pixels.capacity()];
+        pixels.get(bytes);
+        return bytes;
+    }
+
+    private AnnotationsVideoRenderer.MyRenderer newRenderer(boolean packed) {
+        AnnotationsVideoRenderer.MyRenderer renderer = new AnnotationsVideoRenderer.MyRenderer();
+        renderer.mPackedUploadEnabled = packed;
+        renderer.onSurfaceCreated(mGl, null);
+        renderer.onSurfaceChanged(mGl, VIEWPORT_WIDTH, VIEWPORT_HEIGHT);
+        return renderer;
+    }
+
+    //blocks of luma and chroma, so that a misplaced chroma plane changes the colors
+    private static ByteBuffer createFrame(int width, int height) {
+        int halfWidth = (width + 1) >> 1;
+        int halfHeight = (height + 1) >> 1;
+        ByteBuffer frame = ByteBuffer.allocateDirect(width * height + halfWidth * halfHeight * 2);
+        frame.order(ByteOrder.nativeOrder());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame.put((byte) (((x / 16 + y / 16) * 37) & 0xff));
+            }
+        }
+        for (int y = 0; y < halfHeight; y++) {
+            for (int x = 0; x < halfWidth; x++) {
+                frame.put((byte) ((x / 8 * 53) & 0xff));
+            }
+        }
+        for (int y = 0; y < halfHeight; y++) {
+            for (int x = 0; x < halfWidth; x++) {
+                frame.put((byte) ((y / 8 * 71) & 0xff));
+            }
+        }
+        frame.clear();
+        return frame;
+    }
+}
@@ -2,6 +2,9 @@ package com.tokbox.android.annotations;
 
 
 import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.tokbox.android.annotations.utils.VideoContentTransform;
 
 import java.util.UUID;
 
@@ -17,10 +20,22 @@ public class Annotatable {
     private AnnotationsText text;
     private Paint paint;
 
+    //style as plain values, readable without the Android graphics stack
+    private int color;
+    private float size;
+
 
     private int canvasWidth;
     private int canvasHeight;
 
+    //area drawn on a canvas of the bounds size and content: left, top, right, bottom
+    private float[] bounds;
+    private int boundsWidth;
+    private int boundsHeight;
+    private int boundsContentWidth;
+    private int boundsContentHeight;
+    private boolean boundsFit;
+
     public Paint getPaint() {
         return paint;
     }
@@ -31,21 +46,49 @@ public class Annotatable {
     }
 
     public Annotatable(String mode, AnnotationsPath path, Paint paint, int canvasWidth, int canvasHeight) {
-        this.id = UUID.randomUUID();
+        this(UUID.randomUUID(), mode, path, paint, canvasWidth, canvasHeight);
+    }
+
+    public Annotatable(String mode, AnnotationsText text, Paint paint, int canvasWidth, int canvasHeight) {
+        this(UUID.randomUUID(), mode, text, paint, canvasWidth, canvasHeight);
+    }
+
+    Annotatable(UUID id, String mode, AnnotationsPath path, Paint paint, int canvasWidth, int canvasHeight) {
+        this.id = id;
         this.mode = mode;
         this.path = path;
         this.canvasWidth = canvasWidth;
         this.canvasHeight = canvasHeight;
         this.paint = paint;
+        if (paint != null) {
+            this.color = paint.getColor();
+            this.size = paint.getStrokeWidth();
+        }
     }
 
-    public Annotatable(String mode, AnnotationsText text, Paint paint, int canvasWidth, int canvasHeight) {
-        this.id = UUID.randomUUID();
+    Annotatable(UUID id, String mode, AnnotationsText text, Paint paint, int canvasWidth, int canvasHeight) {
+        this.id = id;
         this.mode = mode;
         this.text = text;
         this.canvasWidth = canvasWidth;
         this.canvasHeight = canvasHeight;
         this.paint = paint;
+        if (paint != null) {
+            this.color = paint.getColor();
+            this.size = paint.getTextSize();
+        }
+    }
+
+    Annotatable(UUID id, String mode, AnnotationsPath path, int color, float strokeWidth, int canvasWidth, int canvasHeight) {
+        this(id, mode, path, newPathPaint(color, strokeWidth), canvasWidth, canvasHeight);
+        this.color = color;
+        this.size = strokeWidth;
+    }
+
+    Annotatable(UUID id, String mode, AnnotationsText text, int color, float textSize, int canvasWidth, int canvasHeight) {
+        this(id, mode, text, newTextPaint(color, textSize), canvasWidth, canvasHeight);
+        this.color = color;
+        this.size = textSize;
     }
 
     public void setMode(String mode){
@@ -79,6 +122,102 @@ public class Annotatable {
         return canvasHeight;
     }
 
+    /*
+     * Computes how the annotatable maps from the canvas it was drawn on to a canvas of another
+     * size: one uniform scale, then an offset. The video content shown under the annotatable keeps
+     * its aspect ratio and is centered in both canvases, so the annotatable is mapped through it
+     * and stays on the same content when the view is rotated or resized, whether the video fits
+     * in the view or fills it. Returns false if the annotatable is drawn as it is.
+     * @param width Width of the canvas to draw on
+     * @param height Height of the canvas to draw on
+     * @param contentWidth Width of the video under the annotations, or 0 if there is none: the
+     * canvas the annotatable was drawn on is then fitted in the new one
+     * @param contentHeight Height of the video under the annotations, or 0
+     * @param fit Whether the video fits in the view, rather than filling it
+     * @param out scale, offset x, offset y
+     */
+    boolean getTransform(int width, int height, int contentWidth, int contentHeight, boolean fit, float[] out) {
+        out[0] = 1;
+        out[1] = 0;
+        out[2] = 0;
+        if (!isScaled(width, height)) {
+            return false;
+        }
+        if (contentWidth <= 0 || contentHeight <= 0) {
+            contentWidth = canvasWidth;
+            contentHeight = canvasHeight;
+            fit = true;
+        }
+        float from = VideoContentTransform.getScale(contentWidth, contentHeight, canvasWidth, canvasHeight, fit);
+        float to = VideoContentTransform.getScale(contentWidth, contentHeight, width, height, fit);
+        float scale = to / from;
+        out[0] = scale;
+        out[1] = (width - contentWidth * to) / 2 - (canvasWidth - contentWidth * from) / 2 * scale;
+        out[2] = (height - contentHeight * to) / 2 - (canvasHeight - contentHeight * from) / 2 * scale;
+        return true;
+    }
+
+    /*
+     * Computes the area the annotatable covers when drawn on a canvas, including the stroke
+     * width and a pixel of antialiasing. Kept until the canvas size or the content change.
+     * @param width Width of the canvas to draw on
+     * @param height Height of the canvas to draw on
+     * @param contentWidth See getTransform()
+     * @param contentHeight See getTransform()
+     * @param fit See getTransform()
+     * @param out left, top, right, bottom
+     */
+    synchronized void getBounds(int width, int height, int contentWidth, int contentHeight, boolean fit, float[] out) {
+        if (bounds == null || boundsWidth != width || boundsHeight != height
+                || boundsContentWidth != contentWidth || boundsContentHeight != contentHeight || boundsFit != fit) {
+            if (bounds == null) {
+                bounds = new float[4];
+            }
+            float[] transform = new float[3];
+            getTransform(width, height, contentWidth, contentHeight, fit, transform);
+            float scale = transform[0];
+            if (path != null && path.getPointCount() > 0) {
+                //the quads of the path stay within its control points
+                float left = Float.MAX_VALUE;
+                float top = Float.MAX_VALUE;
+                float right = -Float.MAX_VALUE;
+                float bottom = -Float.MAX_VALUE;
+                for (int i = 0; i < path.getPointCount(); i++) {
+                    left = Math.min(left, path.getPointX(i));
+                    top = Math.min(top, path.getPointY(i));
+                    right = Math.max(right, path.getPointX(i));
+                    bottom = Math.max(bottom, path.getPointY(i));
+                }
+                float margin = size / 2 + 1;
+                bounds[0] = left * scale + transform[1] - margin;
+                bounds[1] = top * scale + transform[2] - margin;
+                bounds[2] = right * scale + transform[1] + margin;
+                bounds[3] = bottom * scale + transform[2] + margin;
+            } else if (text != null) {
+                RectF rect = new RectF();
+                text.getBounds(paint, width, transform, rect);
+                bounds[0] = rect.left - 1;
+                bounds[1] = rect.top - 1;
+                bounds[2] = rect.right + 1;
+                bounds[3] = rect.bottom + 1;
+            } else {
+                bounds[0] = bounds[1] = bounds[2] = bounds[3] = 0;
+            }
+            boundsWidth = width;
+            boundsHeight = height;
+            boundsContentWidth = contentWidth;
+            boundsContentHeight = contentHeight;
+            boundsFit = fit;
+        }
+        System.arraycopy(bounds, 0, out, 0, 4);
+    }
+
+    //whether the annotatable is drawn at another size than its canvas, which is unknown if 0
+    boolean isScaled(int width, int height) {
+        return canvasWidth > 0 && canvasHeight > 0 && width > 0 && height > 0
+                && (width != canvasWidth || height != canvasHeight);
+    }
+
     public AnnotatableType getType() {
         return type;
     }
@@ -91,4 +230,31 @@ public class Annotatable {
         return text;
     }
 
+    int getColor() {
+        return color;
+    }
+
+    //stroke width of a path, text size of a text
+    float getSize() {
+        return size;
+    }
+
+    static Paint newPathPaint(int color, float strokeWidth) {
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setColor(color);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        paint.setStrokeWidth(strokeWidth);
+        return paint;
+    }
+
+    static Paint newTextPaint(int color, float textSize) {
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setColor(color);
+        paint.setTextSize(textSize);
+        return paint;
+    }
+
 }
@@ -0,0 +1,290 @@
+package com.tokbox.android.annotations;
+
+import android.util.Log;
+
+import com.tokbox.android.annotations.config.OpenTokConfig;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches the analytics events of the annotations before they reach OTKAnalytics.
+ *
+ * High-frequency actions, like the points of a freehand stroke, are only counted and summarised
+ * into one event per stroke. Events are queued on the UI thread in constant time and logged on a
+ * background thread at a bounded rate. When the queue fills up, new events are sampled and then
+ * dropped, so logging never backs up into the drawing. A summarised event carries how many events
+ * it summarises and how many were counted in the session for its action; the other events are
+ * logged as they were queued.
+ *
+ * Events are only logged on the background thread, so the logger can create OTKAnalytics there,
+ * before the first event. The thread is only started by start(), once there is something to log,
+ * and release() stops it; until then the events are queued.
+ */
+class AnnotationsAnalytics {
+
+    /**
+     * Logs the events. It is called off the main thread.
+     */
+    interface EventLogger {
+        void logEvent(String action, String variation);
+
+        /*
+         * Logs the events counted during a stroke
+         * @param count Events of the action summarised by this one, e.g. the points of a stroke
+         * @param sessionCount Events of the action counted in the session so far
+         */
+        void logSummary(String action, String variation, int count, int sessionCount);
+    }
+
+    private static final String LOG_TAG = AnnotationsAnalytics.class.getSimpleName();
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    static final int MAX_EVENTS_PER_FLUSH = 10;
+    static final int MAX_PENDING = 64;
+    static final int SAMPLE_RATE = 4;
+    private static final int MAX_KEYS = 32;
+
+    private final EventLogger mLogger;
+    private final long mFlushIntervalMs;
+    private ScheduledExecutorService mExecutor;
+    private boolean mStarted = false;
+
+    //pending events, as a ring buffer
+    private final String[] mPendingActions = new String[MAX_PENDING];
+    private final String[] mPendingVariations = new String[MAX_PENDING];
+    private final int[] mPendingCounts = new int[MAX_PENDING];
+    private final int[] mPendingSessionCounts = new int[MAX_PENDING];
+    private final boolean[] mPendingSummaries = new boolean[MAX_PENDING];
+    private int mPendingStart = 0;
+    private int mPendingCount = 0;
+    private int mSampled = 0;
+    private int mDropped = 0;
+
+    //counters per action and variation, for the current stroke and the whole session
+    private final String[] mKeyActions = new String[MAX_KEYS];
+    private final String[] mKeyVariations = new String[MAX_KEYS];
+    private final int[] mStrokeCounts = new int[MAX_KEYS];
+    private final int[] mSessionCounts = new int[MAX_KEYS];
+    private int mKeyCount = 0;
+
+    /*
+     * Constructor
+     * @param logger Logs the summarised events.
+     */
+    AnnotationsAnalytics(EventLogger logger) {
+        this(logger, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    /*
+     * Constructor
+     * @param logger Logs the summarised events.
+     * @param flushIntervalMs How often the queued events are logged.
+     */
+    AnnotationsAnalytics(EventLogger logger, long flushIntervalMs) {
+        this.mLogger = logger;
+        this.mFlushIntervalMs = flushIntervalMs;
+    }
+
+    /*
+     * Queues an event to be logged.
+     * @param action The action
+     * @param variation The variation
+     */
+    void logEvent(String action, String variation) {
+        int key = key(action, variation);
+        if (key >= 0) {
+            mSessionCounts[key]++;
+        }
+        enqueue(action, variation, 1, key >= 0 ? mSessionCounts[key] : 0, false);
+    }
+
+    /*
+     * Counts an event of the current stroke. It is logged once by endStroke, whatever its count.
+     * @param action The action
+     * @param variation The variation
+     */
+    void countEvent(String action, String variation) {
+        int key = key(action, variation);
+        if (key >= 0) {
+            mStrokeCounts[key]++;
+            mSessionCounts[key]++;
+        }
+    }
+
+    /*
+     * Ends the current stroke, queueing one event for each action counted during the stroke.
+     */
+    void endStroke() {
+        for (int key = 0; key < mKeyCount; key++) {
+            if (mStrokeCounts[key] > 0) {
+                enqueue(mKeyActions[key], mKeyVariations[key], mStrokeCounts[key], mSessionCounts[key], true);
+                mStrokeCounts[key] = 0;
+            }
+        }
+    }
+
+    /*
+     * Returns the number of events counted in the session for an action and variation.
+     */
+    int getSessionCount(String action, String variation) {
+        for (int key = 0; key < mKeyCount; key++) {
+            if (mKeyActions[key].equals(action) && mKeyVariations[key].equals(variation)) {
+                return mSessionCounts[key];
+            }
+        }
+        return 0;
+    }
+
+    synchronized int getPendingCount() {
+        return mPendingCount;
+    }
+
+    synchronized int getDroppedCount() {
+        return mDropped;
+    }
+
+    /*
+     * Logs up to MAX_EVENTS_PER_FLUSH queued events. Returns the number of events logged.
+     */
+    int flush() {
+        String[] actions = new String[MAX_EVENTS_PER_FLUSH];
+        String[] variations = new String[MAX_EVENTS_PER_FLUSH];
+        int[] counts = new int[MAX_EVENTS_PER_FLUSH];
+        int[] sessionCounts = new int[MAX_EVENTS_PER_FLUSH];
+        boolean[] summaries = new boolean[MAX_EVENTS_PER_FLUSH];
+        int count = 0;
+        synchronized (this) {
+            while (mPendingCount > 0 && count < MAX_EVENTS_PER_FLUSH) {
+                actions[count] = mPendingActions[mPendingStart];
+                variations[count] = mPendingVariations[mPendingStart];
+                counts[count] = mPendingCounts[mPendingStart];
+                sessionCounts[count] = mPendingSessionCounts[mPendingStart];
+                summaries[count] = mPendingSummaries[mPendingStart];
+                mPendingActions[mPendingStart] = null;
+                mPendingVariations[mPendingStart] = null;
+                mPendingStart = (mPendingStart + 1) % MAX_PENDING;
+                mPendingCount--;
+                count++;
+            }
+        }
+        //log outside the lock, the UI thread never waits for the analytics
+        if (mLogger != null) {
+            for (int i = 0; i < count; i++) {
+                try {
+                    if (summaries[i]) {
+                        mLogger.logSummary(actions[i], variations[i], counts[i], sessionCounts[i]);
+                    } else {
+                        mLogger.logEvent(actions[i], variations[i]);
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Analytics event could not be logged: " + e.getMessage());
+                }
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Starts logging the queued events and the next ones on the background thread.
+     */
+    synchronized void start() {
+        mStarted = true;
+        if (mPendingCount > 0) {
+            startFlushing();
+        }
+    }
+
+    /*
+     * Logs the queued events and stops the background thread. Later events are queued until
+     * start() is called again.
+     */
+    synchronized void release() {
+        mStarted = false;
+        if (mExecutor != null) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    while (flush() > 0) {
+                        //until the queue is empty
+                    }
+                }
+            });
+            //the periodic flush is cancelled, the last one above still runs
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+    }
+
+    private synchronized void enqueue(String action, String variation, int count, int sessionCount, boolean summary) {
+        if (mPendingCount >= MAX_PENDING) {
+            mDropped++;
+            return;
+        }
+        if (mPendingCount >= MAX_PENDING / 2 && mSampled++ % SAMPLE_RATE != 0) {
+            //under pressure only one in SAMPLE_RATE events is kept
+            mDropped++;
+            return;
+        }
+        int index = (mPendingStart + mPendingCount) % MAX_PENDING;
+        mPendingActions[index] = action;
+        mPendingVariations[index] = variation;
+        mPendingCounts[index] = count;
+        mPendingSessionCounts[index] = sessionCount;
+        mPendingSummaries[index] = summary;
+        mPendingCount++;
+        startFlushing();
+    }
+
+    private void startFlushing() {
+        if (mStarted && mExecutor == null && mFlushIntervalMs > 0) {
+            mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AnnotationsAnalytics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, mFlushIntervalMs, mFlushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Returns the action logging the counts of a summarised action, e.g. "FreeHandCount"
+     */
+    static String getCountAction(String action) {
+        return action + OpenTokConfig.LOG_ACTION_COUNT_SUFFIX;
+    }
+
+    /*
+     * Returns the variation of the count action, for loggers that only take an action and a
+     * variation, e.g. "Success;count=120;session=3400"
+     */
+    static String formatCounts(String variation, int count, int sessionCount) {
+        return variation + ";count=" + count + ";session=" + sessionCount;
+    }
+
+    //the actions and variations are a handful of constants, so a linear scan is constant time
+    private int key(String action, String variation) {
+        for (int key = 0; key < mKeyCount; key++) {
+            if (mKeyActions[key].equals(action) && mKeyVariations[key].equals(variation)) {
+                return key;
+            }
+        }
+        if (mKeyCount == MAX_KEYS) {
+            Log.e(LOG_TAG, "Too many analytics actions, " + action + " is not counted");
+            return -1;
+        }
+        mKeyActions[mKeyCount] = action;
+        mKeyVariations[mKeyCount] = variation;
+        return mKeyCount++;
+    }
+}
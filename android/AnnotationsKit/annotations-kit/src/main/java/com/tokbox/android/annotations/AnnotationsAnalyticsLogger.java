@@ -0,0 +1,89 @@
+package com.tokbox.android.annotations;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.tokbox.android.annotations.config.OpenTokConfig;
+import com.tokbox.android.logging.OTKAnalytics;
+import com.tokbox.android.logging.OTKAnalyticsData;
+
+import java.util.UUID;
+
+/**
+ * Logs the events of AnnotationsAnalytics to OTKAnalytics.
+ *
+ * Events are logged with their action and variation as they are. A summarised stroke is logged
+ * once as its action, then with its counts as the count action (see AnnotationsAnalytics.getCountAction()),
+ * so the variations the backend groups on stay Attempt, Success and Failure.
+ *
+ * It only holds the application context and the ids of the session, never the view, so the
+ * analytics thread does not keep the view and its activity alive. OTKAnalytics is created with the
+ * first event, on the analytics thread, as it reads the shared preferences.
+ */
+class AnnotationsAnalyticsLogger implements AnnotationsAnalytics.EventLogger {
+
+    private final Context mContext;
+    private final String mSessionId;
+    private final String mConnectionId;
+    private final String mPartnerId;
+    private OTKAnalytics mAnalytics;
+
+    /*
+     * Constructor
+     * @param context Any context, only its application context is kept
+     * @param sessionId The session id, or null
+     * @param connectionId The connection id, or null
+     * @param partnerId The partner id, or null
+     */
+    AnnotationsAnalyticsLogger(Context context, String sessionId, String connectionId, String partnerId) {
+        this.mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.mSessionId = sessionId;
+        this.mConnectionId = connectionId;
+        this.mPartnerId = partnerId;
+    }
+
+    @Override
+    public void logEvent(String action, String variation) {
+        getAnalytics().logEvent(action, variation);
+    }
+
+    @Override
+    public void logSummary(String action, String variation, int count, int sessionCount) {
+        OTKAnalytics analytics = getAnalytics();
+        analytics.logEvent(action, variation);
+        analytics.logEvent(AnnotationsAnalytics.getCountAction(action),
+                AnnotationsAnalytics.formatCounts(variation, count, sessionCount));
+    }
+
+    private OTKAnalytics getAnalytics() {
+        if (mAnalytics == null) {
+            mAnalytics = createAnalytics();
+        }
+        return mAnalytics;
+    }
+
+    private OTKAnalytics createAnalytics() {
+        String source = mContext.getPackageName();
+
+        SharedPreferences prefs = mContext.getSharedPreferences("opentok", Context.MODE_PRIVATE);
+        String guidVSol = prefs.getString("guidVSol", null);
+        if (null == guidVSol) {
+            guidVSol = UUID.randomUUID().toString();
+            prefs.edit().putString("guidVSol", guidVSol).apply();
+        }
+
+        OTKAnalyticsData data = new OTKAnalyticsData.Builder(OpenTokConfig.LOG_CLIENT_VERSION, source, OpenTokConfig.LOG_COMPONENTID, guidVSol).build();
+        OTKAnalytics analytics = new OTKAnalytics(data);
+        if (mSessionId != null) {
+            data.setSessionId(mSessionId);
+        }
+        if (mConnectionId != null) {
+            data.setConnectionId(mConnectionId);
+        }
+        if (mPartnerId != null) {
+            data.setPartnerId(mPartnerId);
+        }
+        analytics.setData(data);
+        return analytics;
+    }
+}
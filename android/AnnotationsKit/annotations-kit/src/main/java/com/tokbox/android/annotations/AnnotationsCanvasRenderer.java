@@ -0,0 +1,87 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * Draws the annotatables on an Android Canvas, with their own Path and Paint. Annotatables drawn
+ * on a canvas of another size, before a rotation or a resize, are mapped to the current size
+ * through the video content under them (see Annotatable.getTransform()).
+ *
+ * Mapped paths are not copied: they are drawn through the mapping, with a paint of the renderer
+ * whose stroke width makes up for the scale. The annotatable is never changed, so renderers on
+ * other threads can draw the same annotatables.
+ */
+class AnnotationsCanvasRenderer extends AnnotationsRenderer {
+
+    private Canvas mCanvas;
+    private int mWidth;
+    private int mHeight;
+    private int mLevel = 0;
+    private int mContentWidth = 0;
+    private int mContentHeight = 0;
+    private boolean mFit = true;
+
+    private final float[] mTransform = new float[3];
+    private final Matrix mMatrix = new Matrix();
+    private final Paint mScaledPaint = new Paint();
+
+    /*
+     * Set the canvas of the next render
+     * @param canvas The canvas
+     * @param width Width of the canvas, texts are wrapped at its right edge
+     * @param height Height of the canvas
+     */
+    void setCanvas(Canvas canvas, int width, int height) {
+        this.mCanvas = canvas;
+        this.mWidth = width;
+        this.mHeight = height;
+    }
+
+    /*
+     * Set the video shown under the annotations, see Annotatable.getTransform()
+     * @param width Width of the video, 0 if unknown
+     * @param height Height of the video, 0 if unknown
+     * @param fit Whether the video fits in the view, rather than filling it
+     */
+    void setContent(int width, int height, boolean fit) {
+        this.mContentWidth = width;
+        this.mContentHeight = height;
+        this.mFit = fit;
+    }
+
+    /*
+     * Set the level of detail of the paths, 0 to draw every control point
+     * @param level See AnnotationsPath.getLevelForScale()
+     */
+    void setLevel(int level) {
+        this.mLevel = level;
+    }
+
+    @Override
+    void drawPath(Annotatable annotatable) {
+        Path path = annotatable.getPath().getLevel(mLevel);
+        Paint paint = annotatable.getPaint();
+        if (annotatable.getTransform(mWidth, mHeight, mContentWidth, mContentHeight, mFit, mTransform)) {
+            mMatrix.setScale(mTransform[0], mTransform[0]);
+            mMatrix.postTranslate(mTransform[1], mTransform[2]);
+            //the stroke width is kept on screen
+            mScaledPaint.set(paint);
+            mScaledPaint.setStrokeWidth(paint.getStrokeWidth() / mTransform[0]);
+            mCanvas.save();
+            mCanvas.concat(mMatrix);
+            mCanvas.drawPath(path, mScaledPaint);
+            mCanvas.restore();
+        } else {
+            mCanvas.drawPath(path, paint);
+        }
+    }
+
+    @Override
+    void drawText(Annotatable annotatable) {
+        boolean mapped = annotatable.getTransform(mWidth, mHeight, mContentWidth, mContentHeight, mFit, mTransform);
+        annotatable.getText().draw(mCanvas, annotatable.getPaint(), mWidth, mapped ? mTransform : null);
+    }
+}
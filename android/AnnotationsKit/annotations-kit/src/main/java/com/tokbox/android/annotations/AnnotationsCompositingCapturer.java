@@ -0,0 +1,702 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.opentok.android.BaseVideoCapturer;
+import com.tokbox.android.annotations.utils.VideoContentTransform;
+import com.tokbox.android.annotations.utils.YuvDownscaler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+/**
+ * Video capturer that burns the annotations into the published video, so viewers without the
+ * annotations kit (recordings, SIP, archives) see them too.
+ *
+ * The I420 frames of the camera, or of any other source, are passed to onFrame(). On a GL thread,
+ * each frame is converted to RGB in a framebuffer and the annotations are blended over it. A
+ * last pass packs the result back into I420, which is read in a single glReadPixels call. The
+ * textures, framebuffers and frame buffers are reused from frame to frame.
+ *
+ * The annotations are rasterized on the thread that sets them, the UI thread, as the capture
+ * thread must not read their live paths and paints. The overlay is kept at the size of the view
+ * and placed on each frame the way the view shows the frame: upright after its rotation, fitted
+ * or filling the view, and mirrored.
+ *
+ * Frames are composited when their width is a multiple of 8 and their height a multiple of 4,
+ * which covers the usual capture sizes. Other frames are published without the annotations.
+ */
+public class AnnotationsCompositingCapturer extends BaseVideoCapturer {
+
+    private static final String LOG_TAG = AnnotationsCompositingCapturer.class.getSimpleName();
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private static final int EGL_OPENGL_ES2_BIT = 4;
+
+    private static final int DEFAULT_WIDTH = 1280;
+    private static final int DEFAULT_HEIGHT = 720;
+    private static final int DEFAULT_FPS = 30;
+
+    private static final int POSITION_ATTRIBUTE = 0;
+    private static final int TEXTURE_COORD_ATTRIBUTE = 1;
+
+    private static final float[] QUAD = {
+            -1, -1, 0, 0,
+            1, -1, 1, 0,
+            -1, 1, 0, 1,
+            1, 1, 1, 1
+    };
+
+    private static final String VERTEX_SHADER = "attribute vec4 aPosition;\n"
+            + "attribute vec2 aTextureCoord;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main() {\n"
+            + "  gl_Position = aPosition;\n"
+            + "  vTextureCoord = aTextureCoord;\n"
+            + "}\n";
+
+    // same conversion as the AnnotationsVideoRenderer
+    private static final String YUV_SHADER = "precision mediump float;\n"
+            + "uniform sampler2D Ytex;\n"
+            + "uniform sampler2D Utex,Vtex;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main(void) {\n"
+            + "  float r,g,b,y,u,v;\n"
+            + "  y=texture2D(Ytex,vTextureCoord).r;\n"
+            + "  u=texture2D(Utex,vTextureCoord).r;\n"
+            + "  v=texture2D(Vtex,vTextureCoord).r;\n"
+            + "  y=1.1643*(y-0.0625);\n"
+            + "  u=u-0.5;\n" + "  v=v-0.5;\n" + "  r=y+1.5958*v;\n"
+            + "  g=y-0.39173*u-0.81290*v;\n" + "  b=y+2.017*u;\n"
+            + "  gl_FragColor=vec4(r,g,b,1.0);\n" + "}\n";
+
+    private static final String OVERLAY_SHADER = "precision mediump float;\n"
+            + "uniform sampler2D Otex;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main(void) {\n"
+            + "  gl_FragColor=texture2D(Otex,vTextureCoord);\n"
+            + "}\n";
+
+    // writes the I420 bytes as RGBA pixels of a (width / 4) x (height * 3 / 2) target: the Y rows,
+    // then the U and the V planes with two of their rows per target row, so the pixels read back
+    // are the I420 frame as it is
+    private static final String I420_SHADER = "#ifdef GL_FRAGMENT_PRECISION_HIGH\n"
+            + "precision highp float;\n"
+            + "#else\n"
+            + "precision mediump float;\n"
+            + "#endif\n"
+            + "uniform sampler2D Rgbtex;\n"
+            + "uniform vec2 uSize;\n"
+            + "float luma(float x,float y) {\n"
+            + "  vec3 c=texture2D(Rgbtex,vec2(x+0.5,y+0.5)/uSize).rgb;\n"
+            + "  return dot(c,vec3(0.257,0.504,0.098))+0.0625;\n"
+            + "}\n"
+            + "float chroma(float x,float y,vec3 k) {\n"
+            + "  vec3 c=texture2D(Rgbtex,vec2(x*2.0+1.0,y*2.0+1.0)/uSize).rgb;\n"
+            + "  return dot(c,k)+0.5;\n"
+            + "}\n"
+            + "void main(void) {\n"
+            + "  vec2 o=floor(gl_FragCoord.xy);\n"
+            + "  float x=o.x*4.0;\n"
+            + "  if (o.y<uSize.y) {\n"
+            + "    gl_FragColor=vec4(luma(x,o.y),luma(x+1.0,o.y),luma(x+2.0,o.y),luma(x+3.0,o.y));\n"
+            + "  } else {\n"
+            + "    float hw=uSize.x*0.5;\n"
+            + "    float rows=uSize.y*0.25;\n"
+            + "    float r=o.y-uSize.y;\n"
+            + "    vec3 k=vec3(-0.148,-0.291,0.439);\n"
+            + "    if (r>=rows) {\n"
+            + "      r-=rows;\n"
+            + "      k=vec3(0.439,-0.368,-0.071);\n"
+            + "    }\n"
+            + "    float cy=r*2.0;\n"
+            + "    if (x>=hw) {\n"
+            + "      x-=hw;\n"
+            + "      cy+=1.0;\n"
+            + "    }\n"
+            + "    gl_FragColor=vec4(chroma(x,cy,k),chroma(x+1.0,cy,k),chroma(x+2.0,cy,k),chroma(x+3.0,cy,k));\n"
+            + "  }\n"
+            + "}\n";
+
+    private final CaptureSettings mSettings = new CaptureSettings();
+    //only used on the thread setting the annotations
+    private final AnnotationsCanvasRenderer mCanvasRenderer = new AnnotationsCanvasRenderer();
+    private final Bitmap[] mOverlays = new Bitmap[2];
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private volatile boolean mCapturing = false;
+    private volatile AnnotationsMetrics mMetrics;
+
+    //the latest frame not composited yet, and the frame being composited
+    private final Object mFrameLock = new Object();
+    private ByteBuffer mPendingFrame;
+    private ByteBuffer mFrame;
+    private int mPendingWidth;
+    private int mPendingHeight;
+    private int mPendingRotation;
+    private boolean mPendingMirrored;
+    private boolean mPending = false;
+
+    //the overlay published to the capture thread, null if there are no annotations
+    private final Object mOverlayLock = new Object();
+    private Bitmap mOverlay;
+    private boolean mOverlayFit = true;
+    private boolean mOverlayChanged = false;
+    //the last frame, as the view shows it
+    private volatile int mContentWidth;
+    private volatile int mContentHeight;
+
+    //GL state, only touched on the capture thread
+    private EGL10 mEgl;
+    private EGLDisplay mDisplay;
+    private EGLContext mContext;
+    private EGLSurface mSurface;
+    private FloatBuffer mQuad;
+    private int mYuvProgram;
+    private int mOverlayProgram;
+    private int mI420Program;
+    private final int[] mTextures = new int[6];
+    private final int[] mFramebuffers = new int[2];
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private FloatBuffer mOverlayQuad;
+    private final float[] mOverlayVertices = new float[QUAD.length];
+    private final float[] mPoint = new float[2];
+    private final VideoContentTransform mTransform = new VideoContentTransform();
+    private int mOverlayWidth = 0;
+    private int mOverlayHeight = 0;
+    private boolean mOverlayTextureFit = true;
+    private boolean mOverlayEmpty = true;
+    private byte[] mOutput = new byte[0];
+    private ByteBuffer mOutputBuffer;
+
+    public AnnotationsCompositingCapturer() {
+        mSettings.width = DEFAULT_WIDTH;
+        mSettings.height = DEFAULT_HEIGHT;
+        mSettings.fps = DEFAULT_FPS;
+        mSettings.format = BaseVideoCapturer.I420;
+        mSettings.expectedDelay = 0;
+    }
+
+    /*
+     * Set the metrics receiving the compositing time of each frame
+     * @param metrics AnnotationsMetrics
+     */
+    public void setMetrics(AnnotationsMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /*
+     * Set the annotations burnt into the next frames. The AnnotationsView the capturer is set in
+     * calls it on the UI thread whenever its annotations change. They are rasterized before it
+     * returns, in one of two overlays reused in turn.
+     * @param annotations The annotations
+     * @param canvasWidth Width of the view the annotations were drawn in
+     * @param canvasHeight Height of the view the annotations were drawn in
+     * @param fit Whether the view fits the video in it, rather than filling it
+     */
+    public void setAnnotations(Annotatable[] annotations, int canvasWidth, int canvasHeight, boolean fit) {
+        Bitmap overlay = null;
+        if (annotations.length > 0 && canvasWidth > 0 && canvasHeight > 0) {
+            //the overlay the capture thread is not using
+            synchronized (mOverlayLock) {
+                overlay = mOverlays[0] != mOverlay ? mOverlays[0] : mOverlays[1];
+            }
+            if (overlay == null || overlay.getWidth() != canvasWidth || overlay.getHeight() != canvasHeight) {
+                overlay = Bitmap.createBitmap(canvasWidth, canvasHeight, Bitmap.Config.ARGB_8888);
+            } else {
+                overlay.eraseColor(0);
+            }
+            mCanvasRenderer.setCanvas(new Canvas(overlay), canvasWidth, canvasHeight);
+            mCanvasRenderer.setContent(mContentWidth, mContentHeight, fit);
+            mCanvasRenderer.render(Arrays.asList(annotations));
+            mCanvasRenderer.setCanvas(null, 0, 0);
+        }
+        synchronized (mOverlayLock) {
+            if (overlay != null) {
+                mOverlays[mOverlays[0] != mOverlay ? 0 : 1] = overlay;
+            }
+            mOverlay = overlay;
+            mOverlayFit = fit;
+            mOverlayChanged = true;
+        }
+    }
+
+    /*
+     * Passes a source frame to be composited and published. If the previous frame was not
+     * composited yet, it is replaced.
+     * @param frame Y plane followed by the half-resolution U and V planes
+     * @param width Frame width
+     * @param height Frame height
+     * @param rotation Frame rotation in degrees
+     * @param mirrored Whether the frame is mirrored
+     */
+    public void onFrame(ByteBuffer frame, int width, int height, int rotation, boolean mirrored) {
+        if (!mCapturing || mHandler == null) {
+            return;
+        }
+        int size = YuvDownscaler.getFrameSize(width, height);
+        frame.clear();
+        if (frame.remaining() < size) {
+            return;
+        }
+        synchronized (mFrameLock) {
+            if (mPendingFrame == null || mPendingFrame.capacity() != size) {
+                mPendingFrame = ByteBuffer.allocateDirect(size);
+                mPendingFrame.order(ByteOrder.nativeOrder());
+            }
+            mPendingFrame.clear();
+            frame.limit(size);
+            mPendingFrame.put(frame);
+            frame.clear();
+            mPendingWidth = width;
+            mPendingHeight = height;
+            mPendingRotation = rotation;
+            mPendingMirrored = mirrored;
+            boolean upright = rotation % 180 == 0;
+            mContentWidth = upright ? width : height;
+            mContentHeight = upright ? height : width;
+            if (mPending) {
+                //the capture thread has not taken the previous frame yet
+                return;
+            }
+            mPending = true;
+        }
+        mHandler.post(mCompositeRunnable);
+    }
+
+    private final Runnable mCompositeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            int width;
+            int height;
+            int rotation;
+            boolean mirrored;
+            synchronized (mFrameLock) {
+                ByteBuffer frame = mFrame;
+                mFrame = mPendingFrame;
+                mPendingFrame = frame;
+                width = mPendingWidth;
+                height = mPendingHeight;
+                rotation = mPendingRotation;
+                mirrored = mPendingMirrored;
+                mPending = false;
+            }
+            if (mCapturing) {
+                AnnotationsMetrics metrics = mMetrics;
+                long start = metrics != null ? metrics.start(AnnotationsMetrics.Timer.COMPOSITE_FRAME) : 0;
+                //without EGL the video is still published, without the annotations
+                byte[] output = mContext != null ? composite(mFrame, width, height, rotation, mirrored)
+                        : copy(mFrame, width, height);
+                provideByteArrayFrame(output, BaseVideoCapturer.I420, width, height, rotation, mirrored);
+                if (metrics != null) {
+                    metrics.stop(AnnotationsMetrics.Timer.COMPOSITE_FRAME, start);
+                }
+            }
+        }
+    };
+
+    /*
+     * Composites the annotations over an I420 frame. Returns the composited I420 frame, in an
+     * array reused by the next call. Only called on the capture thread.
+     * @param rotation Clockwise rotation in degrees showing the frame upright
+     * @param mirrored Whether the frame is shown mirrored
+     */
+    byte[] composite(ByteBuffer frame, int width, int height, int rotation, boolean mirrored) {
+        if (!canComposite(width, height)) {
+            return copy(frame, width, height);
+        }
+        int size = YuvDownscaler.getFrameSize(width, height);
+        if (mOutput.length != size) {
+            mOutput = new byte[size];
+            mOutputBuffer = ByteBuffer.wrap(mOutput);
+        }
+        frame.clear();
+        if (width != mWidth || height != mHeight) {
+            setupFrame(width, height);
+        }
+        updateOverlay();
+
+        int halfWidth = width >> 1;
+        int halfHeight = height >> 1;
+
+        //the source planes
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 1);
+        frame.position(0);
+        uploadPlane(GLES20.GL_TEXTURE0, mTextures[0], width, height, frame);
+        frame.position(width * height);
+        uploadPlane(GLES20.GL_TEXTURE1, mTextures[1], halfWidth, halfHeight, frame);
+        frame.position(width * height + halfWidth * halfHeight);
+        uploadPlane(GLES20.GL_TEXTURE2, mTextures[2], halfWidth, halfHeight, frame);
+        frame.clear();
+
+        //RGB frame with the annotations over it
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffers[0]);
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glUseProgram(mYuvProgram);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        if (!mOverlayEmpty) {
+            GLES20.glEnable(GLES20.GL_BLEND);
+            //the bitmap is uploaded with premultiplied alpha
+            GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+            GLES20.glUseProgram(mOverlayProgram);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[3]);
+            placeOverlay(width, height, rotation, mirrored);
+            setQuad(mOverlayQuad);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+            setQuad(mQuad);
+            GLES20.glDisable(GLES20.GL_BLEND);
+        }
+
+        //back to I420
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffers[1]);
+        GLES20.glViewport(0, 0, width / 4, height + halfHeight);
+        GLES20.glUseProgram(mI420Program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[4]);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        mOutputBuffer.clear();
+        GLES20.glReadPixels(0, 0, width / 4, height + halfHeight, GLES20.GL_RGBA,
+                GLES20.GL_UNSIGNED_BYTE, mOutputBuffer);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        return mOutput;
+    }
+
+    /*
+     * Copies an I420 frame as it is, in the array composite() returns.
+     */
+    private byte[] copy(ByteBuffer frame, int width, int height) {
+        int size = YuvDownscaler.getFrameSize(width, height);
+        if (mOutput.length != size) {
+            mOutput = new byte[size];
+            mOutputBuffer = ByteBuffer.wrap(mOutput);
+        }
+        frame.clear();
+        frame.get(mOutput, 0, size);
+        frame.clear();
+        return mOutput;
+    }
+
+    static boolean canComposite(int width, int height) {
+        return width > 0 && height > 0 && width % 8 == 0 && height % 4 == 0;
+    }
+
+    private static void uploadPlane(int unit, int texture, int width, int height, ByteBuffer plane) {
+        GLES20.glActiveTexture(unit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, plane);
+    }
+
+    //uploads the overlay when a new one was set
+    private void updateOverlay() {
+        synchronized (mOverlayLock) {
+            if (!mOverlayChanged) {
+                return;
+            }
+            mOverlayChanged = false;
+            mOverlayEmpty = mOverlay == null;
+            if (mOverlayEmpty) {
+                return;
+            }
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[3]);
+            if (mOverlay.getWidth() != mOverlayWidth || mOverlay.getHeight() != mOverlayHeight) {
+                GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, mOverlay, 0);
+                mOverlayWidth = mOverlay.getWidth();
+                mOverlayHeight = mOverlay.getHeight();
+            } else {
+                GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, mOverlay);
+            }
+            mOverlayTextureFit = mOverlayFit;
+        }
+    }
+
+    //the quad of the overlay: the corners of the view, where they are on the frame
+    private void placeOverlay(int width, int height, int rotation, boolean mirrored) {
+        boolean upright = rotation % 180 == 0;
+        mTransform.set(upright ? width : height, upright ? height : width,
+                mOverlayWidth, mOverlayHeight, mOverlayTextureFit, mirrored);
+        for (int i = 0; i < QUAD.length; i += 4) {
+            //the texture coordinates of the corner, the overlay rows are uploaded top first
+            float s = QUAD[i + 2];
+            float t = QUAD[i + 3];
+            mapToFrame(mTransform, s * mOverlayWidth, t * mOverlayHeight, width, height, rotation, mPoint);
+            //framebuffer rows are the frame rows, bottom up
+            mOverlayVertices[i] = 2 * mPoint[0] / width - 1;
+            mOverlayVertices[i + 1] = 2 * mPoint[1] / height - 1;
+            mOverlayVertices[i + 2] = s;
+            mOverlayVertices[i + 3] = t;
+        }
+        mOverlayQuad.position(0);
+        mOverlayQuad.put(mOverlayVertices);
+    }
+
+    /*
+     * Maps a point of the view to the point of the frame shown there
+     * @param transform Where the upright frame is in the view
+     * @param x View x
+     * @param y View y
+     * @param width Frame width
+     * @param height Frame height
+     * @param rotation Clockwise rotation in degrees showing the frame upright
+     * @param out Receives the frame x and y
+     */
+    static void mapToFrame(VideoContentTransform transform, float x, float y, int width, int height,
+                           int rotation, float[] out) {
+        float uprightX = transform.unmapX(x);
+        float uprightY = transform.unmapY(y);
+        switch (((rotation % 360) + 360) % 360) {
+            case 90:
+                out[0] = uprightY;
+                out[1] = height - uprightX;
+                break;
+            case 180:
+                out[0] = width - uprightX;
+                out[1] = height - uprightY;
+                break;
+            case 270:
+                out[0] = width - uprightY;
+                out[1] = uprightX;
+                break;
+            default:
+                out[0] = uprightX;
+                out[1] = uprightY;
+                break;
+        }
+    }
+
+    //textures and framebuffers of a frame size
+    private void setupFrame(int width, int height) {
+        releaseFrame();
+        GLES20.glGenTextures(mTextures.length, mTextures, 0);
+        GLES20.glGenFramebuffers(mFramebuffers.length, mFramebuffers, 0);
+
+        createTexture(GLES20.GL_TEXTURE0, mTextures[0], width, height, GLES20.GL_LUMINANCE, GLES20.GL_LINEAR);
+        createTexture(GLES20.GL_TEXTURE1, mTextures[1], width >> 1, height >> 1, GLES20.GL_LUMINANCE, GLES20.GL_LINEAR);
+        createTexture(GLES20.GL_TEXTURE2, mTextures[2], width >> 1, height >> 1, GLES20.GL_LUMINANCE, GLES20.GL_LINEAR);
+
+        //the overlay texture is sized by the first overlay uploaded
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[3]);
+        setTextureParameters(GLES20.GL_LINEAR);
+        mOverlayWidth = 0;
+        mOverlayHeight = 0;
+        synchronized (mOverlayLock) {
+            mOverlayChanged = true;
+        }
+
+        //the chroma samples average the 2x2 pixels around them
+        createTexture(GLES20.GL_TEXTURE0, mTextures[4], width, height, GLES20.GL_RGBA, GLES20.GL_LINEAR);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffers[0]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, mTextures[4], 0);
+
+        createTexture(GLES20.GL_TEXTURE0, mTextures[5], width / 4, height + (height >> 1), GLES20.GL_RGBA, GLES20.GL_NEAREST);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffers[1]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, mTextures[5], 0);
+        if (GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            Log.e(LOG_TAG, "Incomplete framebuffer for " + width + "x" + height);
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        GLES20.glUseProgram(mI420Program);
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(mI420Program, "uSize"), width, height);
+
+        mWidth = width;
+        mHeight = height;
+        mSettings.width = width;
+        mSettings.height = height;
+    }
+
+    private static void createTexture(int unit, int texture, int width, int height, int format, int filter) {
+        GLES20.glActiveTexture(unit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        setTextureParameters(filter);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format,
+                GLES20.GL_UNSIGNED_BYTE, null);
+    }
+
+    private static void setTextureParameters(int filter) {
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, filter);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, filter);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    }
+
+    private void releaseFrame() {
+        if (mWidth > 0) {
+            GLES20.glDeleteTextures(mTextures.length, mTextures, 0);
+            GLES20.glDeleteFramebuffers(mFramebuffers.length, mFramebuffers, 0);
+            mWidth = 0;
+            mHeight = 0;
+        }
+    }
+
+    //GL context on a 1x1 pbuffer, the frames are drawn in framebuffers
+    void setupGl() {
+        mEgl = (EGL10) EGLContext.getEGL();
+        mDisplay = mEgl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        mEgl.eglInitialize(mDisplay, new int[2]);
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] count = new int[1];
+        mEgl.eglChooseConfig(mDisplay, new int[]{
+                EGL10.EGL_RED_SIZE, 8, EGL10.EGL_GREEN_SIZE, 8, EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                EGL10.EGL_NONE}, configs, 1, count);
+        if (count[0] == 0) {
+            Log.e(LOG_TAG, "No EGL config, the annotations are not composited");
+            return;
+        }
+        mContext = mEgl.eglCreateContext(mDisplay, configs[0], EGL10.EGL_NO_CONTEXT,
+                new int[]{EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE});
+        mSurface = mEgl.eglCreatePbufferSurface(mDisplay, configs[0],
+                new int[]{EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE});
+        mEgl.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext);
+
+        ByteBuffer quad = ByteBuffer.allocateDirect(QUAD.length * 4);
+        quad.order(ByteOrder.nativeOrder());
+        mQuad = quad.asFloatBuffer();
+        mQuad.put(QUAD);
+        ByteBuffer overlayQuad = ByteBuffer.allocateDirect(QUAD.length * 4);
+        overlayQuad.order(ByteOrder.nativeOrder());
+        mOverlayQuad = overlayQuad.asFloatBuffer();
+
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        mYuvProgram = createProgram(vertexShader, YUV_SHADER);
+        mOverlayProgram = createProgram(vertexShader, OVERLAY_SHADER);
+        mI420Program = createProgram(vertexShader, I420_SHADER);
+
+        //the programs draw the same quad, but the overlay
+        setQuad(mQuad);
+        GLES20.glEnableVertexAttribArray(POSITION_ATTRIBUTE);
+        GLES20.glEnableVertexAttribArray(TEXTURE_COORD_ATTRIBUTE);
+
+        GLES20.glUseProgram(mYuvProgram);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mYuvProgram, "Ytex"), 0);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mYuvProgram, "Utex"), 1);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mYuvProgram, "Vtex"), 2);
+        GLES20.glUseProgram(mOverlayProgram);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mOverlayProgram, "Otex"), 0);
+        GLES20.glUseProgram(mI420Program);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mI420Program, "Rgbtex"), 0);
+    }
+
+    private static void setQuad(FloatBuffer quad) {
+        quad.position(0);
+        GLES20.glVertexAttribPointer(POSITION_ATTRIBUTE, 2, GLES20.GL_FLOAT, false, 16, quad);
+        quad.position(2);
+        GLES20.glVertexAttribPointer(TEXTURE_COORD_ATTRIBUTE, 2, GLES20.GL_FLOAT, false, 16, quad);
+    }
+
+    void releaseGl() {
+        if (mContext == null) {
+            return;
+        }
+        releaseFrame();
+        GLES20.glDeleteProgram(mYuvProgram);
+        GLES20.glDeleteProgram(mOverlayProgram);
+        GLES20.glDeleteProgram(mI420Program);
+        mEgl.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+        mEgl.eglDestroySurface(mDisplay, mSurface);
+        mEgl.eglDestroyContext(mDisplay, mContext);
+        mContext = null;
+    }
+
+    private static int loadShader(int type, String shaderCode) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, shaderCode);
+        GLES20.glCompileShader(shader);
+        return shader;
+    }
+
+    private static int createProgram(int vertexShader, String fragmentShaderCode) {
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode));
+        GLES20.glBindAttribLocation(program, POSITION_ATTRIBUTE, "aPosition");
+        GLES20.glBindAttribLocation(program, TEXTURE_COORD_ATTRIBUTE, "aTextureCoord");
+        GLES20.glLinkProgram(program);
+        return program;
+    }
+
+    @Override
+    public void init() {
+        mThread = new HandlerThread("AnnotationsCapturer");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                setupGl();
+            }
+        });
+    }
+
+    @Override
+    public int startCapture() {
+        mCapturing = true;
+        return 0;
+    }
+
+    @Override
+    public int stopCapture() {
+        mCapturing = false;
+        return 0;
+    }
+
+    @Override
+    public void destroy() {
+        mCapturing = false;
+        if (mHandler != null) {
+            final HandlerThread thread = mThread;
+            //the pending frames are run first, quitSafely() is not available before API 18
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    releaseGl();
+                    thread.quit();
+                }
+            });
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    @Override
+    public boolean isCaptureStarted() {
+        return mCapturing;
+    }
+
+    @Override
+    public CaptureSettings getCaptureSettings() {
+        return mSettings;
+    }
+
+    @Override
+    public void onPause() {
+    }
+
+    @Override
+    public void onResume() {
+    }
+}
@@ -0,0 +1,168 @@
+package com.tokbox.android.annotations;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Sends the position of the local pointer to the other participants as signals, at most one per
+ * interval. Moves in between are coalesced: only the latest position is sent when the interval
+ * ends, so the last position is never lost. The pointers received from the other participants are
+ * kept as AnnotationsRemoteCursor, interpolated between their positions, until they fade out.
+ *
+ * Positions are relative to the size of the canvas (0 to 1), so they land on the same content on
+ * views of another size, and carry the time they were sent. The caller owns the timing: every
+ * call returns when flush() must be called next.
+ */
+class AnnotationsCursorChannel {
+
+    static final String SIGNAL_TYPE = "annotations-cursor";
+    static final long DEFAULT_INTERVAL_MS = 100;
+    static final String HIDDEN = "hide";
+
+    /**
+     * Sends a signal to the other participants, e.g. through the session
+     */
+    interface SignalSender {
+        void sendSignal(String type, String data);
+    }
+
+    private final SignalSender mSender;
+    private long mInterval = DEFAULT_INTERVAL_MS;
+    private long mLastSendTime = Long.MIN_VALUE;
+    private boolean mPending = false;
+    private boolean mHidden = true;
+    private float mX;
+    private float mY;
+    private int mSentCount = 0;
+
+    private final HashMap<String, AnnotationsRemoteCursor> mRemoteCursors = new HashMap<String, AnnotationsRemoteCursor>();
+
+    AnnotationsCursorChannel(SignalSender sender) {
+        this.mSender = sender;
+    }
+
+    /*
+     * Set the minimum time between two signals
+     */
+    void setInterval(long intervalMs) {
+        mInterval = intervalMs;
+    }
+
+    long getInterval() {
+        return mInterval;
+    }
+
+    int getSentCount() {
+        return mSentCount;
+    }
+
+    /*
+     * Moves the pointer. Returns the milliseconds until flush() must be called, or -1.
+     * @param now Time in milliseconds
+     * @param x Position relative to the canvas width
+     * @param y Position relative to the canvas height
+     */
+    long move(long now, float x, float y) {
+        mX = x;
+        mY = y;
+        mHidden = false;
+        mPending = true;
+        return flush(now);
+    }
+
+    /*
+     * Hides the pointer, e.g. when the finger is lifted. Returns as move().
+     */
+    long hide(long now) {
+        if (mHidden && !mPending) {
+            return -1;
+        }
+        mHidden = true;
+        mPending = true;
+        return flush(now);
+    }
+
+    /*
+     * Sends the latest state if the interval allows it. Returns the milliseconds until it must be
+     * called again, or -1 when nothing is pending.
+     */
+    long flush(long now) {
+        if (!mPending) {
+            return -1;
+        }
+        long wait = mLastSendTime == Long.MIN_VALUE ? 0 : mLastSendTime + mInterval - now;
+        if (wait > 0) {
+            return wait;
+        }
+        mPending = false;
+        mLastSendTime = now;
+        mSentCount++;
+        mSender.sendSignal(SIGNAL_TYPE, (mHidden ? HIDDEN : format(mX) + "," + format(mY)) + "," + now);
+        return -1;
+    }
+
+    /*
+     * Handles a signal of another participant. Returns false if the data is not valid.
+     * @param from Id of the connection of the participant
+     * @param data Data of the signal
+     * @param now Local time in milliseconds
+     */
+    boolean onSignal(String from, String data, long now) {
+        String[] fields = data.split(",");
+        boolean hidden = HIDDEN.equals(fields[0]);
+        if (fields.length != (hidden ? 2 : 3)) {
+            return false;
+        }
+        float x = 0;
+        float y = 0;
+        long sendTime;
+        try {
+            if (!hidden) {
+                x = Float.parseFloat(fields[0]);
+                y = Float.parseFloat(fields[1]);
+            }
+            sendTime = Long.parseLong(fields[fields.length - 1]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        AnnotationsRemoteCursor cursor = mRemoteCursors.get(from);
+        if (cursor == null) {
+            //drawn one interval and a half behind, to ride out the network jitter
+            cursor = new AnnotationsRemoteCursor(mInterval * 3 / 2);
+            mRemoteCursors.put(from, cursor);
+        }
+        cursor.addSample(now, sendTime, x, y, hidden);
+        return true;
+    }
+
+    Collection<AnnotationsRemoteCursor> getRemoteCursors() {
+        return mRemoteCursors.values();
+    }
+
+    /*
+     * Moves the pointers of the other participants to the position of a frame. The pointers that
+     * have faded out are forgotten, so those of the participants who left are not kept; a pointer
+     * shown again is mapped anew. Returns whether a pointer is still moving or fading.
+     * @param now Frame time in milliseconds
+     * @param width Width of the canvas
+     * @param height Height of the canvas
+     */
+    boolean updateRemoteCursors(long now, int width, int height) {
+        boolean moving = false;
+        Iterator<AnnotationsRemoteCursor> cursors = mRemoteCursors.values().iterator();
+        while (cursors.hasNext()) {
+            if (cursors.next().update(now, width, height)) {
+                moving = true;
+            } else {
+                cursors.remove();
+            }
+        }
+        return moving;
+    }
+
+    //4 decimals are enough for a 10000 pixels wide canvas
+    private static String format(float value) {
+        return Float.toString(Math.round(value * 10000) / 10000f);
+    }
+}
@@ -0,0 +1,375 @@
+package com.tokbox.android.annotations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Exports annotatables as a vector document (SVG or PDF).
+ *
+ * The document is streamed through a small buffer while iterating the annotatables, so its size
+ * in memory does not depend on the number of strokes. Every annotatable is scaled from the canvas
+ * size it was drawn on to the document size.
+ */
+public class AnnotationsExporter {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Vector document formats
+     */
+    public enum Format {
+        SVG,
+        PDF
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+
+    /*
+     * Constructor
+     * @param width Document width, in pixels for SVG and points for PDF
+     * @param height Document height, in pixels for SVG and points for PDF
+     */
+    public AnnotationsExporter(int width, int height) {
+        this.mWidth = width;
+        this.mHeight = height;
+    }
+
+    /*
+     * Writes the annotatables to the output stream. The stream is flushed but not closed.
+     * @param annotatables The annotatables to export, in drawing order
+     * @param format Document format
+     * @param out Output stream
+     */
+    public void export(List<Annotatable> annotatables, Format format, OutputStream out) throws IOException {
+        Sink sink = new Sink(out);
+        if (format == Format.PDF) {
+            writePdf(annotatables, sink);
+        } else {
+            writeSvg(annotatables, sink);
+        }
+        sink.flush();
+    }
+
+    private void writeSvg(List<Annotatable> annotatables, Sink sink) throws IOException {
+        sink.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        sink.write(mWidth);
+        sink.write("\" height=\"");
+        sink.write(mHeight);
+        sink.write("\" viewBox=\"0 0 ");
+        sink.write(mWidth);
+        sink.write(' ');
+        sink.write(mHeight);
+        sink.write("\">\n");
+
+        float[] transform = new float[3];
+        for (Annotatable annotatable : annotatables) {
+            //one scale and an offset, the annotatable keeps its proportions
+            annotatable.getTransform(mWidth, mHeight, 0, 0, true, transform);
+            float scale = transform[0];
+            float dx = transform[1];
+            float dy = transform[2];
+
+            if (annotatable.getPath() != null) {
+                AnnotationsPath path = annotatable.getPath();
+                int count = path.getPointCount();
+                if (count == 0) {
+                    continue;
+                }
+                sink.write("<path d=\"M");
+                float mX = path.getPointX(0) * scale + dx;
+                float mY = path.getPointY(0) * scale + dy;
+                sink.writePoint(mX, mY);
+                for (int i = 1; i < count; i++) {
+                    float x = path.getPointX(i) * scale + dx;
+                    float y = path.getPointY(i) * scale + dy;
+                    sink.write('Q');
+                    sink.writePoint(mX, mY);
+                    sink.write(' ');
+                    sink.writePoint((x + mX) / 2, (y + mY) / 2);
+                    mX = x;
+                    mY = y;
+                }
+                sink.write('L');
+                sink.writePoint(mX, mY);
+                sink.write("\" fill=\"none\" stroke-linejoin=\"round\" stroke=\"");
+                writeSvgColor(sink, annotatable.getColor(), "stroke-opacity");
+                sink.write(" stroke-width=\"");
+                sink.write(annotatable.getSize() * scale);
+                sink.write("\"/>\n");
+            } else if (annotatable.getText() != null) {
+                AnnotationsText text = annotatable.getText();
+                sink.write("<text x=\"");
+                sink.write(text.getX() * scale + dx);
+                sink.write("\" y=\"");
+                sink.write(text.getY() * scale + dy);
+                sink.write("\" font-family=\"sans-serif\" font-size=\"");
+                sink.write(annotatable.getSize() * scale);
+                sink.write("\" fill=\"");
+                writeSvgColor(sink, annotatable.getColor(), "fill-opacity");
+                sink.write('>');
+                sink.writeEscapedXml(text.getText());
+                sink.write("</text>\n");
+            }
+        }
+        sink.write("</svg>\n");
+    }
+
+    private static void writeSvgColor(Sink sink, int color, String opacityAttribute) throws IOException {
+        sink.write('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            sink.write(Character.forDigit((color >> shift) & 0xf, 16));
+        }
+        sink.write('"');
+        int alpha = (color >>> 24);
+        if (alpha != 0xff) {
+            sink.write(' ');
+            sink.write(opacityAttribute);
+            sink.write("=\"");
+            sink.write(alpha / 255f);
+            sink.write('"');
+        }
+    }
+
+    /*
+     * Single page PDF. The content stream length is written as an indirect object after the
+     * stream, so the content does not need to be buffered to know its size.
+     */
+    private void writePdf(List<Annotatable> annotatables, Sink sink) throws IOException {
+        long[] offsets = new long[7];
+
+        sink.write("%PDF-1.4\n");
+        offsets[1] = sink.count();
+        sink.write("1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets[2] = sink.count();
+        sink.write("2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        offsets[3] = sink.count();
+        sink.write("3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 ");
+        sink.write(mWidth);
+        sink.write(' ');
+        sink.write(mHeight);
+        sink.write("] /Contents 4 0 R /Resources << /Font << /F1 6 0 R >> >> >>\nendobj\n");
+        offsets[4] = sink.count();
+        sink.write("4 0 obj\n<< /Length 5 0 R >>\nstream\n");
+        long streamStart = sink.count();
+
+        sink.write("1 j\n");
+        float[] transform = new float[3];
+        for (Annotatable annotatable : annotatables) {
+            //one scale and an offset, the annotatable keeps its proportions
+            annotatable.getTransform(mWidth, mHeight, 0, 0, true, transform);
+            float scale = transform[0];
+            float dx = transform[1];
+            float dy = transform[2];
+
+            if (annotatable.getPath() != null) {
+                AnnotationsPath path = annotatable.getPath();
+                int count = path.getPointCount();
+                if (count == 0) {
+                    continue;
+                }
+                writePdfColor(sink, annotatable.getColor(), " RG\n");
+                sink.write(annotatable.getSize() * scale);
+                sink.write(" w\n");
+
+                //PDF has no quadratic curves: each quad is raised to a cubic
+                float mX = path.getPointX(0) * scale + dx;
+                float mY = mHeight - (path.getPointY(0) * scale + dy);
+                float cX = mX;
+                float cY = mY;
+                sink.writePoint(mX, mY);
+                sink.write(" m\n");
+                for (int i = 1; i < count; i++) {
+                    float x = path.getPointX(i) * scale + dx;
+                    float y = mHeight - (path.getPointY(i) * scale + dy);
+                    float endX = (x + mX) / 2;
+                    float endY = (y + mY) / 2;
+                    sink.writePoint(cX + 2f / 3f * (mX - cX), cY + 2f / 3f * (mY - cY));
+                    sink.write(' ');
+                    sink.writePoint(endX + 2f / 3f * (mX - endX), endY + 2f / 3f * (mY - endY));
+                    sink.write(' ');
+                    sink.writePoint(endX, endY);
+                    sink.write(" c\n");
+                    cX = endX;
+                    cY = endY;
+                    mX = x;
+                    mY = y;
+                }
+                sink.writePoint(mX, mY);
+                sink.write(" l S\n");
+            } else if (annotatable.getText() != null) {
+                AnnotationsText text = annotatable.getText();
+                writePdfColor(sink, annotatable.getColor(), " rg\n");
+                sink.write("BT /F1 ");
+                sink.write(annotatable.getSize() * scale);
+                sink.write(" Tf ");
+                sink.writePoint(text.getX() * scale + dx, mHeight - (text.getY() * scale + dy));
+                sink.write(" Td (");
+                sink.writeEscapedPdf(text.getText());
+                sink.write(") Tj ET\n");
+            }
+        }
+
+        long length = sink.count() - streamStart;
+        sink.write("endstream\nendobj\n");
+        offsets[5] = sink.count();
+        sink.write("5 0 obj\n");
+        sink.write(length);
+        sink.write("\nendobj\n");
+        offsets[6] = sink.count();
+        sink.write("6 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\nendobj\n");
+
+        long xref = sink.count();
+        sink.write("xref\n0 7\n0000000000 65535 f \n");
+        for (int i = 1; i < offsets.length; i++) {
+            String offset = Long.toString(offsets[i]);
+            for (int pad = offset.length(); pad < 10; pad++) {
+                sink.write('0');
+            }
+            sink.write(offset);
+            sink.write(" 00000 n \n");
+        }
+        sink.write("trailer\n<< /Size 7 /Root 1 0 R >>\nstartxref\n");
+        sink.write(xref);
+        sink.write("\n%%EOF\n");
+    }
+
+    private static void writePdfColor(Sink sink, int color, String operator) throws IOException {
+        sink.write(((color >> 16) & 0xff) / 255f);
+        sink.write(' ');
+        sink.write(((color >> 8) & 0xff) / 255f);
+        sink.write(' ');
+        sink.write((color & 0xff) / 255f);
+        sink.write(operator);
+    }
+
+    //buffered byte sink that counts the bytes written, for the PDF cross-reference table
+    private static class Sink {
+        private final OutputStream mOut;
+        private final byte[] mBuffer = new byte[BUFFER_SIZE];
+        private final char[] mDigits = new char[20];
+        private int mPosition = 0;
+        private long mFlushed = 0;
+
+        Sink(OutputStream out) {
+            this.mOut = out;
+        }
+
+        long count() {
+            return mFlushed + mPosition;
+        }
+
+        void write(char c) throws IOException {
+            if (mPosition == mBuffer.length) {
+                drain();
+            }
+            mBuffer[mPosition++] = (byte) c;
+        }
+
+        void write(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                write(s.charAt(i));
+            }
+        }
+
+        void write(long value) throws IOException {
+            if (value < 0) {
+                write('-');
+                value = -value;
+            }
+            int length = 0;
+            do {
+                mDigits[length++] = (char) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            while (length > 0) {
+                write(mDigits[--length]);
+            }
+        }
+
+        //two decimals are enough for device pixels and avoid String.format on every coordinate
+        void write(float value) throws IOException {
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                value = 0;
+            }
+            long scaled = Math.round(Math.abs(value) * 100.0);
+            if (value < 0 && scaled != 0) {
+                write('-');
+            }
+            write(scaled / 100);
+            int fraction = (int) (scaled % 100);
+            if (fraction != 0) {
+                write('.');
+                write((char) ('0' + fraction / 10));
+                if (fraction % 10 != 0) {
+                    write((char) ('0' + fraction % 10));
+                }
+            }
+        }
+
+        void writePoint(float x, float y) throws IOException {
+            write(x);
+            write(' ');
+            write(y);
+        }
+
+        void writeEscapedXml(String s) throws IOException {
+            if (s == null) {
+                return;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '<':
+                        write("&lt;");
+                        break;
+                    case '>':
+                        write("&gt;");
+                        break;
+                    case '&':
+                        write("&amp;");
+                        break;
+                    default:
+                        if (c < 0x80) {
+                            write(c);
+                        } else {
+                            int end = Character.isHighSurrogate(c) && i + 1 < s.length() ? i + 2 : i + 1;
+                            byte[] bytes = s.substring(i, end).getBytes(UTF8);
+                            for (byte b : bytes) {
+                                write((char) (b & 0xff));
+                            }
+                            i = end - 1;
+                        }
+                }
+            }
+        }
+
+        //Helvetica with WinAnsiEncoding: characters outside Latin-1 are replaced
+        void writeEscapedPdf(String s) throws IOException {
+            if (s == null) {
+                return;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '(' || c == ')' || c == '\\') {
+                    write('\\');
+                }
+                write(c < 0x100 ? c : '?');
+            }
+        }
+
+        void flush() throws IOException {
+            drain();
+            mOut.flush();
+        }
+
+        private void drain() throws IOException {
+            mOut.write(mBuffer, 0, mPosition);
+            mFlushed += mPosition;
+            mPosition = 0;
+        }
+    }
+}
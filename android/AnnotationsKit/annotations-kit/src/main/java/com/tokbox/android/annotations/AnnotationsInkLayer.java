@@ -0,0 +1,128 @@
+package com.tokbox.android.annotations;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * Transparent surface over the AnnotationsView where the stroke being drawn is inked as soon as
+ * each touch event arrives, without waiting for a traversal of the view hierarchy.
+ *
+ * Each update locks only the area around the new segment: the rest of the surface keeps what was
+ * drawn before. When the stroke is finished it is drawn by the AnnotationsView as usual, and the
+ * layer is cleared once that frame is on screen.
+ */
+class AnnotationsInkLayer extends SurfaceView implements SurfaceHolder.Callback {
+
+    //antialiasing spills over the stroke width
+    private static final int DIRTY_MARGIN = 2;
+
+    private boolean mReady = false;
+    private boolean mEmpty = true;
+    private float mZoom = 1;
+    private float mPanX = 0;
+    private float mPanY = 0;
+    private final Rect mDirty = new Rect();
+    private final Rect mLastDirty = new Rect();
+    private final RectF mMapped = new RectF();
+
+    AnnotationsInkLayer(Context context) {
+        super(context);
+        //above the window, so no hole is punched in the annotations drawn by the view
+        setZOrderOnTop(true);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+    }
+
+    /*
+     * Returns whether the surface can be drawn now
+     */
+    boolean isReady() {
+        return mReady;
+    }
+
+    void setTransform(float zoom, float panX, float panY) {
+        mZoom = zoom;
+        mPanX = panX;
+        mPanY = panY;
+    }
+
+    /*
+     * Draws the stroke again where it changed, and erases what the previous update drew there.
+     * @param path The stroke
+     * @param tail Transient end of the stroke, or null
+     * @param paint Paint of the stroke
+     * @param changed Area of the canvas that changed since the previous update
+     * Returns whether the stroke was drawn
+     */
+    boolean drawStroke(Path path, Path tail, Paint paint, RectF changed) {
+        if (!mReady) {
+            return false;
+        }
+        float margin = paint.getStrokeWidth() / 2 * mZoom + DIRTY_MARGIN;
+        mMapped.set(changed.left * mZoom + mPanX, changed.top * mZoom + mPanY,
+                changed.right * mZoom + mPanX, changed.bottom * mZoom + mPanY);
+        mMapped.inset(-margin, -margin);
+        mMapped.roundOut(mDirty);
+        if (!mEmpty) {
+            //the previous tail is erased
+            mDirty.union(mLastDirty);
+        }
+        mLastDirty.set(mDirty);
+
+        //every pixel of the locked area is written: cleared, then the stroke clipped to it
+        Canvas canvas = getHolder().lockCanvas(mDirty);
+        if (canvas == null) {
+            return false;
+        }
+        try {
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            canvas.translate(mPanX, mPanY);
+            canvas.scale(mZoom, mZoom);
+            canvas.drawPath(path, paint);
+            if (tail != null) {
+                canvas.drawPath(tail, paint);
+            }
+        } finally {
+            getHolder().unlockCanvasAndPost(canvas);
+        }
+        mEmpty = false;
+        return true;
+    }
+
+    void clear() {
+        if (!mReady || mEmpty) {
+            return;
+        }
+        Canvas canvas = getHolder().lockCanvas();
+        if (canvas != null) {
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            getHolder().unlockCanvasAndPost(canvas);
+        }
+        mEmpty = true;
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mReady = true;
+        mEmpty = false;
+        clear();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        mReady = false;
+        mEmpty = true;
+    }
+}
@@ -0,0 +1,458 @@
+package com.tokbox.android.annotations;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the committed annotatable operations, backed by a memory-mapped file.
+ *
+ * Every add, remove and clear is appended in a compact binary form. The mapped pages are forced
+ * to disk on a background cadence and the file is compacted once most of its records are dead,
+ * so the annotations can be restored in a few milliseconds after the process dies.
+ *
+ * Record layout: op (1 byte), payload length (4 bytes), payload CRC32 (4 bytes), payload.
+ * The op byte is written last, so a record is only visible once it is complete.
+ */
+public class AnnotationsJournal {
+
+    private static final String LOG_TAG = AnnotationsJournal.class.getSimpleName();
+
+    private static final int MAGIC = 0x414E4A31; //ANJ1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final int UUID_SIZE = 16;
+
+    static final byte OP_ADD_PATH = 1;
+    static final byte OP_ADD_TEXT = 2;
+    static final byte OP_REMOVE = 3;
+    static final byte OP_CLEAR = 4;
+
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final long DEFAULT_SYNC_INTERVAL_MS = 1000;
+    private static final int COMPACT_MIN_RECORDS = 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mPosition;
+    private int mRecordCount;
+    private boolean mDirty;
+
+    //offset and length of the records of the live annotatables, in commit order
+    private final LinkedHashMap<UUID, int[]> mLiveRecords = new LinkedHashMap<UUID, int[]>();
+
+    private final CRC32 mCrc = new CRC32();
+    private ByteBuffer mPayload = ByteBuffer.allocate(1024);
+    private byte[] mCrcScratch = new byte[1024];
+    private float[] mPointsScratch = new float[256];
+
+    private final ScheduledExecutorService mExecutor;
+
+    /*
+     * Constructor
+     * @param file The journal file. It is created if it does not exist.
+     */
+    public AnnotationsJournal(File file) throws IOException {
+        this(file, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /*
+     * Constructor
+     * @param file The journal file. It is created if it does not exist.
+     * @param syncIntervalMs How often the journal is forced to disk and checked for compaction.
+     */
+    public AnnotationsJournal(File file, long syncIntervalMs) throws IOException {
+        this.mFile = file;
+        openFile();
+        scan();
+
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AnnotationsJournal");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Returns the number of annotatables that will be restored
+     */
+    public synchronized int getLiveCount() {
+        return mLiveRecords.size();
+    }
+
+    /*
+     * Returns the number of records in the journal, including the dead ones
+     */
+    public synchronized int getRecordCount() {
+        return mRecordCount;
+    }
+
+    /*
+     * Rebuilds the annotatables stored in the journal into the manager, in commit order.
+     * The restored annotatables are not journaled again.
+     * @param manager AnnotationsManager
+     */
+    public synchronized void restore(AnnotationsManager manager) {
+        for (int[] record : mLiveRecords.values()) {
+            manager.restoreAnnotatable(decode(record[0]));
+        }
+    }
+
+    synchronized void appendAdd(Annotatable annotatable) {
+        ByteBuffer payload = beginPayload();
+        byte op;
+
+        if (annotatable.getPath() != null) {
+            AnnotationsPath path = annotatable.getPath();
+            int count = path.getPointCount();
+            payload = ensurePayload(44 + count * 8);
+            putId(payload, annotatable.getId());
+            payload.putInt(annotatable.getCanvasWidth());
+            payload.putInt(annotatable.getCanvasHeight());
+            payload.putInt(annotatable.getColor());
+            payload.putFloat(annotatable.getSize());
+            payload.putInt(count);
+            for (int i = 0; i < count; i++) {
+                payload.putFloat(path.getPointX(i));
+                payload.putFloat(path.getPointY(i));
+            }
+            op = OP_ADD_PATH;
+        } else if (annotatable.getText() != null) {
+            AnnotationsText text = annotatable.getText();
+            String value = text.getText();
+            byte[] bytes = (value != null ? value : "").getBytes(UTF8);
+            payload = ensurePayload(48 + bytes.length);
+            putId(payload, annotatable.getId());
+            payload.putInt(annotatable.getCanvasWidth());
+            payload.putInt(annotatable.getCanvasHeight());
+            payload.putInt(annotatable.getColor());
+            payload.putFloat(annotatable.getSize());
+            payload.putFloat(text.getX());
+            payload.putFloat(text.getY());
+            payload.putInt(bytes.length);
+            payload.put(bytes);
+            op = OP_ADD_TEXT;
+        } else {
+            return;
+        }
+
+        int offset = append(op);
+        if (offset >= 0) {
+            mLiveRecords.put(annotatable.getId(), new int[]{offset, mPosition - offset});
+        }
+    }
+
+    synchronized void appendRemove(UUID id) {
+        putId(beginPayload(), id);
+        if (append(OP_REMOVE) >= 0) {
+            mLiveRecords.remove(id);
+        }
+    }
+
+    synchronized void appendClear() {
+        beginPayload();
+        if (append(OP_CLEAR) >= 0) {
+            mLiveRecords.clear();
+        }
+    }
+
+    /*
+     * Rewrites the journal keeping only the records of the live annotatables.
+     */
+    public synchronized void compact() throws IOException {
+        if (mBuffer == null) {
+            return;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            channel.truncate(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header);
+
+            for (int[] record : mLiveRecords.values()) {
+                ByteBuffer src = mBuffer.duplicate();
+                src.limit(record[0] + record[1]).position(record[0]);
+                writeFully(channel, src);
+            }
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+
+        closeFile();
+        if (!tmp.renameTo(mFile)) {
+            openFile();
+            throw new IOException("Unable to replace the journal " + mFile);
+        }
+
+        int position = HEADER_SIZE;
+        for (int[] record : mLiveRecords.values()) {
+            record[0] = position;
+            position += record[1];
+        }
+        mPosition = position;
+        openFile();
+        mRecordCount = mLiveRecords.size();
+        mDirty = false;
+    }
+
+    /*
+     * Forces the pending records to disk and stops the background sync.
+     */
+    public void close() {
+        mExecutor.shutdown();
+        synchronized (this) {
+            if (mBuffer != null) {
+                mBuffer.force();
+                closeFile();
+                mBuffer = null;
+            }
+        }
+    }
+
+    private void sync() {
+        MappedByteBuffer buffer = null;
+        synchronized (this) {
+            if (mBuffer == null) {
+                return;
+            }
+            if (mRecordCount >= COMPACT_MIN_RECORDS && mRecordCount > 2 * mLiveRecords.size()) {
+                try {
+                    compact();
+                    return;
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Journal compaction failed: " + e.getMessage());
+                }
+            }
+            if (mDirty) {
+                mDirty = false;
+                buffer = mBuffer;
+            }
+        }
+        //msync outside the lock so that appends are not blocked by the disk
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    private void openFile() throws IOException {
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        long length = mChannel.size();
+        boolean created = length < HEADER_SIZE;
+
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < length) {
+            capacity <<= 1;
+        }
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        if (created) {
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, VERSION);
+            mPosition = HEADER_SIZE;
+        } else if (mBuffer.getInt(0) != MAGIC) {
+            closeFile();
+            throw new IOException("Not an annotations journal: " + mFile);
+        }
+    }
+
+    private void closeFile() {
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to close the journal: " + e.getMessage());
+        }
+    }
+
+    //finds the end of the journal and indexes the live records
+    private void scan() {
+        int capacity = mBuffer.capacity();
+        int position = HEADER_SIZE;
+        boolean torn = false;
+
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            byte op = mBuffer.get(position);
+            if (op == 0) {
+                break;
+            }
+            int length = mBuffer.getInt(position + 1);
+            if (op > OP_CLEAR || length < 0 || length > capacity - position - RECORD_HEADER_SIZE
+                    || mBuffer.getInt(position + 5) != checksum(position + RECORD_HEADER_SIZE, length)) {
+                torn = true;
+                break;
+            }
+
+            switch (op) {
+                case OP_ADD_PATH:
+                case OP_ADD_TEXT:
+                    mLiveRecords.put(readId(position + RECORD_HEADER_SIZE),
+                            new int[]{position, RECORD_HEADER_SIZE + length});
+                    break;
+                case OP_REMOVE:
+                    mLiveRecords.remove(readId(position + RECORD_HEADER_SIZE));
+                    break;
+                case OP_CLEAR:
+                    mLiveRecords.clear();
+                    break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            mRecordCount++;
+        }
+        mPosition = position;
+
+        if (torn) {
+            //a partially written record: wipe the tail so it can never be read back
+            Log.w(LOG_TAG, "Discarding a torn record at " + position);
+            for (int i = position; i < capacity; i++) {
+                mBuffer.put(i, (byte) 0);
+            }
+            mDirty = true;
+        }
+    }
+
+    private Annotatable decode(int offset) {
+        byte op = mBuffer.get(offset);
+        int position = offset + RECORD_HEADER_SIZE;
+        UUID id = readId(position);
+        position += UUID_SIZE;
+        int canvasWidth = mBuffer.getInt(position);
+        int canvasHeight = mBuffer.getInt(position + 4);
+        int color = mBuffer.getInt(position + 8);
+        float size = mBuffer.getFloat(position + 12);
+        position += 16;
+
+        if (op == OP_ADD_PATH) {
+            int count = mBuffer.getInt(position);
+            position += 4;
+            if (mPointsScratch.length < count * 2) {
+                mPointsScratch = new float[count * 2];
+            }
+            ByteBuffer src = mBuffer.duplicate();
+            src.position(position);
+            src.asFloatBuffer().get(mPointsScratch, 0, count * 2);
+            AnnotationsPath path = AnnotationsPath.fromPoints(mPointsScratch, count);
+            path.buildLevels();
+            return new Annotatable(id, AnnotationsView.Mode.Pen.toString(), path, color, size, canvasWidth, canvasHeight);
+        } else {
+            float x = mBuffer.getFloat(position);
+            float y = mBuffer.getFloat(position + 4);
+            int length = mBuffer.getInt(position + 8);
+            byte[] bytes = new byte[length];
+            ByteBuffer src = mBuffer.duplicate();
+            src.position(position + 12);
+            src.get(bytes);
+            AnnotationsText text = new AnnotationsText(new String(bytes, UTF8), x, y);
+            return new Annotatable(id, AnnotationsView.Mode.Text.toString(), text, color, size, canvasWidth, canvasHeight);
+        }
+    }
+
+    private ByteBuffer beginPayload() {
+        mPayload.clear();
+        return ensurePayload(UUID_SIZE);
+    }
+
+    private ByteBuffer ensurePayload(int size) {
+        if (mPayload.capacity() < size) {
+            mPayload = ByteBuffer.allocate(Math.max(size, mPayload.capacity() * 2));
+        }
+        return mPayload;
+    }
+
+    //copies the pending payload to the end of the journal, returns the record offset or -1
+    private int append(byte op) {
+        if (mBuffer == null) {
+            return -1;
+        }
+        int length = mPayload.position();
+        int offset = mPosition;
+        try {
+            ensureCapacity(RECORD_HEADER_SIZE + length);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to grow the journal: " + e.getMessage());
+            return -1;
+        }
+        mCrc.reset();
+        mCrc.update(mPayload.array(), 0, length);
+
+        mBuffer.putInt(offset + 1, length);
+        mBuffer.putInt(offset + 5, (int) mCrc.getValue());
+        mBuffer.position(offset + RECORD_HEADER_SIZE);
+        mBuffer.put(mPayload.array(), 0, length);
+        mBuffer.put(offset, op);
+
+        mPosition = offset + RECORD_HEADER_SIZE + length;
+        mRecordCount++;
+        mDirty = true;
+        return offset;
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        int capacity = mBuffer.capacity();
+        if (mPosition + size <= capacity) {
+            return;
+        }
+        while (capacity < mPosition + size) {
+            capacity <<= 1;
+        }
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private int checksum(int position, int length) {
+        if (mCrcScratch.length < length) {
+            mCrcScratch = new byte[Math.max(length, mCrcScratch.length * 2)];
+        }
+        ByteBuffer src = mBuffer.duplicate();
+        src.position(position);
+        src.get(mCrcScratch, 0, length);
+        mCrc.reset();
+        mCrc.update(mCrcScratch, 0, length);
+        return (int) mCrc.getValue();
+    }
+
+    private void putId(ByteBuffer payload, UUID id) {
+        payload.putLong(id.getMostSignificantBits());
+        payload.putLong(id.getLeastSignificantBits());
+    }
+
+    private UUID readId(int position) {
+        return new UUID(mBuffer.getLong(position), mBuffer.getLong(position + 8));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+}
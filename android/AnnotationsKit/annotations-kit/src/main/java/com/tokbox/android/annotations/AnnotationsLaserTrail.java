@@ -0,0 +1,114 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Trail of a laser pointer: the most recent touch points, faded out by age.
+ *
+ * The points are kept in a fixed ring, so a pointer moving for a whole session holds the same
+ * memory and costs the same to draw as one moving for a second. Nothing here is an annotatable:
+ * the trail is not committed, journaled, recorded, cached in tiles or burnt into the video.
+ */
+class AnnotationsLaserTrail {
+
+    static final int CAPACITY = 64;
+    static final long FADE_MS = 700;
+
+    private final long[] mTimes = new long[CAPACITY];
+    private final float[] mXs = new float[CAPACITY];
+    private final float[] mYs = new float[CAPACITY];
+    //whether a point starts a new trail, rather than continuing from the previous point
+    private final boolean[] mStarts = new boolean[CAPACITY];
+    private int mLast = -1;
+    private int mCount = 0;
+    private boolean mNewTrail = true;
+
+    /*
+     * Adds a point to the trail
+     * @param time Event time in milliseconds
+     */
+    void add(long time, float x, float y) {
+        mLast = (mLast + 1) % CAPACITY;
+        mTimes[mLast] = time;
+        mXs[mLast] = x;
+        mYs[mLast] = y;
+        mStarts[mLast] = mNewTrail;
+        mNewTrail = false;
+        mCount = Math.min(mCount + 1, CAPACITY);
+    }
+
+    /*
+     * The next point starts a new trail, not joined to the previous one
+     */
+    void lift() {
+        mNewTrail = true;
+    }
+
+    void clear() {
+        mCount = 0;
+        mLast = -1;
+        mNewTrail = true;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /*
+     * Returns the number of points not faded out yet
+     * @param now Time in the time base of the points
+     */
+    int getVisibleCount(long now) {
+        int visible = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (now - mTimes[index(i)] >= FADE_MS) {
+                break;
+            }
+            visible++;
+        }
+        return visible;
+    }
+
+    /*
+     * Draws the visible part of the trail, the oldest segments the most transparent. Returns
+     * whether anything is still visible, to keep animating the fade.
+     * @param paint Stroke paint of the trail, its alpha is changed
+     * @param now Time in the time base of the points
+     */
+    boolean draw(Canvas canvas, Paint paint, long now) {
+        int visible = getVisibleCount(now);
+        if (visible == 0) {
+            return false;
+        }
+        //from the oldest visible point, so the newest segments are drawn on top
+        for (int i = visible - 2; i >= 0; i--) {
+            int to = index(i);
+            if (mStarts[to]) {
+                continue;
+            }
+            int from = index(i + 1);
+            paint.setAlpha(getAlpha(now - mTimes[from]));
+            canvas.drawLine(mXs[from], mYs[from], mXs[to], mYs[to], paint);
+        }
+        if (visible == 1 || mStarts[mLast]) {
+            //a single point is drawn as a dot
+            paint.setAlpha(getAlpha(now - mTimes[mLast]));
+            canvas.drawPoint(mXs[mLast], mYs[mLast], paint);
+        }
+        return true;
+    }
+
+    //opaque for a new point, transparent once faded out
+    static int getAlpha(long age) {
+        if (age >= FADE_MS) {
+            return 0;
+        }
+        return (int) (255 * (FADE_MS - Math.max(0, age)) / FADE_MS);
+    }
+
+    //ring index of the i-th most recent point
+    private int index(int i) {
+        return (mLast - i + CAPACITY) % CAPACITY;
+    }
+}
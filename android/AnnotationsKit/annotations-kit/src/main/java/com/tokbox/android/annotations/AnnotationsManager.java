@@ -13,17 +13,69 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.UUID;
 
 public class AnnotationsManager {
 
     private ArrayList<Annotatable> mAnnotatableList;
     protected final String SIGNAL_TYPE = "annotations";
 
+    private AnnotationsJournal mJournal;
+
     public AnnotationsManager(){
         mAnnotatableList = new ArrayList<Annotatable>();
     }
 
      public void addAnnotatable(Annotatable annotatable){
+        restoreAnnotatable(annotatable);
+        if ( mJournal != null ) {
+            mJournal.appendAdd(annotatable);
+        }
+    }
+
+    /*
+     * Removes the annotatable with the given id
+     * @param id The annotatable id
+     * @return Whether the annotatable was removed
+     */
+    public boolean removeAnnotatable(UUID id){
+        //the most recent annotatables are the ones usually removed
+        for (int i = mAnnotatableList.size() - 1; i >= 0; i--) {
+            if (mAnnotatableList.get(i).getId().equals(id)) {
+                mAnnotatableList.remove(i);
+                if ( mJournal != null ) {
+                    mJournal.appendRemove(id);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Removes all the annotatables
+     */
+    public void clear(){
+        mAnnotatableList.clear();
+        if ( mJournal != null ) {
+            mJournal.appendClear();
+        }
+    }
+
+    /*
+     * Set the journal where every committed operation is persisted. Pass null to stop journaling.
+     * @param journal AnnotationsJournal
+     */
+    public void setJournal(AnnotationsJournal journal){
+        this.mJournal = journal;
+    }
+
+    public AnnotationsJournal getJournal() {
+        return mJournal;
+    }
+
+    //adds an annotatable without journaling it
+    void restoreAnnotatable(Annotatable annotatable){
         mAnnotatableList.add(annotatable);
         if ( annotatable.getPath() != null){
             annotatable.setType (Annotatable.AnnotatableType.PATH);
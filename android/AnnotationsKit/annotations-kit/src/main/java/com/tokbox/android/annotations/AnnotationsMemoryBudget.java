@@ -0,0 +1,228 @@
+package com.tokbox.android.annotations;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * Memory budget shared by the caches and buffers of the kit: raster tiles, kept video frames,
+ * screenshot buffers, and any consumer the app registers.
+ *
+ * When the memory held by the consumers exceeds the budget, or when the system signals memory
+ * pressure through onTrimMemory(), the consumers are trimmed in priority order: the lowest
+ * priority first, which should be what is cheapest to rebuild. Trimming always runs on the main
+ * thread.
+ *
+ * When the UI is hidden without memory pressure, only the consumers below the frame history are
+ * released: they only serve the visible UI, and the kept frames could not be rebuilt.
+ */
+public class AnnotationsMemoryBudget implements ComponentCallbacks2 {
+
+    /**
+     * Priorities of the consumers of the kit. Screenshot buffers are only reused between captures,
+     * tiles are rasterized again from the annotations, and the kept frames are lost.
+     */
+    public static final int PRIORITY_SCREENSHOT_BUFFERS = 0;
+    public static final int PRIORITY_TILE_CACHE = 10;
+    public static final int PRIORITY_FRAME_HISTORY = 20;
+
+    /**
+     * Memory held by a cache or a pool, that can be released on demand.
+     */
+    public interface MemoryConsumer {
+
+        /**
+         * Returns the bytes held. Called from the main thread and from the threads growing the
+         * consumers.
+         */
+        long getMemoryUsage();
+
+        /**
+         * Releases at least the given bytes, or as much as possible. Called on the main thread.
+         *
+         * @param bytes Bytes to release
+         * @return The bytes released
+         */
+        long trim(long bytes);
+    }
+
+    private static class Registration {
+        final String name;
+        final int priority;
+        final MemoryConsumer consumer;
+
+        Registration(String name, int priority, MemoryConsumer consumer) {
+            this.name = name;
+            this.priority = priority;
+            this.consumer = consumer;
+        }
+    }
+
+    private final ArrayList<Registration> mRegistrations = new ArrayList<Registration>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile long mMaxBytes;
+    private boolean mCheckPosted = false;
+    private long mTrimmedBytes = 0;
+
+    /*
+     * Constructor
+     * @param maxBytes Memory cap of all the consumers
+     */
+    public AnnotationsMemoryBudget(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        check();
+    }
+
+    /*
+     * Adds a consumer. A name already registered is replaced.
+     * @param name Name of the consumer, to read its usage
+     * @param priority Consumers of lower priority are trimmed first
+     * @param consumer The consumer
+     */
+    public synchronized void register(String name, int priority, MemoryConsumer consumer) {
+        unregister(name);
+        int index = 0;
+        while (index < mRegistrations.size() && mRegistrations.get(index).priority <= priority) {
+            index++;
+        }
+        mRegistrations.add(index, new Registration(name, priority, consumer));
+    }
+
+    public synchronized void unregister(String name) {
+        for (int i = 0; i < mRegistrations.size(); i++) {
+            if (mRegistrations.get(i).name.equals(name)) {
+                mRegistrations.remove(i);
+                return;
+            }
+        }
+    }
+
+    /*
+     * Returns the bytes held by all the consumers
+     */
+    public synchronized long getMemoryUsage() {
+        long bytes = 0;
+        for (Registration registration : mRegistrations) {
+            bytes += registration.consumer.getMemoryUsage();
+        }
+        return bytes;
+    }
+
+    /*
+     * Returns the bytes held by a consumer, 0 if it is not registered
+     */
+    public synchronized long getMemoryUsage(String name) {
+        for (Registration registration : mRegistrations) {
+            if (registration.name.equals(name)) {
+                return registration.consumer.getMemoryUsage();
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Returns the bytes released by the trims so far
+     */
+    public synchronized long getTrimmedBytes() {
+        return mTrimmedBytes;
+    }
+
+    /*
+     * Trims the consumers if they exceed the budget. Consumers call it when they grow; from
+     * another thread, the trim is posted to the main thread.
+     */
+    public void check() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            if (getMemoryUsage() > mMaxBytes) {
+                trimTo(mMaxBytes);
+            }
+            return;
+        }
+        synchronized (this) {
+            if (mCheckPosted) {
+                return;
+            }
+            mCheckPosted = true;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AnnotationsMemoryBudget.this) {
+                    mCheckPosted = false;
+                }
+                check();
+            }
+        });
+    }
+
+    /*
+     * Trims the consumers, lowest priority first, until they hold at most the given bytes.
+     * Returns the bytes released. Call it on the main thread.
+     * @param bytes Memory the consumers may keep
+     */
+    public synchronized long trimTo(long bytes) {
+        long usage = getMemoryUsage();
+        long released = 0;
+        for (Registration registration : mRegistrations) {
+            long excess = usage - released - bytes;
+            if (excess <= 0) {
+                break;
+            }
+            released += registration.consumer.trim(excess);
+        }
+        mTrimmedBytes += released;
+        return released;
+    }
+
+    /*
+     * Releases all the memory of the consumers below a priority. Returns the bytes released.
+     * Call it on the main thread.
+     * @param priority Consumers of this priority and above are kept
+     */
+    public synchronized long trimBelow(int priority) {
+        long released = 0;
+        for (Registration registration : mRegistrations) {
+            if (registration.priority >= priority) {
+                break;
+            }
+            long usage = registration.consumer.getMemoryUsage();
+            if (usage > 0) {
+                released += registration.consumer.trim(usage);
+            }
+        }
+        mTrimmedBytes += released;
+        return released;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            //the process may be killed next: everything can be rebuilt when needed
+            trimTo(0);
+        } else if (level == TRIM_MEMORY_UI_HIDDEN) {
+            trimBelow(PRIORITY_FRAME_HISTORY);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            trimTo(Math.min(mMaxBytes, getMemoryUsage()) / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimTo(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,269 @@
+package com.tokbox.android.annotations;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the annotations hot paths.
+ *
+ * Recording never allocates and is safe from any thread, so it can be left on in production.
+ * Latencies go into fixed exponential buckets from 250us to 512ms. Each timed section can also
+ * be emitted as an android.os.Trace section when tracing is enabled.
+ */
+public class AnnotationsMetrics {
+
+    /**
+     * Counted events. ANNOTATIONS holds the current number of annotatables. UPLOADED_BYTES and
+     * UPLOAD_BYTES_SAVED count the video bytes uploaded to the textures, and the bytes the
+     * downscaling and the change detection avoided uploading.
+     */
+    public enum Counter {
+        ANNOTATIONS,
+        RENDERED_FRAMES,
+        DROPPED_FRAMES,
+        SCREENSHOTS,
+        UPLOADED_BYTES,
+        UPLOAD_BYTES_SAVED
+    }
+
+    /**
+     * Timed sections.
+     */
+    public enum Timer {
+        TOUCH_TO_INK("Annotations:touchToInk"),
+        TOUCH_EVENT("Annotations:onTouchEvent"),
+        DRAW("Annotations:onDraw"),
+        RENDER_FRAME("Annotations:onDrawFrame"),
+        CAPTURE_SCREENSHOT("Annotations:captureScreenshot"),
+        COMPOSITE_FRAME("Annotations:compositeFrame");
+
+        private final String traceName;
+
+        Timer(String traceName) {
+            this.traceName = traceName;
+        }
+    }
+
+    /**
+     * Receives the metrics periodically, on the main thread.
+     */
+    public interface MetricsListener {
+
+        /**
+         * Invoked at the interval the listener was set with
+         *
+         * @param metrics The metrics, to be read with the getters.
+         */
+        void onMetricsUpdated(AnnotationsMetrics metrics);
+    }
+
+    private static final long[] BUCKET_BOUNDS_US = {
+            250, 500, 1000, 2000, 4000, 8000, 16000, 32000, 64000, 128000, 256000, 512000, Long.MAX_VALUE
+    };
+    public static final int BUCKET_COUNT = BUCKET_BOUNDS_US.length;
+
+    //lowest bit of the start time, set when a trace section was begun
+    private static final long TRACED = 1;
+
+    private static final int COUNTERS = Counter.values().length;
+    private static final int TIMERS = Timer.values().length;
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTERS);
+    private final AtomicLongArray mBuckets = new AtomicLongArray(TIMERS * BUCKET_COUNT);
+    private final AtomicLongArray mTimerCounts = new AtomicLongArray(TIMERS);
+    private final AtomicLongArray mTimerTotals = new AtomicLongArray(TIMERS);
+    private final AtomicLongArray mTimerMax = new AtomicLongArray(TIMERS);
+
+    private volatile boolean mTracingEnabled = false;
+    //android.os.Trace is there from Jelly Bean MR2
+    private final boolean mTracingAvailable;
+
+    private Handler mHandler;
+    private MetricsListener mListener;
+    private long mListenerIntervalMs;
+
+    public AnnotationsMetrics() {
+        this(Build.VERSION.SDK_INT);
+    }
+
+    AnnotationsMetrics(int sdkInt) {
+        mTracingAvailable = sdkInt >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /*
+     * Emit the timed sections as android.os.Trace sections, visible in systrace.
+     * @param enabled true to trace
+     */
+    public void setTracingEnabled(boolean enabled) {
+        mTracingEnabled = enabled && mTracingAvailable;
+    }
+
+    public boolean isTracingEnabled() {
+        return mTracingEnabled;
+    }
+
+    /*
+     * Set MetricsListener. Pass null to stop the updates.
+     * @param listener MetricsListener
+     * @param intervalMs How often the listener is invoked.
+     */
+    public void setMetricsListener(MetricsListener listener, long intervalMs) {
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        mHandler.removeCallbacks(mNotifyRunnable);
+        mListener = listener;
+        mListenerIntervalMs = intervalMs;
+        if (listener != null) {
+            mHandler.postDelayed(mNotifyRunnable, intervalMs);
+        }
+    }
+
+    private final Runnable mNotifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            MetricsListener listener = mListener;
+            if (listener != null) {
+                listener.onMetricsUpdated(AnnotationsMetrics.this);
+                mHandler.postDelayed(this, mListenerIntervalMs);
+            }
+        }
+    };
+
+    public long getCount(Counter counter) {
+        return mCounters.get(counter.ordinal());
+    }
+
+    /*
+     * Returns the number of times a section was timed
+     */
+    public long getTimerCount(Timer timer) {
+        return mTimerCounts.get(timer.ordinal());
+    }
+
+    public long getTimerTotalMicros(Timer timer) {
+        return mTimerTotals.get(timer.ordinal());
+    }
+
+    public long getTimerMaxMicros(Timer timer) {
+        return mTimerMax.get(timer.ordinal());
+    }
+
+    /*
+     * Returns the upper bound of the bucket holding the given percentile, or 0 if nothing was timed.
+     * @param timer The timed section
+     * @param percentile Percentile, between 0 and 100
+     */
+    public long getPercentileMicros(Timer timer, double percentile) {
+        long count = getTimerCount(timer);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        int base = timer.ordinal() * BUCKET_COUNT;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += mBuckets.get(base + bucket);
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_US[bucket], getTimerMaxMicros(timer));
+            }
+        }
+        return getTimerMaxMicros(timer);
+    }
+
+    /*
+     * Copies the histogram of a timed section, without allocating.
+     * @param timer The timed section
+     * @param counts Array of at least BUCKET_COUNT elements receiving the count of each bucket
+     */
+    public void getHistogram(Timer timer, long[] counts) {
+        int base = timer.ordinal() * BUCKET_COUNT;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] = mBuckets.get(base + bucket);
+        }
+    }
+
+    /*
+     * Returns the upper bound of a histogram bucket, in microseconds
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return BUCKET_BOUNDS_US[bucket];
+    }
+
+    public void reset() {
+        for (int i = 0; i < COUNTERS; i++) {
+            mCounters.set(i, 0);
+        }
+        for (int i = 0; i < mBuckets.length(); i++) {
+            mBuckets.set(i, 0);
+        }
+        for (int i = 0; i < TIMERS; i++) {
+            mTimerCounts.set(i, 0);
+            mTimerTotals.set(i, 0);
+            mTimerMax.set(i, 0);
+        }
+    }
+
+    public void increment(Counter counter) {
+        mCounters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        mCounters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public void set(Counter counter, long value) {
+        mCounters.set(counter.ordinal(), value);
+    }
+
+    /*
+     * Starts timing a section. Returns the start time to pass to stop(). Its lowest bit tells
+     * whether a trace section was begun, so that stop() ends it even if tracing was turned off
+     * in between, and never ends a section it did not begin.
+     */
+    public long start(Timer timer) {
+        long start = System.nanoTime() & ~TRACED;
+        if (mTracingEnabled) {
+            Trace.beginSection(timer.traceName);
+            start |= TRACED;
+        }
+        return start;
+    }
+
+    /*
+     * Stops timing a section started on the same thread.
+     * @param timer The timed section
+     * @param start The value returned by start()
+     */
+    public void stop(Timer timer, long start) {
+        record(timer, (System.nanoTime() - (start & ~TRACED)) / 1000);
+        if ((start & TRACED) != 0) {
+            Trace.endSection();
+        }
+    }
+
+    /*
+     * Records a latency measured by the caller.
+     * @param timer The timed section
+     * @param micros Latency in microseconds
+     */
+    public void record(Timer timer, long micros) {
+        int index = timer.ordinal();
+        int bucket = 0;
+        while (micros > BUCKET_BOUNDS_US[bucket]) {
+            bucket++;
+        }
+        mBuckets.incrementAndGet(index * BUCKET_COUNT + bucket);
+        mTimerCounts.incrementAndGet(index);
+        mTimerTotals.addAndGet(index, micros);
+
+        long max = mTimerMax.get(index);
+        while (micros > max && !mTimerMax.compareAndSet(index, max, micros)) {
+            max = mTimerMax.get(index);
+        }
+    }
+}
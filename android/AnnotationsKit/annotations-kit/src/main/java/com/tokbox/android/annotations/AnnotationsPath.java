@@ -1,7 +1,6 @@
 package com.tokbox.android.annotations;
 
 import android.graphics.Path;
-import android.graphics.Point;
 import android.graphics.PointF;
 
 import java.util.UUID;
@@ -10,11 +9,20 @@ public class AnnotationsPath extends Path {
 
     private UUID id;
 
-    private PointF currentPoint;
     private boolean isStartPoint = false; //related to the currentPoint
     private boolean isEndPoint = false; //related to the currentPoint
     private PointF lastPoint;
 
+    //accepted control points (x, y pairs) the path was built from
+    private float[] mPoints = new float[32];
+    private int mPointCount = 0;
+
+    //simplified copies of the finished path, built when the stroke ends; level 0 is the path itself
+    static final int LEVEL_COUNT = 4;
+    //drawing error allowed on screen when zoomed out, in pixels
+    private static final float MAX_SCREEN_ERROR = 1;
+    private AnnotationsPath[] mLevels;
+
     public PointF getLastPointF() {
         return lastPoint;
     }
@@ -24,7 +32,6 @@ public class AnnotationsPath extends Path {
     }
 
     public AnnotationsPath() {
-        this.id = UUID.randomUUID();
     }
 
     public boolean isStartPoint() {
@@ -44,14 +51,240 @@ public class AnnotationsPath extends Path {
     }
 
     public void setCurrentPoint(PointF point){
-        currentPoint = point;
+        addPoint(point.x, point.y);
     }
 
     public PointF getCurrentPoint() {
-        return currentPoint;
+        PointF point = new PointF();
+        return getCurrentPoint(point) ? point : null;
+    }
+
+    /*
+     * Copies the last control point without allocating, for the drawing path.
+     * Returns false if the path has no point yet.
+     * @param out Receives the point
+     */
+    public boolean getCurrentPoint(PointF out) {
+        if (mPointCount == 0) {
+            return false;
+        }
+        out.x = mPoints[mPointCount * 2 - 2];
+        out.y = mPoints[mPointCount * 2 - 1];
+        return true;
     }
 
     public UUID getId() {
+        //created on demand, randomUUID() is too slow for bulk restores
+        if (id == null) {
+            id = UUID.randomUUID();
+        }
         return id;
     }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    public float getPointX(int index) {
+        return mPoints[index * 2];
+    }
+
+    public float getPointY(int index) {
+        return mPoints[index * 2 + 1];
+    }
+
+    private void addPoint(float x, float y) {
+        if (mPointCount * 2 + 2 > mPoints.length) {
+            float[] points = new float[mPoints.length * 2];
+            System.arraycopy(mPoints, 0, points, 0, mPointCount * 2);
+            mPoints = points;
+        }
+        mPoints[mPointCount * 2] = x;
+        mPoints[mPointCount * 2 + 1] = y;
+        mPointCount++;
+    }
+
+    /**
+     * Extends the path to a new accepted control point, using the same smoothing the
+     * AnnotationsView applies while drawing (quad to the midpoint of the last two points).
+     */
+    void appendPoint(float x, float y) {
+        if (mPointCount == 0) {
+            moveTo(x, y);
+        } else {
+            float mX = mPoints[mPointCount * 2 - 2];
+            float mY = mPoints[mPointCount * 2 - 1];
+            quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+        }
+        addPoint(x, y);
+    }
+
+    /**
+     * Extends the path to a touch point if it moved at least tolerance pixels away from the last
+     * control point, along either axis. Returns whether the point was accepted.
+     */
+    boolean appendTouchPoint(float x, float y, float tolerance) {
+        if (mPointCount > 0) {
+            float dx = Math.abs(x - mPoints[mPointCount * 2 - 2]);
+            float dy = Math.abs(y - mPoints[mPointCount * 2 - 1]);
+            if (dx < tolerance && dy < tolerance) {
+                return false;
+            }
+        }
+        appendPoint(x, y);
+        return true;
+    }
+
+    /**
+     * Closes the stroke with a line to its last control point, as the AnnotationsView does on touch up.
+     */
+    void finish() {
+        if (mPointCount > 0) {
+            float mX = mPoints[mPointCount * 2 - 2];
+            float mY = mPoints[mPointCount * 2 - 1];
+            lineTo(mX, mY);
+            if (lastPoint == null) {
+                lastPoint = new PointF(mX, mY);
+            }
+        }
+    }
+
+    /**
+     * Returns the level of detail to draw at a scale. At a scale of 1 and above, level 0: strokes
+     * are drawn from every control point, as they were while drawn. Zoomed out, the coarsest level
+     * whose simplification stays within a pixel on screen.
+     *
+     * @param scale Screen pixels per canvas pixel
+     */
+    static int getLevelForScale(float scale) {
+        int level = 0;
+        if (scale >= 1) {
+            return level;
+        }
+        while (level + 1 < LEVEL_COUNT && getLevelTolerance(level + 1) * scale <= MAX_SCREEN_ERROR) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Distance in canvas pixels a simplified level may move away from the full path: 1 pixel at
+     * level 1, doubled at each level.
+     */
+    static float getLevelTolerance(int level) {
+        return level == 0 ? 0 : 1 << (level - 1);
+    }
+
+    /**
+     * Builds every level of the finished path, where the stroke ends, so drawing does not have
+     * to simplify it.
+     */
+    void buildLevels() {
+        getLevel(LEVEL_COUNT - 1);
+    }
+
+    /**
+     * Returns the finished path with fewer control points, for drawing zoomed out. The levels are built once, by buildLevels() or else on first use. A level that would
+     * not drop any point is the previous level.
+     *
+     * @param level 0 for the path itself, up to LEVEL_COUNT - 1
+     */
+    synchronized AnnotationsPath getLevel(int level) {
+        if (level <= 0 || mPointCount <= 2) {
+            return this;
+        }
+        if (mLevels == null) {
+            mLevels = new AnnotationsPath[LEVEL_COUNT];
+        }
+        if (mLevels[level] == null) {
+            AnnotationsPath previous = getLevel(level - 1);
+            AnnotationsPath simplified = previous.simplify(getLevelTolerance(level));
+            mLevels[level] = simplified != null ? simplified : previous;
+        }
+        return mLevels[level];
+    }
+
+    //Douglas-Peucker over the control points; null if every point is kept
+    private AnnotationsPath simplify(float tolerance) {
+        boolean[] keep = new boolean[mPointCount];
+        keep[0] = true;
+        keep[mPointCount - 1] = true;
+        int[] stack = new int[mPointCount * 2];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = mPointCount - 1;
+        float tolerance2 = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            float farthest2 = tolerance2;
+            for (int i = first + 1; i < last; i++) {
+                float distance2 = segmentDistance2(i, first, last);
+                if (distance2 > farthest2) {
+                    farthest = i;
+                    farthest2 = distance2;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < mPointCount; i++) {
+            if (keep[i]) {
+                count++;
+            }
+        }
+        if (count == mPointCount) {
+            return null;
+        }
+        float[] points = new float[count * 2];
+        int j = 0;
+        for (int i = 0; i < mPointCount; i++) {
+            if (keep[i]) {
+                points[j++] = mPoints[i * 2];
+                points[j++] = mPoints[i * 2 + 1];
+            }
+        }
+        return fromPoints(points, count);
+    }
+
+    //squared distance of a point to the segment between two others
+    private float segmentDistance2(int point, int start, int end) {
+        float x = mPoints[point * 2];
+        float y = mPoints[point * 2 + 1];
+        float x0 = mPoints[start * 2];
+        float y0 = mPoints[start * 2 + 1];
+        float dx = mPoints[end * 2] - x0;
+        float dy = mPoints[end * 2 + 1] - y0;
+        float length2 = dx * dx + dy * dy;
+        float t = length2 > 0 ? Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / length2)) : 0;
+        float ex = x0 + t * dx - x;
+        float ey = y0 + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Rebuilds a finished path from its accepted control points.
+     *
+     * @param points x, y pairs
+     * @param count number of points
+     */
+    static AnnotationsPath fromPoints(float[] points, int count) {
+        AnnotationsPath path = new AnnotationsPath();
+        if (path.mPoints.length < count * 2) {
+            path.mPoints = new float[count * 2];
+        }
+        for (int i = 0; i < count; i++) {
+            path.appendPoint(points[i * 2], points[i * 2 + 1]);
+        }
+        path.finish();
+        return path;
+    }
 }
@@ -0,0 +1,345 @@
+package com.tokbox.android.annotations;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Replays a session recorded by an AnnotationsRecorder at any speed, with seeking.
+ *
+ * The recording is indexed once into keyframes holding the committed annotatables every
+ * KEYFRAME_INTERVAL_MS of session time, so a seek restores the closest keyframe and only
+ * replays the events after it instead of replaying the session from the start.
+ */
+public class AnnotationsPlayer {
+
+    static final int KEYFRAME_INTERVAL_MS = 5000;
+    private static final int FRAME_INTERVAL_MS = 16;
+
+    /**
+     * Monitors the playback of a recorded session.
+     */
+    public interface PlaybackListener {
+
+        /**
+         * Invoked when the playback position changes
+         *
+         * @param position Playback position in milliseconds.
+         */
+        void onPlaybackUpdated(long position);
+
+        /**
+         * Invoked when the playback reaches the end of the recording
+         */
+        void onPlaybackCompleted();
+    }
+
+    private static class Keyframe {
+        int event;
+        int time;
+        Annotatable[] committed;
+        int[] open;
+    }
+
+    //replay state at a given event of the recording
+    private class State {
+        ArrayList<Annotatable> committed = new ArrayList<Annotatable>();
+        LinkedHashMap<Integer, Annotatable> open = new LinkedHashMap<Integer, Annotatable>();
+        int cursor = 0;
+
+        void apply(int event) {
+            AnnotationsRecorder r = mRecording;
+            int item = r.mItems[event];
+
+            switch (r.mOps[event]) {
+                case AnnotationsRecorder.OP_BEGIN:
+                    open.put(item, newStroke(item));
+                    break;
+                case AnnotationsRecorder.OP_POINT: {
+                    Annotatable stroke = open.get(item);
+                    if (stroke != null) {
+                        stroke.getPath().appendPoint(r.mXs[event], r.mYs[event]);
+                    }
+                    break;
+                }
+                case AnnotationsRecorder.OP_END: {
+                    Annotatable stroke = open.remove(item);
+                    if (stroke != null) {
+                        stroke.getPath().finish();
+                        stroke.getPath().buildLevels();
+                        UUID id = r.mIds.get(item);
+                        if (id != null && !id.equals(stroke.getId())) {
+                            //the stroke was indexed before the recorder knew its id
+                            stroke = newAnnotatable(id, stroke.getPath(), item);
+                        }
+                        committed.add(stroke);
+                    }
+                    break;
+                }
+                case AnnotationsRecorder.OP_TEXT:
+                    committed.add(newText(item, r.mXs[event], r.mYs[event]));
+                    break;
+                case AnnotationsRecorder.OP_REMOVE: {
+                    UUID id = r.mIds.get(item);
+                    for (int i = committed.size() - 1; i >= 0; i--) {
+                        if (committed.get(i).getId().equals(id)) {
+                            committed.remove(i);
+                            break;
+                        }
+                    }
+                    break;
+                }
+                case AnnotationsRecorder.OP_CLEAR:
+                    committed.clear();
+                    break;
+            }
+            cursor = event + 1;
+        }
+    }
+
+    private final AnnotationsRecorder mRecording;
+    private final AnnotationsManager mOutput;
+    private AnnotationsView mView;
+    private PlaybackListener mListener;
+
+    private final ArrayList<Keyframe> mKeyframes = new ArrayList<Keyframe>();
+    private final State mIndexState = new State();
+    private int mNextKeyframeTime = 0;
+
+    private State mState = new State();
+    private long mPosition = 0;
+    //events replayed by the last seek, including the points of the open strokes rebuilt
+    int mReplayedEvents = 0;
+
+    private Handler mHandler;
+    private boolean mPlaying = false;
+    private float mSpeed = 1f;
+    private long mPlayStartUptime;
+    private long mPlayStartPosition;
+
+    /*
+     * Constructor
+     * @param recording The recorded session
+     * @param view The AnnotationsView where the session is replayed. Its annotations are replaced by the playback.
+     */
+    public AnnotationsPlayer(AnnotationsRecorder recording, AnnotationsView view) {
+        this(recording, view.getAnnotationsManager());
+        this.mView = view;
+    }
+
+    AnnotationsPlayer(AnnotationsRecorder recording, AnnotationsManager output) {
+        this.mRecording = recording;
+        this.mOutput = output;
+    }
+
+    /*
+     * Set PlaybackListener
+     * @param listener PlaybackListener
+     */
+    public void setPlaybackListener(PlaybackListener listener) {
+        this.mListener = listener;
+    }
+
+    public long getDuration() {
+        return mRecording.getDuration();
+    }
+
+    public long getPosition() {
+        return mPosition;
+    }
+
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    /*
+     * Shows the annotations as they were at the given time of the session.
+     * @param position Position in milliseconds from the start of the recording
+     */
+    public void seekTo(long position) {
+        seek(position);
+        if (mPlaying) {
+            //play on from the new position, not from where play() started
+            mPlayStartUptime = SystemClock.uptimeMillis();
+            mPlayStartPosition = mPosition;
+        }
+    }
+
+    private void seek(long position) {
+        index();
+        position = Math.max(0, Math.min(position, getDuration()));
+        mReplayedEvents = 0;
+
+        Keyframe keyframe = findKeyframe(position);
+        if (keyframe != null && (position < mPosition || keyframe.event > mState.cursor)) {
+            restore(keyframe);
+        }
+
+        AnnotationsRecorder r = mRecording;
+        while (mState.cursor < r.mEventCount && r.mTimes[mState.cursor] <= position) {
+            mState.apply(mState.cursor);
+            mReplayedEvents++;
+        }
+        mPosition = position;
+        publish();
+
+        if (mListener != null) {
+            mListener.onPlaybackUpdated(position);
+        }
+    }
+
+    /*
+     * Plays the recording from the current position.
+     * @param speed Playback speed, 1 being real time.
+     */
+    public void play(float speed) {
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        if (mPosition >= getDuration()) {
+            seekTo(0);
+        }
+        mSpeed = speed;
+        mPlayStartUptime = SystemClock.uptimeMillis();
+        mPlayStartPosition = mPosition;
+        mPlaying = true;
+        mHandler.removeCallbacks(mFrameRunnable);
+        mHandler.post(mFrameRunnable);
+    }
+
+    public void pause() {
+        mPlaying = false;
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mFrameRunnable);
+        }
+    }
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (onFrame(SystemClock.uptimeMillis())) {
+                mHandler.postDelayed(this, FRAME_INTERVAL_MS);
+            }
+        }
+    };
+
+    //moves the playback to a frame time, returns whether there are more frames to play
+    boolean onFrame(long uptime) {
+        if (!mPlaying) {
+            return false;
+        }
+        seek(mPlayStartPosition + (long) ((uptime - mPlayStartUptime) * mSpeed));
+        if (mPosition >= getDuration()) {
+            mPlaying = false;
+            if (mListener != null) {
+                mListener.onPlaybackCompleted();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    //indexes the events recorded since the last call
+    private void index() {
+        AnnotationsRecorder r = mRecording;
+        while (mIndexState.cursor < r.mEventCount) {
+            int event = mIndexState.cursor;
+            if (r.mTimes[event] >= mNextKeyframeTime) {
+                mKeyframes.add(snapshot(mIndexState));
+                mNextKeyframeTime = r.mTimes[event] + KEYFRAME_INTERVAL_MS;
+            }
+            mIndexState.apply(event);
+        }
+    }
+
+    private Keyframe snapshot(State state) {
+        Keyframe keyframe = new Keyframe();
+        keyframe.event = state.cursor;
+        keyframe.time = mRecording.mTimes[state.cursor];
+        keyframe.committed = state.committed.toArray(new Annotatable[state.committed.size()]);
+        keyframe.open = new int[state.open.size()];
+        int i = 0;
+        for (Integer item : state.open.keySet()) {
+            keyframe.open[i++] = item;
+        }
+        return keyframe;
+    }
+
+    private Keyframe findKeyframe(long position) {
+        int low = 0;
+        int high = mKeyframes.size() - 1;
+        Keyframe found = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Keyframe keyframe = mKeyframes.get(mid);
+            if (keyframe.time <= position) {
+                found = keyframe;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void restore(Keyframe keyframe) {
+        AnnotationsRecorder r = mRecording;
+        State state = new State();
+        state.committed.addAll(Arrays.asList(keyframe.committed));
+        for (int item : keyframe.open) {
+            //committed annotatables are immutable and shared, open strokes are rebuilt
+            Annotatable stroke = newStroke(item);
+            for (int event = r.mBeginEvents[item] + 1; event < keyframe.event; event++) {
+                if (r.mItems[event] == item && r.mOps[event] == AnnotationsRecorder.OP_POINT) {
+                    stroke.getPath().appendPoint(r.mXs[event], r.mYs[event]);
+                    mReplayedEvents++;
+                }
+            }
+            state.open.put(item, stroke);
+        }
+        state.cursor = keyframe.event;
+        mState = state;
+    }
+
+    private void publish() {
+        List<Annotatable> list = mOutput.getAnnotatableList();
+        list.clear();
+        list.addAll(mState.committed);
+        list.addAll(mState.open.values());
+        if (mView != null) {
+            mView.invalidate();
+        }
+    }
+
+    private Annotatable newStroke(int item) {
+        AnnotationsRecorder r = mRecording;
+        int begin = r.mBeginEvents[item];
+        UUID id = r.mIds.get(item);
+        AnnotationsPath path = new AnnotationsPath();
+        path.appendPoint(r.mXs[begin], r.mYs[begin]);
+        return newAnnotatable(id != null ? id : UUID.randomUUID(), path, item);
+    }
+
+    private Annotatable newAnnotatable(UUID id, AnnotationsPath path, int item) {
+        AnnotationsRecorder r = mRecording;
+        Annotatable annotatable = new Annotatable(id, AnnotationsView.Mode.Pen.toString(), path, r.mColors[item], r.mSizes[item],
+                r.mCanvasWidths[item], r.mCanvasHeights[item]);
+        annotatable.setType(Annotatable.AnnotatableType.PATH);
+        return annotatable;
+    }
+
+    private Annotatable newText(int item, float x, float y) {
+        AnnotationsRecorder r = mRecording;
+        Annotatable annotatable = new Annotatable(r.mIds.get(item), AnnotationsView.Mode.Text.toString(),
+                new AnnotationsText(r.mTexts.get(item), x, y), r.mColors[item], r.mSizes[item],
+                r.mCanvasWidths[item], r.mCanvasHeights[item]);
+        annotatable.setType(Annotatable.AnnotatableType.TEXT);
+        return annotatable;
+    }
+}
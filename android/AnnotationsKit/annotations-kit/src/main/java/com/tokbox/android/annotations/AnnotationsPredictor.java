@@ -0,0 +1,97 @@
+package com.tokbox.android.annotations;
+
+/**
+ * Predicts where the finger will be shortly after the last touch sample, so the stroke being drawn
+ * can be extended ahead of the samples received so far.
+ *
+ * The velocity is a least-squares fit over the samples of the last WINDOW_MS, which smooths the
+ * jitter of the touch sensor, and the prediction extrapolates it from the last sample. Samples
+ * are kept in a fixed ring, so adding one does not allocate.
+ */
+class AnnotationsPredictor {
+
+    //longest horizon allowed: further ahead, turns and stops overshoot more than the lag saved
+    static final long MAX_HORIZON_MS = 50;
+
+    private static final int MAX_SAMPLES = 8;
+    private static final long WINDOW_MS = 40;
+
+    private final long[] mTimes = new long[MAX_SAMPLES];
+    private final float[] mXs = new float[MAX_SAMPLES];
+    private final float[] mYs = new float[MAX_SAMPLES];
+    private int mCount = 0;
+    private int mLast = -1;
+
+    void reset() {
+        mCount = 0;
+        mLast = -1;
+    }
+
+    /*
+     * Adds a touch sample. Samples older than the last one are ignored.
+     * @param time Event time in milliseconds
+     */
+    void addSample(long time, float x, float y) {
+        if (mCount > 0 && time < mTimes[mLast]) {
+            return;
+        }
+        mLast = (mLast + 1) % MAX_SAMPLES;
+        mTimes[mLast] = time;
+        mXs[mLast] = x;
+        mYs[mLast] = y;
+        mCount = Math.min(mCount + 1, MAX_SAMPLES);
+    }
+
+    /*
+     * Predicts the position after the last sample. Returns false, leaving out unchanged, when
+     * there are not enough recent samples to estimate the velocity.
+     * @param horizon Milliseconds after the last sample, up to MAX_HORIZON_MS
+     * @param out x, y
+     */
+    boolean predict(long horizon, float[] out) {
+        if (mCount < 2) {
+            return false;
+        }
+        long lastTime = mTimes[mLast];
+        int count = 0;
+        float meanT = 0;
+        float meanX = 0;
+        float meanY = 0;
+        for (int i = 0; i < mCount; i++) {
+            int index = (mLast - i + MAX_SAMPLES) % MAX_SAMPLES;
+            float t = mTimes[index] - lastTime;
+            if (t < -WINDOW_MS) {
+                break;
+            }
+            meanT += t;
+            meanX += mXs[index];
+            meanY += mYs[index];
+            count++;
+        }
+        if (count < 2) {
+            return false;
+        }
+        meanT /= count;
+        meanX /= count;
+        meanY /= count;
+
+        float stt = 0;
+        float stx = 0;
+        float sty = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (mLast - i + MAX_SAMPLES) % MAX_SAMPLES;
+            float dt = mTimes[index] - lastTime - meanT;
+            stt += dt * dt;
+            stx += dt * (mXs[index] - meanX);
+            sty += dt * (mYs[index] - meanY);
+        }
+        if (stt == 0) {
+            //all the samples have the same time
+            return false;
+        }
+        float ahead = Math.min(Math.max(horizon, 0), MAX_HORIZON_MS);
+        out[0] = mXs[mLast] + stx / stt * ahead;
+        out[1] = mYs[mLast] + sty / stt * ahead;
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package com.tokbox.android.annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Records an annotations session with a timestamp for every stroke point, so that it can be
+ * reviewed afterwards with an AnnotationsPlayer.
+ *
+ * Events are kept in a compact columnar buffer (op, time, x, y, item) and the per-annotatable
+ * attributes (id, color, size, canvas size) in a separate item table, so a point costs 17 bytes.
+ * Times are stored in milliseconds relative to the first recorded event.
+ */
+public class AnnotationsRecorder {
+
+    static final byte OP_BEGIN = 1;
+    static final byte OP_POINT = 2;
+    static final byte OP_END = 3;
+    static final byte OP_TEXT = 4;
+    static final byte OP_REMOVE = 5;
+    static final byte OP_CLEAR = 6;
+
+    private static final int INITIAL_EVENTS = 1024;
+    private static final int INITIAL_ITEMS = 64;
+
+    //event columns
+    byte[] mOps = new byte[INITIAL_EVENTS];
+    int[] mTimes = new int[INITIAL_EVENTS];
+    float[] mXs = new float[INITIAL_EVENTS];
+    float[] mYs = new float[INITIAL_EVENTS];
+    int[] mItems = new int[INITIAL_EVENTS];
+    int mEventCount = 0;
+
+    //item table
+    int[] mColors = new int[INITIAL_ITEMS];
+    float[] mSizes = new float[INITIAL_ITEMS];
+    int[] mCanvasWidths = new int[INITIAL_ITEMS];
+    int[] mCanvasHeights = new int[INITIAL_ITEMS];
+    int[] mBeginEvents = new int[INITIAL_ITEMS];
+    final ArrayList<UUID> mIds = new ArrayList<UUID>();
+    final ArrayList<String> mTexts = new ArrayList<String>();
+    int mItemCount = 0;
+
+    private final HashMap<UUID, Integer> mItemsById = new HashMap<UUID, Integer>();
+    private long mStartTime = -1;
+    private int mCurrentStroke = -1;
+
+    /*
+     * Returns the time of the first recorded event, in the time base used by the caller, or -1.
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /*
+     * Returns the recorded duration in milliseconds
+     */
+    public long getDuration() {
+        return mEventCount > 0 ? mTimes[mEventCount - 1] : 0;
+    }
+
+    /*
+     * Returns the number of recorded events
+     */
+    public int getEventCount() {
+        return mEventCount;
+    }
+
+    /*
+     * Starts a new stroke at its first point.
+     * @param time Event time in milliseconds, e.g. MotionEvent.getEventTime()
+     */
+    public void beginStroke(long time, float x, float y, int color, float strokeWidth, int canvasWidth, int canvasHeight) {
+        mCurrentStroke = addItem(null, null, color, strokeWidth, canvasWidth, canvasHeight);
+        addEvent(OP_BEGIN, time, x, y, mCurrentStroke);
+    }
+
+    /*
+     * Adds an accepted control point to the current stroke.
+     */
+    public void addPoint(long time, float x, float y) {
+        if (mCurrentStroke >= 0) {
+            addEvent(OP_POINT, time, x, y, mCurrentStroke);
+        }
+    }
+
+    /*
+     * Ends the current stroke.
+     * @param id Id of the Annotatable the stroke has been committed as
+     */
+    public void endStroke(long time, UUID id) {
+        if (mCurrentStroke >= 0) {
+            mIds.set(mCurrentStroke, id);
+            mItemsById.put(id, mCurrentStroke);
+            addEvent(OP_END, time, 0, 0, mCurrentStroke);
+            mCurrentStroke = -1;
+        }
+    }
+
+    /*
+     * Drops the current stroke, e.g. when it turns out to be the first finger of a pinch: none of
+     * its events are played back.
+     */
+    public void cancelStroke() {
+        if (mCurrentStroke >= 0) {
+            //the stroke's events are the last ones but for anything recorded while it was drawn
+            int count = mBeginEvents[mCurrentStroke];
+            for (int i = count; i < mEventCount; i++) {
+                if (mItems[i] != mCurrentStroke) {
+                    mOps[count] = mOps[i];
+                    mTimes[count] = mTimes[i];
+                    mXs[count] = mXs[i];
+                    mYs[count] = mYs[i];
+                    mItems[count] = mItems[i];
+                    count++;
+                }
+            }
+            mEventCount = count;
+            if (mCurrentStroke == mItemCount - 1) {
+                mItemCount--;
+                mIds.remove(mItemCount);
+                mTexts.remove(mItemCount);
+            }
+            if (mEventCount == 0) {
+                mStartTime = -1;
+            }
+            mCurrentStroke = -1;
+        }
+    }
+
+    /*
+     * Adds a committed text annotation.
+     */
+    public void addText(long time, UUID id, String text, float x, float y, int color, float textSize, int canvasWidth, int canvasHeight) {
+        int item = addItem(id, text, color, textSize, canvasWidth, canvasHeight);
+        mItemsById.put(id, item);
+        addEvent(OP_TEXT, time, x, y, item);
+    }
+
+    /*
+     * Records the erase of a previously recorded annotatable.
+     */
+    public void remove(long time, UUID id) {
+        Integer item = mItemsById.get(id);
+        if (item != null) {
+            addEvent(OP_REMOVE, time, 0, 0, item);
+        }
+    }
+
+    /*
+     * Records the removal of all the annotatables.
+     */
+    public void clear(long time) {
+        addEvent(OP_CLEAR, time, 0, 0, -1);
+    }
+
+    private int addItem(UUID id, String text, int color, float size, int canvasWidth, int canvasHeight) {
+        if (mItemCount == mColors.length) {
+            int capacity = mItemCount * 2;
+            mColors = Arrays.copyOf(mColors, capacity);
+            mSizes = Arrays.copyOf(mSizes, capacity);
+            mCanvasWidths = Arrays.copyOf(mCanvasWidths, capacity);
+            mCanvasHeights = Arrays.copyOf(mCanvasHeights, capacity);
+            mBeginEvents = Arrays.copyOf(mBeginEvents, capacity);
+        }
+        mColors[mItemCount] = color;
+        mSizes[mItemCount] = size;
+        mCanvasWidths[mItemCount] = canvasWidth;
+        mCanvasHeights[mItemCount] = canvasHeight;
+        mBeginEvents[mItemCount] = mEventCount;
+        mIds.add(id);
+        mTexts.add(text);
+        return mItemCount++;
+    }
+
+    private void addEvent(byte op, long time, float x, float y, int item) {
+        if (mStartTime < 0) {
+            mStartTime = time;
+        }
+        if (mEventCount == mOps.length) {
+            int capacity = mEventCount * 2;
+            mOps = Arrays.copyOf(mOps, capacity);
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mXs = Arrays.copyOf(mXs, capacity);
+            mYs = Arrays.copyOf(mYs, capacity);
+            mItems = Arrays.copyOf(mItems, capacity);
+        }
+        //events are kept in time order even if the caller mixes clocks
+        int relative = (int) Math.max(time - mStartTime, mEventCount > 0 ? mTimes[mEventCount - 1] : 0);
+        mOps[mEventCount] = op;
+        mTimes[mEventCount] = relative;
+        mXs[mEventCount] = x;
+        mYs[mEventCount] = y;
+        mItems[mEventCount] = item;
+        mEventCount++;
+    }
+}
@@ -0,0 +1,123 @@
+package com.tokbox.android.annotations;
+
+/**
+ * Pointer of a remote participant, moved smoothly between the few positions it sends per second.
+ *
+ * The pointer is drawn a fixed delay behind the positions received, a bit longer than the send
+ * interval, so that there is nearly always a received position on each side of the time drawn and
+ * the pointer can be interpolated on every frame. The send times are mapped to local time with the
+ * longest network delay seen so far, so a late signal is never scheduled before it was received.
+ */
+class AnnotationsRemoteCursor {
+
+    private static final int CAPACITY = 8;
+
+    private final long mDelay;
+    private final long[] mTimes = new long[CAPACITY];
+    private final float[] mXs = new float[CAPACITY];
+    private final float[] mYs = new float[CAPACITY];
+    private final boolean[] mHidden = new boolean[CAPACITY];
+    private int mLast = -1;
+    private int mCount = 0;
+    private long mOffset = Long.MIN_VALUE;
+    private long mLastSendTime;
+
+    //trail drawn in the canvas, fed with the interpolated positions
+    private final AnnotationsLaserTrail mTrail = new AnnotationsLaserTrail();
+    private final float[] mPosition = new float[2];
+    private boolean mVisible = false;
+
+    /*
+     * Constructor
+     * @param delay Milliseconds the pointer is drawn behind the received positions
+     */
+    AnnotationsRemoteCursor(long delay) {
+        this.mDelay = delay;
+    }
+
+    /*
+     * Adds a received position. Positions older than the last one are ignored.
+     * @param receiveTime Local time the signal was received, in milliseconds
+     * @param sendTime Time the position was sent, in the time base of the sender
+     * @param x Position relative to the canvas width, ignored if hidden
+     * @param y Position relative to the canvas height, ignored if hidden
+     * @param hidden Whether the pointer was hidden
+     */
+    void addSample(long receiveTime, long sendTime, float x, float y, boolean hidden) {
+        if (mCount > 0 && sendTime <= mLastSendTime) {
+            return;
+        }
+        mLastSendTime = sendTime;
+        long offset = receiveTime - sendTime;
+        if (mOffset == Long.MIN_VALUE || offset > mOffset) {
+            //never schedule a position before it was received
+            mOffset = offset;
+        }
+        long time = sendTime + mOffset;
+        mLast = (mLast + 1) % CAPACITY;
+        mTimes[mLast] = time;
+        mXs[mLast] = x;
+        mYs[mLast] = y;
+        mHidden[mLast] = hidden;
+        mCount = Math.min(mCount + 1, CAPACITY);
+    }
+
+    /*
+     * Returns the position to draw at a time, interpolated between the received positions.
+     * Returns false if the pointer is hidden or not shown yet.
+     * @param now Local time in milliseconds
+     * @param out x, y relative to the canvas size
+     */
+    boolean getPosition(long now, float[] out) {
+        long time = now - mDelay;
+        for (int i = 0; i < mCount; i++) {
+            int index = (mLast - i + CAPACITY) % CAPACITY;
+            if (mTimes[index] > time) {
+                continue;
+            }
+            if (mHidden[index]) {
+                return false;
+            }
+            out[0] = mXs[index];
+            out[1] = mYs[index];
+            if (i > 0) {
+                int next = (index + 1) % CAPACITY;
+                if (!mHidden[next]) {
+                    float f = (float) (time - mTimes[index]) / (mTimes[next] - mTimes[index]);
+                    out[0] += (mXs[next] - mXs[index]) * f;
+                    out[1] += (mYs[next] - mYs[index]) * f;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Moves the trail to the position of a frame. Returns whether the pointer is still moving or
+     * fading, so that more frames are needed.
+     * @param now Frame time in milliseconds
+     * @param width Width of the canvas
+     * @param height Height of the canvas
+     */
+    boolean update(long now, int width, int height) {
+        float x = mPosition[0];
+        float y = mPosition[1];
+        if (getPosition(now, mPosition)) {
+            //a pointer at rest fades out, like a local one
+            if (!mVisible || x != mPosition[0] || y != mPosition[1]) {
+                mTrail.add(now, mPosition[0] * width, mPosition[1] * height);
+            }
+            mVisible = true;
+        } else if (mVisible) {
+            mTrail.lift();
+            mVisible = false;
+        }
+        boolean receiving = mCount > 0 && now - mDelay <= mTimes[mLast];
+        return receiving || mTrail.getVisibleCount(now) > 0;
+    }
+
+    AnnotationsLaserTrail getTrail() {
+        return mTrail;
+    }
+}
@@ -0,0 +1,32 @@
+package com.tokbox.android.annotations;
+
+import java.util.List;
+
+/**
+ * Draws the annotatable model on a rendering backend.
+ *
+ * AnnotationsView draws through AnnotationsCanvasRenderer. Other backends, like a Java2D
+ * raster, only read the model (control points, text, color and size), so the rendering can be
+ * tested and profiled on a desktop JVM.
+ */
+abstract class AnnotationsRenderer {
+
+    /*
+     * Draws the annotatables in order, the last one on top.
+     * @param annotatables The annotatables
+     */
+    void render(List<Annotatable> annotatables) {
+        for (int i = 0; i < annotatables.size(); i++) {
+            Annotatable annotatable = annotatables.get(i);
+            if (annotatable.getPath() != null) {
+                drawPath(annotatable);
+            } else if (annotatable.getText() != null) {
+                drawText(annotatable);
+            }
+        }
+    }
+
+    abstract void drawPath(Annotatable annotatable);
+
+    abstract void drawText(Annotatable annotatable);
+}
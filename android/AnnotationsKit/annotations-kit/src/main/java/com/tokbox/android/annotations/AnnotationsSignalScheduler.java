@@ -0,0 +1,149 @@
+package com.tokbox.android.annotations;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outbound signals of the annotations, sent within the signal rate limit of the connection.
+ *
+ * A token bucket allows bursts of up to burst signals, refilled at the rate limit. When there are
+ * no tokens left, signals wait in two queues:
+ * - operations (stroke end, erase, clear...) are never dropped, and are sent first, in order;
+ * - updates (pointer positions...) have a key, and a new update replaces the pending update with
+ *   the same key, so under pressure only the latest state of each key is sent.
+ *
+ * The caller owns the timing: every call returns when flush() must be called next.
+ */
+public class AnnotationsSignalScheduler {
+
+    static final int DEFAULT_RATE_PER_SECOND = 20;
+    static final int DEFAULT_BURST = 10;
+
+    /**
+     * Sends a signal to the other participants, e.g. through the session
+     */
+    public interface SignalSender {
+        void sendSignal(String type, String data);
+    }
+
+    private final SignalSender mSender;
+    private double mTokensPerMs;
+    private int mBurst;
+    private double mTokens;
+    private long mRefillTime = Long.MIN_VALUE;
+
+    private final ArrayDeque<String[]> mOperations = new ArrayDeque<String[]>();
+    //in the order of their first update
+    private final LinkedHashMap<String, String[]> mUpdates = new LinkedHashMap<String, String[]>();
+
+    private long mSentCount = 0;
+    private long mCoalescedCount = 0;
+
+    /*
+     * Constructor
+     * @param sender Sends the signals
+     * @param ratePerSecond Signals per second allowed for the connection
+     * @param burst Signals that can be sent at once after a quiet period
+     */
+    public AnnotationsSignalScheduler(SignalSender sender, int ratePerSecond, int burst) {
+        this.mSender = sender;
+        setRate(ratePerSecond, burst);
+        this.mTokens = burst;
+    }
+
+    public AnnotationsSignalScheduler(SignalSender sender) {
+        this(sender, DEFAULT_RATE_PER_SECOND, DEFAULT_BURST);
+    }
+
+    /*
+     * Set the rate limit. The signals already queued are sent within the new limit.
+     * @param ratePerSecond Signals per second allowed for the connection
+     * @param burst Signals that can be sent at once after a quiet period
+     */
+    public void setRate(int ratePerSecond, int burst) {
+        mTokensPerMs = ratePerSecond / 1000.0;
+        mBurst = burst;
+        mTokens = Math.min(mTokens, burst);
+    }
+
+    /*
+     * Queues an operation, sent after the operations queued before it and never dropped.
+     * Returns the milliseconds until flush() must be called, or -1.
+     * @param now Time in milliseconds
+     */
+    public long sendOperation(long now, String type, String data) {
+        mOperations.add(new String[]{type, data});
+        return flush(now);
+    }
+
+    /*
+     * Queues an update, replacing the pending update with the same key.
+     * Returns the milliseconds until flush() must be called, or -1.
+     * @param now Time in milliseconds
+     * @param key What the update is about, e.g. the pointer
+     */
+    public long sendUpdate(long now, String key, String type, String data) {
+        if (mUpdates.put(key, new String[]{type, data}) != null) {
+            mCoalescedCount++;
+        }
+        return flush(now);
+    }
+
+    /*
+     * Sends the queued signals the rate limit allows. Returns the milliseconds until it must be
+     * called again, or -1 when nothing is pending.
+     * @param now Time in milliseconds
+     */
+    public long flush(long now) {
+        refill(now);
+        while (mTokens >= 1 && !mOperations.isEmpty()) {
+            send(mOperations.poll());
+        }
+        Iterator<Map.Entry<String, String[]>> updates = mUpdates.entrySet().iterator();
+        while (mTokens >= 1 && mOperations.isEmpty() && updates.hasNext()) {
+            String[] update = updates.next().getValue();
+            updates.remove();
+            send(update);
+        }
+        if (getPendingCount() == 0) {
+            return -1;
+        }
+        return Math.max(1, (long) Math.ceil((1 - mTokens) / mTokensPerMs));
+    }
+
+    /*
+     * Returns the number of queued signals. Producers of updates can send less often while it
+     * grows.
+     */
+    public int getPendingCount() {
+        return mOperations.size() + mUpdates.size();
+    }
+
+    public long getSentCount() {
+        return mSentCount;
+    }
+
+    /*
+     * Returns the number of updates replaced by a newer update before being sent
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    private void refill(long now) {
+        if (mRefillTime != Long.MIN_VALUE && now > mRefillTime) {
+            mTokens = Math.min(mBurst, mTokens + (now - mRefillTime) * mTokensPerMs);
+        }
+        if (mRefillTime == Long.MIN_VALUE || now > mRefillTime) {
+            mRefillTime = now;
+        }
+    }
+
+    private void send(String[] signal) {
+        mTokens -= 1;
+        mSentCount++;
+        mSender.sendSignal(signal[0], signal[1]);
+    }
+}
@@ -1,16 +1,18 @@
 package com.tokbox.android.annotations;
 
+import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.util.Log;
-import android.view.View;
-import android.widget.EditText;
+import android.graphics.RectF;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 
 import java.util.UUID;
 
-public class AnnotationsText implements View.OnClickListener{
+public class AnnotationsText {
 
     private UUID id;
-    EditText editText;
+    private final String text;
 
     public float getX() {
         return x;
@@ -20,26 +22,101 @@ public class AnnotationsText implements View.OnClickListener{
         return y;
     }
 
-    //String text;
-    float x, y;
+    final float x, y;
 
-    AnnotationsText(EditText editText, float x, float y) {
-        this.id = UUID.randomUUID();
-        this.editText = editText;
+    //layout of the text, keyed on the wrapping width and the paint it was built with
+    private StaticLayout layout;
+    private int layoutWidth;
+    private float layoutTextSize;
+    private int layoutColor;
+    private float layoutLineWidth;
+
+    AnnotationsText(String text, float x, float y) {
+        this.text = text != null ? text : "";
         this.x = x;
         this.y = y;
     }
 
     public UUID getId() {
+        if (id == null) {
+            id = UUID.randomUUID();
+        }
         return id;
     }
 
-    @Override
-    public void onClick(View v) {
-        Log.i("MARINAS", "ONCLICK ANNOTATIONSTEXT");
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the layout of the text wrapped to the given width. The text never changes, so the
+     * layout is built once and reused until the width, the text size or the color change.
+     *
+     * @param paint Text paint
+     * @param width Wrapping width, or 0 to lay the text out on a single line
+     */
+    synchronized StaticLayout getLayout(Paint paint, int width) {
+        if (layout == null || layoutWidth != width || layoutTextSize != paint.getTextSize() || layoutColor != paint.getColor()) {
+            TextPaint textPaint = new TextPaint(paint);
+            int wrapWidth = width > 0 ? width : (int) Math.ceil(Layout.getDesiredWidth(text, textPaint));
+            layout = new StaticLayout(text, textPaint, Math.max(1, wrapWidth), Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+            layoutWidth = width;
+            layoutTextSize = paint.getTextSize();
+            layoutColor = paint.getColor();
+
+            layoutLineWidth = 0;
+            for (int i = 0; i < layout.getLineCount(); i++) {
+                layoutLineWidth = Math.max(layoutLineWidth, layout.getLineWidth(i));
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Computes the bounds of the wrapped text, as drawn by draw(), without allocating.
+     */
+    void getBounds(Paint paint, int canvasWidth, RectF bounds) {
+        getBounds(paint, canvasWidth, null, bounds);
+    }
+
+    /**
+     * Computes the bounds of the text drawn at its position mapped to a canvas of another size.
+     *
+     * @param transform scale, offset x, offset y, see Annotatable.getTransform(); null if not mapped
+     */
+    synchronized void getBounds(Paint paint, int canvasWidth, float[] transform, RectF bounds) {
+        float left = mapX(transform);
+        StaticLayout textLayout = getLayout(paint, Math.max(0, canvasWidth - (int) left));
+        float top = mapY(transform) - textLayout.getLineBaseline(0);
+        bounds.set(left, top, left + layoutLineWidth, top + textLayout.getHeight());
+    }
+
+    /**
+     * Draws the text with its first baseline at (x, y), wrapped at the right edge of the canvas.
+     */
+    void draw(Canvas canvas, Paint paint, int canvasWidth) {
+        draw(canvas, paint, canvasWidth, null);
+    }
+
+    /**
+     * Draws the text at its position mapped to a canvas of another size. The text size is kept.
+     *
+     * @param transform scale, offset x, offset y, see Annotatable.getTransform(); null if not mapped
+     */
+    void draw(Canvas canvas, Paint paint, int canvasWidth, float[] transform) {
+        float left = mapX(transform);
+        StaticLayout textLayout = getLayout(paint, Math.max(0, canvasWidth - (int) left));
+        int saveCount = canvas.save();
+        canvas.translate(left, mapY(transform) - textLayout.getLineBaseline(0));
+        textLayout.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private float mapX(float[] transform) {
+        return transform != null ? x * transform[0] + transform[1] : x;
     }
 
-    public EditText getEditText() {
-        return editText;
+    private float mapY(float[] transform) {
+        return transform != null ? y * transform[0] + transform[2] : y;
     }
 }
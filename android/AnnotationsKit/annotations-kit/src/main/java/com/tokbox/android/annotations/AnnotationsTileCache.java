@@ -0,0 +1,433 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Raster cache of the annotation layer, split in fixed-size tiles, so the redraw cost depends on
+ * the visible area rather than on the size of the board.
+ *
+ * Tiles are rasterized on demand, on a background thread, from a snapshot of the annotatables,
+ * and kept in an LRU cache bounded by a byte budget. When annotatables are added or removed, only
+ * the tiles under them are dropped. A tile is rasterized at the power-of-two scale at or above the
+ * zoom and drawn scaled to it, so a pinch does not rasterize the tiles again at every step.
+ * Visible tiles not rasterized yet are drawn from the vectors, clipped to the tile.
+ *
+ * The cache is used from the main thread; only the rasterization runs on the background thread.
+ */
+public class AnnotationsTileCache {
+
+    static final int TILE_SIZE = 256;
+    static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+    static final int MIN_LEVEL = -3;
+    static final int MAX_LEVEL = 3;
+    //evicted bitmaps kept for the next tiles
+    private static final int MAX_FREE_BITMAPS = 4;
+
+    private final long mMaxBytes;
+    private final Runnable mTileListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    private final LinkedHashMap<Long, Bitmap> mTiles = new LinkedHashMap<Long, Bitmap>(16, 0.75f, true);
+    //tiles being rasterized, with the version of the annotatables they are rasterized from
+    private final HashMap<Long, Integer> mPending = new HashMap<Long, Integer>();
+    private final ArrayList<Bitmap> mFreeBitmaps = new ArrayList<Bitmap>();
+
+    private Annotatable[] mAnnotations = new Annotatable[0];
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private int mContentWidth = 0;
+    private int mContentHeight = 0;
+    private boolean mFit = true;
+    private int mVersion = 0;
+
+    //main thread drawing
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final AnnotationsCanvasRenderer mRenderer = new AnnotationsCanvasRenderer();
+    private final ArrayList<Annotatable> mVisible = new ArrayList<Annotatable>();
+    private final RectF mTileRect = new RectF();
+    private final float[] mBounds = new float[4];
+
+    //background thread rasterization
+    private final AnnotationsCanvasRenderer mTileRenderer = new AnnotationsCanvasRenderer();
+    private final ArrayList<Annotatable> mTileAnnotatables = new ArrayList<Annotatable>();
+    private final float[] mTileBounds = new float[4];
+    private Canvas mTileCanvas;
+
+    /*
+     * Constructor
+     * @param maxBytes Memory cap of the rasterized tiles
+     * @param tileListener Run on the main thread when a tile is ready to be drawn
+     */
+    AnnotationsTileCache(long maxBytes, Runnable tileListener) {
+        this.mMaxBytes = maxBytes;
+        this.mTileListener = tileListener;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public int getTileCount() {
+        return mTiles.size();
+    }
+
+    /*
+     * Returns the bytes held by the tiles and by the bitmaps kept for reuse
+     */
+    public long getMemoryUsage() {
+        synchronized (mFreeBitmaps) {
+            return (long) (mTiles.size() + mFreeBitmaps.size()) * TILE_BYTES;
+        }
+    }
+
+    /*
+     * Drops every tile, they are rasterized again when drawn
+     */
+    public void clear() {
+        for (Bitmap bitmap : mTiles.values()) {
+            recycle(bitmap);
+        }
+        mTiles.clear();
+        mPending.clear();
+        synchronized (mFreeBitmaps) {
+            for (Bitmap bitmap : mFreeBitmaps) {
+                recycle(bitmap);
+            }
+            mFreeBitmaps.clear();
+        }
+    }
+
+    /*
+     * Releases at least the given bytes if possible: the bitmaps kept for reuse, then the least
+     * recently drawn tiles. Returns the bytes released.
+     * @param bytes Bytes to release
+     */
+    public long trim(long bytes) {
+        long released = 0;
+        synchronized (mFreeBitmaps) {
+            while (released < bytes && !mFreeBitmaps.isEmpty()) {
+                recycle(mFreeBitmaps.remove(mFreeBitmaps.size() - 1));
+                released += TILE_BYTES;
+            }
+        }
+        Iterator<Bitmap> eldest = mTiles.values().iterator();
+        while (released < bytes && eldest.hasNext()) {
+            recycle(eldest.next());
+            eldest.remove();
+            released += TILE_BYTES;
+        }
+        return released;
+    }
+
+    /*
+     * Drops the tiles and stops the background thread, which is started again by the next draw
+     */
+    void release() {
+        if (mThread != null) {
+            mThread.quit();
+            mThread = null;
+            mHandler = null;
+        }
+        clear();
+    }
+
+    /*
+     * Set the video shown under the annotations, see Annotatable.getTransform(). Every tile is
+     * dropped if it changed.
+     * @param width Width of the video, 0 if unknown
+     * @param height Height of the video, 0 if unknown
+     * @param fit Whether the video fits in the view, rather than filling it
+     */
+    void setContent(int width, int height, boolean fit) {
+        if (width != mContentWidth || height != mContentHeight || fit != mFit) {
+            clear();
+            mContentWidth = width;
+            mContentHeight = height;
+            mFit = fit;
+            mRenderer.setContent(width, height, fit);
+            mVersion++;
+        }
+    }
+
+    /*
+     * Set the annotatables to draw. The tiles under the annotatables added or removed since the
+     * last call are dropped, or every tile if the canvas size changed.
+     * @param annotations The annotatables, never modified afterwards
+     * @param width Width of the canvas
+     * @param height Height of the canvas
+     */
+    void setAnnotations(Annotatable[] annotations, int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            clear();
+        } else {
+            Set<Annotatable> previous = Collections.newSetFromMap(new IdentityHashMap<Annotatable, Boolean>());
+            Collections.addAll(previous, mAnnotations);
+            Set<Annotatable> current = Collections.newSetFromMap(new IdentityHashMap<Annotatable, Boolean>());
+            Collections.addAll(current, annotations);
+            for (Annotatable annotatable : annotations) {
+                if (!previous.contains(annotatable)) {
+                    invalidate(annotatable, width, height);
+                }
+            }
+            for (Annotatable annotatable : mAnnotations) {
+                if (!current.contains(annotatable)) {
+                    invalidate(annotatable, width, height);
+                }
+            }
+        }
+        mAnnotations = annotations;
+        mWidth = width;
+        mHeight = height;
+        mVersion++;
+    }
+
+    //drops the tiles under an annotatable, and the pending ones so they are requested again
+    private void invalidate(Annotatable annotatable, int width, int height) {
+        annotatable.getBounds(width, height, mContentWidth, mContentHeight, mFit, mBounds);
+        Iterator<Map.Entry<Long, Bitmap>> tiles = mTiles.entrySet().iterator();
+        while (tiles.hasNext()) {
+            Map.Entry<Long, Bitmap> tile = tiles.next();
+            if (intersects(tile.getKey(), mBounds)) {
+                freeBitmap(tile.getValue());
+                tiles.remove();
+            }
+        }
+        Iterator<Long> pending = mPending.keySet().iterator();
+        while (pending.hasNext()) {
+            if (intersects(pending.next(), mBounds)) {
+                pending.remove();
+            }
+        }
+    }
+
+    /*
+     * Draws the visible part of the annotation layer. The canvas is in the coordinates of the
+     * annotatables, zoomed and panned by the view.
+     * @param canvas The canvas
+     * @param zoom Zoom of the view
+     * @param panX Pan of the view
+     * @param panY Pan of the view
+     */
+    void draw(Canvas canvas, float zoom, float panX, float panY) {
+        int level = getLevel(zoom);
+        float size = getTileCanvasSize(level);
+        float left = Math.max(0, -panX / zoom);
+        float top = Math.max(0, -panY / zoom);
+        float right = Math.min(mWidth, (mWidth - panX) / zoom);
+        float bottom = Math.min(mHeight, (mHeight - panY) / zoom);
+        int firstColumn = (int) Math.floor(left / size);
+        int lastColumn = (int) Math.ceil(right / size) - 1;
+        int firstRow = (int) Math.floor(top / size);
+        int lastRow = (int) Math.ceil(bottom / size) - 1;
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                long key = getKey(level, column, row);
+                mTileRect.set(column * size, row * size, (column + 1) * size, (row + 1) * size);
+                Bitmap tile = mTiles.get(key);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, mTileRect, mTilePaint);
+                } else {
+                    request(key, level, column, row);
+                    drawVectors(canvas, zoom);
+                }
+            }
+        }
+    }
+
+    //the annotatables under the tile rect, clipped to it
+    private void drawVectors(Canvas canvas, float zoom) {
+        mVisible.clear();
+        for (Annotatable annotatable : mAnnotations) {
+            annotatable.getBounds(mWidth, mHeight, mContentWidth, mContentHeight, mFit, mBounds);
+            if (intersects(mTileRect.left, mTileRect.top, mTileRect.right, mTileRect.bottom, mBounds)) {
+                mVisible.add(annotatable);
+            }
+        }
+        if (mVisible.isEmpty()) {
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.clipRect(mTileRect.left, mTileRect.top, mTileRect.right, mTileRect.bottom);
+        mRenderer.setCanvas(canvas, mWidth, mHeight);
+        mRenderer.setLevel(AnnotationsPath.getLevelForScale(zoom));
+        mRenderer.render(mVisible);
+        mRenderer.setCanvas(null, 0, 0);
+        canvas.restoreToCount(saveCount);
+        mVisible.clear();
+    }
+
+    private void request(final long key, final int level, final int column, final int row) {
+        if (mPending.containsKey(key)) {
+            return;
+        }
+        final int version = mVersion;
+        mPending.put(key, version);
+        if (mHandler == null) {
+            mThread = new HandlerThread("AnnotationsTiles");
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+        final Annotatable[] annotations = mAnnotations;
+        final int width = mWidth;
+        final int height = mHeight;
+        final int contentWidth = mContentWidth;
+        final int contentHeight = mContentHeight;
+        final boolean fit = mFit;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = rasterize(level, column, row, annotations, width, height,
+                        contentWidth, contentHeight, fit);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Integer pending = mPending.get(key);
+                        if (pending == null || pending != version) {
+                            //dropped or requested again since
+                            freeBitmap(bitmap);
+                            return;
+                        }
+                        mPending.remove(key);
+                        putTile(key, bitmap);
+                        mTileListener.run();
+                    }
+                });
+            }
+        });
+    }
+
+    //on the background thread
+    private Bitmap rasterize(int level, int column, int row, Annotatable[] annotations, int width, int height,
+                             int contentWidth, int contentHeight, boolean fit) {
+        Bitmap bitmap = obtainBitmap();
+        float scale = getScale(level);
+        float size = getTileCanvasSize(level);
+        float left = column * size;
+        float top = row * size;
+
+        mTileAnnotatables.clear();
+        for (Annotatable annotatable : annotations) {
+            annotatable.getBounds(width, height, contentWidth, contentHeight, fit, mTileBounds);
+            if (intersects(left, top, left + size, top + size, mTileBounds)) {
+                mTileAnnotatables.add(annotatable);
+            }
+        }
+        if (mTileCanvas == null) {
+            mTileCanvas = new Canvas();
+        }
+        mTileCanvas.setBitmap(bitmap);
+        int saveCount = mTileCanvas.save();
+        mTileCanvas.scale(scale, scale);
+        mTileCanvas.translate(-left, -top);
+        mTileRenderer.setCanvas(mTileCanvas, width, height);
+        mTileRenderer.setContent(contentWidth, contentHeight, fit);
+        mTileRenderer.setLevel(AnnotationsPath.getLevelForScale(scale));
+        mTileRenderer.render(mTileAnnotatables);
+        mTileRenderer.setCanvas(null, 0, 0);
+        mTileCanvas.restoreToCount(saveCount);
+        mTileCanvas.setBitmap(null);
+        mTileAnnotatables.clear();
+        return bitmap;
+    }
+
+    /*
+     * Adds a rasterized tile, evicting the least recently drawn tiles over the budget
+     */
+    void putTile(long key, Bitmap bitmap) {
+        freeBitmap(mTiles.put(key, bitmap));
+        Iterator<Bitmap> eldest = mTiles.values().iterator();
+        while ((long) mTiles.size() * TILE_BYTES > mMaxBytes && eldest.hasNext()) {
+            freeBitmap(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    boolean hasTile(long key) {
+        return mTiles.containsKey(key);
+    }
+
+    private Bitmap obtainBitmap() {
+        synchronized (mFreeBitmaps) {
+            if (!mFreeBitmaps.isEmpty()) {
+                Bitmap bitmap = mFreeBitmaps.remove(mFreeBitmaps.size() - 1);
+                bitmap.eraseColor(0);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    //an evicted tile is not drawn anymore, so the background thread can reuse it
+    private void freeBitmap(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (mFreeBitmaps) {
+            if (mFreeBitmaps.size() < MAX_FREE_BITMAPS) {
+                mFreeBitmaps.add(bitmap);
+                return;
+            }
+        }
+        recycle(bitmap);
+    }
+
+    private static void recycle(Bitmap bitmap) {
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    /*
+     * Returns the tile level of a zoom: the smallest power of two at or above it
+     */
+    static int getLevel(float zoom) {
+        int level = MIN_LEVEL;
+        while (level < MAX_LEVEL && getScale(level) < zoom) {
+            level++;
+        }
+        return level;
+    }
+
+    static float getScale(int level) {
+        return level >= 0 ? 1 << level : 1f / (1 << -level);
+    }
+
+    //side of a tile in the coordinates of the annotatables
+    static float getTileCanvasSize(int level) {
+        return TILE_SIZE / getScale(level);
+    }
+
+    static long getKey(int level, int column, int row) {
+        return ((long) (level - MIN_LEVEL) << 48) | ((long) (column & 0xffffff) << 24) | (row & 0xffffff);
+    }
+
+    private static boolean intersects(long key, float[] bounds) {
+        int level = (int) (key >>> 48) + MIN_LEVEL;
+        int column = (int) (key >>> 24) & 0xffffff;
+        int row = (int) key & 0xffffff;
+        float size = getTileCanvasSize(level);
+        return intersects(column * size, row * size, (column + 1) * size, (row + 1) * size, bounds);
+    }
+
+    private static boolean intersects(float left, float top, float right, float bottom, float[] bounds) {
+        return bounds[0] < right && left < bounds[2] && bounds[1] < bottom && top < bounds[3];
+    }
+}
@@ -20,6 +20,7 @@ public class AnnotationsToolbar extends LinearLayout {
 
     private View rootView;
     private ImageButton mFreeHandBtn;
+    private ImageButton mLaserBtn;
     private ImageButton mEraseBtn;
     private ImageButton mTypeBtn;
     private ImageButton mScreenshotBtn;
@@ -95,6 +96,7 @@ public class AnnotationsToolbar extends LinearLayout {
         mColorToolbar = (LinearLayout) rootView.findViewById(R.id.color_toolbar);
         mColorScrollView = (HorizontalScrollView) rootView.findViewById(R.id.color_view);
         mFreeHandBtn = (ImageButton) mMainToolbar.findViewById(R.id.draw_freehand);
+        mLaserBtn = (ImageButton) mMainToolbar.findViewById(R.id.laser_pointer);
         mPickerColorBtn = (ImageButton) mMainToolbar.findViewById(R.id.picker_color);
         mTypeBtn = (ImageButton) mMainToolbar.findViewById(R.id.type_tool);
         mScreenshotBtn = (ImageButton) mMainToolbar.findViewById(R.id.screenshot);
@@ -114,6 +116,7 @@ public class AnnotationsToolbar extends LinearLayout {
 
         //Init actions
         mFreeHandBtn.setOnClickListener(mActionsClickListener);
+        mLaserBtn.setOnClickListener(mActionsClickListener);
         mTypeBtn.setOnClickListener(mActionsClickListener);
         mEraseBtn.setOnClickListener(mActionsClickListener);
         mScreenshotBtn.setOnClickListener(mActionsClickListener);
@@ -1,21 +1,22 @@
 package com.tokbox.android.annotations;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Point;
 import android.graphics.PointF;
-import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build;
+import android.os.SystemClock;
 import android.text.Editable;
-import android.text.TextPaint;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.Display;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
@@ -28,12 +29,17 @@ import android.widget.EditText;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import com.opentok.android.Connection;
+import com.opentok.android.Session;
 import com.tokbox.android.accpack.AccPackSession;
 import com.tokbox.android.annotations.config.OpenTokConfig;
 import com.tokbox.android.annotations.utils.*;
-import com.tokbox.android.logging.OTKAnalytics;
-import com.tokbox.android.logging.OTKAnalyticsData;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 
@@ -42,13 +48,33 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
     private AnnotationsPath mCurrentPath = null;
     private AnnotationsText mCurrentText = null;
     private Paint mCurrentPaint;
+    private Paint mCurrentTextPaint;
+    private EditText mTextEditor;
+    private Paint mTextBorderPaint;
+    private final RectF mTextBounds = new RectF();
 
     private AnnotationsVideoRenderer videoRenderer;
+    private AnnotationsCompositingCapturer mCompositingCapturer;
+    private AnnotationsTileCache mTileCache;
+    private AnnotationsMemoryBudget mMemoryBudget;
+    private boolean mMemoryBudgetAttached = false;
 
     private int mCurrentColor = 0;
     private AnnotationsManager mAnnotationsManager;
 
-    private static final float TOLERANCE = 5;
+    static final float TOLERANCE = 5;
+    private static final int TEXT_EDITOR_WIDTH = 200;
+    private static final int TEXT_EDITOR_HEIGHT = 70;
+    private static final int TEXT_BORDER_PADDING = 10;
+    private static final float LASER_WIDTH = 12;
+    private static final int REMOTE_CURSOR_COLOR = 0xff2196f3;
+    //frames between the draw of a committed stroke and the clear of its ink
+    private static final int INK_CLEAR_FRAMES = 2;
+
+    //names of the consumers of the memory budget
+    public static final String MEMORY_SCREENSHOTS = "annotations:screenshots";
+    public static final String MEMORY_TILES = "annotations:tiles";
+    public static final String MEMORY_FRAMES = "annotations:frames";
 
     private int width;
     private int height;
@@ -69,8 +95,50 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
     private AccPackSession mSession;
     private String mPartnerId;
 
-    private OTKAnalyticsData mAnalyticsData;
-    private OTKAnalytics mAnalytics;
+    private AnnotationsAnalytics mAnalyticsEvents;
+
+    private int mDisplayWidth = -1;
+    private int mDisplayContentHeight;
+
+    private AnnotationsRecorder mRecorder;
+
+    private final AnnotationsMetrics mMetrics = new AnnotationsMetrics();
+    private final AnnotationsCanvasRenderer mCanvasRenderer = new AnnotationsCanvasRenderer();
+    private Annotatable[] mAnnotationsSnapshot = new Annotatable[0];
+    private int mSnapshotWidth = 0;
+    private int mSnapshotHeight = 0;
+    //event time of the first pen event not drawn yet, or -1
+    private long mInkEventTime = -1;
+
+    private final AnnotationsZoom mZoom = new AnnotationsZoom();
+    private boolean mZoomEnabled = false;
+    private boolean mZooming = false;
+    private float mGestureFocusX;
+    private float mGestureFocusY;
+    private float mGestureSpan;
+    private final float[] mTouchPoint = new float[2];
+
+    //predicted tail of the stroke being drawn, replaced on every pen event
+    private final AnnotationsPredictor mPredictor = new AnnotationsPredictor();
+    private long mPredictionHorizon = 0;
+    private final Path mPredictedPath = new Path();
+    private final float[] mPrediction = new float[2];
+
+    //surface inking the stroke being drawn, and whether the current stroke is drawn on it
+    private AnnotationsInkLayer mInkLayer;
+    private boolean mInkStroke = false;
+    private boolean mInkClearPending = false;
+    //frames left before the ink is cleared, 0 if no clear is posted
+    private int mInkClearFrames = 0;
+    private final RectF mInkChanged = new RectF();
+
+    //laser pointer: a fading trail outside of the annotatables, shared as cursor signals
+    private final AnnotationsLaserTrail mLaserTrail = new AnnotationsLaserTrail();
+    private final Paint mLaserPaint = new Paint();
+    private AnnotationsCursorChannel mCursorChannel;
+    private AnnotationsSignalScheduler mSignalScheduler;
+    private final Paint mRemoteCursorPaint = new Paint();
+    private boolean mCursorFramePosted = false;
 
     /**
      * Monitors state changes in the Annotations component.
@@ -103,6 +171,7 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
         Text("annotation-text"),
         Color("annotation-color"),
         Capture("annotation-capture"),
+        Laser("annotation-laser"),
         Done("annotation-done");
 
         private String type;
@@ -154,6 +223,283 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
      **/
     public void setVideoRenderer(AnnotationsVideoRenderer videoRenderer) {
         this.videoRenderer = videoRenderer;
+        if (videoRenderer != null) {
+            videoRenderer.setMetrics(mMetrics);
+            if (mMemoryBudgetAttached) {
+                videoRenderer.setMemoryBudget(mMemoryBudget);
+            }
+            updateVideoZoom();
+        }
+    }
+
+    /*
+     * Enable pinch-zoom and two-finger pan. The zoom applies to the annotations and to the video
+     * of the AnnotationsVideoRenderer set in this view, which must be laid out over the same area.
+     * @param enabled true to zoom with two fingers
+     */
+    public void setZoomEnabled(boolean enabled) {
+        mZoomEnabled = enabled;
+        if (!enabled) {
+            resetZoom();
+        }
+    }
+
+    /*
+     * Set the zoom limits. A minimum below 1 lets the view zoom out of large boards.
+     * @param minZoom Smallest zoom, 1 by default
+     * @param maxZoom Largest zoom, 4 by default
+     */
+    public void setZoomRange(float minZoom, float maxZoom) {
+        mZoom.setRange(minZoom, maxZoom);
+        onZoomChanged();
+    }
+
+    public float getZoom() {
+        return mZoom.getZoom();
+    }
+
+    public void resetZoom() {
+        mZoom.reset();
+        onZoomChanged();
+    }
+
+    /*
+     * Draw the stroke being drawn ahead of the finger: the segment held back by the smoothing and
+     * a tail extrapolated from the recent touch velocity are drawn until the next touch event
+     * replaces them. Pass 0 to draw only the committed points.
+     * @param horizonMs How far ahead of the last touch event to predict, up to 50ms
+     **/
+    public void setPredictionHorizon(long horizonMs) {
+        mPredictionHorizon = Math.max(0, Math.min(AnnotationsPredictor.MAX_HORIZON_MS, horizonMs));
+        invalidate();
+    }
+
+    public long getPredictionHorizon() {
+        return mPredictionHorizon;
+    }
+
+    /*
+     * Ink the stroke being drawn on a surface of its own, updated as soon as each touch event
+     * arrives instead of on the next traversal of the view hierarchy. Once finished, the stroke is
+     * drawn by this view as usual. The surface is above the window while it shows a stroke.
+     * @param enabled true to use the ink surface
+     **/
+    public void setInkLayerEnabled(boolean enabled) {
+        if (enabled == (mInkLayer != null)) {
+            return;
+        }
+        if (enabled) {
+            mInkLayer = new AnnotationsInkLayer(getContext());
+            addView(mInkLayer);
+        } else {
+            if (mInkStroke) {
+                mInkStroke = false;
+                invalidate();
+            }
+            cancelInkClear();
+            removeView(mInkLayer);
+            mInkLayer = null;
+        }
+        requestLayout();
+    }
+
+    public boolean isInkLayerEnabled() {
+        return mInkLayer != null;
+    }
+
+    /*
+     * Set the signal rate limit of the connection. The signals of the view are queued by priority
+     * and sent within it.
+     * @param ratePerSecond Signals per second, 20 by default
+     * @param burst Signals that can be sent at once after a quiet period, 10 by default
+     **/
+    public void setSignalRate(int ratePerSecond, int burst) {
+        if (mSignalScheduler != null) {
+            mSignalScheduler.setRate(ratePerSecond, burst);
+            scheduleSignalFlush(mSignalScheduler.flush(SystemClock.uptimeMillis()));
+        }
+    }
+
+    public AnnotationsSignalScheduler getSignalScheduler() {
+        return mSignalScheduler;
+    }
+
+    private void scheduleSignalFlush(long delay) {
+        removeCallbacks(mFlushSignals);
+        if (delay >= 0) {
+            postDelayed(mFlushSignals, delay);
+        }
+    }
+
+    private final Runnable mFlushSignals = new Runnable() {
+        @Override
+        public void run() {
+            scheduleSignalFlush(mSignalScheduler.flush(SystemClock.uptimeMillis()));
+        }
+    };
+
+    /*
+     * Set the minimum time between two signals with the position of the laser pointer. The
+     * pointers of the other participants are drawn one interval and a half behind their signals,
+     * so every participant should use the same interval.
+     * @param intervalMs 100ms by default
+     **/
+    public void setCursorInterval(long intervalMs) {
+        if (mCursorChannel != null) {
+            mCursorChannel.setInterval(intervalMs);
+        }
+    }
+
+    /*
+     * Set a capturer publishing the video with the annotations of this view burnt into it
+     * @param capturer AnnotationsCompositingCapturer, or null
+     **/
+    public void setCompositingCapturer(AnnotationsCompositingCapturer capturer) {
+        this.mCompositingCapturer = capturer;
+        if (capturer != null) {
+            capturer.setMetrics(mMetrics);
+            capturer.setAnnotations(mAnnotationsSnapshot, getWidth(), getHeight(),
+                    videoRenderer == null || videoRenderer.isVideoFitEnabled());
+        }
+        invalidate();
+    }
+
+    /*
+     * Draw the annotations from a cache of raster tiles, rasterized in the background. Worth it
+     * for large boards, or when zooming and panning. Pass 0 to draw the annotations directly.
+     * @param maxBytes Memory cap of the tiles
+     **/
+    public void setTileCache(long maxBytes) {
+        if (mTileCache != null) {
+            mTileCache.release();
+        }
+        mTileCache = maxBytes > 0 ? new AnnotationsTileCache(maxBytes, mTileListener) : null;
+        if (mTileCache != null) {
+            mTileCache.setAnnotations(mAnnotationsSnapshot, mSnapshotWidth, mSnapshotHeight);
+        }
+        invalidate();
+    }
+
+    public AnnotationsTileCache getTileCache() {
+        return mTileCache;
+    }
+
+    private final Runnable mTileListener = new Runnable() {
+        @Override
+        public void run() {
+            if (mMemoryBudget != null) {
+                mMemoryBudget.check();
+            }
+            invalidate();
+        }
+    };
+
+    /*
+     * Share a memory budget between the caches and buffers of this view and of its video
+     * renderer. While the view is attached, the budget is registered for the memory pressure
+     * callbacks of the application. Pass null to stop.
+     * @param budget AnnotationsMemoryBudget
+     **/
+    public void setMemoryBudget(AnnotationsMemoryBudget budget) {
+        detachMemoryBudget();
+        mMemoryBudget = budget;
+        if (getWindowToken() != null) {
+            attachMemoryBudget();
+        }
+    }
+
+    //the application keeps the component callbacks, and the budget its consumers, which hold this
+    //view: both are only registered while the view is attached
+    private void attachMemoryBudget() {
+        AnnotationsMemoryBudget budget = mMemoryBudget;
+        if (budget == null || mMemoryBudgetAttached) {
+            return;
+        }
+        budget.register(MEMORY_SCREENSHOTS, AnnotationsMemoryBudget.PRIORITY_SCREENSHOT_BUFFERS, mScreenshotMemory);
+        budget.register(MEMORY_TILES, AnnotationsMemoryBudget.PRIORITY_TILE_CACHE, mTileMemory);
+        budget.register(MEMORY_FRAMES, AnnotationsMemoryBudget.PRIORITY_FRAME_HISTORY, mFrameMemory);
+        getContext().getApplicationContext().registerComponentCallbacks(budget);
+        if (videoRenderer != null) {
+            videoRenderer.setMemoryBudget(budget);
+        }
+        mMemoryBudgetAttached = true;
+        budget.check();
+    }
+
+    private void detachMemoryBudget() {
+        AnnotationsMemoryBudget budget = mMemoryBudget;
+        if (budget == null || !mMemoryBudgetAttached) {
+            return;
+        }
+        budget.unregister(MEMORY_SCREENSHOTS);
+        budget.unregister(MEMORY_TILES);
+        budget.unregister(MEMORY_FRAMES);
+        getContext().getApplicationContext().unregisterComponentCallbacks(budget);
+        if (videoRenderer != null) {
+            videoRenderer.setMemoryBudget(null);
+        }
+        mMemoryBudgetAttached = false;
+    }
+
+    public AnnotationsMemoryBudget getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    //the consumers look up the current cache, which can be replaced after they are registered
+    private final AnnotationsMemoryBudget.MemoryConsumer mScreenshotMemory = new AnnotationsMemoryBudget.MemoryConsumer() {
+        @Override
+        public long getMemoryUsage() {
+            AnnotationsVideoRenderer renderer = videoRenderer;
+            return renderer != null ? renderer.getScreenshotMemoryUsage() : 0;
+        }
+
+        @Override
+        public long trim(long bytes) {
+            AnnotationsVideoRenderer renderer = videoRenderer;
+            return renderer != null ? renderer.releaseScreenshotBuffers() : 0;
+        }
+    };
+
+    private final AnnotationsMemoryBudget.MemoryConsumer mTileMemory = new AnnotationsMemoryBudget.MemoryConsumer() {
+        @Override
+        public long getMemoryUsage() {
+            AnnotationsTileCache cache = mTileCache;
+            return cache != null ? cache.getMemoryUsage() : 0;
+        }
+
+        @Override
+        public long trim(long bytes) {
+            AnnotationsTileCache cache = mTileCache;
+            if (cache == null) {
+                return 0;
+            }
+            long released = cache.trim(bytes);
+            invalidate();
+            return released;
+        }
+    };
+
+    private final AnnotationsMemoryBudget.MemoryConsumer mFrameMemory = new AnnotationsMemoryBudget.MemoryConsumer() {
+        @Override
+        public long getMemoryUsage() {
+            AnnotationsVideoRenderer renderer = videoRenderer;
+            AnnotationsFrameHistory history = renderer != null ? renderer.getFrameHistory() : null;
+            return history != null ? history.getMemoryUsage() : 0;
+        }
+
+        @Override
+        public long trim(long bytes) {
+            AnnotationsVideoRenderer renderer = videoRenderer;
+            AnnotationsFrameHistory history = renderer != null ? renderer.getFrameHistory() : null;
+            return history != null ? history.trim(bytes) : 0;
+        }
+    };
+
+    /*
+     * Returns the metrics of the annotations and of the video renderer set in this view
+     */
+    public AnnotationsMetrics getMetrics() {
+        return mMetrics;
     }
 
     /*
@@ -164,10 +510,49 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
         this.mListener = listener;
     }
 
+    /*
+     * Persist the committed annotations in a journal, restoring the annotations it already holds.
+     * Pass null to stop journaling.
+     * @param journal AnnotationsJournal
+     **/
+    public void setJournal(AnnotationsJournal journal) {
+        mAnnotationsManager.setJournal(null);
+        if (journal != null) {
+            journal.restore(mAnnotationsManager);
+            mAnnotationsManager.setJournal(journal);
+        }
+        invalidate();
+    }
+
+    /*
+     * Record the session with per-point timestamps, to be replayed with an AnnotationsPlayer.
+     * Pass null to stop recording.
+     * @param recorder AnnotationsRecorder
+     **/
+    public void setRecorder(AnnotationsRecorder recorder) {
+        this.mRecorder = recorder;
+    }
+
+    /*
+     * Export the annotations as a vector document of the size of this view.
+     * The document is streamed to the output, which is flushed but not closed.
+     * @param format AnnotationsExporter.Format
+     * @param out Output stream
+     **/
+    public void exportAnnotations(AnnotationsExporter.Format format, OutputStream out) throws IOException {
+        ArrayList<Annotatable> annotatables = new ArrayList<Annotatable>(mAnnotationsManager.getAnnotatableList());
+        new AnnotationsExporter(getWidth(), getHeight()).export(annotatables, format, out);
+    }
+
+    AnnotationsManager getAnnotationsManager() {
+        return mAnnotationsManager;
+    }
+
     @Override
     protected void onConfigurationChanged(Configuration newConfig) {
 
         super.onConfigurationChanged(newConfig);
+        mDisplayWidth = -1;
         resize();
     }
     private void resize(){
@@ -177,8 +562,9 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
         if (this.getLayoutParams().width == -1 || this.getLayoutParams().height == -1 || defaultLayout) {
             //default case
             defaultLayout = true;
-            widthPixels = getContext().getResources().getDisplayMetrics().widthPixels;
-            heightPixels = getDisplayContentHeight();
+            loadDisplayMetrics();
+            widthPixels = mDisplayWidth;
+            heightPixels = mDisplayContentHeight;
 
         }
         else {
@@ -240,39 +626,72 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
         return (screenHeight - contentTop - actionBarHeight);
     }
     private void init(){
-        String source = getContext().getPackageName();
-
-        SharedPreferences prefs = getContext().getSharedPreferences("opentok", Context.MODE_PRIVATE);
-        String guidVSol = prefs.getString("guidVSol", null);
-        if (null == guidVSol) {
-            guidVSol = UUID.randomUUID().toString();
-            prefs.edit().putString("guidVSol", guidVSol).commit();
-        }
-
-        //init analytics
-        mAnalyticsData = new OTKAnalyticsData.Builder(OpenTokConfig.LOG_CLIENT_VERSION, source, OpenTokConfig.LOG_COMPONENTID, guidVSol).build();
-        mAnalytics = new OTKAnalytics(mAnalyticsData);
-        if ( mSession != null ) {
-            mAnalyticsData.setSessionId(mSession.getSessionId());
-            mAnalyticsData.setConnectionId(mSession.getConnection().getConnectionId());
-        }
-        if ( mPartnerId != null ) {
-            mAnalyticsData.setPartnerId(mPartnerId);
-        }
-        mAnalytics. setData(mAnalyticsData);
-
+        //only what is needed to be shown, the analytics are set up off the main thread
+        //the events are logged once the view is attached
+        mAnalyticsEvents = new AnnotationsAnalytics(createAnalyticsLogger());
         addLogEvent(OpenTokConfig.LOG_ACTION_INITIALIZE, OpenTokConfig.LOG_VARIATION_ATTEMPT);
 
         setWillNotDraw(false);
         mAnnotationsManager = new AnnotationsManager();
         mCurrentColor = getResources().getColor(R.color.picker_color_orange);
+        mTextBorderPaint = new Paint();
+        mTextBorderPaint.setStyle(Paint.Style.STROKE);
+        mTextBorderPaint.setStrokeWidth(5);
+        mLaserPaint.setAntiAlias(true);
+        mLaserPaint.setStyle(Paint.Style.STROKE);
+        mLaserPaint.setStrokeCap(Paint.Cap.ROUND);
+        mLaserPaint.setStrokeJoin(Paint.Join.ROUND);
+        mLaserPaint.setStrokeWidth(LASER_WIDTH);
+        mRemoteCursorPaint.set(mLaserPaint);
+        mRemoteCursorPaint.setColor(REMOTE_CURSOR_COLOR);
+        if (mSession != null) {
+            mSignalScheduler = new AnnotationsSignalScheduler(new AnnotationsSignalScheduler.SignalSender() {
+                @Override
+                public void sendSignal(String type, String data) {
+                    mSession.sendSignal(type, data);
+                }
+            });
+            //the pointer is an update: under pressure only its latest position is sent
+            mCursorChannel = new AnnotationsCursorChannel(new AnnotationsCursorChannel.SignalSender() {
+                @Override
+                public void sendSignal(String type, String data) {
+                    scheduleSignalFlush(mSignalScheduler.sendUpdate(SystemClock.uptimeMillis(), type, type, data));
+                }
+            });
+        }
         this.setVisibility(View.GONE);
 
         addLogEvent(OpenTokConfig.LOG_ACTION_INITIALIZE, OpenTokConfig.LOG_VARIATION_SUCCESS);
+    }
 
-
+    //only plain values, the logger outlives the view on the analytics thread
+    private AnnotationsAnalyticsLogger createAnalyticsLogger() {
+        String sessionId = null;
+        String connectionId = null;
+        if (mSession != null) {
+            sessionId = mSession.getSessionId();
+            if (mSession.getConnection() != null) {
+                connectionId = mSession.getConnection().getConnectionId();
+            }
+        }
+        return new AnnotationsAnalyticsLogger(getContext(), sessionId, connectionId, mPartnerId);
     }
 
+    //display lookups and the analytics logging start once the view is attached, before the first toolbar use
+    private final Runnable mDeferredSetup = new Runnable() {
+        @Override
+        public void run() {
+            loadDisplayMetrics();
+            mAnalyticsEvents.start();
+        }
+    };
+
+    private void loadDisplayMetrics() {
+        if (mDisplayWidth < 0) {
+            mDisplayWidth = getContext().getResources().getDisplayMetrics().widthPixels;
+            mDisplayContentHeight = getDisplayContentHeight();
+        }
+    }
 
     /**
      * ==== Touch Events ====
@@ -283,20 +702,60 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
         return true;
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        post(mDeferredSetup);
+        attachMemoryBudget();
+        if (mCursorChannel != null) {
+            mSession.addSignalListener(AnnotationsCursorChannel.SIGNAL_TYPE, mCursorSignalListener);
+        }
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        removeCallbacks(mDeferredSetup);
+        mAnalyticsEvents.release();
+        if (mCursorChannel != null) {
+            mSession.removeSignalListener(mCursorSignalListener);
+            removeCallbacks(mFlushCursor);
+            removeCallbacks(mFlushSignals);
+        }
+        if (mCursorFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(mCursorFrame);
+            mCursorFramePosted = false;
+        }
+        cancelInkClear();
+        if (mTileCache != null) {
+            mTileCache.release();
+        }
+        detachMemoryBudget();
         this.loaded = false;
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (mInkLayer != null) {
+            mInkLayer.measure(MeasureSpec.makeMeasureSpec(r - l, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(b - t, MeasureSpec.EXACTLY));
+            mInkLayer.layout(0, 0, r - l, b - t);
+        }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        final float x = event.getX();
-        final float y = event.getY();
+        long touchStart = mMetrics.start(AnnotationsMetrics.Timer.TOUCH_EVENT);
+        if (mZoomEnabled && onZoomTouchEvent(event)) {
+            mMetrics.stop(AnnotationsMetrics.Timer.TOUCH_EVENT, touchStart);
+            return true;
+        }
+        //the annotations are kept in the coordinates of the view when not zoomed
+        mTouchPoint[0] = event.getX();
+        mTouchPoint[1] = event.getY();
+        mZoom.mapToCanvas(mTouchPoint);
+        final float x = mTouchPoint[0];
+        final float y = mTouchPoint[1];
         if (    mode != null ) {
             if (mode == Mode.Pen) {
                 switch (event.getAction()) {
@@ -305,200 +764,582 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
                         createPathAnnotatable(false);
                         mCurrentPath.setLastPointF(new PointF(x, y));
                         mCurrentPath.setStartPoint(true);
-                        beginTouch(x, y);
-                        invalidate();
+                        mCurrentPath.appendPoint(x, y);
+                        mPredictor.reset();
+                        mPredictor.addSample(event.getEventTime(), x, y);
+                        if (mRecorder != null) {
+                            mRecorder.beginStroke(event.getEventTime(), x, y, mCurrentColor, mCurrentPaint.getStrokeWidth(), width, height);
+                        }
+                        if (mInkLayer != null && mInkLayer.isReady()) {
+                            if (mInkClearPending) {
+                                cancelInkClear();
+                                mInkLayer.clear();
+                            }
+                            mInkStroke = true;
+                            drawInk(event.getEventTime());
+                        } else {
+                            invalidate();
+                        }
                     }
                     break;
                     case MotionEvent.ACTION_MOVE: {
-                        moveTouch(x, y, true);
+                        if (mPredictionHorizon > 0) {
+                            addPredictorSamples(event);
+                        }
+                        boolean accepted = mCurrentPath.appendTouchPoint(x, y, TOLERANCE);
+                        if (mRecorder != null && accepted) {
+                            mRecorder.addPoint(event.getEventTime(), x, y);
+                        }
                         mCurrentPath.setEndPoint(false);
                         mCurrentPath.setStartPoint(false);
                         mCurrentPath.setLastPointF(new PointF(x, y));
-                        invalidate();
+                        if (mInkStroke) {
+                            drawInk(event.getEventTime());
+                        } else {
+                            invalidate();
+                        }
                     }
                     break;
                     case MotionEvent.ACTION_UP: {
-                        upTouch();
+                        mCurrentPath.finish();
+                        mCurrentPath.buildLevels();
                         addAnnotatable();
+                        if (mRecorder != null) {
+                            mRecorder.endStroke(event.getEventTime(), mCurrentAnnotatable.getId());
+                        }
                         mCurrentPath = null;
+                        mPredictor.reset();
+                        if (mInkStroke) {
+                            //the ink is cleared once the committed stroke is drawn
+                            mInkStroke = false;
+                            mInkClearPending = true;
+                        }
                         mAnnotationsActive = false;
                         invalidate();
                     }
                     break;
                 }
 
-                addLogEvent(OpenTokConfig.LOG_ACTION_FREEHAND, OpenTokConfig.LOG_VARIATION_SUCCESS);
+                //the pen events are counted and logged once per stroke
+                mAnalyticsEvents.countEvent(OpenTokConfig.LOG_ACTION_FREEHAND, OpenTokConfig.LOG_VARIATION_SUCCESS);
+                if (event.getAction() == MotionEvent.ACTION_UP) {
+                    mAnalyticsEvents.endStroke();
+                }
+                if (mInkEventTime < 0 && !mInkStroke) {
+                    mInkEventTime = event.getEventTime();
+                }
             } else {
+                if (mode == Mode.Laser) {
+                    onLaserTouchEvent(event, x, y);
+                }
                 if (mode == Mode.Text) {
-                    final String myString;
+                    if (event.getAction() == MotionEvent.ACTION_UP) {
+                        //a tap commits the text being edited and starts a new one
+                        commitText();
+                        startText(x, y);
 
-                    mAnnotationsActive = true;
-
-                    EditText editText = new EditText(getContext());
-                    editText.setVisibility(VISIBLE);
-                    editText.setImeOptions(EditorInfo.IME_ACTION_DONE);
-
-                    // Add whatever you want as size
-                    int editTextHeight = 70;
-                    int editTextWidth = 200;
-
-                    RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(editTextWidth, editTextHeight);
+                        addLogEvent(OpenTokConfig.LOG_ACTION_TEXT, OpenTokConfig.LOG_VARIATION_SUCCESS);
+                    }
+                }
+            }
+        }
+        mMetrics.stop(AnnotationsMetrics.Timer.TOUCH_EVENT, touchStart);
+        return true;
+    }
 
-                    //You could adjust the position
-                    params.topMargin = (int) (event.getRawY());
-                    params.leftMargin = (int) (event.getRawX());
-                    this.addView(editText, params);
-                    editText.setVisibility(VISIBLE);
-                    editText.setSingleLine();
-                    editText.setImeOptions(EditorInfo.IME_ACTION_DONE);
-                    editText.requestFocus();
+    //the laser trail is drawn locally, and only its head is sent to the other participants
+    private void onLaserTouchEvent(MotionEvent event, float x, float y) {
+        long time = event.getEventTime();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                mLaserTrail.add(time, x, y);
+                if (mCursorChannel != null && width > 0 && height > 0) {
+                    scheduleCursorFlush(mCursorChannel.move(time, x / width, y / height));
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mLaserTrail.lift();
+                if (mCursorChannel != null) {
+                    scheduleCursorFlush(mCursorChannel.hide(time));
+                }
+                break;
+        }
+        invalidate();
+    }
 
-                    InputMethodManager imm = (InputMethodManager) getContext().getSystemService(getContext().INPUT_METHOD_SERVICE);
-                    imm.toggleSoftInput(InputMethodManager.SHOW_FORCED, InputMethodManager.HIDE_IMPLICIT_ONLY);
+    private void scheduleCursorFlush(long delay) {
+        removeCallbacks(mFlushCursor);
+        if (delay >= 0) {
+            postDelayed(mFlushCursor, delay);
+        }
+    }
 
-                    createTextAnnotatable(editText, x, y);
-                    // mCurrentText = new AnnotationsText(editText, x, y);
-                    //  createAnnotatable(false);
-                    // invalidate();
+    private final Runnable mFlushCursor = new Runnable() {
+        @Override
+        public void run() {
+            if (mCursorChannel != null) {
+                scheduleCursorFlush(mCursorChannel.flush(SystemClock.uptimeMillis()));
+            }
+        }
+    };
+
+    //pointers of the other participants, delivered on the main thread
+    private final Session.SignalListener mCursorSignalListener = new Session.SignalListener() {
+        @Override
+        public void onSignalReceived(Session session, String type, String data, Connection connection) {
+            if (connection == null || data == null) {
+                return;
+            }
+            //signals are also delivered to their sender
+            Connection local = session.getConnection();
+            if (local != null && local.getConnectionId().equals(connection.getConnectionId())) {
+                return;
+            }
+            if (mCursorChannel.onSignal(connection.getConnectionId(), data, SystemClock.uptimeMillis())) {
+                postCursorFrame();
+            }
+        }
+    };
 
-                    editText.addTextChangedListener(new TextWatcher() {
+    private void postCursorFrame() {
+        if (!mCursorFramePosted) {
+            mCursorFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(mCursorFrame);
+        }
+    }
 
-                        @Override
-                        public void onTextChanged(CharSequence s, int start, int before,
-                                                  int count) {
-                            drawText();
-                        }
+    //moves the remote pointers on every vsync while they move or fade
+    private final Choreographer.FrameCallback mCursorFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mCursorFramePosted = false;
+            //the frame time and the uptime are both read from the monotonic clock
+            long now = frameTimeNanos / 1000000;
+            boolean moving = mCursorChannel.updateRemoteCursors(now, width, height);
+            invalidate();
+            if (moving) {
+                postCursorFrame();
+            }
+        }
+    };
+
+    //the samples batched in a move event improve the velocity estimate
+    private void addPredictorSamples(MotionEvent event) {
+        for (int i = 0; i < event.getHistorySize(); i++) {
+            mTouchPoint[0] = event.getHistoricalX(i);
+            mTouchPoint[1] = event.getHistoricalY(i);
+            mZoom.mapToCanvas(mTouchPoint);
+            mPredictor.addSample(event.getHistoricalEventTime(i), mTouchPoint[0], mTouchPoint[1]);
+        }
+        mTouchPoint[0] = event.getX();
+        mTouchPoint[1] = event.getY();
+        mZoom.mapToCanvas(mTouchPoint);
+        mPredictor.addSample(event.getEventTime(), mTouchPoint[0], mTouchPoint[1]);
+    }
 
-                        @Override
-                        public void afterTextChanged(Editable s) {
-                            // TODO Auto-generated method stub
+    //from the end of the committed path to the last touch point, then to the predicted point;
+    //returns whether there is a predicted point
+    private boolean updatePredictedPath(AnnotationsPath path) {
+        mPredictedPath.rewind();
+        int count = path.getPointCount();
+        if (count == 0 || path.getLastPointF() == null) {
+            return false;
+        }
+        //the smoothed path ends halfway between its last two control points
+        float endX = path.getPointX(count - 1);
+        float endY = path.getPointY(count - 1);
+        if (count > 1) {
+            mPredictedPath.moveTo((endX + path.getPointX(count - 2)) / 2, (endY + path.getPointY(count - 2)) / 2);
+            mPredictedPath.lineTo(endX, endY);
+        } else {
+            mPredictedPath.moveTo(endX, endY);
+        }
+        PointF last = path.getLastPointF();
+        mPredictedPath.lineTo(last.x, last.y);
+        if (mPredictor.predict(mPredictionHorizon, mPrediction)) {
+            mPredictedPath.lineTo(mPrediction[0], mPrediction[1]);
+            return true;
+        }
+        return false;
+    }
 
-                        }
+    //inks the new segment of the current stroke, spanning its last three control points
+    private void drawInk(long eventTime) {
+        AnnotationsPath path = mCurrentPath;
+        PointF last = path.getLastPointF();
+        mInkChanged.set(last.x, last.y, last.x, last.y);
+        int count = path.getPointCount();
+        for (int i = Math.max(0, count - 3); i < count; i++) {
+            mInkChanged.union(path.getPointX(i), path.getPointY(i));
+        }
+        Path tail = null;
+        if (mPredictionHorizon > 0) {
+            if (updatePredictedPath(path)) {
+                mInkChanged.union(mPrediction[0], mPrediction[1]);
+            }
+            tail = mPredictedPath;
+        }
+        mInkLayer.setTransform(mZoom.getZoom(), mZoom.getPanX(), mZoom.getPanY());
+        if (mInkLayer.drawStroke(path, tail, mCurrentPaint, mInkChanged)) {
+            mMetrics.record(AnnotationsMetrics.Timer.TOUCH_TO_INK, (SystemClock.uptimeMillis() - eventTime) * 1000);
+        }
+    }
 
-                        @Override
-                        public void beforeTextChanged(CharSequence s, int start, int count,
-                                                      int after) {
-                            // TODO Auto-generated method stub
+    //the frame drawing the committed stroke is queued when the next frame starts, and composited
+    //a frame later: the ink is cleared from the frame callback after that, so it never flickers
+    private final Choreographer.FrameCallback mClearInk = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (--mInkClearFrames > 0) {
+                Choreographer.getInstance().postFrameCallback(this);
+                return;
+            }
+            if (mInkClearPending && mInkLayer != null) {
+                mInkClearPending = false;
+                mInkLayer.clear();
+            }
+        }
+    };
 
-                        }
+    private void postInkClear() {
+        if (mInkClearFrames == 0) {
+            mInkClearFrames = INK_CLEAR_FRAMES;
+            Choreographer.getInstance().postFrameCallback(mClearInk);
+        }
+    }
 
-                    });
-
-                    editText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
-                        @Override
-                        public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
-                            if (actionId == EditorInfo.IME_ACTION_DONE) {
-                                InputMethodManager imm = (InputMethodManager) v.getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
-                                imm.hideSoftInputFromWindow(v.getWindowToken(), 0);
-                                //Create annotatable text and add it to the canvas
-                                mAnnotationsActive = false;
-                                addAnnotatable();
-
-                                mCurrentText = null;
-                                invalidate();
-                                return true;
-                            }
-                            return false;
-                        }
-                    });
+    private void cancelInkClear() {
+        mInkClearPending = false;
+        if (mInkClearFrames > 0) {
+            Choreographer.getInstance().removeFrameCallback(mClearInk);
+            mInkClearFrames = 0;
+        }
+    }
 
-                    addLogEvent(OpenTokConfig.LOG_ACTION_TEXT, OpenTokConfig.LOG_VARIATION_SUCCESS);
+    //two fingers zoom and pan until the last one is lifted; returns whether the event was used
+    private boolean onZoomTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        if (!mZooming) {
+            if (event.getPointerCount() < 2) {
+                return false;
+            }
+            cancelStroke();
+            mZooming = true;
+            updateGesture(event, -1);
+        }
+        switch (action) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                updateGesture(event, -1);
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                updateGesture(event, event.getActionIndex());
+                break;
+            case MotionEvent.ACTION_MOVE: {
+                float focusX = mGestureFocusX;
+                float focusY = mGestureFocusY;
+                float span = mGestureSpan;
+                updateGesture(event, -1);
+                if (span > 0 && mGestureSpan > 0) {
+                    mZoom.zoomBy(mGestureSpan / span, mGestureFocusX, mGestureFocusY);
                 }
+                mZoom.panBy(mGestureFocusX - focusX, mGestureFocusY - focusY);
+                onZoomChanged();
             }
+            break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mZooming = false;
+                break;
         }
         return true;
     }
 
-    private void drawText() {
-        invalidate();
+    //focus and average distance to it of the pointers still down
+    private void updateGesture(MotionEvent event, int liftedIndex) {
+        int count = 0;
+        float sumX = 0;
+        float sumY = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != liftedIndex) {
+                sumX += event.getX(i);
+                sumY += event.getY(i);
+                count++;
+            }
+        }
+        mGestureFocusX = sumX / count;
+        mGestureFocusY = sumY / count;
+        float span = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != liftedIndex) {
+                span += Math.hypot(event.getX(i) - mGestureFocusX, event.getY(i) - mGestureFocusY);
+            }
+        }
+        mGestureSpan = count > 1 ? span / count : 0;
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
-
-        if (mAnnotationsActive) {
-            if (mCurrentText != null && mCurrentText.getEditText() != null && !mCurrentText.getEditText().getText().toString().isEmpty()) {
-                TextPaint textpaint = new TextPaint(mCurrentPaint);
-                String text = mCurrentText.getEditText().getText().toString();
-                Paint borderPaint = new Paint();
-                borderPaint.setStyle(Paint.Style.STROKE);
-                borderPaint.setStrokeWidth(5);
+    //the stroke started by the first finger of a pinch is dropped
+    private void cancelStroke() {
+        if (mCurrentPath != null) {
+            if (mRecorder != null) {
+                mRecorder.cancelStroke();
+            }
+            mCurrentPath = null;
+            mPredictor.reset();
+            if (mInkStroke) {
+                mInkStroke = false;
+                mInkLayer.clear();
+            }
+            mAnnotationsActive = false;
+            invalidate();
+        }
+    }
 
-                Rect result = new Rect();
-                mCurrentPaint.getTextBounds(text, 0, text.length(), result);
+    private void onZoomChanged() {
+        updateVideoZoom();
+        invalidate();
+    }
 
-                if (text.length() > 10) {
-                    String[] strings = text.split("(?<=\\G.{" + 10 + "})");
+    private void updateVideoZoom() {
+        if (videoRenderer != null && getWidth() > 0 && getHeight() > 0) {
+            videoRenderer.setZoom(mZoom.getZoom(), mZoom.getPanX() / getWidth(), mZoom.getPanY() / getHeight());
+        }
+    }
 
-                    float x = mCurrentText.getX();
-                    float y = 340;
-                    canvas.drawRect(x, y - result.height() - 20 + (strings.length * 50), x + result.width() + 20, y, borderPaint);
+    private EditText getTextEditor() {
+        if (mTextEditor == null) {
+            //the editor is created once and reused for every text annotation
+            mTextEditor = new EditText(getContext());
+            mTextEditor.setSingleLine();
+            mTextEditor.setImeOptions(EditorInfo.IME_ACTION_DONE);
+            mTextEditor.addTextChangedListener(mTextWatcher);
+            mTextEditor.setOnEditorActionListener(mEditorActionListener);
+            this.addView(mTextEditor, new RelativeLayout.LayoutParams(TEXT_EDITOR_WIDTH, TEXT_EDITOR_HEIGHT));
+        }
+        return mTextEditor;
+    }
 
-                    for (int i = 0; i < strings.length; i++) {
+    private void startText(float x, float y) {
+        EditText editor = getTextEditor();
+        editor.setText("");
 
-                        canvas.drawText(strings[i], x, y, mCurrentPaint);
+        mAnnotationsActive = true;
+        createTextAnnotatable(x, y);
+        editor.requestFocus();
 
-                        y = y + 50;
-                    }
-                } else {
-                    canvas.drawRect(mCurrentText.getX(), 340 - result.height() - 20, mCurrentText.getX() + result.width() + 20, 340, borderPaint);
-                    canvas.drawText(mCurrentText.getEditText().getText().toString(), mCurrentText.getX(), 340, mCurrentPaint);
+        InputMethodManager imm = (InputMethodManager) getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+        imm.showSoftInput(editor, InputMethodManager.SHOW_FORCED);
+    }
 
+    private void commitText() {
+        if (mCurrentText != null) {
+            if (!mCurrentText.getText().isEmpty()) {
+                //Create annotatable text and add it to the canvas
+                mCurrentAnnotatable = new Annotatable(Mode.Text.toString(), mCurrentText, mCurrentTextPaint, width, height);
+                mCurrentAnnotatable.setType(Annotatable.AnnotatableType.TEXT);
+                mAnnotationsManager.addAnnotatable(mCurrentAnnotatable);
+                if (mRecorder != null) {
+                    mRecorder.addText(SystemClock.uptimeMillis(), mCurrentAnnotatable.getId(), mCurrentText.getText(),
+                            mCurrentText.getX(), mCurrentText.getY(), mCurrentTextPaint.getColor(), mCurrentTextPaint.getTextSize(), width, height);
                 }
             }
-            if ( mCurrentPath != null ) {
-                canvas.drawPath(mCurrentPath, mCurrentPaint);
-            }
+            mCurrentText = null;
+            mAnnotationsActive = false;
+            invalidate();
+        }
+    }
+
+    private void finishText() {
+        if (mCurrentText != null) {
+            commitText();
+            InputMethodManager imm = (InputMethodManager) getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+            imm.hideSoftInputFromWindow(mTextEditor.getWindowToken(), 0);
         }
+    }
 
-        for (Annotatable drawing : mAnnotationsManager.getAnnotatableList()) {
-            if (drawing.getType().equals(Annotatable.AnnotatableType.PATH)) {
-                canvas.drawPath(drawing.getPath(), drawing.getPaint());
+    private final TextWatcher mTextWatcher = new TextWatcher() {
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before,
+                                  int count) {
+            if (mCurrentText != null) {
+                //the text is read once per edit, not on every frame
+                mCurrentText = new AnnotationsText(s.toString(), mCurrentText.getX(), mCurrentText.getY());
+                invalidate();
             }
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count,
+                                      int after) {
+        }
 
-            if (drawing.getType().equals(Annotatable.AnnotatableType.TEXT)) {
-                canvas.drawText(drawing.getText().getEditText().getText().toString(), drawing.getText().x, drawing.getText().y, drawing.getPaint());
+    };
+
+    private final TextView.OnEditorActionListener mEditorActionListener = new TextView.OnEditorActionListener() {
+        @Override
+        public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
+            if (actionId == EditorInfo.IME_ACTION_DONE) {
+                finishText();
+                return true;
             }
+            return false;
         }
+    };
 
-    }
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        long drawStart = mMetrics.start(AnnotationsMetrics.Timer.DRAW);
+        int saveCount = canvas.save();
+        canvas.translate(mZoom.getPanX(), mZoom.getPanY());
+        canvas.scale(mZoom.getZoom(), mZoom.getZoom());
 
-    private void beginTouch(float x, float y) {
-        mCurrentPath.moveTo(x, y);
-        mCurrentPath.setCurrentPoint(new PointF(x, y));
-    }
+        if (mAnnotationsActive) {
+            if (mCurrentText != null && !mCurrentText.getText().isEmpty()) {
+                //the layout is built once per edit, drawing it again is constant-cost
+                mCurrentText.getBounds(mCurrentTextPaint, getWidth(), mTextBounds);
+                canvas.drawRect(mTextBounds.left - TEXT_BORDER_PADDING, mTextBounds.top - TEXT_BORDER_PADDING,
+                        mTextBounds.right + TEXT_BORDER_PADDING, mTextBounds.bottom + TEXT_BORDER_PADDING, mTextBorderPaint);
+                mCurrentText.draw(canvas, mCurrentTextPaint, getWidth());
+            }
+            if ( mCurrentPath != null && !mInkStroke ) {
+                canvas.drawPath(mCurrentPath, mCurrentPaint);
+                if (mPredictionHorizon > 0) {
+                    updatePredictedPath(mCurrentPath);
+                    canvas.drawPath(mPredictedPath, mCurrentPaint);
+                }
+            }
+        }
 
-    private void moveTouch(float x, float y, boolean curved) {
-        float mX = mCurrentPath.getCurrentPoint().x;
-        float mY = mCurrentPath.getCurrentPoint().y;
+        if ((videoRenderer != null && videoRenderer.getFrameHistory() != null) || mCompositingCapturer != null
+                || mTileCache != null) {
+            updateAnnotationsSnapshot();
+        }
 
-        float dx = Math.abs(x - mX);
-        float dy = Math.abs(y - mY);
-        if (dx >= TOLERANCE || dy >= TOLERANCE) {
-            if (curved) {
-                mCurrentPath.quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+        //annotatables drawn before a rotation or a resize stay on the video under them
+        int contentWidth = videoRenderer != null ? videoRenderer.getVideoWidth() : 0;
+        int contentHeight = videoRenderer != null ? videoRenderer.getVideoHeight() : 0;
+        boolean fit = videoRenderer == null || videoRenderer.isVideoFitEnabled();
+        if (mTileCache != null) {
+            mTileCache.setContent(contentWidth, contentHeight, fit);
+            mTileCache.draw(canvas, mZoom.getZoom(), mZoom.getPanX(), mZoom.getPanY());
+        } else {
+            mCanvasRenderer.setContent(contentWidth, contentHeight, fit);
+            //zoomed out, dense strokes are drawn with fewer points
+            mCanvasRenderer.setCanvas(canvas, getWidth(), getHeight());
+            mCanvasRenderer.setLevel(AnnotationsPath.getLevelForScale(mZoom.getZoom()));
+            mCanvasRenderer.render(mAnnotationsManager.getAnnotatableList());
+            mCanvasRenderer.setCanvas(null, 0, 0);
+        }
+        if (mCursorChannel != null) {
+            for (AnnotationsRemoteCursor cursor : mCursorChannel.getRemoteCursors()) {
+                cursor.getTrail().draw(canvas, mRemoteCursorPaint, SystemClock.uptimeMillis());
+            }
+        }
+        if (mLaserTrail.getCount() > 0) {
+            mLaserPaint.setColor(mCurrentColor);
+            if (mLaserTrail.draw(canvas, mLaserPaint, SystemClock.uptimeMillis())) {
+                //until the trail has faded out
+                postInvalidateOnAnimation();
             } else {
-                mCurrentPath.lineTo(x, y);
+                mLaserTrail.clear();
             }
-            mCurrentPath.setCurrentPoint(new PointF(x, y));
+        }
+        canvas.restoreToCount(saveCount);
+        if (mInkClearPending) {
+            //once this frame, which has the finished stroke, is on screen
+            postInkClear();
+        }
+
+        mMetrics.set(AnnotationsMetrics.Counter.ANNOTATIONS, mAnnotationsManager.getAnnotatableList().size());
+        mMetrics.stop(AnnotationsMetrics.Timer.DRAW, drawStart);
+        if (mInkEventTime >= 0) {
+            //the pen event is on screen once this frame is drawn
+            mMetrics.record(AnnotationsMetrics.Timer.TOUCH_TO_INK, (SystemClock.uptimeMillis() - mInkEventTime) * 1000);
+            mInkEventTime = -1;
         }
     }
 
-    private void upTouch() {
-        upTouch(false);
+    //hands the annotations on screen to the frame history, the compositing capturer and the tile
+    //cache, as a new array only when they changed
+    private void updateAnnotationsSnapshot() {
+        List<Annotatable> annotatables = mAnnotationsManager.getAnnotatableList();
+        boolean changed = annotatables.size() != mAnnotationsSnapshot.length
+                || getWidth() != mSnapshotWidth || getHeight() != mSnapshotHeight;
+        for (int i = 0; !changed && i < mAnnotationsSnapshot.length; i++) {
+            changed = annotatables.get(i) != mAnnotationsSnapshot[i];
+        }
+        if (changed) {
+            mAnnotationsSnapshot = annotatables.toArray(new Annotatable[annotatables.size()]);
+            mSnapshotWidth = getWidth();
+            mSnapshotHeight = getHeight();
+            if (videoRenderer != null) {
+                videoRenderer.setAnnotations(mAnnotationsSnapshot);
+            }
+            if (mCompositingCapturer != null) {
+                mCompositingCapturer.setAnnotations(mAnnotationsSnapshot, mSnapshotWidth, mSnapshotHeight,
+                        videoRenderer == null || videoRenderer.isVideoFitEnabled());
+            }
+            if (mTileCache != null) {
+                mTileCache.setAnnotations(mAnnotationsSnapshot, mSnapshotWidth, mSnapshotHeight);
+            }
+        }
     }
 
-    private void upTouch(boolean curved) {
-        float mLastX = mCurrentPath.getLastPointF().x;
-        float mLastY = mCurrentPath.getLastPointF().y;
-        float mX = mCurrentPath.getCurrentPoint().x;
-        float mY = mCurrentPath.getCurrentPoint().y;
+    /*
+     * Returns a capture of the video as it was some time ago, with the annotations shown at that
+     * time, or null if no frame was kept. The frame history must be enabled in the video renderer.
+     * The capture is the whole frame, mirrored if the view shows it mirrored, and the annotations
+     * are drawn where they were on the video, whether the renderer fits or fills the view with it.
+     * @param ageMs How long ago
+     */
+    public Bitmap captureRecentScreenshot(long ageMs) {
+        AnnotationsFrameHistory history = videoRenderer != null ? videoRenderer.getFrameHistory() : null;
+        AnnotationsFrameHistory.Snapshot snapshot = history != null
+                ? history.get(SystemClock.uptimeMillis() - ageMs) : null;
+        if (snapshot == null) {
+            return null;
+        }
+        int[] argb = new int[snapshot.width * snapshot.height];
+        YuvConverter.decodeYUV420(argb, snapshot.yuv, snapshot.width, snapshot.height);
+        //the capture shows the frame as the view did
+        if (videoRenderer.isMirrored()) {
+            mirrorRows(argb, snapshot.width, snapshot.height);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(snapshot.width, snapshot.height, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(argb, 0, snapshot.width, 0, 0, snapshot.width, snapshot.height);
+
+        if (snapshot.annotations != null && snapshot.annotations.length > 0 && getWidth() > 0 && getHeight() > 0) {
+            //the annotations are in view coordinates, over the frame as the renderer fits or fills it
+            boolean fit = videoRenderer.isVideoFitEnabled();
+            VideoContentTransform transform = new VideoContentTransform();
+            transform.set(snapshot.width, snapshot.height, getWidth(), getHeight(), fit, false);
+            Canvas canvas = new Canvas(bitmap);
+            transform.applyInverse(canvas);
+            AnnotationsCanvasRenderer renderer = new AnnotationsCanvasRenderer();
+            renderer.setCanvas(canvas, getWidth(), getHeight());
+            renderer.setContent(snapshot.width, snapshot.height, fit);
+            renderer.render(Arrays.asList(snapshot.annotations));
+        }
+        return bitmap;
+    }
 
-        if (curved) {
-            mCurrentPath.quadTo(mLastX, mLastY, (mX + mLastX) / 2, (mY + mLastY) / 2);
-        } else {
-            mCurrentPath.lineTo(mX, mY);
+    //flips ARGB pixels around the vertical center line
+    static void mirrorRows(int[] argb, int width, int height) {
+        for (int row = 0; row < height; row++) {
+            int left = row * width;
+            int right = left + width - 1;
+            while (left < right) {
+                int pixel = argb[left];
+                argb[left++] = argb[right];
+                argb[right--] = pixel;
+            }
         }
     }
 
@@ -507,8 +1348,12 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
         clearAll();
     }
     private void clearAll(){
-        while(mAnnotationsManager.getAnnotatableList().size() > 0){
-            clearCanvas();
+        if (mAnnotationsManager.getAnnotatableList().size() > 0) {
+            mAnnotationsManager.clear();
+            if (mRecorder != null) {
+                mRecorder.clear(SystemClock.uptimeMillis());
+            }
+            invalidate();
         }
     }
 
@@ -517,13 +1362,9 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
             int lastItem = mAnnotationsManager.getAnnotatableList().size() - 1;
             UUID lastId = mAnnotationsManager.getAnnotatableList().get(lastItem).getId();
 
-            for (int i = (mAnnotationsManager.getAnnotatableList().size() - 1); i >= 0; i--) {
-                Annotatable annotatable = mAnnotationsManager.getAnnotatableList().get(i);
-
-                if (annotatable.getId().equals(lastId)) {
-                    //annotatable.getPath().reset();
-                    mAnnotationsManager.getAnnotatableList().remove(i);
-                }
+            mAnnotationsManager.removeAnnotatable(lastId);
+            if (mRecorder != null) {
+                mRecorder.remove(SystemClock.uptimeMillis(), lastId);
             }
             invalidate();
         }
@@ -532,25 +1373,22 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        //new annotatables record the size they are drawn at; the others are mapped to it on draw
+        this.width = w;
+        this.height = h;
+        mZoom.setViewSize(w, h);
+        onZoomChanged();
     }
 
-    private void createTextAnnotatable(EditText editText, float x, float y) {
+    private void createTextAnnotatable(float x, float y) {
         Log.i(LOG_TAG, "Create TextAnnotatable");
-        mCurrentPaint = new Paint();
-        mCurrentPaint.setAntiAlias(true);
-        mCurrentPaint.setColor(mCurrentColor);
-        mCurrentPaint.setTextSize(48);
-        mCurrentText = new AnnotationsText(editText, x, y);
+        mCurrentTextPaint = Annotatable.newTextPaint(mCurrentColor, 48);
+        mCurrentText = new AnnotationsText("", x, y);
     }
 
     private void createPathAnnotatable(boolean incoming) {
         Log.i(LOG_TAG, "Create PathAnnotatable");
-        mCurrentPaint = new Paint();
-        mCurrentPaint.setAntiAlias(true);
-        mCurrentPaint.setColor(mCurrentColor);
-        mCurrentPaint.setStyle(Paint.Style.STROKE);
-        mCurrentPaint.setStrokeJoin(Paint.Join.ROUND);
-        mCurrentPaint.setStrokeWidth(10);
+        mCurrentPaint = Annotatable.newPathPaint(mCurrentColor, 10);
         if (mode != null && mode == Mode.Pen) {
             mCurrentPath = new AnnotationsPath();
         }
@@ -559,19 +1397,16 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
     private void addAnnotatable() {
         Log.i(LOG_TAG, "Add Annotatable");
         if (mode != null) {
-            if (mode.equals(Mode.Pen)) {
-                mCurrentAnnotatable = new Annotatable(mode.toString(), mCurrentPath, mCurrentPaint, width, height);
-                mCurrentAnnotatable.setType(Annotatable.AnnotatableType.PATH);
-            } else {
-                mCurrentAnnotatable = new Annotatable(mode.toString(), mCurrentText, mCurrentPaint, width, height);
-                mCurrentAnnotatable.setType(Annotatable.AnnotatableType.TEXT);
-            }
+            mCurrentAnnotatable = new Annotatable(mode.toString(), mCurrentPath, mCurrentPaint, width, height);
+            mCurrentAnnotatable.setType(Annotatable.AnnotatableType.PATH);
             mAnnotationsManager.addAnnotatable(mCurrentAnnotatable);
         }
     }
 
     @Override
     public void onItemSelected(View v, boolean selected) {
+        //any toolbar action ends the text being edited
+        finishText();
 
         if (v.getId() == R.id.done) {
             addLogEvent(OpenTokConfig.LOG_ACTION_DONE, OpenTokConfig.LOG_VARIATION_ATTEMPT);
@@ -594,6 +1429,9 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
             mode = Mode.Capture;
             if (videoRenderer != null) {
                 Bitmap bmp = videoRenderer.captureScreenshot();
+                if (mMemoryBudget != null) {
+                    mMemoryBudget.check();
+                }
                 if (mListener != null) {
                     mListener.onScreencaptureReady(bmp);
                 }
@@ -615,6 +1453,12 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
                     //type text
                     mode = Mode.Text;
                 }
+                if (v.getId() == R.id.laser_pointer) {
+                    addLogEvent(OpenTokConfig.LOG_ACTION_LASER, OpenTokConfig.LOG_VARIATION_ATTEMPT);
+                    //pointer trail, never committed
+                    mode = Mode.Laser;
+                    addLogEvent(OpenTokConfig.LOG_ACTION_LASER, OpenTokConfig.LOG_VARIATION_SUCCESS);
+                }
                 if (v.getId() == R.id.draw_freehand) {
                     addLogEvent(OpenTokConfig.LOG_ACTION_FREEHAND, OpenTokConfig.LOG_VARIATION_ATTEMPT);
                     //freehand lines
@@ -640,8 +1484,8 @@ public class AnnotationsView extends ViewGroup implements AnnotationsToolbar.Act
 
     //add log events
     private void addLogEvent(String action, String variation){
-        if ( mAnalytics!= null ) {
-            mAnalytics.logEvent(action, variation);
+        if ( mAnalyticsEvents != null ) {
+            mAnalyticsEvents.logEvent(action, variation);
         }
     }
 }
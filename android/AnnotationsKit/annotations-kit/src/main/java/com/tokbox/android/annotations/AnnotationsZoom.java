@@ -0,0 +1,96 @@
+package com.tokbox.android.annotations;
+
+/**
+ * Zoom and pan of the AnnotationsView, shared by the annotations and the video.
+ *
+ * A canvas point (x, y) is shown at (x * zoom + panX, y * zoom + panY) in the view. The pan is
+ * kept so the zoomed canvas covers the view, or stays inside it when zoomed out.
+ */
+class AnnotationsZoom {
+
+    static final float DEFAULT_MIN_ZOOM = 1;
+    static final float DEFAULT_MAX_ZOOM = 4;
+
+    private float mZoom = 1;
+    private float mPanX = 0;
+    private float mPanY = 0;
+    private float mMinZoom = DEFAULT_MIN_ZOOM;
+    private float mMaxZoom = DEFAULT_MAX_ZOOM;
+    private int mViewWidth = 0;
+    private int mViewHeight = 0;
+
+    float getZoom() {
+        return mZoom;
+    }
+
+    float getPanX() {
+        return mPanX;
+    }
+
+    float getPanY() {
+        return mPanY;
+    }
+
+    boolean isIdentity() {
+        return mZoom == 1 && mPanX == 0 && mPanY == 0;
+    }
+
+    void setViewSize(int width, int height) {
+        mViewWidth = width;
+        mViewHeight = height;
+        clampPan();
+    }
+
+    void setRange(float minZoom, float maxZoom) {
+        mMinZoom = minZoom;
+        mMaxZoom = maxZoom;
+        zoomBy(1, 0, 0);
+    }
+
+    void reset() {
+        mZoom = 1;
+        mPanX = 0;
+        mPanY = 0;
+        clampPan();
+    }
+
+    /*
+     * Scales the zoom, keeping the canvas point under the focus in place
+     * @param factor Ratio of the new zoom to the current one
+     * @param focusX Focus in view coordinates
+     * @param focusY Focus in view coordinates
+     */
+    void zoomBy(float factor, float focusX, float focusY) {
+        float zoom = Math.max(mMinZoom, Math.min(mMaxZoom, mZoom * factor));
+        float applied = zoom / mZoom;
+        mPanX = focusX - (focusX - mPanX) * applied;
+        mPanY = focusY - (focusY - mPanY) * applied;
+        mZoom = zoom;
+        clampPan();
+    }
+
+    void panBy(float dx, float dy) {
+        mPanX += dx;
+        mPanY += dy;
+        clampPan();
+    }
+
+    /*
+     * Maps a point of the view to the canvas, in place
+     * @param point x, y
+     */
+    void mapToCanvas(float[] point) {
+        point[0] = (point[0] - mPanX) / mZoom;
+        point[1] = (point[1] - mPanY) / mZoom;
+    }
+
+    private void clampPan() {
+        mPanX = clamp(mPanX, mViewWidth - mViewWidth * mZoom);
+        mPanY = clamp(mPanY, mViewHeight - mViewHeight * mZoom);
+    }
+
+    //between 0 and the free space, which is negative when zoomed in
+    private static float clamp(float pan, float free) {
+        return Math.max(Math.min(0, free), Math.min(Math.max(0, free), pan));
+    }
+}
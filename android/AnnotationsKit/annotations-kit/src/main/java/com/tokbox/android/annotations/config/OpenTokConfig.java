@@ -12,7 +12,10 @@ public class OpenTokConfig {
     public static final String LOG_ACTION_TEXT = "Text";
     public static final String LOG_ACTION_SCREENCAPTURE = "ScreenCapture";
     public static final String LOG_ACTION_ERASE = "Erase";
+    public static final String LOG_ACTION_LASER = "Laser";
     public static final String LOG_ACTION_DONE = "DONE";
+    //the counts of a summarised action are logged under the action followed by this suffix
+    public static final String LOG_ACTION_COUNT_SUFFIX = "Count";
 
     public static final String LOG_VARIATION_ATTEMPT = "Attempt";
     public static final String LOG_VARIATION_ERROR = "Failure";
@@ -0,0 +1,238 @@
+package com.tokbox.android.annotations.utils;
+
+import com.tokbox.android.annotations.Annotatable;
+import com.tokbox.android.annotations.AnnotationsMemoryBudget;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The recent video frames, with the annotations shown over each of them, so a capture can go
+ * back a few seconds.
+ *
+ * Frames are copied into a fixed pool of direct buffers that fits in the memory cap, and the pool
+ * is reused as a ring once full. To cover the whole duration with the frames the cap allows,
+ * frames closer than duration / pool size to the last kept one are skipped.
+ *
+ * The buffers of the pool are allocated as frames are kept. Under memory pressure the oldest
+ * frames are dropped with their buffers, and the pool grows back to the cap afterwards, checking
+ * the memory budget each time it grows.
+ */
+public class AnnotationsFrameHistory {
+
+    /**
+     * A kept frame.
+     */
+    public static class Snapshot {
+        public final byte[] yuv;
+        public final int width;
+        public final int height;
+        public final long timestamp;
+        public final Annotatable[] annotations;
+
+        Snapshot(byte[] yuv, int width, int height, long timestamp, Annotatable[] annotations) {
+            this.yuv = yuv;
+            this.width = width;
+            this.height = height;
+            this.timestamp = timestamp;
+            this.annotations = annotations;
+        }
+    }
+
+    private final long mDurationMs;
+    private final long mMaxBytes;
+    private volatile AnnotationsMemoryBudget mMemoryBudget;
+
+    private ByteBuffer[] mBuffers = new ByteBuffer[0];
+    private long[] mTimestamps = new long[0];
+    private Annotatable[][] mAnnotations = new Annotatable[0][];
+    private int mStart = 0;
+    private int mCount = 0;
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private long mIntervalMs = 0;
+
+    /*
+     * Constructor
+     * @param durationMs How far back the frames go
+     * @param maxBytes Memory cap of the frame pool
+     */
+    public AnnotationsFrameHistory(long durationMs, long maxBytes) {
+        this.mDurationMs = durationMs;
+        this.mMaxBytes = maxBytes;
+    }
+
+    /*
+     * Set the budget checked when the pool grows
+     * @param budget AnnotationsMemoryBudget, or null
+     */
+    public void setMemoryBudget(AnnotationsMemoryBudget budget) {
+        mMemoryBudget = budget;
+    }
+
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    public synchronized int getFrameCount() {
+        return mCount;
+    }
+
+    /*
+     * Returns the bytes held by the frame pool
+     */
+    public synchronized long getMemoryUsage() {
+        long bytes = 0;
+        for (ByteBuffer buffer : mBuffers) {
+            if (buffer != null) {
+                bytes += buffer.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    /*
+     * Keeps a copy of a frame, unless it is too close to the last kept frame. Returns whether the
+     * frame was kept.
+     * @param frame Y plane followed by the half-resolution U and V planes
+     * @param width Frame width
+     * @param height Frame height
+     * @param timestamp Frame time in milliseconds
+     * @param annotations The annotations shown over the frame, shared between frames and never modified
+     */
+    public boolean record(ByteBuffer frame, int width, int height, long timestamp,
+                          Annotatable[] annotations) {
+        int kept = keep(frame, width, height, timestamp, annotations);
+        AnnotationsMemoryBudget budget = mMemoryBudget;
+        if (kept == KEPT_GREW && budget != null) {
+            //outside the lock, the budget trims the pool under its own lock
+            budget.check();
+        }
+        return kept != NOT_KEPT;
+    }
+
+    private static final int NOT_KEPT = 0;
+    private static final int KEPT = 1;
+    private static final int KEPT_GREW = 2;
+
+    private synchronized int keep(ByteBuffer frame, int width, int height, long timestamp,
+                                  Annotatable[] annotations) {
+        int size = YuvDownscaler.getFrameSize(width, height);
+        if (frame.capacity() != size) {
+            return NOT_KEPT;
+        }
+        if (width != mWidth || height != mHeight) {
+            resize(width, height);
+        }
+        if (mBuffers.length == 0) {
+            return NOT_KEPT;
+        }
+        if (mCount > 0 && timestamp - mTimestamps[(mStart + mCount - 1) % mBuffers.length] < mIntervalMs) {
+            return NOT_KEPT;
+        }
+
+        int slot;
+        if (mCount < mBuffers.length) {
+            slot = (mStart + mCount) % mBuffers.length;
+            mCount++;
+        } else {
+            //the oldest frame is replaced
+            slot = mStart;
+            mStart = (mStart + 1) % mBuffers.length;
+        }
+        int kept = KEPT;
+        if (mBuffers[slot] == null) {
+            mBuffers[slot] = ByteBuffer.allocateDirect(size);
+            mBuffers[slot].order(ByteOrder.nativeOrder());
+            kept = KEPT_GREW;
+        }
+        ByteBuffer buffer = mBuffers[slot];
+        buffer.clear();
+        frame.clear();
+        buffer.put(frame);
+        frame.clear();
+        mTimestamps[slot] = timestamp;
+        mAnnotations[slot] = annotations;
+        return kept;
+    }
+
+    /*
+     * Returns a copy of the last frame kept at or before a time, or of the oldest frame if they
+     * are all later. Returns null if no frame was kept.
+     * @param timestamp Time in milliseconds, in the time base of record()
+     */
+    public synchronized Snapshot get(long timestamp) {
+        if (mCount == 0) {
+            return null;
+        }
+        int found = mStart;
+        for (int i = 0; i < mCount; i++) {
+            int slot = (mStart + i) % mBuffers.length;
+            if (mTimestamps[slot] > timestamp) {
+                break;
+            }
+            found = slot;
+        }
+        ByteBuffer buffer = mBuffers[found];
+        byte[] yuv = new byte[buffer.capacity()];
+        buffer.clear();
+        buffer.get(yuv);
+        return new Snapshot(yuv, mWidth, mHeight, mTimestamps[found], mAnnotations[found]);
+    }
+
+    /*
+     * Releases memory under pressure: the oldest frames are dropped with their buffers, until the
+     * bytes are released or no frame is left. The cap is kept, the pool grows back as frames come.
+     * Returns the bytes released.
+     * @param bytes Bytes to release
+     */
+    public synchronized long trim(long bytes) {
+        long released = 0;
+        while (mCount > 0 && released < bytes) {
+            released += free(mStart);
+            mStart = (mStart + 1) % mBuffers.length;
+            mCount--;
+        }
+        return released;
+    }
+
+    private long free(int slot) {
+        ByteBuffer buffer = mBuffers[slot];
+        if (buffer == null) {
+            return 0;
+        }
+        mBuffers[slot] = null;
+        mAnnotations[slot] = null;
+        return buffer.capacity();
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /*
+     * Drops the kept frames and frees the pool
+     */
+    public synchronized void clear() {
+        mWidth = 0;
+        mHeight = 0;
+        mBuffers = new ByteBuffer[0];
+        mTimestamps = new long[0];
+        mAnnotations = new Annotatable[0][];
+        mStart = 0;
+        mCount = 0;
+    }
+
+    //a new frame size starts a new pool, sized for the memory cap
+    private void resize(int width, int height) {
+        int size = YuvDownscaler.getFrameSize(width, height);
+        int frames = (int) Math.min(mMaxBytes / size, Integer.MAX_VALUE);
+        clear();
+        mWidth = width;
+        mHeight = height;
+        mBuffers = new ByteBuffer[frames];
+        mTimestamps = new long[frames];
+        mAnnotations = new Annotatable[frames][];
+        mIntervalMs = frames > 0 ? mDurationMs / frames : 0;
+    }
+}
@@ -4,9 +4,13 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.os.SystemClock;
 import android.view.View;
 
 import com.opentok.android.BaseVideoRenderer;
+import com.tokbox.android.annotations.Annotatable;
+import com.tokbox.android.annotations.AnnotationsMemoryBudget;
+import com.tokbox.android.annotations.AnnotationsMetrics;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -23,6 +27,11 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
 
     private GLSurfaceView mView;
     private MyRenderer mRenderer;
+    private volatile AnnotationsMemoryBudget mMemoryBudget;
+
+    //screenshot buffers, reused from capture to capture
+    private byte[] mScreenshotYuv = new byte[0];
+    private int[] mScreenshotArgb = new int[0];
 
     static class MyRenderer implements GLSurfaceView.Renderer {
 
@@ -80,12 +89,56 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
                 + "  g=y-0.39173*u-0.81290*v;\n" + "  b=y+2.017*u;\n"
                 + "  gl_FragColor=vec4(r,g,b,1.0);\n" + "}\n";
 
+        // the whole I420 buffer as one luminance texture, width x (height + height / 2): the Y
+        // rows, then the U plane with two of its rows per texture row, then the V plane likewise.
+        // Texels are fetched at exact positions, so the texture is sampled with GL_NEAREST.
+        private final String packedFragmentShaderCode = "#ifdef GL_FRAGMENT_PRECISION_HIGH\n"
+                + "precision highp float;\n"
+                + "#else\n"
+                + "precision mediump float;\n"
+                + "#endif\n"
+                + "uniform sampler2D Itex;\n"
+                + "uniform vec2 uFrameSize;\n"
+                + "uniform vec2 uTextureSize;\n"
+                + "varying vec2 vTextureCoord;\n"
+                + "void main(void) {\n"
+                + "  float r,g,b,y,u,v;\n"
+                + "  vec2 p=min(floor(vTextureCoord*uFrameSize),uFrameSize-1.0);\n"
+                + "  vec2 c=floor(p*0.5);\n"
+                + "  vec2 up=vec2(mod(c.y,2.0)*uFrameSize.x*0.5+c.x,uFrameSize.y+floor(c.y*0.5));\n"
+                + "  vec2 vp=up+vec2(0.0,(uTextureSize.y-uFrameSize.y)*0.5);\n"
+                + "  y=texture2D(Itex,(p+0.5)/uTextureSize).r;\n"
+                + "  u=texture2D(Itex,(up+0.5)/uTextureSize).r;\n"
+                + "  v=texture2D(Itex,(vp+0.5)/uTextureSize).r;\n"
+                + "  y=1.1643*(y-0.0625);\n"
+                + "  u=u-0.5;\n" + "  v=v-0.5;\n" + "  r=y+1.5958*v;\n"
+                + "  g=y-0.39173*u-0.81290*v;\n" + "  b=y+2.017*u;\n"
+                + "  gl_FragColor=vec4(r,g,b,1.0);\n" + "}\n";
+
+        static final int POSITION_ATTRIBUTE = 0;
+        static final int TEXTURE_COORD_ATTRIBUTE = 1;
+
         ReentrantLock mFrameLock = new ReentrantLock();
         Frame mCurrentFrame;
+        boolean mCurrentFrameDrawn = false;
+        volatile AnnotationsMetrics mMetrics;
 
         private int mProgram;
+        private int mPackedProgram;
         private int mTextureWidth;
         private int mTextureHeight;
+        volatile boolean mPackedUploadEnabled = false;
+        boolean mTexturePacked = false;
+        volatile boolean mDownscaleEnabled = false;
+        private final YuvDownscaler mDownscaler = new YuvDownscaler();
+        volatile boolean mChangeDetectionEnabled = false;
+        private final YuvChangeDetector mChangeDetector = new YuvChangeDetector();
+        // whether the last upload went through the detector, on the GL thread
+        private boolean mChangeDetectionUsed = false;
+        volatile AnnotationsFrameHistory mFrameHistory;
+        volatile Annotatable[] mAnnotations;
+        // zoom, then pan as fractions of the viewport, replaced as a whole
+        volatile float[] mZoom = {1, 0, 0};
         private int mViewportWidth;
         private int mViewportHeight;
 
@@ -116,34 +169,23 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
 
             int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER,
                     vertexShaderCode);
-            int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER,
-                    fragmentShaderCode);
-
-            mProgram = GLES20.glCreateProgram(); // create empty OpenGL ES
-            // Program
-            GLES20.glAttachShader(mProgram, vertexShader); // add the vertex
-            // shader to program
-            GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment
-            // shader to
-            // program
-            GLES20.glLinkProgram(mProgram);
-
-            int positionHandle = GLES20.glGetAttribLocation(mProgram,
-                    "aPosition");
-            int textureHandle = GLES20.glGetAttribLocation(mProgram,
-                    "aTextureCoord");
-
-            GLES20.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX,
+            mProgram = createProgram(vertexShader, loadShader(GLES20.GL_FRAGMENT_SHADER,
+                    fragmentShaderCode));
+            mPackedProgram = createProgram(vertexShader, loadShader(GLES20.GL_FRAGMENT_SHADER,
+                    packedFragmentShaderCode));
+
+            // both programs bind their attributes to the same locations, so they share the arrays
+            GLES20.glVertexAttribPointer(POSITION_ATTRIBUTE, COORDS_PER_VERTEX,
                     GLES20.GL_FLOAT, false, COORDS_PER_VERTEX * 4,
                     mVertexBuffer);
 
-            GLES20.glEnableVertexAttribArray(positionHandle);
+            GLES20.glEnableVertexAttribArray(POSITION_ATTRIBUTE);
 
-            GLES20.glVertexAttribPointer(textureHandle,
+            GLES20.glVertexAttribPointer(TEXTURE_COORD_ATTRIBUTE,
                     TEXTURECOORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
                     TEXTURECOORDS_PER_VERTEX * 4, mTextureBuffer);
 
-            GLES20.glEnableVertexAttribArray(textureHandle);
+            GLES20.glEnableVertexAttribArray(TEXTURE_COORD_ATTRIBUTE);
 
             GLES20.glUseProgram(mProgram);
             int i = GLES20.glGetUniformLocation(mProgram, "Ytex");
@@ -155,17 +197,35 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
             i = GLES20.glGetUniformLocation(mProgram, "Vtex");
             GLES20.glUniform1i(i, 2); /* Bind Vtex to texture unit 2 */
 
+            GLES20.glUseProgram(mPackedProgram);
+            i = GLES20.glGetUniformLocation(mPackedProgram, "Itex");
+            GLES20.glUniform1i(i, 0); /* Bind Itex to texture unit 0 */
+
             mTextureWidth = 0;
             mTextureHeight = 0;
         }
 
+        static int createProgram(int vertexShader, int fragmentShader) {
+            int program = GLES20.glCreateProgram();
+            GLES20.glAttachShader(program, vertexShader);
+            GLES20.glAttachShader(program, fragmentShader);
+            GLES20.glBindAttribLocation(program, POSITION_ATTRIBUTE, "aPosition");
+            GLES20.glBindAttribLocation(program, TEXTURE_COORD_ATTRIBUTE, "aTextureCoord");
+            GLES20.glLinkProgram(program);
+            return program;
+        }
+
         static void initializeTexture(int name, int id, int width, int height) {
+            initializeTexture(name, id, width, height, GLES20.GL_LINEAR);
+        }
+
+        static void initializeTexture(int name, int id, int width, int height, int magFilter) {
             GLES20.glActiveTexture(name);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, id);
             GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
                     GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
             GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                    GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+                    GLES20.GL_TEXTURE_MAG_FILTER, magFilter);
             GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
                     GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
             GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
@@ -175,70 +235,150 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
                     GLES20.GL_UNSIGNED_BYTE, null);
         }
 
-        void setupTextures(Frame frame) {
+        /*
+         * Returns whether an I420 frame fills the packed texture exactly: an even width, so two
+         * chroma rows make one texture row, and an even number of chroma rows.
+         */
+        static boolean canPack(int width, int height) {
+            return (width & 1) == 0 && (((height + 1) >> 1) & 1) == 0;
+        }
+
+        void setupTextures(int w, int h) {
             if (mTextureIds[0] != 0) {
                 GLES20.glDeleteTextures(3, mTextureIds, 0);
             }
             GLES20.glGenTextures(3, mTextureIds, 0);
 
-            int w = frame.getWidth();
-            int h = frame.getHeight();
             int hw = (w + 1) >> 1;
             int hh = (h + 1) >> 1;
 
-            initializeTexture(GLES20.GL_TEXTURE0, mTextureIds[0], w, h);
-            initializeTexture(GLES20.GL_TEXTURE1, mTextureIds[1], hw, hh);
-            initializeTexture(GLES20.GL_TEXTURE2, mTextureIds[2], hw, hh);
+            mTexturePacked = mPackedUploadEnabled && canPack(w, h);
+            if (mTexturePacked) {
+                initializeTexture(GLES20.GL_TEXTURE0, mTextureIds[0], w, h + hh, GLES20.GL_NEAREST);
+            } else {
+                initializeTexture(GLES20.GL_TEXTURE0, mTextureIds[0], w, h);
+                initializeTexture(GLES20.GL_TEXTURE1, mTextureIds[1], hw, hh);
+                initializeTexture(GLES20.GL_TEXTURE2, mTextureIds[2], hw, hh);
+            }
+
+            mTextureWidth = w;
+            mTextureHeight = h;
+            // the new textures hold nothing yet
+            mChangeDetector.reset();
+        }
 
-            mTextureWidth = frame.getWidth();
-            mTextureHeight = frame.getHeight();
+        int updateTextures(ByteBuffer bb, int width, int height) {
+            return updateTextures(bb, width, height, 0, height);
         }
 
-        void updateTextures(Frame frame) {
-            int width = frame.getWidth();
-            int height = frame.getHeight();
+        /*
+         * Uploads the frame rows y0 to y1, and the chroma rows under them. Returns the number of
+         * bytes uploaded. Unless they are the frame edges, y0 and y1 are multiples of 4, so the
+         * chroma rows start and end on a row of the packed texture.
+         */
+        int updateTextures(ByteBuffer bb, int width, int height, int y0, int y1) {
             int half_width = (width + 1) >> 1;
             int half_height = (height + 1) >> 1;
             int y_size = width * height;
             int uv_size = half_width * half_height;
 
-            ByteBuffer bb = frame.getBuffer();
             // If we are reusing this frame, make sure we reset position and
             // limit
             bb.clear();
 
             if (bb.remaining() == y_size + uv_size * 2) {
-                bb.position(0);
+                int cy0 = y0 >> 1;
+                int cy1 = Math.min(half_height, (y1 + 1) >> 1);
 
                 GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
                 GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 1);
 
+                if (mTexturePacked) {
+                    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[0]);
+                    if (y0 == 0 && y1 == height) {
+                        // the planes are already laid out as the texture rows, one upload takes them all
+                        bb.position(0);
+                        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width,
+                                height + half_height, GLES20.GL_LUMINANCE,
+                                GLES20.GL_UNSIGNED_BYTE, bb);
+                        return y_size + uv_size * 2;
+                    }
+                    // two chroma rows per texture row
+                    bb.position(y0 * width);
+                    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, y0, width,
+                            y1 - y0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, bb);
+                    bb.position(y_size + cy0 * half_width);
+                    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, height + cy0 / 2,
+                            width, (cy1 - cy0) / 2, GLES20.GL_LUMINANCE,
+                            GLES20.GL_UNSIGNED_BYTE, bb);
+                    bb.position(y_size + uv_size + cy0 * half_width);
+                    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0,
+                            height + half_height / 2 + cy0 / 2, width, (cy1 - cy0) / 2,
+                            GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, bb);
+                    return (y1 - y0) * width + (cy1 - cy0) * half_width * 2;
+                }
+
+                bb.position(y0 * width);
                 GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
                 GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[0]);
-                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width,
-                        height, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE,
+                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, y0, width,
+                        y1 - y0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE,
                         bb);
 
-                bb.position(y_size);
+                bb.position(y_size + cy0 * half_width);
                 GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
                 GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[1]);
-                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0,
-                        half_width, half_height, GLES20.GL_LUMINANCE,
+                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, cy0,
+                        half_width, cy1 - cy0, GLES20.GL_LUMINANCE,
                         GLES20.GL_UNSIGNED_BYTE, bb);
 
-                bb.position(y_size + uv_size);
+                bb.position(y_size + uv_size + cy0 * half_width);
                 GLES20.glActiveTexture(GLES20.GL_TEXTURE2);
                 GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[2]);
-                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0,
-                        half_width, half_height, GLES20.GL_LUMINANCE,
+                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, cy0,
+                        half_width, cy1 - cy0, GLES20.GL_LUMINANCE,
                         GLES20.GL_UNSIGNED_BYTE, bb);
+                return (y1 - y0) * width + (cy1 - cy0) * half_width * 2;
             } else {
                 mTextureWidth = 0;
                 mTextureHeight = 0;
+                return 0;
             }
 
         }
 
+        /*
+         * Uploads only the row bands that changed since the last upload. Returns the number of
+         * bytes uploaded.
+         */
+        int updateChangedTextures(ByteBuffer bb, int width, int height) {
+            if (bb.capacity() != YuvDownscaler.getFrameSize(width, height)) {
+                return updateTextures(bb, width, height);
+            }
+            int changed = mChangeDetector.detect(bb, width, height);
+            int bands = mChangeDetector.getBandCount();
+            if (changed == bands) {
+                return updateTextures(bb, width, height);
+            }
+            int uploaded = 0;
+            int band = 0;
+            while (band < bands) {
+                if (!mChangeDetector.isBandChanged(band)) {
+                    band++;
+                    continue;
+                }
+                // one upload per run of consecutive changed bands
+                int first = band;
+                while (band < bands && mChangeDetector.isBandChanged(band)) {
+                    band++;
+                }
+                uploaded += updateTextures(bb, width, height, first * YuvChangeDetector.BAND_ROWS,
+                        Math.min(height, band * YuvChangeDetector.BAND_ROWS));
+            }
+            return uploaded;
+        }
+
         @Override
         public void onSurfaceChanged(GL10 gl, int width, int height) {
             GLES20.glViewport(0, 0, width, height);
@@ -248,67 +388,133 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
 
         @Override
         public void onDrawFrame(GL10 gl) {
+            AnnotationsMetrics metrics = mMetrics;
+            long start = metrics != null ? metrics.start(AnnotationsMetrics.Timer.RENDER_FRAME) : 0;
             mFrameLock.lock();
-            if (mCurrentFrame != null && !mVideoDisabled) {
-                GLES20.glUseProgram(mProgram);
+            boolean videoDrawn = mCurrentFrame != null && !mVideoDisabled;
+            if (videoDrawn) {
+                mCurrentFrameDrawn = true;
+
+                int width = mCurrentFrame.getWidth();
+                int height = mCurrentFrame.getHeight();
+                int frameBytes = YuvDownscaler.getFrameSize(width, height);
+                ByteBuffer buffer = mCurrentFrame.getBuffer();
+                float zoom = mZoom[0];
+                int shift = mDownscaleEnabled ? YuvDownscaler.getDecimation(width, height,
+                        (int) (mViewportWidth * zoom), (int) (mViewportHeight * zoom), mVideoFitEnabled) : 0;
+                if (shift > 0 && buffer.capacity() == YuvDownscaler.getFrameSize(width, height)) {
+                    // a smaller viewport can not show the full resolution, upload a reduced frame
+                    buffer = mDownscaler.downscale(buffer, width, height, shift);
+                    width >>= shift;
+                    height >>= shift;
+                }
 
-                if (mTextureWidth != mCurrentFrame.getWidth()
-                        || mTextureHeight != mCurrentFrame.getHeight()) {
-                    setupTextures(mCurrentFrame);
+                if (mTextureWidth != width || mTextureHeight != height
+                        || mTexturePacked != (mPackedUploadEnabled && canPack(width, height))) {
+                    setupTextures(width, height);
                 }
-                updateTextures(mCurrentFrame);
-
-                Matrix.setIdentityM(mScaleMatrix, 0);
-                float scaleX = 1.0f, scaleY = 1.0f;
-                float ratio = (float) mCurrentFrame.getWidth()
-                        / mCurrentFrame.getHeight();
-//                Log.i("RenderFrame", "Frame size: " + mCurrentFrame.getWidth() + ", " + mCurrentFrame.getHeight());
-                float vratio = (float) mViewportWidth / mViewportHeight;
-//                Log.i("RenderFrame", "Viewport size: " + mViewportWidth + ", " + mViewportHeight);
-
-//                Log.i("RenderFrame", "Fit enabled: " + mVideoFitEnabled);
-
-                if (mVideoFitEnabled) {
-                    if (ratio > vratio) {
-                        scaleY = vratio / ratio;
-                    } else {
-                        scaleX = ratio / vratio;
-                    }
-                } else {
-                    if (ratio < vratio) {
-                        scaleY = vratio / ratio;
-                    } else {
-                        scaleX = ratio / vratio;
-                    }
+                boolean detect = mChangeDetectionEnabled;
+                if (detect && !mChangeDetectionUsed) {
+                    // the frames uploaded meanwhile were not compared, start from a full upload
+                    mChangeDetector.reset();
                 }
-
-//                Log.i("RenderFrame", "Scale: " + scaleX + ", " + scaleY);
-
-                Matrix.scaleM(mScaleMatrix, 0,
-                        scaleX * (mCurrentFrame.isMirroredX() ? -1.0f : 1.0f),
-                        scaleY, 1);
-
-                int mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram,
-                        "uMVPMatrix");
-                GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false,
-                        mScaleMatrix, 0);
-
-                GLES20.glDrawElements(GLES20.GL_TRIANGLES, mVertexIndex.length,
-                        GLES20.GL_UNSIGNED_SHORT, mDrawListBuffer);
+                mChangeDetectionUsed = detect;
+                int uploaded = detect
+                        ? updateChangedTextures(buffer, width, height)
+                        : updateTextures(buffer, width, height);
+                if (metrics != null && uploaded > 0) {
+                    metrics.add(AnnotationsMetrics.Counter.UPLOADED_BYTES, uploaded);
+                    metrics.add(AnnotationsMetrics.Counter.UPLOAD_BYTES_SAVED, frameBytes - uploaded);
+                } else if (metrics != null && mTextureWidth == width) {
+                    // nothing changed, the textures already hold the frame
+                    metrics.add(AnnotationsMetrics.Counter.UPLOAD_BYTES_SAVED, frameBytes);
+                }
+                drawTextures(width, height, mCurrentFrame.isMirroredX());
             } else {
                 //black frame when video is disabled
                 gl.glClearColor(0, 0, 0, 1);
                 GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
             }
             mFrameLock.unlock();
+            if (metrics != null) {
+                //black frames are not counted
+                if (videoDrawn) {
+                    metrics.increment(AnnotationsMetrics.Counter.RENDERED_FRAMES);
+                }
+                metrics.stop(AnnotationsMetrics.Timer.RENDER_FRAME, start);
+            }
+        }
+
+        /*
+         * Draws the uploaded textures, scaled to the viewport and zoomed.
+         */
+        void drawTextures(int width, int height, boolean mirrored) {
+            float[] zoom = mZoom;
+            if (zoom[0] < 1) {
+                // zoomed out, the frame does not cover the viewport
+                GLES20.glClearColor(0, 0, 0, 1);
+                GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            }
+            int program = mTexturePacked ? mPackedProgram : mProgram;
+            GLES20.glUseProgram(program);
+            if (mTexturePacked) {
+                GLES20.glUniform2f(GLES20.glGetUniformLocation(program, "uFrameSize"),
+                        width, height);
+                GLES20.glUniform2f(GLES20.glGetUniformLocation(program, "uTextureSize"),
+                        width, height + ((height + 1) >> 1));
+            }
+
+            // the view maps (x, y) to (x * zoom + pan), in clip space the y axis goes up
+            Matrix.setIdentityM(mScaleMatrix, 0);
+            Matrix.translateM(mScaleMatrix, 0, zoom[0] - 1 + 2 * zoom[1], 1 - zoom[0] - 2 * zoom[2], 0);
+            Matrix.scaleM(mScaleMatrix, 0, zoom[0], zoom[0], 1);
+            float scaleX = 1.0f, scaleY = 1.0f;
+            float ratio = (float) width / height;
+            float vratio = (float) mViewportWidth / mViewportHeight;
+
+            if (mVideoFitEnabled) {
+                if (ratio > vratio) {
+                    scaleY = vratio / ratio;
+                } else {
+                    scaleX = ratio / vratio;
+                }
+            } else {
+                if (ratio < vratio) {
+                    scaleY = vratio / ratio;
+                } else {
+                    scaleX = ratio / vratio;
+                }
+            }
+
+            Matrix.scaleM(mScaleMatrix, 0,
+                    scaleX * (mirrored ? -1.0f : 1.0f),
+                    scaleY, 1);
+
+            int mMVPMatrixHandle = GLES20.glGetUniformLocation(program,
+                    "uMVPMatrix");
+            GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false,
+                    mScaleMatrix, 0);
+
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, mVertexIndex.length,
+                    GLES20.GL_UNSIGNED_SHORT, mDrawListBuffer);
         }
 
         public void displayFrame(Frame frame) {
             mFrameLock.lock();
             if (this.mCurrentFrame != null) {
+                if (!mCurrentFrameDrawn && !mVideoDisabled && mMetrics != null) {
+                    //replaced before the renderer got to draw it
+                    mMetrics.increment(AnnotationsMetrics.Counter.DROPPED_FRAMES);
+                }
                 this.mCurrentFrame.recycle();
             }
             this.mCurrentFrame = frame;
+            mCurrentFrameDrawn = false;
+            AnnotationsFrameHistory history = mFrameHistory;
+            if (history != null) {
+                history.record(frame.getBuffer(), frame.getWidth(), frame.getHeight(),
+                        SystemClock.uptimeMillis(), mAnnotations);
+            }
             mFrameLock.unlock();
 
         }
@@ -381,7 +587,99 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
         return 0;
     }
 
+    /*
+     * Set the metrics receiving the frame timings and the dropped frames
+     * @param metrics AnnotationsMetrics
+     */
+    public void setMetrics(AnnotationsMetrics metrics) {
+        mRenderer.mMetrics = metrics;
+    }
+
+    /*
+     * Upload each frame as a single texture instead of one texture per plane. Frames whose
+     * planes do not fill the packed texture exactly keep the three-texture upload.
+     * @param enabled true to upload a single texture
+     */
+    public void setPackedUploadEnabled(boolean enabled) {
+        mRenderer.mPackedUploadEnabled = enabled;
+    }
+
+    /*
+     * Downscale the frames by a power of two before uploading them, when the view shows them at
+     * half their resolution or less.
+     * @param enabled true to downscale
+     */
+    public void setDownscaleEnabled(boolean enabled) {
+        mRenderer.mDownscaleEnabled = enabled;
+    }
+
+    /*
+     * Compare each frame with the previous one and only upload the rows that changed. Worth it
+     * for mostly static streams, like shared screens. The UPLOADED_BYTES and UPLOAD_BYTES_SAVED
+     * counters of the metrics show the savings.
+     * @param enabled true to detect the changes
+     */
+    public void setChangeDetectionEnabled(boolean enabled) {
+        mRenderer.mChangeDetectionEnabled = enabled;
+    }
+
+    /*
+     * Keep the recent frames, so a capture can go back in time. Pass 0 to stop.
+     * @param durationMs How far back the frames go
+     * @param maxBytes Memory cap of the kept frames. Fewer frames are kept as the cap gets lower.
+     */
+    public void setFrameHistory(long durationMs, long maxBytes) {
+        AnnotationsFrameHistory history = mRenderer.mFrameHistory;
+        if (history != null) {
+            history.clear();
+        }
+        history = durationMs > 0 && maxBytes > 0
+                ? new AnnotationsFrameHistory(durationMs, maxBytes) : null;
+        if (history != null) {
+            history.setMemoryBudget(mMemoryBudget);
+        }
+        mRenderer.mFrameHistory = history;
+    }
+
+    /*
+     * Set the budget checked when the frame history grows. The AnnotationsView sets its budget.
+     * @param budget AnnotationsMemoryBudget, or null
+     */
+    public void setMemoryBudget(AnnotationsMemoryBudget budget) {
+        mMemoryBudget = budget;
+        AnnotationsFrameHistory history = mRenderer.mFrameHistory;
+        if (history != null) {
+            history.setMemoryBudget(budget);
+        }
+    }
+
+    /*
+     * Zoom the video like the AnnotationsView over it. A point at (x, y) of the view is shown at
+     * (x * zoom + offsetX * width, y * zoom + offsetY * height).
+     * @param zoom Scale, 1 to show the whole frame
+     * @param offsetX Pan, as a fraction of the view width
+     * @param offsetY Pan, as a fraction of the view height
+     */
+    public void setZoom(float zoom, float offsetX, float offsetY) {
+        mRenderer.mZoom = new float[]{zoom, offsetX, offsetY};
+        mView.requestRender();
+    }
+
+    public AnnotationsFrameHistory getFrameHistory() {
+        return mRenderer.mFrameHistory;
+    }
+
+    /*
+     * Set the annotations shown over the next frames, kept with them in the frame history.
+     * @param annotations The annotations, never modified afterwards
+     */
+    public void setAnnotations(Annotatable[] annotations) {
+        mRenderer.mAnnotations = annotations;
+    }
+
     public Bitmap captureScreenshot() {
+        AnnotationsMetrics metrics = mRenderer.mMetrics;
+        long start = metrics != null ? metrics.start(AnnotationsMetrics.Timer.CAPTURE_SCREENSHOT) : 0;
         ByteBuffer bb = mRenderer.mCurrentFrame.getBuffer();
         bb.clear();
 
@@ -392,50 +690,44 @@ public class AnnotationsVideoRenderer extends BaseVideoRenderer {
         int y_size = width * height;
         int uv_size = half_width * half_height;
 
-        byte[] yuv = new byte[y_size + uv_size * 2];
+        if (mScreenshotYuv.length != y_size + uv_size * 2) {
+            mScreenshotYuv = new byte[y_size + uv_size * 2];
+            mScreenshotArgb = new int[width * height];
+        }
+        byte[] yuv = mScreenshotYuv;
         bb.get(yuv);
-        int[] intArray = new int[width*height];
+        int[] intArray = mScreenshotArgb;
 
         // Decode Yuv data to integer array
         decodeYUV420(intArray, yuv, width, height);
 
-        return Bitmap.createBitmap(intArray, width, height, Bitmap.Config.ARGB_8888);
+        Bitmap bitmap = Bitmap.createBitmap(intArray, width, height, Bitmap.Config.ARGB_8888);
+        if (metrics != null) {
+            metrics.increment(AnnotationsMetrics.Counter.SCREENSHOTS);
+            metrics.stop(AnnotationsMetrics.Timer.CAPTURE_SCREENSHOT, start);
+        }
+        return bitmap;
     }
 
-    static public void decodeYUV420(int[] rgba, byte[] yuv420, int width, int height) {
-        int half_width = (width + 1) >> 1;
-        int half_height = (height +1) >> 1;
-        int y_size = width * height;
-        int uv_size = half_width * half_height;
-
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-
-                double y = (yuv420[j * width + i]) & 0xff;
-                double v = (yuv420[y_size + (j >> 1) * half_width + (i>>1)]) & 0xff;
-                double u = (yuv420[y_size + uv_size + (j >> 1) * half_width + (i>>1)]) & 0xff;
-
-                double r;
-                double g;
-                double b;
-
-                r = y + 1.402 * (u-128);
-                g = y - 0.34414*(v-128) - 0.71414*(u-128);
-                b = y + 1.772*(v-128);
+    /*
+     * Returns the bytes of the buffers kept for the next screenshot
+     */
+    public long getScreenshotMemoryUsage() {
+        return mScreenshotYuv.length + (long) mScreenshotArgb.length * 4;
+    }
 
-                if (r < 0) r = 0;
-                else if (r > 255) r = 255;
-                if (g < 0) g = 0;
-                else if (g > 255) g = 255;
-                if (b < 0) b = 0;
-                else if (b > 255) b = 255;
+    /*
+     * Frees the buffers kept for the next screenshot. Returns the bytes released.
+     */
+    public long releaseScreenshotBuffers() {
+        long released = getScreenshotMemoryUsage();
+        mScreenshotYuv = new byte[0];
+        mScreenshotArgb = new int[0];
+        return released;
+    }
 
-                int ir = (int)r;
-                int ig = (int)g;
-                int ib = (int)b;
-                rgba[j * width + i] = 0xff000000 | (ir << 16) | (ig << 8) | ib;
-            }
-        }
+    static public void decodeYUV420(int[] rgba, byte[] yuv420, int width, int height) {
+        YuvConverter.decodeYUV420(rgba, yuv420, width, height);
     }
 
     @Override
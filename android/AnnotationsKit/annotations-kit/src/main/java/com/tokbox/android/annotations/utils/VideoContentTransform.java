@@ -0,0 +1,125 @@
+package com.tokbox.android.annotations.utils;
+
+import android.graphics.Canvas;
+
+/**
+ * Where a video frame is shown in a view, as the AnnotationsVideoRenderer draws it: scaled
+ * uniformly to fit in the view or to fill it, centered, and mirrored around the vertical center
+ * line of the view when the frame is mirrored.
+ *
+ * The annotations over the video are mapped with the same transform, so they stay on the same
+ * content when the view is resized or rotated, and line up with the frame they are burnt into.
+ */
+public class VideoContentTransform {
+
+    private float mScale = 1;
+    private float mOffsetX = 0;
+    private float mOffsetY = 0;
+    private boolean mMirrored = false;
+    private int mViewWidth = 0;
+
+    /*
+     * Set the content and the view it is shown in
+     * @param contentWidth Width of the content, e.g. the frame. If the content size is unknown,
+     * the content is the view itself.
+     * @param contentHeight Height of the content
+     * @param viewWidth Width of the view
+     * @param viewHeight Height of the view
+     * @param fit true to fit the content in the view, false to fill the view with it
+     * @param mirrored Whether the content is shown mirrored
+     */
+    public void set(int contentWidth, int contentHeight, int viewWidth, int viewHeight, boolean fit, boolean mirrored) {
+        if (contentWidth <= 0 || contentHeight <= 0) {
+            contentWidth = viewWidth;
+            contentHeight = viewHeight;
+        }
+        mScale = getScale(contentWidth, contentHeight, viewWidth, viewHeight, fit);
+        mOffsetX = (viewWidth - contentWidth * mScale) / 2;
+        mOffsetY = (viewHeight - contentHeight * mScale) / 2;
+        mMirrored = mirrored;
+        mViewWidth = viewWidth;
+    }
+
+    /*
+     * Returns the uniform scale that fits the content in the view, or fills the view with it
+     */
+    public static float getScale(int contentWidth, int contentHeight, int viewWidth, int viewHeight, boolean fit) {
+        if (contentWidth <= 0 || contentHeight <= 0 || viewWidth <= 0 || viewHeight <= 0) {
+            return 1;
+        }
+        float scaleX = (float) viewWidth / contentWidth;
+        float scaleY = (float) viewHeight / contentHeight;
+        return fit ? Math.min(scaleX, scaleY) : Math.max(scaleX, scaleY);
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    public float getOffsetX() {
+        return mOffsetX;
+    }
+
+    public float getOffsetY() {
+        return mOffsetY;
+    }
+
+    public boolean isMirrored() {
+        return mMirrored;
+    }
+
+    /*
+     * Returns where a point of the content is shown in the view, along x
+     */
+    public float mapX(float x) {
+        float viewX = mOffsetX + x * mScale;
+        return mMirrored ? mViewWidth - viewX : viewX;
+    }
+
+    /*
+     * Returns where a point of the content is shown in the view, along y
+     */
+    public float mapY(float y) {
+        return mOffsetY + y * mScale;
+    }
+
+    /*
+     * Returns the point of the content shown at a point of the view, along x
+     */
+    public float unmapX(float x) {
+        return ((mMirrored ? mViewWidth - x : x) - mOffsetX) / mScale;
+    }
+
+    /*
+     * Returns the point of the content shown at a point of the view, along y
+     */
+    public float unmapY(float y) {
+        return (y - mOffsetY) / mScale;
+    }
+
+    /*
+     * Applies the transform to a canvas, so what is drawn in content coordinates lands where the
+     * view shows it
+     */
+    public void apply(Canvas canvas) {
+        if (mMirrored) {
+            canvas.translate(mViewWidth, 0);
+            canvas.scale(-1, 1);
+        }
+        canvas.translate(mOffsetX, mOffsetY);
+        canvas.scale(mScale, mScale);
+    }
+
+    /*
+     * Applies the inverse transform to a canvas, so what is drawn in view coordinates lands on
+     * the content shown there
+     */
+    public void applyInverse(Canvas canvas) {
+        canvas.scale(1 / mScale, 1 / mScale);
+        canvas.translate(-mOffsetX, -mOffsetY);
+        if (mMirrored) {
+            canvas.scale(-1, 1);
+            canvas.translate(-mViewWidth, 0);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.tokbox.android.annotations.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the row bands of an I420 frame that changed since the last uploaded frame, so static
+ * content, like a shared screen, is not uploaded again.
+ *
+ * A band is BAND_ROWS luma rows and the chroma rows under them. Each frame compares one column
+ * in SAMPLE_STEP, on a diagonal that shifts from frame to frame, against a copy of the bands last
+ * reported as changed. A change the samples miss is found within SAMPLE_STEP frames, since the
+ * copy keeps the old pixels until then. Pure Java, so it can be tested off-device.
+ */
+public final class YuvChangeDetector {
+
+    public static final int BAND_ROWS = 16;
+    static final int SAMPLE_STEP = 8;
+
+    private byte[] mReference = new byte[0];
+    private boolean[] mChanged = new boolean[0];
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private int mBandCount = 0;
+    private boolean mValid = false;
+    private int mPhase = 0;
+
+    /*
+     * Reports every band as changed on the next frame, for example after the textures were
+     * recreated.
+     */
+    public void reset() {
+        mValid = false;
+    }
+
+    public int getBandCount() {
+        return mBandCount;
+    }
+
+    /*
+     * Returns whether a band changed in the last detected frame
+     */
+    public boolean isBandChanged(int band) {
+        return mChanged[band];
+    }
+
+    /*
+     * Compares a frame with the bands uploaded so far. The changed bands are expected to be
+     * uploaded and are copied as the new reference. Returns the number of changed bands.
+     * @param frame Y plane followed by the half-resolution U and V planes
+     * @param width Frame width
+     * @param height Frame height
+     */
+    public int detect(ByteBuffer frame, int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            mBandCount = (height + BAND_ROWS - 1) / BAND_ROWS;
+            mReference = new byte[YuvDownscaler.getFrameSize(width, height)];
+            mChanged = new boolean[mBandCount];
+            mValid = false;
+        }
+
+        int halfWidth = (width + 1) >> 1;
+        int halfHeight = (height + 1) >> 1;
+        int ySize = width * height;
+        int uvSize = halfWidth * halfHeight;
+        int changed = 0;
+        for (int band = 0; band < mBandCount; band++) {
+            int y0 = band * BAND_ROWS;
+            int y1 = Math.min(height, y0 + BAND_ROWS);
+            int cy0 = y0 >> 1;
+            int cy1 = Math.min(halfHeight, (y1 + 1) >> 1);
+
+            boolean bandChanged = !mValid
+                    || rowsDiffer(frame, 0, width, y0, y1)
+                    || rowsDiffer(frame, ySize, halfWidth, cy0, cy1)
+                    || rowsDiffer(frame, ySize + uvSize, halfWidth, cy0, cy1);
+            mChanged[band] = bandChanged;
+            if (bandChanged) {
+                copyRows(frame, 0, width, y0, y1);
+                copyRows(frame, ySize, halfWidth, cy0, cy1);
+                copyRows(frame, ySize + uvSize, halfWidth, cy0, cy1);
+                changed++;
+            }
+        }
+        mValid = true;
+        mPhase = (mPhase + 1) % SAMPLE_STEP;
+        frame.clear();
+        return changed;
+    }
+
+    private boolean rowsDiffer(ByteBuffer frame, int offset, int rowWidth, int row0, int row1) {
+        for (int row = row0; row < row1; row++) {
+            int start = offset + row * rowWidth;
+            for (int x = (mPhase + row) % SAMPLE_STEP; x < rowWidth; x += SAMPLE_STEP) {
+                if (frame.get(start + x) != mReference[start + x]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void copyRows(ByteBuffer frame, int offset, int rowWidth, int row0, int row1) {
+        int start = offset + row0 * rowWidth;
+        frame.position(start);
+        frame.get(mReference, start, (row1 - row0) * rowWidth);
+    }
+}
@@ -0,0 +1,53 @@
+package com.tokbox.android.annotations.utils;
+
+/**
+ * Conversion of I420 video frames to ARGB pixels. Pure Java, so it can be benchmarked off-device.
+ */
+public final class YuvConverter {
+
+    private YuvConverter() {
+    }
+
+    /*
+     * Decodes an I420 frame into ARGB_8888 pixels
+     * @param rgba Output pixels, width * height
+     * @param yuv420 Y plane followed by the half-resolution U and V planes
+     * @param width Frame width
+     * @param height Frame height
+     */
+    public static void decodeYUV420(int[] rgba, byte[] yuv420, int width, int height) {
+        int half_width = (width + 1) >> 1;
+        int half_height = (height +1) >> 1;
+        int y_size = width * height;
+        int uv_size = half_width * half_height;
+
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+
+                double y = (yuv420[j * width + i]) & 0xff;
+                double v = (yuv420[y_size + (j >> 1) * half_width + (i>>1)]) & 0xff;
+                double u = (yuv420[y_size + uv_size + (j >> 1) * half_width + (i>>1)]) & 0xff;
+
+                double r;
+                double g;
+                double b;
+
+                r = y + 1.402 * (u-128);
+                g = y - 0.34414*(v-128) - 0.71414*(u-128);
+                b = y + 1.772*(v-128);
+
+                if (r < 0) r = 0;
+                else if (r > 255) r = 255;
+                if (g < 0) g = 0;
+                else if (g > 255) g = 255;
+                if (b < 0) b = 0;
+                else if (b > 255) b = 255;
+
+                int ir = (int)r;
+                int ig = (int)g;
+                int ib = (int)b;
+                rgba[j * width + i] = 0xff000000 | (ir << 16) | (ig << 8) | ib;
+            }
+        }
+    }
+}
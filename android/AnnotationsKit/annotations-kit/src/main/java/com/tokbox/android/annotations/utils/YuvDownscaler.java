@@ -0,0 +1,129 @@
+package com.tokbox.android.annotations.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Power-of-two reduction of I420 video frames, for frames shown smaller than their resolution.
+ *
+ * Each output pixel is the average of a 2^shift square of input pixels. The output buffer and the
+ * scratch rows are reused from frame to frame, so downscaling a stream does not allocate. Pure
+ * Java, so it can be benchmarked off-device.
+ */
+public final class YuvDownscaler {
+
+    public static final int MAX_SHIFT = 3;
+
+    private ByteBuffer mOutput;
+    private byte[] mRow = new byte[0];
+    private byte[] mOutputRow = new byte[0];
+    private int[] mSums = new int[0];
+
+    /*
+     * Returns the size in bytes of an I420 frame
+     */
+    public static int getFrameSize(int width, int height) {
+        return width * height + ((width + 1) >> 1) * ((height + 1) >> 1) * 2;
+    }
+
+    /*
+     * Returns the largest shift, up to MAX_SHIFT, that keeps the frame at least as large as it is
+     * shown in the view. 0 means the frame is uploaded as it is.
+     * @param frameWidth Frame width
+     * @param frameHeight Frame height
+     * @param viewWidth Viewport width
+     * @param viewHeight Viewport height
+     * @param fit true if the frame fits in the view, false if it fills the view
+     */
+    public static int getDecimation(int frameWidth, int frameHeight, int viewWidth, int viewHeight, boolean fit) {
+        if (frameWidth <= 0 || frameHeight <= 0 || viewWidth <= 0 || viewHeight <= 0) {
+            return 0;
+        }
+        float scaleX = (float) viewWidth / frameWidth;
+        float scaleY = (float) viewHeight / frameHeight;
+        float scale = fit ? Math.min(scaleX, scaleY) : Math.max(scaleX, scaleY);
+        int shownWidth = (int) Math.ceil(frameWidth * scale);
+        int shownHeight = (int) Math.ceil(frameHeight * scale);
+
+        int shift = 0;
+        while (shift < MAX_SHIFT && (frameWidth >> (shift + 1)) >= shownWidth
+                && (frameHeight >> (shift + 1)) >= shownHeight) {
+            shift++;
+        }
+        return shift;
+    }
+
+    /*
+     * Downscales an I420 frame. Returns a buffer of (width >> shift) x (height >> shift) pixels,
+     * which is overwritten by the next call.
+     * @param frame Y plane followed by the half-resolution U and V planes
+     * @param width Frame width
+     * @param height Frame height
+     * @param shift Decimation, the frame is reduced by 2^shift on each axis
+     */
+    public ByteBuffer downscale(ByteBuffer frame, int width, int height, int shift) {
+        int outputWidth = width >> shift;
+        int outputHeight = height >> shift;
+        int size = getFrameSize(outputWidth, outputHeight);
+        //the renderer checks the frame size against the buffer capacity
+        if (mOutput == null || mOutput.capacity() != size) {
+            mOutput = ByteBuffer.allocateDirect(size);
+            mOutput.order(ByteOrder.nativeOrder());
+        }
+        if (mRow.length < width) {
+            mRow = new byte[width];
+        }
+        if (mSums.length < outputWidth) {
+            mSums = new int[outputWidth];
+            mOutputRow = new byte[outputWidth];
+        }
+
+        int halfWidth = (width + 1) >> 1;
+        int halfHeight = (height + 1) >> 1;
+        int outputHalfWidth = (outputWidth + 1) >> 1;
+        int outputHalfHeight = (outputHeight + 1) >> 1;
+        int ySize = width * height;
+        int uvSize = halfWidth * halfHeight;
+
+        mOutput.clear();
+        downscalePlane(frame, 0, width, height, outputWidth, outputHeight, shift);
+        downscalePlane(frame, ySize, halfWidth, halfHeight, outputHalfWidth, outputHalfHeight, shift);
+        downscalePlane(frame, ySize + uvSize, halfWidth, halfHeight, outputHalfWidth, outputHalfHeight, shift);
+        mOutput.flip();
+        frame.clear();
+        return mOutput;
+    }
+
+    //box filter; blocks crossing the right or bottom edge repeat the last column or row
+    private void downscalePlane(ByteBuffer frame, int offset, int width, int height,
+                                int outputWidth, int outputHeight, int shift) {
+        int block = 1 << shift;
+        for (int oy = 0; oy < outputHeight; oy++) {
+            Arrays.fill(mSums, 0, outputWidth, 0);
+            for (int r = 0; r < block; r++) {
+                int y = Math.min(oy * block + r, height - 1);
+                frame.position(offset + y * width);
+                frame.get(mRow, 0, width);
+                for (int ox = 0; ox < outputWidth; ox++) {
+                    int x = ox * block;
+                    int sum = 0;
+                    if (x + block <= width) {
+                        for (int i = 0; i < block; i++) {
+                            sum += mRow[x + i] & 0xff;
+                        }
+                    } else {
+                        for (int i = 0; i < block; i++) {
+                            sum += mRow[Math.min(x + i, width - 1)] & 0xff;
+                        }
+                    }
+                    mSums[ox] += sum;
+                }
+            }
+            for (int ox = 0; ox < outputWidth; ox++) {
+                mOutputRow[ox] = (byte) (mSums[ox] >> (shift * 2));
+            }
+            mOutput.put(mOutputRow, 0, outputWidth);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnnotatableTest {
+
+    private static Annotatable newStroke(int canvasWidth, int canvasHeight) {
+        AnnotationsPath path = AnnotationsPath.fromPoints(new float[]{10, 20, 30, 40, 50, 60}, 3);
+        return new Annotatable(AnnotationsView.Mode.Pen.toString(), path, Annotatable.newPathPaint(0xff0000ff, 10), canvasWidth, canvasHeight);
+    }
+
+    //where a point of the canvas the annotatable was drawn on lands
+    private static float[] map(Annotatable annotatable, float x, float y, int width, int height,
+                               int contentWidth, int contentHeight, boolean fit) {
+        float[] transform = new float[3];
+        annotatable.getTransform(width, height, contentWidth, contentHeight, fit, transform);
+        return new float[]{x * transform[0] + transform[1], y * transform[0] + transform[2]};
+    }
+
+    @Test
+    public void pathIsDrawnAsItIsAtItsCanvasSize() {
+        Annotatable stroke = newStroke(1280, 720);
+        float[] transform = new float[3];
+        assertFalse(stroke.getTransform(1280, 720, 640, 480, true, transform));
+        assertArrayEquals(new float[]{1, 0, 0}, transform, 0);
+    }
+
+    @Test
+    public void pathOfUnknownCanvasSizeIsNotScaled() {
+        Annotatable stroke = newStroke(0, 0);
+        float[] transform = new float[3];
+        assertFalse(stroke.getTransform(720, 1280, 1280, 720, true, transform));
+        assertArrayEquals(new float[]{1, 0, 0}, transform, 0);
+    }
+
+    @Test
+    public void rotationKeepsTheStrokeOnTheFittedVideo() {
+        //drawn in landscape over a 16:9 video filling the view
+        Annotatable stroke = newStroke(1280, 720);
+        float[] transform = new float[3];
+        assertTrue(stroke.getTransform(720, 1280, 1280, 720, true, transform));
+        //in portrait the video is letterboxed: one scale, and an offset down to the video
+        assertEquals(720f / 1280, transform[0], 1e-6);
+        assertEquals(0, transform[1], 1e-3);
+        assertEquals((1280 - 720 * 720f / 1280) / 2, transform[2], 1e-3);
+        assertArrayEquals(new float[]{360, 640}, map(stroke, 640, 360, 720, 1280, 1280, 720, true), 1e-3f);
+        assertArrayEquals(new float[]{0, 437.5f}, map(stroke, 0, 0, 720, 1280, 1280, 720, true), 1e-3f);
+
+        //drawn in portrait on the letterboxed video, back to landscape
+        Annotatable portrait = newStroke(720, 1280);
+        assertArrayEquals(new float[]{640, 360}, map(portrait, 360, 640, 1280, 720, 1280, 720, true), 1e-3f);
+        assertArrayEquals(new float[]{1280, 720}, map(portrait, 720, 842.5f, 1280, 720, 1280, 720, true), 1e-3f);
+    }
+
+    @Test
+    public void rotationKeepsTheStrokeOnTheCroppedVideo() {
+        //a 4:3 video filling a landscape view is cropped at the top and bottom
+        Annotatable stroke = newStroke(1280, 720);
+        float[] center = map(stroke, 640, 360, 720, 1280, 640, 480, false);
+        assertArrayEquals(new float[]{360, 640}, center, 1e-3f);
+        //a pixel of the video is 2 view pixels in landscape, 1280 / 480 in portrait
+        float[] right = map(stroke, 642, 360, 720, 1280, 640, 480, false);
+        assertEquals(1280f / 480, right[0] - center[0], 1e-3);
+        assertEquals(0, right[1] - center[1], 1e-3);
+    }
+
+    @Test
+    public void canvasIsFittedWithoutVideo() {
+        Annotatable stroke = newStroke(1280, 720);
+        float[] transform = new float[3];
+        assertTrue(stroke.getTransform(720, 1280, 0, 0, false, transform));
+        assertEquals(720f / 1280, transform[0], 1e-6);
+        assertEquals(437.5f, transform[2], 1e-3);
+    }
+}
@@ -0,0 +1,151 @@
+package com.tokbox.android.annotations;
+
+import com.tokbox.android.annotations.config.OpenTokConfig;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsAnalyticsTest {
+
+    private static final String ACTION = OpenTokConfig.LOG_ACTION_FREEHAND;
+    private static final String VARIATION = OpenTokConfig.LOG_VARIATION_SUCCESS;
+
+    //logs a stroke of the given number of pen events, returns the events queued for it
+    private static int logStroke(AnnotationsAnalytics analytics, int events) {
+        int pending = analytics.getPendingCount();
+        for (int i = 0; i < events; i++) {
+            analytics.countEvent(ACTION, VARIATION);
+        }
+        analytics.endStroke();
+        return analytics.getPendingCount() - pending;
+    }
+
+    @Test
+    public void strokeIsLoggedOnceWhateverItsLength() {
+        AnnotationsAnalytics analytics = new AnnotationsAnalytics(null, 0);
+
+        assertEquals(1, logStroke(analytics, 2));
+        assertEquals(1, logStroke(analytics, 100));
+        assertEquals(1, logStroke(analytics, 100000));
+        assertEquals(2 + 100 + 100000, analytics.getSessionCount(ACTION, VARIATION));
+    }
+
+    @Test
+    public void onlyStrokesCarryCounts() {
+        final List<String> logged = new ArrayList<String>();
+        AnnotationsAnalytics analytics = new AnnotationsAnalytics(new AnnotationsAnalytics.EventLogger() {
+            @Override
+            public void logEvent(String action, String variation) {
+                logged.add(action + ":" + variation);
+            }
+
+            @Override
+            public void logSummary(String action, String variation, int count, int sessionCount) {
+                logged.add(action + ":" + variation + ":" + count + ":" + sessionCount);
+            }
+        }, 0);
+
+        logStroke(analytics, 100);
+        logStroke(analytics, 5);
+        analytics.logEvent(OpenTokConfig.LOG_ACTION_TEXT, VARIATION);
+        analytics.logEvent(OpenTokConfig.LOG_ACTION_ERASE, OpenTokConfig.LOG_VARIATION_ATTEMPT);
+        assertEquals(4, analytics.flush());
+
+        assertEquals(ACTION + ":" + VARIATION + ":100:100", logged.get(0));
+        assertEquals(ACTION + ":" + VARIATION + ":5:105", logged.get(1));
+        //one-shot events are logged as they are
+        assertEquals(OpenTokConfig.LOG_ACTION_TEXT + ":" + VARIATION, logged.get(2));
+        assertEquals(OpenTokConfig.LOG_ACTION_ERASE + ":" + OpenTokConfig.LOG_VARIATION_ATTEMPT, logged.get(3));
+    }
+
+    @Test
+    public void countsAreLoggedAsASeparateAction() {
+        assertEquals("FreeHandCount", AnnotationsAnalytics.getCountAction(ACTION));
+        assertEquals("Success;count=120;session=3400", AnnotationsAnalytics.formatCounts(VARIATION, 120, 3400));
+    }
+
+    @Test
+    public void releaseLogsThePendingEvents() throws InterruptedException {
+        final List<String> logged = new ArrayList<String>();
+        AnnotationsAnalytics analytics = new AnnotationsAnalytics(new AnnotationsAnalytics.EventLogger() {
+            @Override
+            public void logEvent(String action, String variation) {
+                synchronized (logged) {
+                    logged.add(action);
+                    logged.notifyAll();
+                }
+            }
+
+            @Override
+            public void logSummary(String action, String variation, int count, int sessionCount) {
+                logEvent(action, variation);
+            }
+        }, 60000);
+        for (int i = 0; i < AnnotationsAnalytics.MAX_EVENTS_PER_FLUSH * 2; i++) {
+            analytics.logEvent(ACTION, VARIATION);
+        }
+        //nothing is logged before start()
+        Thread.sleep(50);
+        assertEquals(0, logged.size());
+        analytics.start();
+        analytics.release();
+
+        synchronized (logged) {
+            long end = System.currentTimeMillis() + 5000;
+            while (logged.size() < AnnotationsAnalytics.MAX_EVENTS_PER_FLUSH * 2 && System.currentTimeMillis() < end) {
+                logged.wait(100);
+            }
+            assertEquals(AnnotationsAnalytics.MAX_EVENTS_PER_FLUSH * 2, logged.size());
+        }
+        assertEquals(0, analytics.getPendingCount());
+    }
+
+    //counts the calls reaching the logger
+    private static class CountingLogger implements AnnotationsAnalytics.EventLogger {
+        int calls;
+
+        @Override
+        public void logEvent(String action, String variation) {
+            calls++;
+        }
+
+        @Override
+        public void logSummary(String action, String variation, int count, int sessionCount) {
+            calls++;
+        }
+    }
+
+    @Test
+    public void strokeLogsTheSameWhateverItsLength() {
+        CountingLogger logger = new CountingLogger();
+        AnnotationsAnalytics analytics = new AnnotationsAnalytics(logger, 0);
+
+        logStroke(analytics, 10);
+        analytics.flush();
+        assertEquals(1, logger.calls);
+
+        logger.calls = 0;
+        logStroke(analytics, 1000);
+        analytics.flush();
+        assertEquals(1, logger.calls);
+    }
+
+    @Test
+    public void flushIsBoundedAndQueueSamplesUnderPressure() {
+        AnnotationsAnalytics analytics = new AnnotationsAnalytics(null, 0);
+        for (int i = 0; i < 1000; i++) {
+            analytics.logEvent(ACTION, VARIATION);
+        }
+
+        assertEquals(AnnotationsAnalytics.MAX_PENDING, analytics.getPendingCount());
+        assertEquals(1000 - AnnotationsAnalytics.MAX_PENDING, analytics.getDroppedCount());
+        assertEquals(1000, analytics.getSessionCount(ACTION, VARIATION));
+
+        assertEquals(AnnotationsAnalytics.MAX_EVENTS_PER_FLUSH, analytics.flush());
+        assertEquals(AnnotationsAnalytics.MAX_PENDING - AnnotationsAnalytics.MAX_EVENTS_PER_FLUSH, analytics.getPendingCount());
+    }
+}
@@ -0,0 +1,43 @@
+package com.tokbox.android.annotations;
+
+import com.tokbox.android.annotations.utils.VideoContentTransform;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsCompositingCapturerTest {
+
+    private static float[] mapToFrame(float x, float y, int viewWidth, int viewHeight, int width, int height,
+                                      int rotation, boolean fit, boolean mirrored) {
+        boolean upright = rotation % 180 == 0;
+        VideoContentTransform transform = new VideoContentTransform();
+        transform.set(upright ? width : height, upright ? height : width, viewWidth, viewHeight, fit, mirrored);
+        float[] out = new float[2];
+        AnnotationsCompositingCapturer.mapToFrame(transform, x, y, width, height, rotation, out);
+        return out;
+    }
+
+    @Test
+    public void letterboxedViewPointsLandOnTheFrame() {
+        //a 4:3 frame fitted in a 16:9 view is 960 wide, from x = 160
+        assertArrayEquals(new float[]{0, 0}, mapToFrame(160, 0, 1280, 720, 640, 480, 0, true, false), 1e-3f);
+        assertArrayEquals(new float[]{640, 480}, mapToFrame(1120, 720, 1280, 720, 640, 480, 0, true, false), 1e-3f);
+        //filling the view, it is cropped at the top and bottom
+        assertArrayEquals(new float[]{0, 60}, mapToFrame(0, 0, 1280, 720, 640, 480, 0, false, false), 1e-3f);
+    }
+
+    @Test
+    public void mirroredFramesAreAnnotatedWhereTheViewShowedThem() {
+        assertArrayEquals(new float[]{1180, 50}, mapToFrame(100, 50, 1280, 720, 1280, 720, 0, true, true), 1e-3f);
+    }
+
+    @Test
+    public void rotatedFramesAreAnnotatedUpright() {
+        //a landscape camera frame shown upright in a portrait view, turned clockwise
+        assertArrayEquals(new float[]{0, 720}, mapToFrame(0, 0, 720, 1280, 1280, 720, 90, true, false), 1e-3f);
+        assertArrayEquals(new float[]{1280, 720}, mapToFrame(0, 1280, 720, 1280, 1280, 720, 90, true, false), 1e-3f);
+        assertArrayEquals(new float[]{1280, 0}, mapToFrame(0, 0, 720, 1280, 1280, 720, 270, true, false), 1e-3f);
+        assertArrayEquals(new float[]{1280, 720}, mapToFrame(0, 0, 1280, 720, 1280, 720, 180, true, false), 1e-3f);
+    }
+}
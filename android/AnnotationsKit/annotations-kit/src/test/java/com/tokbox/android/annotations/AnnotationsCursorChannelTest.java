@@ -0,0 +1,125 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsCursorChannelTest {
+
+    private final List<String> mSignals = new ArrayList<String>();
+    private AnnotationsCursorChannel mChannel;
+
+    @Before
+    public void createChannel() {
+        mChannel = new AnnotationsCursorChannel(new AnnotationsCursorChannel.SignalSender() {
+            @Override
+            public void sendSignal(String type, String data) {
+                assertEquals(AnnotationsCursorChannel.SIGNAL_TYPE, type);
+                mSignals.add(data);
+            }
+        });
+    }
+
+    @Test
+    public void firstMoveIsSentRightAway() {
+        assertEquals(-1, mChannel.move(1000, 0.5f, 0.25f));
+        assertEquals(1, mSignals.size());
+        assertEquals("0.5,0.25,1000", mSignals.get(0));
+    }
+
+    @Test
+    public void movesWithinTheIntervalAreCoalesced() {
+        mChannel.move(1000, 0.1f, 0.1f);
+        assertEquals(90, mChannel.move(1010, 0.2f, 0.2f));
+        assertEquals(50, mChannel.move(1050, 0.3f, 0.3f));
+        assertEquals(1, mSignals.size());
+
+        //the latest position is sent when the interval ends
+        assertEquals(-1, mChannel.flush(1100));
+        assertEquals(2, mSignals.size());
+        assertEquals("0.3,0.3,1100", mSignals.get(1));
+        assertEquals(-1, mChannel.flush(1200));
+        assertEquals(2, mSignals.size());
+    }
+
+    @Test
+    public void rateIsCappedUnderLoad() {
+        //a move per millisecond for 10 seconds, flushed when asked
+        long next = -1;
+        for (long time = 0; time < 10000; time++) {
+            if (next >= 0 && time >= next) {
+                long wait = mChannel.flush(time);
+                next = wait >= 0 ? time + wait : -1;
+            }
+            long wait = mChannel.move(time, (time % 1000) / 1000f, 0.5f);
+            next = wait >= 0 ? time + wait : -1;
+        }
+        long perSecond = mSignals.size() / 10;
+        assertTrue(perSecond + " signals per second", perSecond <= 1000 / AnnotationsCursorChannel.DEFAULT_INTERVAL_MS);
+    }
+
+    @Test
+    public void hidingIsSentOnce() {
+        assertEquals(-1, mChannel.hide(0));
+        assertTrue(mSignals.isEmpty());
+
+        mChannel.move(0, 0.5f, 0.5f);
+        assertEquals(100, mChannel.hide(0));
+        assertEquals(-1, mChannel.flush(100));
+        assertEquals(-1, mChannel.hide(150));
+        assertEquals(2, mSignals.size());
+        assertEquals(AnnotationsCursorChannel.HIDDEN + ",100", mSignals.get(1));
+    }
+
+    @Test
+    public void signalsOfOtherParticipantsBecomeRemoteCursors() {
+        mChannel.move(1000, 0.5f, 0.25f);
+        mChannel.hide(1100);
+        mChannel.flush(1100);
+
+        AnnotationsCursorChannel receiver = new AnnotationsCursorChannel(null);
+        assertTrue(receiver.onSignal("a", mSignals.get(0), 5040));
+        assertTrue(receiver.onSignal("a", mSignals.get(1), 5140));
+        assertFalse(receiver.onSignal("c", "0.5", 5040));
+        assertFalse(receiver.onSignal("c", "x,0.5,1000", 5040));
+        assertEquals(1, receiver.getRemoteCursors().size());
+
+        AnnotationsRemoteCursor cursor = receiver.getRemoteCursors().iterator().next();
+        float[] position = new float[2];
+        //drawn one interval and a half behind
+        assertFalse(cursor.getPosition(5040, position));
+        assertTrue(cursor.getPosition(5040 + 150, position));
+        assertEquals(0.5f, position[0], 0);
+        assertEquals(0.25f, position[1], 0);
+        assertFalse(cursor.getPosition(5140 + 150, position));
+    }
+
+    @Test
+    public void fadedRemoteCursorsAreForgotten() {
+        mChannel.move(1000, 0.5f, 0.25f);
+        mChannel.hide(1100);
+        mChannel.flush(1100);
+
+        AnnotationsCursorChannel receiver = new AnnotationsCursorChannel(null);
+        receiver.onSignal("a", mSignals.get(0), 5040);
+        receiver.onSignal("a", mSignals.get(1), 5140);
+        //b leaves without hiding its pointer
+        receiver.onSignal("b", mSignals.get(0), 5040);
+        assertTrue(receiver.updateRemoteCursors(5200, 1280, 720));
+        assertTrue(receiver.updateRemoteCursors(5300, 1280, 720));
+        assertEquals(2, receiver.getRemoteCursors().size());
+
+        //once faded out, both are forgotten
+        long faded = 5300 + AnnotationsLaserTrail.FADE_MS;
+        assertFalse(receiver.updateRemoteCursors(faded, 1280, 720));
+        assertTrue(receiver.getRemoteCursors().isEmpty());
+
+        //and shown again on their next signal
+        assertTrue(receiver.onSignal("a", "0.1,0.1,2000", faded));
+        assertEquals(1, receiver.getRemoteCursors().size());
+    }
+}
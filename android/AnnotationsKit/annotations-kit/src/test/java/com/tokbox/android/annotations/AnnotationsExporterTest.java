@@ -0,0 +1,76 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsExporterTest {
+
+    private static Annotatable newStroke(float[] points, int canvasWidth, int canvasHeight) {
+        AnnotationsPath path = AnnotationsPath.fromPoints(points, points.length / 2);
+        return new Annotatable(AnnotationsView.Mode.Pen.toString(), path, Annotatable.newPathPaint(0xff0000ff, 10), canvasWidth, canvasHeight);
+    }
+
+    private static String export(List<Annotatable> annotatables, AnnotationsExporter.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AnnotationsExporter(1280, 720).export(annotatables, format, out);
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void svgScalesStrokesFromTheirCanvas() throws Exception {
+        Annotatable stroke = newStroke(new float[]{10, 20, 30, 40}, 640, 360);
+        String svg = export(Collections.singletonList(stroke), AnnotationsExporter.Format.SVG);
+
+        assertTrue(svg.startsWith("<?xml"));
+        assertTrue(svg.contains("viewBox=\"0 0 1280 720\""));
+        assertTrue(svg, svg.contains("d=\"M20 40Q20 40 40 60L60 80\""));
+        assertTrue(svg.trim().endsWith("</svg>"));
+    }
+
+    @Test
+    public void svgEscapesText() throws Exception {
+        AnnotationsText text = new AnnotationsText("a<b&c \u00e9", 5, 5);
+        Annotatable annotatable = new Annotatable(AnnotationsView.Mode.Text.toString(), text, Annotatable.newTextPaint(0xff000000, 48), 1280, 720);
+        String svg = export(Collections.singletonList(annotatable), AnnotationsExporter.Format.SVG);
+
+        assertTrue(svg, svg.contains(">a&lt;b&amp;c \u00e9</text>"));
+    }
+
+    @Test
+    public void pdfCrossReferencePointsAtObjects() throws Exception {
+        List<Annotatable> annotatables = new ArrayList<Annotatable>();
+        annotatables.add(newStroke(new float[]{10, 20, 30, 40, 50, 60}, 1280, 720));
+        annotatables.add(new Annotatable(AnnotationsView.Mode.Text.toString(), new AnnotationsText("(hi)", 5, 5),
+                Annotatable.newTextPaint(0xff000000, 48), 1280, 720));
+        String pdf = export(annotatables, AnnotationsExporter.Format.PDF);
+
+        assertTrue(pdf.startsWith("%PDF-1.4"));
+        assertTrue(pdf.contains("(\\(hi\\)) Tj"));
+
+        int xref = Integer.parseInt(pdf.substring(pdf.indexOf("startxref\n") + 10, pdf.indexOf("\n%%EOF")));
+        assertTrue(pdf.startsWith("xref", xref));
+
+        Matcher entries = Pattern.compile("(\\d{10}) 00000 n").matcher(pdf.substring(xref));
+        int object = 1;
+        while (entries.find()) {
+            int offset = Integer.parseInt(entries.group(1));
+            assertTrue("object " + object, pdf.startsWith(object + " 0 obj", offset));
+            object++;
+        }
+        assertEquals(7, object);
+
+        int streamStart = pdf.indexOf("stream\n") + 7;
+        int streamEnd = pdf.indexOf("endstream");
+        Matcher length = Pattern.compile("5 0 obj\n(\\d+)").matcher(pdf);
+        assertTrue(length.find());
+        assertEquals(streamEnd - streamStart, Integer.parseInt(length.group(1)));
+    }
+}
@@ -0,0 +1,164 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsJournalTest {
+
+    private static final int RELOAD_OPS = 100000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Annotatable newStroke(int points) {
+        float[] xy = new float[points * 2];
+        for (int i = 0; i < xy.length; i++) {
+            xy[i] = i * 3.5f;
+        }
+        AnnotationsPath path = AnnotationsPath.fromPoints(xy, points);
+        return new Annotatable(AnnotationsView.Mode.Pen.toString(), path, Annotatable.newPathPaint(0xff00ff00, 10), 1280, 720);
+    }
+
+    private static List<UUID> ids(AnnotationsManager manager) {
+        List<UUID> ids = new ArrayList<UUID>();
+        for (Annotatable annotatable : manager.getAnnotatableList()) {
+            ids.add(annotatable.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void restoresLiveAnnotatablesInCommitOrder() throws Exception {
+        File file = new File(folder.getRoot(), "annotations.journal");
+        AnnotationsJournal journal = new AnnotationsJournal(file);
+        AnnotationsManager manager = new AnnotationsManager();
+        manager.setJournal(journal);
+
+        Annotatable first = newStroke(4);
+        Annotatable second = newStroke(8);
+        Annotatable third = newStroke(2);
+        manager.addAnnotatable(first);
+        manager.addAnnotatable(second);
+        manager.addAnnotatable(third);
+        manager.removeAnnotatable(second.getId());
+        journal.close();
+
+        AnnotationsManager restored = new AnnotationsManager();
+        new AnnotationsJournal(file).restore(restored);
+
+        assertEquals(ids(manager), ids(restored));
+        AnnotationsPath path = restored.getAnnotatableList().get(0).getPath();
+        assertEquals(4, path.getPointCount());
+        assertEquals(7f, path.getPointX(1), 0f);
+        assertEquals(1280, restored.getAnnotatableList().get(0).getCanvasWidth());
+        assertEquals(Annotatable.AnnotatableType.PATH, restored.getAnnotatableList().get(0).getType());
+    }
+
+    @Test
+    public void clearDropsEverythingBefore() throws Exception {
+        File file = new File(folder.getRoot(), "annotations.journal");
+        AnnotationsJournal journal = new AnnotationsJournal(file);
+        AnnotationsManager manager = new AnnotationsManager();
+        manager.setJournal(journal);
+
+        manager.addAnnotatable(newStroke(3));
+        manager.clear();
+        Annotatable last = newStroke(3);
+        manager.addAnnotatable(last);
+        journal.close();
+
+        AnnotationsManager restored = new AnnotationsManager();
+        new AnnotationsJournal(file).restore(restored);
+        assertEquals(1, restored.getAnnotatableList().size());
+        assertEquals(last.getId(), restored.getAnnotatableList().get(0).getId());
+    }
+
+    @Test
+    public void tornRecordIsDiscarded() throws Exception {
+        File file = new File(folder.getRoot(), "annotations.journal");
+        AnnotationsJournal journal = new AnnotationsJournal(file);
+        AnnotationsManager manager = new AnnotationsManager();
+        manager.setJournal(journal);
+        manager.addAnnotatable(newStroke(3));
+        manager.addAnnotatable(newStroke(3));
+        journal.close();
+
+        //corrupt the last point of the second record
+        int recordSize = 9 + 36 + 3 * 8;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(8 + recordSize * 2 - 1);
+        raf.write(0x7f);
+        raf.close();
+
+        AnnotationsJournal reopened = new AnnotationsJournal(file);
+        assertEquals(1, reopened.getLiveCount());
+
+        //appending after the torn record must not resurrect it
+        AnnotationsManager restored = new AnnotationsManager();
+        reopened.restore(restored);
+        restored.setJournal(reopened);
+        restored.addAnnotatable(newStroke(1));
+        reopened.close();
+        assertEquals(2, new AnnotationsJournal(file).getRecordCount());
+    }
+
+    @Test
+    public void compactionKeepsLiveRecords() throws Exception {
+        File file = new File(folder.getRoot(), "annotations.journal");
+        AnnotationsJournal journal = new AnnotationsJournal(file);
+        AnnotationsManager manager = new AnnotationsManager();
+        manager.setJournal(journal);
+        for (int i = 0; i < 2000; i++) {
+            manager.addAnnotatable(newStroke(5));
+        }
+        while (manager.getAnnotatableList().size() > 500) {
+            manager.removeAnnotatable(manager.getAnnotatableList().get(0).getId());
+        }
+        long before = file.length();
+        journal.compact();
+        assertEquals(500, journal.getRecordCount());
+
+        manager.addAnnotatable(newStroke(5));
+        journal.close();
+        assertTrue(file.length() <= before);
+
+        AnnotationsManager restored = new AnnotationsManager();
+        new AnnotationsJournal(file).restore(restored);
+        assertEquals(ids(manager), ids(restored));
+    }
+
+    @Test
+    public void reloadsLargeJournal() throws Exception {
+        File file = new File(folder.getRoot(), "annotations.journal");
+        AnnotationsJournal journal = new AnnotationsJournal(file, Long.MAX_VALUE);
+        AnnotationsManager manager = new AnnotationsManager();
+        manager.setJournal(journal);
+
+        Annotatable stroke = newStroke(16);
+        for (int i = 0; i < RELOAD_OPS; i++) {
+            if (i % 10 == 9) {
+                manager.removeAnnotatable(manager.getAnnotatableList().get(manager.getAnnotatableList().size() - 1).getId());
+            } else {
+                manager.addAnnotatable(new Annotatable(stroke.getMode(), stroke.getPath(), stroke.getPaint(), 1280, 720));
+            }
+        }
+        journal.close();
+
+        AnnotationsJournal reopened = new AnnotationsJournal(file, Long.MAX_VALUE);
+        AnnotationsManager restored = new AnnotationsManager();
+        reopened.restore(restored);
+        reopened.close();
+
+        assertEquals(RELOAD_OPS, reopened.getRecordCount());
+        assertEquals(ids(manager), ids(restored));
+    }
+}
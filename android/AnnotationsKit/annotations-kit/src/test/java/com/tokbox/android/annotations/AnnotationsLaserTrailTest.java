@@ -0,0 +1,50 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsLaserTrailTest {
+
+    @Test
+    public void trailKeepsAFixedNumberOfPoints() {
+        AnnotationsLaserTrail trail = new AnnotationsLaserTrail();
+        for (int i = 0; i < 100000; i++) {
+            trail.add(i, i % 1280, i % 720);
+            if (i % 100 == 0) {
+                trail.lift();
+            }
+        }
+        assertEquals(AnnotationsLaserTrail.CAPACITY, trail.getCount());
+    }
+
+    @Test
+    public void pointsFadeOutByAge() {
+        AnnotationsLaserTrail trail = new AnnotationsLaserTrail();
+        trail.add(0, 10, 10);
+        trail.add(400, 20, 20);
+        assertEquals(2, trail.getVisibleCount(400));
+        assertEquals(1, trail.getVisibleCount(AnnotationsLaserTrail.FADE_MS));
+        assertEquals(0, trail.getVisibleCount(400 + AnnotationsLaserTrail.FADE_MS));
+
+        assertEquals(255, AnnotationsLaserTrail.getAlpha(0));
+        assertTrue(AnnotationsLaserTrail.getAlpha(AnnotationsLaserTrail.FADE_MS / 2) < 255);
+        assertEquals(0, AnnotationsLaserTrail.getAlpha(AnnotationsLaserTrail.FADE_MS));
+    }
+
+    @Test
+    public void drawingStopsOnceFadedOut() {
+        AnnotationsLaserTrail trail = new AnnotationsLaserTrail();
+        Canvas canvas = new Canvas();
+        Paint paint = new Paint();
+        assertFalse(trail.draw(canvas, paint, 0));
+
+        trail.add(100, 10, 10);
+        trail.add(110, 20, 20);
+        assertTrue(trail.draw(canvas, paint, 200));
+        assertFalse(trail.draw(canvas, paint, 110 + AnnotationsLaserTrail.FADE_MS));
+    }
+}
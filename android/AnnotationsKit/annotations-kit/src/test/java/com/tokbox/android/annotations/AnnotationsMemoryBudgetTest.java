@@ -0,0 +1,124 @@
+package com.tokbox.android.annotations;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsMemoryBudgetTest {
+
+    //a consumer that releases what is asked, and records the order of the trims
+    private static class FakeConsumer implements AnnotationsMemoryBudget.MemoryConsumer {
+        final String name;
+        final List<String> trims;
+        long usage;
+
+        FakeConsumer(String name, long usage, List<String> trims) {
+            this.name = name;
+            this.usage = usage;
+            this.trims = trims;
+        }
+
+        @Override
+        public long getMemoryUsage() {
+            return usage;
+        }
+
+        @Override
+        public long trim(long bytes) {
+            long released = Math.min(bytes, usage);
+            usage -= released;
+            trims.add(name);
+            return released;
+        }
+    }
+
+    @Test
+    public void consumersAreTrimmedLowestPriorityFirst() {
+        List<String> trims = new ArrayList<String>();
+        AnnotationsMemoryBudget budget = new AnnotationsMemoryBudget(1000);
+        FakeConsumer frames = new FakeConsumer("frames", 600, trims);
+        FakeConsumer tiles = new FakeConsumer("tiles", 600, trims);
+        budget.register("frames", AnnotationsMemoryBudget.PRIORITY_FRAME_HISTORY, frames);
+        budget.register("tiles", AnnotationsMemoryBudget.PRIORITY_TILE_CACHE, tiles);
+
+        assertEquals(200, budget.trimTo(1000));
+        assertEquals(400, tiles.usage);
+        assertEquals(600, frames.usage);
+        assertEquals(1, trims.size());
+        assertEquals("tiles", trims.get(0));
+
+        assertEquals(800, budget.trimTo(200));
+        assertEquals(0, tiles.usage);
+        assertEquals(200, frames.usage);
+        assertEquals(1000, budget.getTrimmedBytes());
+    }
+
+    @Test
+    public void checkTrimsOnlyOverTheBudget() {
+        List<String> trims = new ArrayList<String>();
+        AnnotationsMemoryBudget budget = new AnnotationsMemoryBudget(1000);
+        FakeConsumer tiles = new FakeConsumer("tiles", 800, trims);
+        budget.register("tiles", AnnotationsMemoryBudget.PRIORITY_TILE_CACHE, tiles);
+
+        budget.check();
+        assertTrue(trims.isEmpty());
+
+        tiles.usage = 1500;
+        budget.check();
+        assertEquals(1000, budget.getMemoryUsage());
+        assertEquals(1000, budget.getMemoryUsage("tiles"));
+        assertEquals(0, budget.getMemoryUsage("frames"));
+    }
+
+    @Test
+    public void memoryPressureTrimsByLevel() {
+        List<String> trims = new ArrayList<String>();
+        AnnotationsMemoryBudget budget = new AnnotationsMemoryBudget(1000);
+        FakeConsumer tiles = new FakeConsumer("tiles", 800, trims);
+        budget.register("tiles", AnnotationsMemoryBudget.PRIORITY_TILE_CACHE, tiles);
+
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(400, tiles.usage);
+
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(0, tiles.usage);
+    }
+
+    @Test
+    public void hiddenUiOnlyReleasesWhatServesTheUi() {
+        List<String> trims = new ArrayList<String>();
+        AnnotationsMemoryBudget budget = new AnnotationsMemoryBudget(1000);
+        FakeConsumer screenshots = new FakeConsumer("screenshots", 100, trims);
+        FakeConsumer tiles = new FakeConsumer("tiles", 300, trims);
+        FakeConsumer frames = new FakeConsumer("frames", 400, trims);
+        budget.register("screenshots", AnnotationsMemoryBudget.PRIORITY_SCREENSHOT_BUFFERS, screenshots);
+        budget.register("tiles", AnnotationsMemoryBudget.PRIORITY_TILE_CACHE, tiles);
+        budget.register("frames", AnnotationsMemoryBudget.PRIORITY_FRAME_HISTORY, frames);
+
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, screenshots.usage);
+        assertEquals(0, tiles.usage);
+        assertEquals(400, frames.usage);
+
+        //in the background, the process may be killed
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, frames.usage);
+    }
+
+    @Test
+    public void registeringANameAgainReplacesTheConsumer() {
+        List<String> trims = new ArrayList<String>();
+        AnnotationsMemoryBudget budget = new AnnotationsMemoryBudget(1000);
+        budget.register("tiles", AnnotationsMemoryBudget.PRIORITY_TILE_CACHE, new FakeConsumer("old", 300, trims));
+        budget.register("tiles", AnnotationsMemoryBudget.PRIORITY_TILE_CACHE, new FakeConsumer("new", 500, trims));
+        assertEquals(500, budget.getMemoryUsage());
+
+        budget.unregister("tiles");
+        assertEquals(0, budget.getMemoryUsage());
+    }
+}
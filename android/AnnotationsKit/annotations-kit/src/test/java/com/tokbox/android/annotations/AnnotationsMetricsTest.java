@@ -0,0 +1,103 @@
+package com.tokbox.android.annotations;
+
+import android.os.Build;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsMetricsTest {
+
+    private static final int SAMPLES = 1000000;
+
+    @Test
+    public void histogramBucketsLatencies() {
+        AnnotationsMetrics metrics = new AnnotationsMetrics();
+        for (int i = 0; i < 90; i++) {
+            metrics.record(AnnotationsMetrics.Timer.DRAW, 300);
+        }
+        for (int i = 0; i < 10; i++) {
+            metrics.record(AnnotationsMetrics.Timer.DRAW, 20000);
+        }
+
+        assertEquals(100, metrics.getTimerCount(AnnotationsMetrics.Timer.DRAW));
+        assertEquals(90 * 300 + 10 * 20000, metrics.getTimerTotalMicros(AnnotationsMetrics.Timer.DRAW));
+        assertEquals(20000, metrics.getTimerMaxMicros(AnnotationsMetrics.Timer.DRAW));
+        assertEquals(500, metrics.getPercentileMicros(AnnotationsMetrics.Timer.DRAW, 50));
+        assertEquals(20000, metrics.getPercentileMicros(AnnotationsMetrics.Timer.DRAW, 99));
+        assertEquals(0, metrics.getTimerCount(AnnotationsMetrics.Timer.TOUCH_TO_INK));
+
+        long[] histogram = new long[AnnotationsMetrics.BUCKET_COUNT];
+        metrics.getHistogram(AnnotationsMetrics.Timer.DRAW, histogram);
+        assertEquals(90, histogram[1]);
+        assertEquals(10, histogram[7]);
+
+        metrics.reset();
+        assertEquals(0, metrics.getTimerCount(AnnotationsMetrics.Timer.DRAW));
+        assertEquals(0, metrics.getPercentileMicros(AnnotationsMetrics.Timer.DRAW, 50));
+    }
+
+    @Test
+    public void sectionEndsAsItStarted() throws InterruptedException {
+        AnnotationsMetrics metrics = new AnnotationsMetrics(Build.VERSION_CODES.JELLY_BEAN_MR2);
+        long untraced = metrics.start(AnnotationsMetrics.Timer.DRAW);
+        //not traced, so no section to end whatever the tracing is by then
+        assertEquals(0, untraced & 1);
+        metrics.setTracingEnabled(true);
+        assertTrue(metrics.isTracingEnabled());
+        long traced = metrics.start(AnnotationsMetrics.Timer.DRAW);
+        //traced, so its section is ended even once tracing is off
+        assertEquals(1, traced & 1);
+        Thread.sleep(2);
+        metrics.stop(AnnotationsMetrics.Timer.DRAW, untraced);
+        metrics.setTracingEnabled(false);
+        metrics.stop(AnnotationsMetrics.Timer.DRAW, traced);
+
+        assertEquals(2, metrics.getTimerCount(AnnotationsMetrics.Timer.DRAW));
+        assertTrue(metrics.getTimerMaxMicros(AnnotationsMetrics.Timer.DRAW) >= 2000);
+    }
+
+    @Test
+    public void tracingNeedsJellyBeanMr2() {
+        AnnotationsMetrics metrics = new AnnotationsMetrics(Build.VERSION_CODES.JELLY_BEAN_MR1);
+        metrics.setTracingEnabled(true);
+        assertFalse(metrics.isTracingEnabled());
+        assertEquals(0, metrics.start(AnnotationsMetrics.Timer.DRAW) & 1);
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        AnnotationsMetrics metrics = new AnnotationsMetrics();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        //warm up
+        record(metrics, SAMPLES);
+
+        long allocated = allocatedBytes(threads);
+        record(metrics, SAMPLES);
+        long after = allocatedBytes(threads);
+
+        if (allocated >= 0) {
+            //a few bytes can be attributed to the measurement itself
+            assertTrue("allocated " + (after - allocated) + " bytes", after - allocated < 1024);
+        }
+    }
+
+    private static void record(AnnotationsMetrics metrics, int samples) {
+        for (int i = 0; i < samples; i++) {
+            long start = metrics.start(AnnotationsMetrics.Timer.TOUCH_EVENT);
+            metrics.increment(AnnotationsMetrics.Counter.RENDERED_FRAMES);
+            metrics.stop(AnnotationsMetrics.Timer.TOUCH_EVENT, start);
+        }
+    }
+
+    //bytes allocated by this thread, or -1 if the JVM does not report it
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,86 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsPathTest {
+
+    private static AnnotationsPath newWave(int count, float amplitude) {
+        float[] points = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            points[i * 2] = i * 6;
+            points[i * 2 + 1] = 100 + (float) Math.sin(i * 0.05) * amplitude;
+        }
+        return AnnotationsPath.fromPoints(points, count);
+    }
+
+    @Test
+    public void levelIsChosenByTheScale() {
+        //the default zoom range draws every control point
+        assertEquals(0, AnnotationsPath.getLevelForScale(AnnotationsZoom.DEFAULT_MAX_ZOOM));
+        assertEquals(0, AnnotationsPath.getLevelForScale(AnnotationsZoom.DEFAULT_MIN_ZOOM));
+        //zoomed out, within a pixel on screen
+        assertEquals(1, AnnotationsPath.getLevelForScale(0.75f));
+        assertEquals(2, AnnotationsPath.getLevelForScale(0.5f));
+        assertEquals(3, AnnotationsPath.getLevelForScale(0.25f));
+        assertEquals(AnnotationsPath.LEVEL_COUNT - 1, AnnotationsPath.getLevelForScale(0.01f));
+    }
+
+    @Test
+    public void levelsAreBuiltWhenTheStrokeEnds() {
+        AnnotationsPath path = newWave(500, 40);
+        path.buildLevels();
+        AnnotationsPath coarsest = path.getLevel(AnnotationsPath.LEVEL_COUNT - 1);
+        assertTrue(coarsest.getPointCount() < path.getPointCount());
+        assertSame(coarsest, path.getLevel(AnnotationsPath.LEVEL_COUNT - 1));
+    }
+
+    @Test
+    public void coarserLevelsKeepFewerPoints() {
+        AnnotationsPath path = newWave(500, 40);
+        assertSame(path, path.getLevel(0));
+        int previous = path.getPointCount();
+        for (int level = 1; level < AnnotationsPath.LEVEL_COUNT; level++) {
+            int count = path.getLevel(level).getPointCount();
+            assertTrue("level " + level + " keeps " + count + " points", count <= previous);
+            previous = count;
+        }
+        assertTrue(previous < path.getPointCount() / 4);
+    }
+
+    @Test
+    public void levelsStayWithinTheirTolerance() {
+        AnnotationsPath path = newWave(500, 40);
+        for (int level = 1; level < AnnotationsPath.LEVEL_COUNT; level++) {
+            AnnotationsPath simplified = path.getLevel(level);
+            //the ends are kept, and every dropped point is close to the simplified polyline
+            assertEquals(path.getPointX(0), simplified.getPointX(0), 0);
+            assertEquals(path.getPointX(499), simplified.getPointX(simplified.getPointCount() - 1), 0);
+            int segment = 0;
+            for (int i = 0; i < path.getPointCount(); i++) {
+                float x = path.getPointX(i);
+                while (simplified.getPointX(segment + 1) < x) {
+                    segment++;
+                }
+                float x0 = simplified.getPointX(segment);
+                float x1 = simplified.getPointX(segment + 1);
+                float t = (x - x0) / (x1 - x0);
+                float y = simplified.getPointY(segment) + t * (simplified.getPointY(segment + 1) - simplified.getPointY(segment));
+                assertEquals(y, path.getPointY(i), AnnotationsPath.getLevelTolerance(level) * 1.5f);
+            }
+        }
+    }
+
+    @Test
+    public void levelsAreBuiltOnce() {
+        AnnotationsPath path = newWave(200, 40);
+        assertSame(path.getLevel(2), path.getLevel(2));
+    }
+
+    @Test
+    public void straightStrokeKeepsItsEnds() {
+        AnnotationsPath path = newWave(100, 0);
+        assertEquals(2, path.getLevel(1).getPointCount());
+    }
+}
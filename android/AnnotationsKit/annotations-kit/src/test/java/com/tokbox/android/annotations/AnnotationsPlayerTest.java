@@ -0,0 +1,194 @@
+package com.tokbox.android.annotations;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsPlayerTest {
+
+    private static final long SESSION_MS = 60 * 60 * 1000;
+    private static final int STROKE_INTERVAL_MS = 2000;
+    private static final int POINTS_PER_STROKE = 30;
+    private static final int POINT_INTERVAL_MS = 60;
+
+    private AnnotationsRecorder mRecorder;
+
+    //records a 1-hour session: a stroke every 2s, an erase every 10 strokes and a clear every 500
+    @Before
+    public void recordSession() {
+        mRecorder = new AnnotationsRecorder();
+        UUID last = null;
+        int strokes = 0;
+        for (long time = 0; time < SESSION_MS; time += STROKE_INTERVAL_MS) {
+            mRecorder.beginStroke(time, 0, 0, 0xff0000ff, 10, 1280, 720);
+            for (int i = 1; i < POINTS_PER_STROKE; i++) {
+                mRecorder.addPoint(time + i * POINT_INTERVAL_MS, i * 6, i * 4);
+            }
+            last = UUID.randomUUID();
+            mRecorder.endStroke(time + POINTS_PER_STROKE * POINT_INTERVAL_MS, last);
+            strokes++;
+
+            if (strokes % 10 == 0) {
+                mRecorder.remove(time + 1900, last);
+            }
+            if (strokes % 500 == 0) {
+                mRecorder.clear(time + 1950);
+            }
+        }
+    }
+
+    //what should be visible at a time: committed ids in order, then the open stroke
+    private List<String> expected(long position) {
+        AnnotationsRecorder r = mRecorder;
+        List<String> committed = new ArrayList<String>();
+        String open = null;
+        int openPoints = 0;
+        for (int e = 0; e < r.mEventCount && r.mTimes[e] <= position; e++) {
+            UUID id = r.mItems[e] >= 0 ? r.mIds.get(r.mItems[e]) : null;
+            switch (r.mOps[e]) {
+                case AnnotationsRecorder.OP_BEGIN:
+                    open = id.toString();
+                    openPoints = 1;
+                    break;
+                case AnnotationsRecorder.OP_POINT:
+                    openPoints++;
+                    break;
+                case AnnotationsRecorder.OP_END:
+                    committed.add(id + ":" + POINTS_PER_STROKE);
+                    open = null;
+                    break;
+                case AnnotationsRecorder.OP_REMOVE:
+                    committed.remove(committed.size() - 1);
+                    break;
+                case AnnotationsRecorder.OP_CLEAR:
+                    committed.clear();
+                    break;
+            }
+        }
+        if (open != null) {
+            committed.add(open + ":" + openPoints);
+        }
+        return committed;
+    }
+
+    private static List<String> actual(AnnotationsManager manager) {
+        List<String> actual = new ArrayList<String>();
+        for (Annotatable annotatable : manager.getAnnotatableList()) {
+            actual.add(annotatable.getId() + ":" + annotatable.getPath().getPointCount());
+        }
+        return actual;
+    }
+
+    @Test
+    public void recordsEveryPointWithItsTime() {
+        int strokes = (int) (SESSION_MS / STROKE_INTERVAL_MS);
+        assertEquals(strokes * (POINTS_PER_STROKE + 1) + strokes / 10 + strokes / 500, mRecorder.getEventCount());
+        assertEquals(POINT_INTERVAL_MS, mRecorder.mTimes[1]);
+        assertTrue(mRecorder.getDuration() >= SESSION_MS - STROKE_INTERVAL_MS);
+    }
+
+    @Test
+    public void seekMatchesReplayFromStart() {
+        AnnotationsManager output = new AnnotationsManager();
+        AnnotationsPlayer player = new AnnotationsPlayer(mRecorder, output);
+        Random random = new Random(42);
+
+        long[] positions = new long[60];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = (long) (random.nextDouble() * SESSION_MS);
+        }
+        //include a stroke in progress across a keyframe and both ends
+        positions[0] = 5500;
+        positions[1] = 0;
+        positions[2] = SESSION_MS;
+
+        for (long position : positions) {
+            player.seekTo(position);
+            assertEquals("at " + position, expected(position), actual(output));
+        }
+    }
+
+    @Test
+    public void cancelledStrokeIsNotPlayedBack() {
+        AnnotationsRecorder recorder = new AnnotationsRecorder();
+        recorder.beginStroke(1000, 0, 0, 0xff0000ff, 10, 1280, 720);
+        recorder.addPoint(1060, 6, 4);
+        recorder.cancelStroke();
+        assertEquals(0, recorder.getEventCount());
+
+        recorder.beginStroke(2000, 0, 0, 0xff0000ff, 10, 1280, 720);
+        recorder.addPoint(2060, 6, 4);
+        UUID id = UUID.randomUUID();
+        recorder.endStroke(2120, id);
+        assertEquals(3, recorder.getEventCount());
+        assertEquals(0, recorder.mTimes[0]);
+
+        AnnotationsManager output = new AnnotationsManager();
+        new AnnotationsPlayer(recorder, output).seekTo(recorder.getDuration());
+        assertEquals(1, output.getAnnotatableList().size());
+        assertEquals(id, output.getAnnotatableList().get(0).getId());
+    }
+
+    @Test
+    public void seekDuringPlaybackPlaysOnFromTheNewPosition() {
+        AnnotationsManager output = new AnnotationsManager();
+        AnnotationsPlayer player = new AnnotationsPlayer(mRecorder, output);
+        player.play(1f);
+        long start = SystemClock.uptimeMillis();
+        assertTrue(player.onFrame(start + 1000));
+        assertEquals(1000, player.getPosition());
+
+        player.seekTo(SESSION_MS / 2);
+        long seekTime = SystemClock.uptimeMillis();
+        assertTrue(player.onFrame(seekTime + 500));
+        assertEquals(SESSION_MS / 2 + 500, player.getPosition());
+        assertEquals(expected(SESSION_MS / 2 + 500), actual(output));
+
+        //back, then the end
+        player.seekTo(5500);
+        assertTrue(player.onFrame(SystemClock.uptimeMillis() + 100));
+        assertEquals(5600, player.getPosition());
+        player.seekTo(SESSION_MS);
+        assertFalse(player.onFrame(SystemClock.uptimeMillis() + 100));
+        assertFalse(player.isPlaying());
+    }
+
+    //events recorded in a time range, ends included
+    private int eventsBetween(long from, long to) {
+        int count = 0;
+        for (int e = 0; e < mRecorder.mEventCount; e++) {
+            if (mRecorder.mTimes[e] >= from && mRecorder.mTimes[e] <= to) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void seekReplaysOnlyFromTheClosestKeyframe() {
+        AnnotationsManager output = new AnnotationsManager();
+        AnnotationsPlayer player = new AnnotationsPlayer(mRecorder, output);
+        player.seekTo(SESSION_MS);
+        //the whole session is replayed from the last keyframe
+        assertTrue(player.mReplayedEvents < mRecorder.getEventCount() / 100);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            long position = (long) (random.nextDouble() * SESSION_MS);
+            player.seekTo(position);
+            //keyframes are a little more than an interval apart, where strokes leave gaps, and an
+            //open stroke is rebuilt from its points
+            int bound = eventsBetween(position - 2 * AnnotationsPlayer.KEYFRAME_INTERVAL_MS, position) + POINTS_PER_STROKE;
+            assertTrue("seek to " + position + " replayed " + player.mReplayedEvents + " events",
+                    player.mReplayedEvents <= bound);
+        }
+    }
+}
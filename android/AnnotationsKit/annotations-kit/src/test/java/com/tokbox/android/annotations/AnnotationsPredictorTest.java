@@ -0,0 +1,155 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsPredictorTest {
+
+    private static final int SAMPLE_INTERVAL_MS = 8;
+    private static final long HORIZON_MS = 16;
+
+    /*
+     * Replays the strokes of a recording through the predictor, as the AnnotationsView feeds it,
+     * and compares each prediction with where the trace actually was HORIZON_MS later. Returns the
+     * mean distance of the predictions and the mean distance of the last sample, which is what is
+     * drawn without prediction.
+     */
+    static double[] replay(AnnotationsRecorder recording, long horizon) {
+        AnnotationsPredictor predictor = new AnnotationsPredictor();
+        float[] prediction = new float[2];
+        double predictionError = 0;
+        double lagError = 0;
+        int predictions = 0;
+        int begin = -1;
+        for (int e = 0; e < recording.mEventCount; e++) {
+            byte op = recording.mOps[e];
+            if (op == AnnotationsRecorder.OP_BEGIN) {
+                begin = e;
+                predictor.reset();
+            }
+            if (op != AnnotationsRecorder.OP_BEGIN && op != AnnotationsRecorder.OP_POINT) {
+                begin = -1;
+                continue;
+            }
+            predictor.addSample(recording.mTimes[e], recording.mXs[e], recording.mYs[e]);
+            float[] actual = positionAt(recording, begin, recording.mTimes[e] + horizon);
+            if (actual != null && predictor.predict(horizon, prediction)) {
+                predictionError += Math.hypot(prediction[0] - actual[0], prediction[1] - actual[1]);
+                lagError += Math.hypot(recording.mXs[e] - actual[0], recording.mYs[e] - actual[1]);
+                predictions++;
+            }
+        }
+        return new double[]{predictionError / predictions, lagError / predictions};
+    }
+
+    //interpolated position of a stroke at a time, null after its last point
+    private static float[] positionAt(AnnotationsRecorder recording, int begin, long time) {
+        for (int e = begin + 1; e < recording.mEventCount && recording.mOps[e] == AnnotationsRecorder.OP_POINT; e++) {
+            if (recording.mTimes[e] >= time) {
+                float f = (float) (time - recording.mTimes[e - 1]) / Math.max(1, recording.mTimes[e] - recording.mTimes[e - 1]);
+                return new float[]{
+                        recording.mXs[e - 1] + (recording.mXs[e] - recording.mXs[e - 1]) * f,
+                        recording.mYs[e - 1] + (recording.mYs[e] - recording.mYs[e - 1]) * f};
+            }
+        }
+        return null;
+    }
+
+    //a loop drawn at a varying speed, sampled at 120Hz with half a pixel of sensor noise
+    private static AnnotationsRecorder recordLoops(int strokes) {
+        Random random = new Random(3);
+        AnnotationsRecorder recording = new AnnotationsRecorder();
+        long start = 0;
+        for (int s = 0; s < strokes; s++) {
+            float radius = 100 + random.nextFloat() * 200;
+            float period = 600 + random.nextFloat() * 600;
+            for (int t = 0; t < 1200; t += SAMPLE_INTERVAL_MS) {
+                double angle = 2 * Math.PI * t / period;
+                float x = 640 + radius * (float) Math.cos(angle) + random.nextFloat() - 0.5f;
+                float y = 360 + radius * 0.6f * (float) Math.sin(angle * 1.5) + random.nextFloat() - 0.5f;
+                if (t == 0) {
+                    recording.beginStroke(start, x, y, 0xff0000ff, 10, 1280, 720);
+                } else {
+                    recording.addPoint(start + t, x, y);
+                }
+            }
+            recording.endStroke(start + 1200, new UUID(0, s));
+            start += 2000;
+        }
+        return recording;
+    }
+
+    //straight segments between random points, accelerating and slowing down to a stop at each
+    //point like a hand writing
+    private static AnnotationsRecorder recordSegments(int strokes) {
+        Random random = new Random(5);
+        AnnotationsRecorder recording = new AnnotationsRecorder();
+        long start = 0;
+        for (int s = 0; s < strokes; s++) {
+            float x = random.nextFloat() * 1280;
+            float y = random.nextFloat() * 720;
+            recording.beginStroke(start, x, y, 0xff0000ff, 10, 1280, 720);
+            long time = start;
+            for (int segment = 0; segment < 6; segment++) {
+                float toX = random.nextFloat() * 1280;
+                float toY = random.nextFloat() * 720;
+                int duration = 200 + random.nextInt(200);
+                for (int t = SAMPLE_INTERVAL_MS; t <= duration; t += SAMPLE_INTERVAL_MS) {
+                    //minimum-jerk profile
+                    double f = (double) t / duration;
+                    float p = (float) (10 * Math.pow(f, 3) - 15 * Math.pow(f, 4) + 6 * Math.pow(f, 5));
+                    recording.addPoint(time + t, x + (toX - x) * p + random.nextFloat() - 0.5f,
+                            y + (toY - y) * p + random.nextFloat() - 0.5f);
+                }
+                time += duration;
+                x = toX;
+                y = toY;
+            }
+            recording.endStroke(time, new UUID(1, s));
+            start = time + 500;
+        }
+        return recording;
+    }
+
+    @Test
+    public void predictionHalvesTheLagOfSmoothStrokes() {
+        double[] errors = replay(recordLoops(20), HORIZON_MS);
+        assertTrue("Prediction error " + errors[0] + "px, lag " + errors[1] + "px", errors[0] < errors[1] / 2);
+    }
+
+    @Test
+    public void predictionHalvesTheLagOfStrokesWithStops() {
+        double[] errors = replay(recordSegments(20), HORIZON_MS);
+        assertTrue("Prediction error " + errors[0] + "px, lag " + errors[1] + "px", errors[0] < errors[1] / 2);
+    }
+
+    @Test
+    public void noPredictionWithoutVelocity() {
+        AnnotationsPredictor predictor = new AnnotationsPredictor();
+        float[] prediction = new float[]{-1, -1};
+        assertFalse(predictor.predict(HORIZON_MS, prediction));
+
+        predictor.addSample(100, 10, 10);
+        assertFalse(predictor.predict(HORIZON_MS, prediction));
+
+        //a sample out of the window is not used for the velocity
+        predictor.addSample(200, 20, 20);
+        assertFalse(predictor.predict(HORIZON_MS, prediction));
+        assertEquals(-1, prediction[0], 0);
+    }
+
+    @Test
+    public void horizonIsCapped() {
+        AnnotationsPredictor predictor = new AnnotationsPredictor();
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(10, 10, 0);
+        float[] prediction = new float[2];
+        assertTrue(predictor.predict(1000, prediction));
+        assertEquals(10 + AnnotationsPredictor.MAX_HORIZON_MS, prediction[0], 1e-3);
+        assertEquals(0, prediction[1], 1e-3);
+    }
+}
@@ -0,0 +1,91 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsRemoteCursorTest {
+
+    private static final long INTERVAL_MS = 100;
+    private static final long DELAY_MS = INTERVAL_MS * 3 / 2;
+    private static final long FRAME_MS = 16;
+
+    //moves across the canvas at a constant speed, in 4 seconds
+    private static float positionAt(long time) {
+        return time / 4000f;
+    }
+
+    @Test
+    public void pointerMovesSmoothlyBetweenJitteredSignals() {
+        Random random = new Random(11);
+        AnnotationsRemoteCursor cursor = new AnnotationsRemoteCursor(DELAY_MS);
+        long[] receiveTimes = new long[40];
+        for (int i = 0; i < receiveTimes.length; i++) {
+            long sendTime = i * INTERVAL_MS;
+            //40 to 90ms of network latency
+            receiveTimes[i] = 10000 + sendTime + 40 + random.nextInt(50);
+        }
+
+        float[] position = new float[2];
+        float previous = -1;
+        float largestStep = 0;
+        int next = 0;
+        for (long now = 10000; now < 10000 + 3900; now += FRAME_MS) {
+            while (next < receiveTimes.length && receiveTimes[next] <= now) {
+                cursor.addSample(receiveTimes[next], next * INTERVAL_MS, positionAt(next * INTERVAL_MS), 0.5f, false);
+                next++;
+            }
+            if (!cursor.getPosition(now, position)) {
+                continue;
+            }
+            if (previous >= 0) {
+                float step = position[0] - previous;
+                assertTrue("Moved back by " + step, step >= 0);
+                largestStep = Math.max(largestStep, step);
+            }
+            previous = position[0];
+        }
+        assertTrue(previous > 0.9f);
+        //at most a frame and a half of motion per frame: no stops and jumps between signals
+        float frameStep = positionAt(FRAME_MS);
+        assertTrue("Largest step " + largestStep / frameStep + " frames", largestStep < frameStep * 1.5f);
+    }
+
+    @Test
+    public void pointerIsHiddenWithItsSignal() {
+        AnnotationsRemoteCursor cursor = new AnnotationsRemoteCursor(DELAY_MS);
+        cursor.addSample(1000, 0, 0.2f, 0.2f, false);
+        cursor.addSample(1100, 100, 0, 0, true);
+        float[] position = new float[2];
+        assertTrue(cursor.getPosition(1000 + DELAY_MS + 50, position));
+        assertEquals(0.2f, position[0], 0);
+        assertFalse(cursor.getPosition(1100 + DELAY_MS, position));
+    }
+
+    @Test
+    public void lateSignalIsNotDrawnBeforeItArrives() {
+        AnnotationsRemoteCursor cursor = new AnnotationsRemoteCursor(DELAY_MS);
+        cursor.addSample(1000, 0, 0, 0, false);
+        //arrives 200ms later than the first one did
+        cursor.addSample(1300, 100, 1, 0, false);
+        float[] position = new float[2];
+        assertTrue(cursor.getPosition(1300 + DELAY_MS, position));
+        assertEquals(1, position[0], 0);
+        //and a signal sent before it is ignored
+        cursor.addSample(1310, 50, 0.5f, 0, false);
+        assertTrue(cursor.getPosition(1310 + DELAY_MS, position));
+        assertEquals(1, position[0], 0);
+    }
+
+    @Test
+    public void framesStopOnceThePointerHasFaded() {
+        AnnotationsRemoteCursor cursor = new AnnotationsRemoteCursor(DELAY_MS);
+        cursor.addSample(1000, 0, 0.2f, 0.2f, false);
+        cursor.addSample(1100, 100, 0.4f, 0.2f, false);
+        assertTrue(cursor.update(1100 + DELAY_MS, 1280, 720));
+        //at rest, the trail fades out
+        assertFalse(cursor.update(1100 + DELAY_MS + AnnotationsLaserTrail.FADE_MS, 1280, 720));
+    }
+}
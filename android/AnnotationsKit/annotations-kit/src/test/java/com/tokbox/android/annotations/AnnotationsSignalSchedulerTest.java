@@ -0,0 +1,144 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsSignalSchedulerTest {
+
+    private static final int RATE = 20;
+    private static final int BURST = 10;
+
+    //a session that records the signals with the time they were sent
+    private static class FakeSession implements AnnotationsSignalScheduler.SignalSender {
+        final List<String> signals = new ArrayList<String>();
+        final List<Long> times = new ArrayList<Long>();
+        long now;
+
+        @Override
+        public void sendSignal(String type, String data) {
+            signals.add(type + ":" + data);
+            times.add(now);
+        }
+
+        //the most signals sent within any second
+        int getPeakRate() {
+            int peak = 0;
+            int first = 0;
+            for (int i = 0; i < times.size(); i++) {
+                while (times.get(i) - times.get(first) >= 1000) {
+                    first++;
+                }
+                peak = Math.max(peak, i - first + 1);
+            }
+            return peak;
+        }
+    }
+
+    private FakeSession mSession;
+    private AnnotationsSignalScheduler mScheduler;
+
+    @Before
+    public void createScheduler() {
+        mSession = new FakeSession();
+        mScheduler = new AnnotationsSignalScheduler(mSession, RATE, BURST);
+    }
+
+    @Test
+    public void burstIsSentRightAway() {
+        for (int i = 0; i < BURST; i++) {
+            assertEquals(-1, mScheduler.sendOperation(0, "op", "" + i));
+        }
+        assertEquals(BURST, mSession.signals.size());
+
+        //then one every 1000 / RATE ms
+        assertEquals(1000 / RATE, mScheduler.sendOperation(0, "op", "late"));
+        assertEquals(1, mScheduler.getPendingCount());
+        assertEquals(-1, mScheduler.flush(1000 / RATE));
+        assertEquals("op:late", mSession.signals.get(BURST));
+    }
+
+    @Test
+    public void operationsGoBeforeUpdates() {
+        mScheduler = new AnnotationsSignalScheduler(mSession, RATE, 1);
+        mScheduler.sendOperation(0, "op", "0");
+        mScheduler.sendUpdate(0, "cursor", "cursor", "a");
+        mScheduler.sendOperation(0, "op", "1");
+        mScheduler.sendUpdate(0, "cursor", "cursor", "b");
+        assertEquals(1, mScheduler.getCoalescedCount());
+
+        for (long time = 0; mScheduler.getPendingCount() > 0; time += 1000 / RATE) {
+            mScheduler.flush(time);
+        }
+        assertEquals(3, mSession.signals.size());
+        assertEquals("op:0", mSession.signals.get(0));
+        assertEquals("op:1", mSession.signals.get(1));
+        assertEquals("cursor:b", mSession.signals.get(2));
+    }
+
+    @Test
+    public void rateLimitHoldsUnderLoadWithoutDroppingOperations() {
+        //for 10 seconds: an operation every 80ms and a pointer update every 8ms
+        int operations = 0;
+        String lastUpdate = null;
+        long flushTime = -1;
+        for (long time = 0; time < 10000; time++) {
+            mSession.now = time;
+            long wait = -1;
+            if (flushTime >= 0 && time >= flushTime) {
+                wait = mScheduler.flush(time);
+            }
+            if (time % 80 == 0) {
+                wait = mScheduler.sendOperation(time, "op", "" + operations++);
+            }
+            if (time % 8 == 0) {
+                lastUpdate = "" + time;
+                wait = mScheduler.sendUpdate(time, "cursor", "cursor", lastUpdate);
+            }
+            if (wait >= 0) {
+                flushTime = time + wait;
+            } else if (mScheduler.getPendingCount() == 0) {
+                flushTime = -1;
+            }
+        }
+        //drain
+        for (long time = 10000; mScheduler.getPendingCount() > 0; time++) {
+            mSession.now = time;
+            mScheduler.flush(time);
+        }
+
+        assertTrue("Peak rate " + mSession.getPeakRate(), mSession.getPeakRate() <= RATE + BURST);
+        //the limit is used up
+        assertTrue(mSession.signals.size() >= RATE * 10);
+
+        int next = 0;
+        String lastSent = null;
+        for (String signal : mSession.signals) {
+            if (signal.startsWith("op:")) {
+                assertEquals("op:" + next, signal);
+                next++;
+            } else {
+                lastSent = signal;
+            }
+        }
+        assertEquals(operations, next);
+        assertTrue(mScheduler.getCoalescedCount() > 0);
+        assertEquals("cursor:" + lastUpdate, lastSent);
+    }
+
+    @Test
+    public void quietPeriodRefillsUpToTheBurst() {
+        for (int i = 0; i < BURST; i++) {
+            mScheduler.sendOperation(0, "op", "" + i);
+        }
+        mSession.signals.clear();
+        for (int i = 0; i < BURST * 3; i++) {
+            mScheduler.sendOperation(60000, "op", "" + i);
+        }
+        assertEquals(BURST, mSession.signals.size());
+    }
+}
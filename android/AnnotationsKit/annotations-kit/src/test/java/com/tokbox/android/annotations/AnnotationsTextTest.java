@@ -0,0 +1,68 @@
+package com.tokbox.android.annotations;
+
+import android.graphics.Paint;
+import android.text.StaticLayout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsTextTest {
+
+    //the mockable Paint keeps nothing, this one keeps the text size and the color
+    private static class FakePaint extends Paint {
+        private float mTextSize;
+        private int mColor;
+
+        @Override
+        public void setTextSize(float textSize) {
+            mTextSize = textSize;
+        }
+
+        @Override
+        public float getTextSize() {
+            return mTextSize;
+        }
+
+        @Override
+        public void setColor(int color) {
+            mColor = color;
+        }
+
+        @Override
+        public int getColor() {
+            return mColor;
+        }
+    }
+
+    @Test
+    public void layoutIsReusedWhileTheKeyIsUnchanged() {
+        AnnotationsText text = new AnnotationsText("a long annotation that wraps over several lines", 10, 50);
+        Paint paint = Annotatable.newTextPaint(0xff000000, 48);
+
+        StaticLayout layout = text.getLayout(paint, 300);
+        assertSame(layout, text.getLayout(paint, 300));
+        assertNotSame(layout, text.getLayout(paint, 200));
+    }
+
+    @Test
+    public void layoutIsRebuiltWhenThePaintChanges() {
+        AnnotationsText text = new AnnotationsText("a long annotation that wraps over several lines", 10, 50);
+        Paint paint = new FakePaint();
+        paint.setTextSize(48);
+        paint.setColor(0xff000000);
+
+        StaticLayout layout = text.getLayout(paint, 300);
+        assertSame(layout, text.getLayout(paint, 300));
+
+        paint.setTextSize(64);
+        StaticLayout resized = text.getLayout(paint, 300);
+        assertNotSame(layout, resized);
+        assertSame(resized, text.getLayout(paint, 300));
+
+        paint.setColor(0xffff0000);
+        StaticLayout recolored = text.getLayout(paint, 300);
+        assertNotSame(resized, recolored);
+        assertSame(recolored, text.getLayout(paint, 300));
+    }
+}
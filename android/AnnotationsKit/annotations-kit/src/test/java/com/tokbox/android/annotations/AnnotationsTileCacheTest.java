@@ -0,0 +1,90 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsTileCacheTest {
+
+    private static final int SIZE = 1024;
+
+    private static final Runnable NO_LISTENER = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private static Annotatable newStroke(float x0, float y0, float x1, float y1) {
+        AnnotationsPath path = AnnotationsPath.fromPoints(new float[]{x0, y0, x1, y1}, 2);
+        return new Annotatable(AnnotationsView.Mode.Pen.toString(), path, Annotatable.newPathPaint(0xff0000ff, 10), SIZE, SIZE);
+    }
+
+    @Test
+    public void levelIsThePowerOfTwoAtOrAboveTheZoom() {
+        assertEquals(0, AnnotationsTileCache.getLevel(1));
+        assertEquals(1, AnnotationsTileCache.getLevel(1.5f));
+        assertEquals(2, AnnotationsTileCache.getLevel(4));
+        assertEquals(-1, AnnotationsTileCache.getLevel(0.3f));
+        assertEquals(-2, AnnotationsTileCache.getLevel(0.25f));
+        assertEquals(AnnotationsTileCache.MAX_LEVEL, AnnotationsTileCache.getLevel(100));
+        assertEquals(AnnotationsTileCache.TILE_SIZE / 4f, AnnotationsTileCache.getTileCanvasSize(2), 0);
+    }
+
+    @Test
+    public void onlyTheTilesUnderAChangeAreDropped() {
+        AnnotationsTileCache cache = new AnnotationsTileCache(Long.MAX_VALUE, NO_LISTENER);
+        Annotatable first = newStroke(10, 10, 100, 100);
+        Annotatable second = newStroke(600, 600, 700, 700);
+        cache.setAnnotations(new Annotatable[]{first}, SIZE, SIZE);
+
+        long topLeft = AnnotationsTileCache.getKey(0, 0, 0);
+        long middle = AnnotationsTileCache.getKey(0, 2, 2);
+        long bottomRight = AnnotationsTileCache.getKey(0, 3, 3);
+        long zoomedTopLeft = AnnotationsTileCache.getKey(1, 0, 0);
+        cache.putTile(topLeft, null);
+        cache.putTile(middle, null);
+        cache.putTile(bottomRight, null);
+        cache.putTile(zoomedTopLeft, null);
+
+        cache.setAnnotations(new Annotatable[]{first, second}, SIZE, SIZE);
+        assertTrue(cache.hasTile(topLeft));
+        assertFalse(cache.hasTile(middle));
+        assertTrue(cache.hasTile(bottomRight));
+        assertTrue(cache.hasTile(zoomedTopLeft));
+
+        cache.setAnnotations(new Annotatable[]{second}, SIZE, SIZE);
+        assertFalse(cache.hasTile(topLeft));
+        assertFalse(cache.hasTile(zoomedTopLeft));
+        assertTrue(cache.hasTile(bottomRight));
+    }
+
+    @Test
+    public void resizeDropsEveryTile() {
+        AnnotationsTileCache cache = new AnnotationsTileCache(Long.MAX_VALUE, NO_LISTENER);
+        Annotatable[] annotations = {newStroke(10, 10, 100, 100)};
+        cache.setAnnotations(annotations, SIZE, SIZE);
+        cache.putTile(AnnotationsTileCache.getKey(0, 3, 3), null);
+
+        cache.setAnnotations(annotations, SIZE, SIZE / 2);
+        assertEquals(0, cache.getTileCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedTileIsEvictedOverTheBudget() {
+        AnnotationsTileCache cache = new AnnotationsTileCache(2L * AnnotationsTileCache.TILE_BYTES, NO_LISTENER);
+        long first = AnnotationsTileCache.getKey(0, 0, 0);
+        long second = AnnotationsTileCache.getKey(0, 1, 0);
+        long third = AnnotationsTileCache.getKey(0, 2, 0);
+        cache.putTile(first, null);
+        cache.putTile(second, null);
+        //used again, so the second one is now the oldest
+        cache.putTile(first, null);
+        cache.putTile(third, null);
+
+        assertEquals(2, cache.getTileCount());
+        assertTrue(cache.hasTile(first));
+        assertFalse(cache.hasTile(second));
+        assertTrue(cache.hasTile(third));
+        assertEquals(2L * AnnotationsTileCache.TILE_BYTES, cache.getMemoryUsage());
+    }
+}
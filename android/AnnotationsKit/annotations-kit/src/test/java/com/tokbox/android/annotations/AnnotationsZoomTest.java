@@ -0,0 +1,61 @@
+package com.tokbox.android.annotations;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsZoomTest {
+
+    private static AnnotationsZoom newZoom() {
+        AnnotationsZoom zoom = new AnnotationsZoom();
+        zoom.setViewSize(1000, 500);
+        return zoom;
+    }
+
+    @Test
+    public void zoomKeepsTheFocusInPlace() {
+        AnnotationsZoom zoom = newZoom();
+        zoom.zoomBy(2, 300, 200);
+        assertEquals(2, zoom.getZoom(), 0);
+
+        float[] point = {300, 200};
+        zoom.mapToCanvas(point);
+        assertEquals(300, point[0], 1e-4);
+        assertEquals(200, point[1], 1e-4);
+    }
+
+    @Test
+    public void zoomIsLimitedToTheRange() {
+        AnnotationsZoom zoom = newZoom();
+        zoom.zoomBy(10, 0, 0);
+        assertEquals(AnnotationsZoom.DEFAULT_MAX_ZOOM, zoom.getZoom(), 0);
+        zoom.zoomBy(0.01f, 0, 0);
+        assertEquals(AnnotationsZoom.DEFAULT_MIN_ZOOM, zoom.getZoom(), 0);
+        assertTrue(zoom.isIdentity());
+    }
+
+    @Test
+    public void zoomedCanvasCoversTheView() {
+        AnnotationsZoom zoom = newZoom();
+        zoom.zoomBy(2, 500, 250);
+        zoom.panBy(5000, -5000);
+        //the left edge of the canvas and the bottom edge of the canvas are on the view edges
+        assertEquals(0, zoom.getPanX(), 0);
+        assertEquals(500 - 1000, zoom.getPanY(), 0);
+
+        float[] point = {0, 500};
+        zoom.mapToCanvas(point);
+        assertEquals(0, point[0], 1e-4);
+        assertEquals(500, point[1], 1e-4);
+    }
+
+    @Test
+    public void zoomedOutCanvasStaysInTheView() {
+        AnnotationsZoom zoom = newZoom();
+        zoom.setRange(0.25f, 4);
+        zoom.zoomBy(0.5f, 0, 0);
+        zoom.panBy(-100, 1000);
+        assertEquals(0, zoom.getPanX(), 0);
+        assertEquals(250, zoom.getPanY(), 0);
+    }
+}
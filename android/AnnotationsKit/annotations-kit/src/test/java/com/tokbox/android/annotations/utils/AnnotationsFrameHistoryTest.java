@@ -0,0 +1,126 @@
+package com.tokbox.android.annotations.utils;
+
+import com.tokbox.android.annotations.Annotatable;
+import com.tokbox.android.annotations.AnnotationsMemoryBudget;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AnnotationsFrameHistoryTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final int FRAME_SIZE = YuvDownscaler.getFrameSize(WIDTH, HEIGHT);
+
+    private static ByteBuffer frame(int value) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(FRAME_SIZE);
+        while (frame.hasRemaining()) {
+            frame.put((byte) value);
+        }
+        return frame;
+    }
+
+    @Test
+    public void framesAreSpacedToCoverTheDurationWithinTheCap() {
+        //4 frames over 1 second, one every 250ms at most
+        AnnotationsFrameHistory history = new AnnotationsFrameHistory(1000, FRAME_SIZE * 4);
+        ByteBuffer frame = frame(1);
+
+        int kept = 0;
+        for (long time = 0; time < 3000; time += 33) {
+            if (history.record(frame, WIDTH, HEIGHT, time, null)) {
+                kept++;
+            }
+        }
+
+        assertEquals(4, history.getFrameCount());
+        assertTrue(kept > 4);
+        assertEquals(FRAME_SIZE * 4, history.getMemoryUsage());
+    }
+
+    @Test
+    public void poolIsReusedAsARing() {
+        AnnotationsFrameHistory history = new AnnotationsFrameHistory(300, FRAME_SIZE * 3);
+        Annotatable[] none = new Annotatable[0];
+        Annotatable[] some = new Annotatable[2];
+
+        for (int i = 0; i < 10; i++) {
+            history.record(frame(i), WIDTH, HEIGHT, i * 100, i < 8 ? none : some);
+        }
+
+        assertEquals(3, history.getFrameCount());
+        assertEquals(FRAME_SIZE * 3, history.getMemoryUsage());
+
+        AnnotationsFrameHistory.Snapshot snapshot = history.get(850);
+        assertEquals(800, snapshot.timestamp);
+        assertEquals(8, snapshot.yuv[0]);
+        assertSame(some, snapshot.annotations);
+        assertSame(none, history.get(750).annotations);
+        //older than the history, the oldest frame is returned
+        assertEquals(700, history.get(0).timestamp);
+        assertEquals(900, history.get(5000).timestamp);
+    }
+
+    @Test
+    public void trimDropsTheOldestFramesAndKeepsTheCap() {
+        AnnotationsFrameHistory history = new AnnotationsFrameHistory(1000, FRAME_SIZE * 4);
+        for (int i = 0; i < 4; i++) {
+            history.record(frame(i), WIDTH, HEIGHT, i * 250, null);
+        }
+
+        assertEquals(FRAME_SIZE * 2, history.trim(FRAME_SIZE + 1));
+        assertEquals(2, history.getFrameCount());
+        assertEquals(FRAME_SIZE * 2, history.getMemoryUsage());
+        assertEquals(500, history.get(0).timestamp);
+        assertEquals(FRAME_SIZE * 4, history.getMaxBytes());
+
+        //the pool grows back to the cap
+        for (int i = 4; i < 8; i++) {
+            history.record(frame(i), WIDTH, HEIGHT, i * 250, null);
+        }
+        assertEquals(4, history.getFrameCount());
+        assertEquals(FRAME_SIZE * 4, history.getMemoryUsage());
+    }
+
+    @Test
+    public void growingChecksTheBudget() {
+        final AnnotationsFrameHistory history = new AnnotationsFrameHistory(1000, FRAME_SIZE * 4);
+        AnnotationsMemoryBudget budget = new AnnotationsMemoryBudget(FRAME_SIZE * 2);
+        budget.register("frames", AnnotationsMemoryBudget.PRIORITY_FRAME_HISTORY, new AnnotationsMemoryBudget.MemoryConsumer() {
+            @Override
+            public long getMemoryUsage() {
+                return history.getMemoryUsage();
+            }
+
+            @Override
+            public long trim(long bytes) {
+                return history.trim(bytes);
+            }
+        });
+        history.setMemoryBudget(budget);
+
+        for (int i = 0; i < 8; i++) {
+            history.record(frame(i), WIDTH, HEIGHT, i * 250, null);
+            assertTrue(history.getMemoryUsage() <= FRAME_SIZE * 2);
+        }
+        assertEquals(7 * 250, history.get(5000).timestamp);
+    }
+
+    @Test
+    public void invalidFramesAndSizeChanges() {
+        AnnotationsFrameHistory history = new AnnotationsFrameHistory(1000, FRAME_SIZE * 2);
+        assertNull(history.get(0));
+        assertFalse(history.record(ByteBuffer.allocateDirect(10), WIDTH, HEIGHT, 0, null));
+
+        history.record(frame(1), WIDTH, HEIGHT, 0, null);
+        //a frame over the cap is never kept
+        assertFalse(history.record(ByteBuffer.allocateDirect(YuvDownscaler.getFrameSize(256, 256)), 256, 256, 1000, null));
+        assertEquals(0, history.getFrameCount());
+
+        history.clear();
+        assertEquals(0, history.getMemoryUsage());
+    }
+}
@@ -0,0 +1,48 @@
+package com.tokbox.android.annotations.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VideoContentTransformTest {
+
+    @Test
+    public void fitLetterboxesAndFillCrops() {
+        VideoContentTransform transform = new VideoContentTransform();
+        transform.set(1280, 720, 720, 1280, true, false);
+        assertEquals(0.5625f, transform.getScale(), 1e-6);
+        assertEquals(0, transform.getOffsetX(), 1e-3);
+        assertEquals(437.5f, transform.getOffsetY(), 1e-3);
+
+        transform.set(1280, 720, 720, 1280, false, false);
+        assertEquals(1280f / 720, transform.getScale(), 1e-6);
+        assertEquals((720 - 1280 * 1280f / 720) / 2, transform.getOffsetX(), 1e-3);
+        assertEquals(0, transform.getOffsetY(), 1e-3);
+    }
+
+    @Test
+    public void viewPointsUnmapToTheFrameShownThere() {
+        VideoContentTransform transform = new VideoContentTransform();
+        transform.set(640, 480, 1280, 720, true, false);
+        //the frame is 960 wide, centered
+        assertEquals(0, transform.unmapX(160), 1e-3);
+        assertEquals(640, transform.unmapX(1120), 1e-3);
+        assertEquals(240, transform.unmapY(360), 1e-3);
+        assertEquals(1120, transform.mapX(640), 1e-3);
+
+        transform.set(640, 480, 1280, 720, true, true);
+        //mirrored, the left edge of the view shows the right of the frame
+        assertEquals(640, transform.unmapX(160), 1e-3);
+        assertEquals(160, transform.mapX(640), 1e-3);
+        assertEquals(100, transform.unmapX(transform.mapX(100)), 1e-3);
+    }
+
+    @Test
+    public void unknownContentIsTheView() {
+        VideoContentTransform transform = new VideoContentTransform();
+        transform.set(0, 0, 1280, 720, false, false);
+        assertEquals(1, transform.getScale(), 0);
+        assertEquals(0, transform.getOffsetX(), 0);
+        assertEquals(0, transform.getOffsetY(), 0);
+    }
+}
@@ -0,0 +1,79 @@
+package com.tokbox.android.annotations.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class YuvChangeDetectorTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 64;
+
+    private static ByteBuffer frame() {
+        ByteBuffer frame = ByteBuffer.allocateDirect(YuvDownscaler.getFrameSize(WIDTH, HEIGHT));
+        for (int i = 0; i < frame.capacity(); i++) {
+            frame.put(i, (byte) i);
+        }
+        return frame;
+    }
+
+    @Test
+    public void onlyTheChangedBandsAreReported() {
+        YuvChangeDetector detector = new YuvChangeDetector();
+        ByteBuffer frame = frame();
+
+        assertEquals(4, detector.detect(frame, WIDTH, HEIGHT));
+        assertEquals(0, detector.detect(frame, WIDTH, HEIGHT));
+
+        //a row of the third band, wide enough for the samples to see it at once
+        for (int x = 0; x < WIDTH; x++) {
+            frame.put(40 * WIDTH + x, (byte) 0xff);
+        }
+        assertEquals(1, detector.detect(frame, WIDTH, HEIGHT));
+        assertFalse(detector.isBandChanged(1));
+        assertTrue(detector.isBandChanged(2));
+        assertEquals(0, detector.detect(frame, WIDTH, HEIGHT));
+
+        //a chroma change of the first band
+        frame.put(WIDTH * HEIGHT + 3 * WIDTH / 2 + 5, (byte) 0x7f);
+        for (int i = 0; i < YuvChangeDetector.SAMPLE_STEP && !detector.isBandChanged(0); i++) {
+            detector.detect(frame, WIDTH, HEIGHT);
+        }
+        assertTrue(detector.isBandChanged(0));
+    }
+
+    @Test
+    public void aSinglePixelChangeIsFoundWithinTheSampleStep() {
+        YuvChangeDetector detector = new YuvChangeDetector();
+        ByteBuffer frame = frame();
+        detector.detect(frame, WIDTH, HEIGHT);
+
+        frame.put(20 * WIDTH + 33, (byte) 0);
+        int frames = 0;
+        int changed = 0;
+        while (changed == 0 && frames < YuvChangeDetector.SAMPLE_STEP) {
+            changed = detector.detect(frame, WIDTH, HEIGHT);
+            frames++;
+        }
+        assertEquals(1, changed);
+        assertTrue(detector.isBandChanged(1));
+        assertEquals(0, detector.detect(frame, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void resetAndResizeReportEveryBand() {
+        YuvChangeDetector detector = new YuvChangeDetector();
+        ByteBuffer frame = frame();
+        detector.detect(frame, WIDTH, HEIGHT);
+
+        detector.reset();
+        assertEquals(4, detector.detect(frame, WIDTH, HEIGHT));
+
+        //a 64x40 frame has a partial last band
+        ByteBuffer smaller = ByteBuffer.allocateDirect(YuvDownscaler.getFrameSize(WIDTH, 40));
+        assertEquals(3, detector.detect(smaller, WIDTH, 40));
+        assertEquals(0, detector.detect(smaller, WIDTH, 40));
+    }
+}
@@ -0,0 +1,77 @@
+package com.tokbox.android.annotations.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class YuvDownscalerTest {
+
+    @Test
+    public void decimationKeepsTheFrameAsLargeAsItIsShown() {
+        //full size view
+        assertEquals(0, YuvDownscaler.getDecimation(1280, 720, 1280, 720, true));
+        //a quarter of the stream, fitted
+        assertEquals(2, YuvDownscaler.getDecimation(1280, 720, 320, 180, true));
+        //a grid tile, the fitted frame is limited by the width
+        assertEquals(1, YuvDownscaler.getDecimation(1920, 1080, 640, 640, true));
+        //filling the same tile crops the frame, so it shows more of its pixels
+        assertEquals(0, YuvDownscaler.getDecimation(1920, 1080, 640, 640, false));
+        //never more than MAX_SHIFT
+        assertEquals(YuvDownscaler.MAX_SHIFT, YuvDownscaler.getDecimation(1920, 1080, 48, 27, true));
+        //no viewport yet
+        assertEquals(0, YuvDownscaler.getDecimation(1920, 1080, 0, 0, true));
+    }
+
+    @Test
+    public void downscaleAveragesEachBlock() {
+        int width = 8;
+        int height = 4;
+        ByteBuffer frame = ByteBuffer.allocateDirect(YuvDownscaler.getFrameSize(width, height));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                //each 2x2 block averages to 10 * (its index + 1)
+                frame.put((byte) ((y / 2 * 4 + x / 2 + 1) * 10 + (x % 2 == y % 2 ? 2 : -2)));
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            frame.put((byte) 100);
+        }
+        for (int i = 0; i < 8; i++) {
+            frame.put((byte) (i < 4 ? 50 : 150));
+        }
+
+        YuvDownscaler downscaler = new YuvDownscaler();
+        ByteBuffer output = downscaler.downscale(frame, width, height, 1);
+
+        assertEquals(YuvDownscaler.getFrameSize(4, 2), output.remaining());
+        for (int i = 0; i < 8; i++) {
+            assertEquals((i + 1) * 10, output.get(i) & 0xff);
+        }
+        //the 4x2 chroma planes become 2x1
+        assertEquals(100, output.get(8) & 0xff);
+        assertEquals(100, output.get(9) & 0xff);
+        assertEquals(100, output.get(10) & 0xff);
+        assertEquals(100, output.get(11) & 0xff);
+        assertSame(output, downscaler.downscale(frame, width, height, 1));
+    }
+
+    @Test
+    public void downscaleRepeatsTheEdgesOfOddSizes() {
+        int width = 6;
+        int height = 6;
+        ByteBuffer frame = ByteBuffer.allocateDirect(YuvDownscaler.getFrameSize(width, height));
+        while (frame.hasRemaining()) {
+            frame.put((byte) 200);
+        }
+
+        ByteBuffer output = new YuvDownscaler().downscale(frame, width, height, 2);
+
+        //1x1 luma, and the 3x3 chroma planes reduced to 1x1 through their repeated edges
+        assertEquals(3, output.remaining());
+        while (output.hasRemaining()) {
+            assertEquals(200, output.get() & 0xff);
+        }
+    }
+}